@@ -0,0 +1,234 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.feature.stream;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded thread pool that runs the producers of {@link ThreadedFeatureInputStream}s for one feature store.
+ * <p>
+ * At most <code>poolSize</code> producers read from the store at the same time, and at most
+ * <code>maxQueuedProducers</code> wait for a free thread. If the queue is full, {@link #prefetch(FeatureInputStream)}
+ * returns the original stream, which is then iterated synchronously by the caller.
+ * </p>
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+public class FeatureStreamExecutor implements FeatureStreamExecutorMXBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger( FeatureStreamExecutor.class );
+
+    private final String name;
+
+    private final int poolSize;
+
+    private final int queueSize;
+
+    private final ThreadPoolExecutor pool;
+
+    private final AtomicInteger activeProducers = new AtomicInteger();
+
+    private final AtomicLong startedProducers = new AtomicLong();
+
+    private final AtomicLong rejectedProducers = new AtomicLong();
+
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    private final Executor timedExecutor = new Executor() {
+        @Override
+        public void execute( Runnable command ) {
+            pool.execute( new TimedProducer( command ) );
+        }
+    };
+
+    /**
+     * @param name
+     *            used for thread names and logging, must not be <code>null</code>
+     * @param poolSize
+     *            maximum number of concurrent producers, must be positive
+     * @param maxQueuedProducers
+     *            maximum number of producers waiting for a thread, 0 means that streams are iterated synchronously if
+     *            all threads are busy
+     * @param queueSize
+     *            number of features each producer may read ahead, must be positive
+     */
+    public FeatureStreamExecutor( final String name, int poolSize, int maxQueuedProducers, int queueSize ) {
+        this.name = name;
+        this.poolSize = poolSize;
+        this.queueSize = queueSize;
+        BlockingQueue<Runnable> queue;
+        if ( maxQueuedProducers > 0 ) {
+            queue = new ArrayBlockingQueue<Runnable>( maxQueuedProducers );
+        } else {
+            queue = new SynchronousQueue<Runnable>();
+        }
+        pool = new ThreadPoolExecutor( poolSize, poolSize, 60, SECONDS, queue, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread( Runnable r ) {
+                Thread t = new Thread( r, "feature-stream-" + name + "-" + count.incrementAndGet() );
+                t.setDaemon( true );
+                return t;
+            }
+        } );
+        pool.allowCoreThreadTimeOut( true );
+    }
+
+    /**
+     * Starts reading the given stream in a separate thread.
+     * 
+     * @param features
+     *            stream to read, must not be <code>null</code>
+     * @return a {@link ThreadedFeatureInputStream} reading the given stream, or the given stream itself, if the
+     *         executor is saturated
+     */
+    public FeatureInputStream prefetch( FeatureInputStream features ) {
+        try {
+            return new ThreadedFeatureInputStream( features, queueSize, timedExecutor );
+        } catch ( RejectedExecutionException e ) {
+            long rejected = rejectedProducers.incrementAndGet();
+            LOG.debug( "Feature stream executor '{}' is saturated, reading synchronously ({} times so far).", name,
+                       rejected );
+            return features;
+        }
+    }
+
+    /**
+     * @return the name of this executor, never <code>null</code>
+     */
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    @Override
+    public int getActiveProducers() {
+        return activeProducers.get();
+    }
+
+    @Override
+    public int getQueuedProducers() {
+        return pool.getQueue().size();
+    }
+
+    @Override
+    public long getStartedProducers() {
+        return startedProducers.get();
+    }
+
+    @Override
+    public long getRejectedProducers() {
+        return rejectedProducers.get();
+    }
+
+    @Override
+    public double getAverageQueueWaitMillis() {
+        long started = startedProducers.get();
+        if ( started == 0 ) {
+            return 0;
+        }
+        return totalWaitNanos.get() / 1e6 / started;
+    }
+
+    @Override
+    public long getMaxQueueWaitMillis() {
+        return NANOSECONDS.toMillis( maxWaitNanos.get() );
+    }
+
+    /**
+     * Stops accepting new producers, running producers are finished.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    private class TimedProducer implements Runnable {
+
+        private final Runnable producer;
+
+        private final long submitted = System.nanoTime();
+
+        TimedProducer( Runnable producer ) {
+            this.producer = producer;
+        }
+
+        @Override
+        public void run() {
+            long wait = System.nanoTime() - submitted;
+            totalWaitNanos.addAndGet( wait );
+            long currentMax = maxWaitNanos.get();
+            while ( wait > currentMax && !maxWaitNanos.compareAndSet( currentMax, wait ) ) {
+                currentMax = maxWaitNanos.get();
+            }
+            startedProducers.incrementAndGet();
+            activeProducers.incrementAndGet();
+            try {
+                producer.run();
+            } finally {
+                activeProducers.decrementAndGet();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name + " (threads: " + poolSize + ", read ahead: " + queueSize + ")";
+    }
+
+}
@@ -0,0 +1,83 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.feature.stream;
+
+/**
+ * Management interface of a {@link FeatureStreamExecutor}, registered with the platform MBean server as
+ * <code>org.deegree:type=FeatureStreamExecutor,name=&lt;feature store id&gt;</code>.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+public interface FeatureStreamExecutorMXBean {
+
+    /**
+     * @return the maximum number of producer threads
+     */
+    int getPoolSize();
+
+    /**
+     * @return the number of producers currently reading from the feature store
+     */
+    int getActiveProducers();
+
+    /**
+     * @return the number of producers waiting for a free thread
+     */
+    int getQueuedProducers();
+
+    /**
+     * @return the number of producers that have been started so far
+     */
+    long getStartedProducers();
+
+    /**
+     * @return the number of streams that were iterated synchronously because the queue was full
+     */
+    long getRejectedProducers();
+
+    /**
+     * @return the average time producers waited for a free thread, in milliseconds
+     */
+    double getAverageQueueWaitMillis();
+
+    /**
+     * @return the longest time a producer waited for a free thread, in milliseconds
+     */
+    long getMaxQueueWaitMillis();
+
+}
@@ -0,0 +1,241 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.feature.stream;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.math.BigInteger;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.io.IOUtils;
+import org.deegree.commons.xml.jaxb.JAXBUtils;
+import org.deegree.feature.stream.jaxb.FeatureStreams;
+import org.deegree.feature.stream.jaxb.FeatureStreams.FeatureStore;
+import org.deegree.feature.stream.jaxb.SettingsType;
+import org.deegree.workspace.Destroyable;
+import org.deegree.workspace.Initializable;
+import org.deegree.workspace.Workspace;
+import org.deegree.workspace.standard.DefaultWorkspace;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link Initializable} that manages one {@link FeatureStreamExecutor} per feature store.
+ * <p>
+ * The executors are configured by the optional workspace file <code>featurestreams.xml</code>:
+ * 
+ * <pre>
+ * &lt;FeatureStreams xmlns="http://www.deegree.org/feature/stream" configVersion="3.4.0"&gt;
+ *   &lt;Default poolSize="10" maxQueuedProducers="50" readAhead="100" /&gt;
+ *   &lt;FeatureStore id="roads" poolSize="4" maxQueuedProducers="0" /&gt;
+ * &lt;/FeatureStreams&gt;
+ * </pre>
+ * 
+ * Attributes that are omitted are taken from the <code>Default</code> element, or from the built-in defaults shown
+ * above. The executors are registered as MBeans (see {@link FeatureStreamExecutorMXBean}).
+ * </p>
+ * <p>
+ * The executors are kept in static state, as the workspace destroys a different instance of this class than the one
+ * it has initialized.
+ * </p>
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+public class FeatureStreamExecutors implements Initializable, Destroyable {
+
+    private static final Logger LOG = LoggerFactory.getLogger( FeatureStreamExecutors.class );
+
+    private static final String CONFIG_SCHEMA_FILE = "/META-INF/schemas/feature/stream/3.4.0/featurestreams.xsd";
+
+    private static final URL CONFIG_SCHEMA = FeatureStreamExecutors.class.getResource( CONFIG_SCHEMA_FILE );
+
+    private static final String CONFIG_JAXB_PACKAGE = "org.deegree.feature.stream.jaxb";
+
+    private static final String CONFIG_FILE_NAME = "featurestreams.xml";
+
+    private static final String MBEAN_DOMAIN = "org.deegree";
+
+    private static final Settings BUILT_IN_DEFAULTS = new Settings( 10, 50, 100 );
+
+    private static Settings defaults = BUILT_IN_DEFAULTS;
+
+    private static final Map<String, Settings> storeSettings = new HashMap<String, Settings>();
+
+    private static final Map<String, FeatureStreamExecutor> executors = new HashMap<String, FeatureStreamExecutor>();
+
+    private static final Map<String, ObjectName> mbeans = new HashMap<String, ObjectName>();
+
+    @Override
+    public void init( Workspace workspace ) {
+        synchronized ( FeatureStreamExecutors.class ) {
+            // executors of a previous workspace that has not been destroyed properly
+            shutdown();
+            defaults = BUILT_IN_DEFAULTS;
+            storeSettings.clear();
+        }
+        if ( !( workspace instanceof DefaultWorkspace ) ) {
+            return;
+        }
+        File configFile = new File( ( (DefaultWorkspace) workspace ).getLocation(), CONFIG_FILE_NAME );
+        if ( !configFile.exists() ) {
+            LOG.debug( "No '" + CONFIG_FILE_NAME + "' in workspace, using default feature stream settings." );
+            return;
+        }
+        LOG.info( "Using '" + CONFIG_FILE_NAME + "' from workspace for feature stream settings." );
+        InputStream is = null;
+        try {
+            is = new FileInputStream( configFile );
+            FeatureStreams config = (FeatureStreams) JAXBUtils.unmarshall( CONFIG_JAXB_PACKAGE, CONFIG_SCHEMA, is,
+                                                                           workspace );
+            synchronized ( FeatureStreamExecutors.class ) {
+                if ( config.getDefault() != null ) {
+                    defaults = toSettings( config.getDefault(), BUILT_IN_DEFAULTS );
+                }
+                for ( FeatureStore store : config.getFeatureStore() ) {
+                    storeSettings.put( store.getId(), toSettings( store, null ) );
+                }
+            }
+        } catch ( Exception e ) {
+            LOG.error( "Error reading '" + CONFIG_FILE_NAME + "': " + e.getMessage() );
+            LOG.trace( "Stack trace:", e );
+        } finally {
+            IOUtils.closeQuietly( is );
+        }
+    }
+
+    /**
+     * Returns the executor for the given feature store, creating it if necessary.
+     * 
+     * @param featureStoreId
+     *            the id of the feature store, must not be <code>null</code>
+     * @return the executor, never <code>null</code>
+     */
+    public FeatureStreamExecutor getExecutor( String featureStoreId ) {
+        synchronized ( FeatureStreamExecutors.class ) {
+            FeatureStreamExecutor executor = executors.get( featureStoreId );
+            if ( executor == null ) {
+                Settings settings = storeSettings.get( featureStoreId );
+                int poolSize = value( settings == null ? null : settings.poolSize, defaults.poolSize );
+                int maxQueued = value( settings == null ? null : settings.maxQueuedProducers,
+                                       defaults.maxQueuedProducers );
+                int readAhead = value( settings == null ? null : settings.readAhead, defaults.readAhead );
+                executor = new FeatureStreamExecutor( featureStoreId, poolSize, maxQueued, readAhead );
+                LOG.debug( "Created feature stream executor {}.", executor );
+                executors.put( featureStoreId, executor );
+                register( featureStoreId, executor );
+            }
+            return executor;
+        }
+    }
+
+    @Override
+    public void destroy( Workspace workspace ) {
+        synchronized ( FeatureStreamExecutors.class ) {
+            shutdown();
+        }
+    }
+
+    private static void shutdown() {
+        for ( FeatureStreamExecutor executor : executors.values() ) {
+            executor.shutdown();
+        }
+        executors.clear();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for ( ObjectName name : mbeans.values() ) {
+            try {
+                server.unregisterMBean( name );
+            } catch ( Exception e ) {
+                LOG.trace( "Could not unregister MBean " + name + ":", e );
+            }
+        }
+        mbeans.clear();
+    }
+
+    private static void register( String featureStoreId, FeatureStreamExecutor executor ) {
+        try {
+            ObjectName name = new ObjectName( MBEAN_DOMAIN + ":type=FeatureStreamExecutor,name="
+                                              + ObjectName.quote( featureStoreId ) );
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if ( server.isRegistered( name ) ) {
+                // left over from another class loader
+                server.unregisterMBean( name );
+            }
+            server.registerMBean( executor, name );
+            mbeans.put( featureStoreId, name );
+        } catch ( Exception e ) {
+            LOG.warn( "Could not register metrics of feature stream executor '{}': {}", featureStoreId,
+                      e.getLocalizedMessage() );
+            LOG.trace( "Stack trace:", e );
+        }
+    }
+
+    private static Settings toSettings( SettingsType config, Settings fallback ) {
+        Integer poolSize = value( config.getPoolSize(), fallback == null ? null : fallback.poolSize );
+        Integer maxQueued = value( config.getMaxQueuedProducers(), fallback == null ? null
+                                                                                  : fallback.maxQueuedProducers );
+        Integer readAhead = value( config.getReadAhead(), fallback == null ? null : fallback.readAhead );
+        return new Settings( poolSize, maxQueued, readAhead );
+    }
+
+    private static Integer value( BigInteger value, Integer fallback ) {
+        return value != null ? Integer.valueOf( value.intValue() ) : fallback;
+    }
+
+    private static int value( Integer value, Integer defaultValue ) {
+        return value != null ? value : defaultValue;
+    }
+
+    private static class Settings {
+
+        final Integer poolSize, maxQueuedProducers, readAhead;
+
+        Settings( Integer poolSize, Integer maxQueuedProducers, Integer readAhead ) {
+            this.poolSize = poolSize;
+            this.maxQueuedProducers = maxQueuedProducers;
+            this.readAhead = readAhead;
+        }
+    }
+
+}
@@ -0,0 +1,157 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.feature.stream;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.deegree.feature.Feature;
+import org.deegree.feature.FeatureCollection;
+import org.deegree.feature.Features;
+
+/**
+ * {@link FeatureInputStream} that only returns a window of the features of another {@link FeatureInputStream}.
+ * <p>
+ * The window starts after the feature with a given id (keyset) and/or after skipping a number of features (offset)
+ * and contains at most a given number of features. This is the in-memory counterpart for stores that cannot push the
+ * paging parameters of a query into the backend.
+ * </p>
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+public class PagedFeatureInputStream implements FeatureInputStream {
+
+    private final FeatureInputStream rs;
+
+    private final int startIndex;
+
+    private final String startAfterId;
+
+    private final int maxFeatures;
+
+    /**
+     * Creates a new {@link PagedFeatureInputStream} that is backed by the given {@link FeatureInputStream}.
+     * 
+     * @param rs
+     *            stream to back the paged stream, must not be <code>null</code>
+     * @param startIndex
+     *            number of features to skip, 0 to start with the first feature
+     * @param startAfterId
+     *            id of the feature after which the window starts, can be <code>null</code> (start with the first
+     *            feature), if the id does not occur in the backing stream, the window is empty
+     * @param maxFeatures
+     *            maximum number of features to return, values smaller than 1 mean no limit
+     */
+    public PagedFeatureInputStream( FeatureInputStream rs, int startIndex, String startAfterId, int maxFeatures ) {
+        this.rs = rs;
+        this.startIndex = startIndex;
+        this.startAfterId = startAfterId;
+        this.maxFeatures = maxFeatures;
+    }
+
+    @Override
+    public void close() {
+        rs.close();
+    }
+
+    @Override
+    public FeatureCollection toCollection() {
+        return Features.toCollection( this );
+    }
+
+    @Override
+    public Iterator<Feature> iterator() {
+        return new Iterator<Feature>() {
+
+            Iterator<Feature> iter = rs.iterator();
+
+            boolean positioned;
+
+            int returned;
+
+            @Override
+            public boolean hasNext() {
+                if ( !positioned ) {
+                    position();
+                }
+                if ( maxFeatures > 0 && returned >= maxFeatures ) {
+                    return false;
+                }
+                return iter.hasNext();
+            }
+
+            @Override
+            public Feature next() {
+                if ( !hasNext() ) {
+                    throw new NoSuchElementException();
+                }
+                returned++;
+                return iter.next();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+            private void position() {
+                positioned = true;
+                if ( startAfterId != null ) {
+                    boolean found = false;
+                    while ( !found && iter.hasNext() ) {
+                        found = startAfterId.equals( iter.next().getId() );
+                    }
+                }
+                for ( int i = 0; i < startIndex && iter.hasNext(); i++ ) {
+                    iter.next();
+                }
+            }
+        };
+    }
+
+    @Override
+    public int count() {
+        int i = 0;
+        for ( @SuppressWarnings("unused")
+        Feature f : this ) {
+            i++;
+        }
+        close();
+        return i;
+    }
+}
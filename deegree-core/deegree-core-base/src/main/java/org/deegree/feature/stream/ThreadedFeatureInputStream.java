@@ -46,8 +46,10 @@ package org.deegree.feature.stream;
 import java.util.Iterator;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.deegree.feature.Feature;
 import org.deegree.feature.FeatureCollection;
@@ -67,7 +69,7 @@ public class ThreadedFeatureInputStream implements FeatureInputStream {
 
     private static Logger LOG = LoggerFactory.getLogger( ThreadedFeatureInputStream.class );
 
-    // TODO where to manage this?
+    // used if no executor is specified, see FeatureStreamExecutors for the workspace managed ones
     private static ExecutorService service = Executors.newFixedThreadPool( 10 );
 
     private final Consumer iterator;
@@ -79,12 +81,27 @@ public class ThreadedFeatureInputStream implements FeatureInputStream {
      * @param queueSize
      */
     public ThreadedFeatureInputStream( final FeatureInputStream featureInputStream, final int queueSize ) {
+        this( featureInputStream, queueSize, service );
+    }
+
+    /**
+     * Creates a new {@link ThreadedFeatureInputStream} based on the given {@link FeatureInputStream}, the producer is
+     * run by the given executor (see {@link FeatureStreamExecutor}).
+     * 
+     * @param featureInputStream
+     * @param queueSize
+     * @param executor
+     * @throws RejectedExecutionException
+     *             if the executor does not accept the producer
+     */
+    public ThreadedFeatureInputStream( final FeatureInputStream featureInputStream, final int queueSize,
+                                       final Executor executor ) {
         final BlockingQueue<ProducerMessage> producerQueue = new ArrayBlockingQueue<ProducerMessage>( queueSize, true );
         final BlockingQueue<ConsumerMessage> consumerQueue = new ArrayBlockingQueue<ConsumerMessage>( 1, true );
 
         iterator = new Consumer( producerQueue, consumerQueue );
 
-        service.execute( new Producer( featureInputStream, producerQueue, consumerQueue ) );
+        executor.execute( new Producer( featureInputStream, producerQueue, consumerQueue ) );
     }
 
     @Override
@@ -158,6 +158,19 @@ public class GmlDocumentIdContext implements GMLReferenceResolver {
         return refs;
     }
 
+    /**
+     * Removes all objects and references that have been added so far.
+     * <p>
+     * Allows to process large documents in chunks without keeping all objects in memory. Note that references to
+     * objects that have been removed cannot be resolved afterwards.
+     * </p>
+     */
+    public void clear() {
+        idToObject.clear();
+        refs.clear();
+        localRefs.clear();
+    }
+
     @Override
     public GMLObject getObject( String uri, String baseURL ) {
         GMLObject object = null;
@@ -0,0 +1,96 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.feature.stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.deegree.feature.Feature;
+import org.junit.Test;
+
+/**
+ * Tests for {@link FeatureStreamExecutor}.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+public class FeatureStreamExecutorTest {
+
+    @Test
+    public void testPrefetch() {
+        FeatureStreamExecutor executor = new FeatureStreamExecutor( "test", 1, 1, 10 );
+        Feature[] features = new Feature[] { mock( Feature.class ), mock( Feature.class ) };
+        FeatureInputStream stream = mockStream( features );
+
+        FeatureInputStream prefetched = executor.prefetch( stream );
+        assertTrue( prefetched instanceof ThreadedFeatureInputStream );
+        Iterator<Feature> iter = prefetched.iterator();
+        assertEquals( features[0], iter.next() );
+        assertEquals( features[1], iter.next() );
+        assertFalse( iter.hasNext() );
+        prefetched.close();
+
+        assertEquals( 1, executor.getStartedProducers() );
+        assertEquals( 0, executor.getRejectedProducers() );
+        executor.shutdown();
+    }
+
+    @Test
+    public void testPrefetchFallsBackWhenRejected() {
+        FeatureStreamExecutor executor = new FeatureStreamExecutor( "test", 1, 0, 10 );
+        executor.shutdown();
+        FeatureInputStream stream = mockStream( new Feature[] { mock( Feature.class ) } );
+
+        assertSame( stream, executor.prefetch( stream ) );
+        assertEquals( 1, executor.getRejectedProducers() );
+        assertEquals( 0, executor.getStartedProducers() );
+    }
+
+    private static FeatureInputStream mockStream( Feature[] features ) {
+        FeatureInputStream stream = mock( FeatureInputStream.class );
+        when( stream.iterator() ).thenReturn( Arrays.asList( features ).iterator() );
+        return stream;
+    }
+
+}
@@ -0,0 +1,116 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.feature.stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.deegree.feature.Feature;
+import org.junit.Test;
+
+/**
+ * Tests for {@link PagedFeatureInputStream}.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+public class PagedFeatureInputStreamTest {
+
+    private static FeatureInputStream createStream( int size ) {
+        List<Feature> features = new ArrayList<Feature>();
+        for ( int i = 0; i < size; i++ ) {
+            Feature f = mock( Feature.class );
+            when( f.getId() ).thenReturn( "F_" + i );
+            features.add( f );
+        }
+        FeatureInputStream rs = mock( FeatureInputStream.class );
+        when( rs.iterator() ).thenReturn( features.iterator() );
+        return rs;
+    }
+
+    private static List<String> ids( FeatureInputStream rs ) {
+        List<String> ids = new ArrayList<String>();
+        for ( Feature f : rs ) {
+            ids.add( f.getId() );
+        }
+        return ids;
+    }
+
+    @Test
+    public void testStartIndexAndLimit() {
+        List<String> ids = ids( new PagedFeatureInputStream( createStream( 10 ), 3, null, 4 ) );
+        assertEquals( 4, ids.size() );
+        assertEquals( "F_3", ids.get( 0 ) );
+        assertEquals( "F_6", ids.get( 3 ) );
+    }
+
+    @Test
+    public void testStartIndexBeyondEnd() {
+        assertEquals( 0, ids( new PagedFeatureInputStream( createStream( 5 ), 7, null, -1 ) ).size() );
+    }
+
+    @Test
+    public void testStartAfterId() {
+        List<String> ids = ids( new PagedFeatureInputStream( createStream( 10 ), 0, "F_7", -1 ) );
+        assertEquals( 2, ids.size() );
+        assertEquals( "F_8", ids.get( 0 ) );
+    }
+
+    @Test
+    public void testStartAfterIdAndStartIndex() {
+        List<String> ids = ids( new PagedFeatureInputStream( createStream( 10 ), 2, "F_1", 3 ) );
+        assertEquals( 3, ids.size() );
+        assertEquals( "F_4", ids.get( 0 ) );
+    }
+
+    @Test
+    public void testUnknownStartAfterId() {
+        assertEquals( 0, ids( new PagedFeatureInputStream( createStream( 5 ), 0, "unknown", -1 ) ).size() );
+    }
+
+    @Test
+    public void testCountCloses() {
+        FeatureInputStream rs = createStream( 10 );
+        assertEquals( 5, new PagedFeatureInputStream( rs, 5, null, 0 ).count() );
+        verify( rs ).close();
+    }
+}
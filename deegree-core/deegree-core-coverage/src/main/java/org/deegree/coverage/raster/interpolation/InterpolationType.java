@@ -48,6 +48,10 @@ public enum InterpolationType {
     BILINEAR,
     /** nearest neighbor interpolation */
     NEAREST_NEIGHBOR,
+    /** bicubic (cubic convolution) interpolation */
+    BICUBIC,
+    /** lanczos interpolation with three lobes */
+    LANCZOS,
     /** No interpolation */
     NONE;
 
@@ -87,9 +87,6 @@ public class RasterInterpolater {
         RasterData srcData = simpleSourceRaster.getReadOnlyRasterData();
         RasterGeoReference srcREnv = simpleSourceRaster.getRasterReference();
 
-        // interpolation is needed.
-        Interpolation interpolation = InterpolationFactory.getInterpolation( interpolationType, srcData );
-
         RasterRect rr = new RasterRect( 0, 0, dstWidth, dstHeight );
         RasterData dstData = srcData.createCompatibleWritableRasterData( rr, null );
 
@@ -100,33 +97,12 @@ public class RasterInterpolater {
         // the warp is a cubic polynomial function created of 100 points in the dstEnvelope. This function will map
         // points from the source crs to the target crs very accurate.
         WarpPolynomial warp = createWarp( dstWidth, dstHeight, srcREnv, dstREnv );
-        warpTransform( warp, interpolation, dstData );
+        RasterWarper.warp( warp, interpolationType, srcData, dstData );
 
         return new SimpleRaster( dstData, sourceRaster.getEnvelope(), dstREnv,
                                  (ResourceMetadata) sourceRaster.getMetadata() );
     }
 
-    /**
-     * @param warp
-     * @param interpolation
-     * @param dstData
-     */
-    private void warpTransform( WarpPolynomial warp, Interpolation interpolation, RasterData dstData ) {
-        byte[] pixel = new byte[dstData.getBands() * dstData.getDataType().getSize()];
-        float[] srcCoords = new float[dstData.getColumns() * 2];
-        for ( int y = 0; y < dstData.getRows(); y++ ) {
-            // look-up the pixel positions in the source raster for every pixel in this row, the srcCoords will contain
-            // the x,y ([2n],[2n+1]) values in the source raster (defined in the native CRS) for this row of pixels.
-            warp.warpRect( 0, y, dstData.getColumns(), 1, srcCoords );
-            for ( int x = 0; x < dstData.getColumns(); x++ ) {
-                // get the interpolated pixel and set the value into the result raster
-                interpolation.getPixel( srcCoords[x * 2], srcCoords[x * 2 + 1], pixel );
-                dstData.setPixel( x, y, pixel );
-            }
-        }
-
-    }
-
     private WarpPolynomial createWarp( int dstWidth, int dstHeight, RasterGeoReference srcREnv,
                                        RasterGeoReference dstREnv ) {
         int k = 0;
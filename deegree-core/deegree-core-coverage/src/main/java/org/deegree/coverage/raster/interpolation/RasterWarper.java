@@ -0,0 +1,632 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+   Department of Geography, University of Bonn
+ and
+   lat/lon GmbH
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+----------------------------------------------------------------------------*/
+package org.deegree.coverage.raster.interpolation;
+
+import static java.lang.Math.PI;
+import static java.lang.Math.abs;
+import static java.lang.Math.floor;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Math.round;
+import static java.lang.Math.sin;
+
+import java.nio.ByteBuffer;
+
+import javax.media.jai.Warp;
+
+import org.deegree.coverage.raster.data.RasterData;
+import org.deegree.coverage.raster.data.info.DataType;
+import org.deegree.coverage.raster.utils.StripeExecutor;
+import org.deegree.coverage.raster.utils.StripeExecutor.StripeTask;
+
+/**
+ * Resamples raster data along a {@link Warp} that maps destination pixel positions to source pixel positions.
+ * <p>
+ * The warp is evaluated exactly every few columns of a destination row (and at its last column), the source positions
+ * in between are interpolated linearly. The step between the exactly evaluated columns can be set using the system
+ * property <code>deegree.raster.warp.step</code> (default 16, 1 evaluates the warp for every pixel). The interpolation
+ * weights of a row are computed once for all bands, the samples are read and written using the primitive accessors of
+ * the data type of the raster. Large rasters are processed in parallel stripes (see {@link StripeExecutor}).
+ * </p>
+ * <p>
+ * Samples are located at integer pixel positions. Destination pixels whose nearest source pixel lies outside of the
+ * source raster are set to the no data value of the source raster, kernel taps outside of the source raster are
+ * clamped to its edge.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ *
+ * @version $Revision$, $Date$
+ */
+public final class RasterWarper {
+
+    /** Distance between exactly evaluated columns, if not configured otherwise. */
+    public static final int DEFAULT_APPROXIMATION_STEP = 16;
+
+    private static final int APPROXIMATION_STEP = max( 1, Integer.getInteger( "deegree.raster.warp.step",
+                                                                              DEFAULT_APPROXIMATION_STEP ) );
+
+    private RasterWarper() {
+        // avoid instantiation
+    }
+
+    /**
+     * Fills the destination raster with the resampled values of the source raster.
+     *
+     * @param warp
+     *            maps destination pixel positions to source pixel positions, must not be <code>null</code>
+     * @param type
+     *            the interpolation type, must not be <code>null</code>
+     * @param srcData
+     *            the source raster, must not be <code>null</code>
+     * @param dstData
+     *            the destination raster, must have the same data type and number of bands as the source raster
+     * @throws UnsupportedOperationException
+     *             if the interpolation type or the data type of the raster is not supported
+     */
+    public static void warp( final Warp warp, InterpolationType type, final RasterData srcData,
+                             final RasterData dstData ) {
+        final Kernel kernel = getKernel( type );
+        final DataType dataType = srcData.getDataType();
+        if ( dataType == DataType.UNDEFINED ) {
+            throw new UnsupportedOperationException( "no " + type + " interpolation implementation for " + dataType
+                                                     + " found." );
+        }
+        final int cols = dstData.getColumns();
+        int rows = dstData.getRows();
+        if ( cols == 0 || rows == 0 ) {
+            return;
+        }
+        final double[] noData = getNoDataValues( srcData );
+        // make sure lazily loaded raster data is available before accessing it concurrently
+        if ( srcData.getColumns() > 0 && srcData.getRows() > 0 ) {
+            srcData.getByteSample( 0, 0, 0 );
+        }
+        dstData.getByteSample( 0, 0, 0 );
+
+        StripeExecutor.execute( rows, cols, new StripeTask() {
+            @Override
+            public void process( int minRow, int maxRow ) {
+                Taps taps = new Taps( kernel, cols, srcData.getColumns(), srcData.getRows() );
+                RowWriter writer = createWriter( dataType, srcData, dstData, noData, cols );
+                float[] coords = new float[cols * 2];
+                for ( int y = minRow; y < maxRow; y++ ) {
+                    approximateRow( warp, y, cols, coords );
+                    taps.compute( coords );
+                    for ( int band = 0; band < dstData.getBands(); band++ ) {
+                        writer.write( y, band, taps );
+                    }
+                }
+            }
+        } );
+    }
+
+    private static Kernel getKernel( InterpolationType type ) {
+        if ( type != null ) {
+            switch ( type ) {
+            case NEAREST_NEIGHBOR:
+                return new NearestKernel();
+            case BILINEAR:
+                return new BilinearKernel();
+            case BICUBIC:
+                return new BicubicKernel();
+            case LANCZOS:
+                return new LanczosKernel();
+            default:
+                // not supported
+            }
+        }
+        throw new UnsupportedOperationException( "no " + type + " interpolation implementation found." );
+    }
+
+    private static double[] getNoDataValues( RasterData data ) {
+        int size = data.getDataType().getSize();
+        ByteBuffer buf = ByteBuffer.wrap( data.getNullPixel( null ) );
+        double[] result = new double[data.getBands()];
+        for ( int band = 0; band < result.length; band++ ) {
+            int pos = band * size;
+            if ( pos + size > buf.capacity() ) {
+                continue;
+            }
+            switch ( data.getDataType() ) {
+            case BYTE:
+                result[band] = buf.get( pos ) & 0xff;
+                break;
+            case SHORT:
+                result[band] = buf.getShort( pos );
+                break;
+            case USHORT:
+                result[band] = buf.getShort( pos ) & 0xffff;
+                break;
+            case INT:
+                result[band] = buf.getInt( pos );
+                break;
+            case FLOAT:
+                result[band] = buf.getFloat( pos );
+                break;
+            case DOUBLE:
+                result[band] = buf.getDouble( pos );
+                break;
+            default:
+                // leave it 0
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Calculates the source positions of a destination row, the warp is evaluated exactly every
+     * {@link #APPROXIMATION_STEP} pixels and at the last pixel of the row.
+     */
+    static void approximateRow( Warp warp, int y, int cols, float[] coords ) {
+        int step = APPROXIMATION_STEP;
+        if ( step == 1 || cols <= 2 ) {
+            warp.warpRect( 0, y, cols, 1, coords );
+            return;
+        }
+        // exact positions at columns 0, step, 2 * step, ...
+        int numExact = ( cols - 1 ) / step + 1;
+        float[] exact = warp.warpSparseRect( 0, y, ( numExact - 1 ) * step + 1, 1, step, 1, null );
+        for ( int i = 0; i < numExact; i++ ) {
+            coords[i * step * 2] = exact[i * 2];
+            coords[i * step * 2 + 1] = exact[i * 2 + 1];
+        }
+        int lastExact = ( numExact - 1 ) * step;
+        if ( lastExact != cols - 1 ) {
+            float[] last = warp.warpPoint( cols - 1, y, null );
+            coords[( cols - 1 ) * 2] = last[0];
+            coords[( cols - 1 ) * 2 + 1] = last[1];
+        }
+        // interpolate linearly in between
+        int from = 0;
+        while ( from < cols - 1 ) {
+            int to = min( from + step, cols - 1 );
+            float x0 = coords[from * 2], y0 = coords[from * 2 + 1];
+            float dx = ( coords[to * 2] - x0 ) / ( to - from );
+            float dy = ( coords[to * 2 + 1] - y0 ) / ( to - from );
+            for ( int i = 1; i < to - from; i++ ) {
+                coords[( from + i ) * 2] = x0 + dx * i;
+                coords[( from + i ) * 2 + 1] = y0 + dy * i;
+            }
+            from = to;
+        }
+    }
+
+    /**
+     * Interpolation kernel, computes the weights of the source samples around a position.
+     */
+    private abstract static class Kernel {
+
+        final int size;
+
+        Kernel( int size ) {
+            this.size = size;
+        }
+
+        /**
+         * @return the index of the first source sample that contributes to the given position
+         */
+        int first( float pos ) {
+            return (int) floor( pos ) - size / 2 + 1;
+        }
+
+        /**
+         * Writes {@link #size} weights for the source samples starting at {@link #first(float)}.
+         */
+        abstract void weights( float pos, int first, float[] weights, int offset );
+    }
+
+    private static class NearestKernel extends Kernel {
+
+        NearestKernel() {
+            super( 1 );
+        }
+
+        @Override
+        int first( float pos ) {
+            return (int) floor( pos + 0.5f );
+        }
+
+        @Override
+        void weights( float pos, int first, float[] weights, int offset ) {
+            weights[offset] = 1;
+        }
+    }
+
+    private static class BilinearKernel extends Kernel {
+
+        BilinearKernel() {
+            super( 2 );
+        }
+
+        @Override
+        void weights( float pos, int first, float[] weights, int offset ) {
+            float frac = pos - first;
+            weights[offset] = 1 - frac;
+            weights[offset + 1] = frac;
+        }
+    }
+
+    /**
+     * Cubic convolution with a = -0.5 (Keys).
+     */
+    private static class BicubicKernel extends Kernel {
+
+        private static final float A = -0.5f;
+
+        BicubicKernel() {
+            super( 4 );
+        }
+
+        @Override
+        void weights( float pos, int first, float[] weights, int offset ) {
+            for ( int i = 0; i < size; i++ ) {
+                float t = abs( pos - ( first + i ) );
+                float w;
+                if ( t <= 1 ) {
+                    w = ( ( A + 2 ) * t - ( A + 3 ) ) * t * t + 1;
+                } else if ( t < 2 ) {
+                    w = ( ( A * t - 5 * A ) * t + 8 * A ) * t - 4 * A;
+                } else {
+                    w = 0;
+                }
+                weights[offset + i] = w;
+            }
+        }
+    }
+
+    /**
+     * Lanczos with three lobes, the weights are normalized to a sum of one.
+     */
+    private static class LanczosKernel extends Kernel {
+
+        private static final int LOBES = 3;
+
+        LanczosKernel() {
+            super( 2 * LOBES );
+        }
+
+        @Override
+        void weights( float pos, int first, float[] weights, int offset ) {
+            float sum = 0;
+            for ( int i = 0; i < size; i++ ) {
+                double t = pos - ( first + i );
+                float w;
+                if ( abs( t ) < 1e-6 ) {
+                    w = 1;
+                } else if ( abs( t ) < LOBES ) {
+                    double pt = PI * t;
+                    w = (float) ( LOBES * sin( pt ) * sin( pt / LOBES ) / ( pt * pt ) );
+                } else {
+                    w = 0;
+                }
+                weights[offset + i] = w;
+                sum += w;
+            }
+            if ( sum != 0 ) {
+                for ( int i = 0; i < size; i++ ) {
+                    weights[offset + i] /= sum;
+                }
+            }
+        }
+    }
+
+    /**
+     * Source sample indices and weights of all pixels of a destination row.
+     */
+    private static class Taps {
+
+        final Kernel kernel;
+
+        final int size;
+
+        final int srcCols, srcRows;
+
+        final int[] xIndex, yIndex;
+
+        final float[] xWeights, yWeights;
+
+        final boolean[] inside;
+
+        Taps( Kernel kernel, int cols, int srcCols, int srcRows ) {
+            this.kernel = kernel;
+            this.size = kernel.size;
+            this.srcCols = srcCols;
+            this.srcRows = srcRows;
+            xIndex = new int[cols * size];
+            yIndex = new int[cols * size];
+            xWeights = new float[cols * size];
+            yWeights = new float[cols * size];
+            inside = new boolean[cols];
+        }
+
+        void compute( float[] coords ) {
+            for ( int x = 0; x < inside.length; x++ ) {
+                float sx = coords[x * 2];
+                float sy = coords[x * 2 + 1];
+                // also false for NaN
+                inside[x] = sx >= -0.5f && sx < srcCols - 0.5f && sy >= -0.5f && sy < srcRows - 0.5f;
+                if ( !inside[x] ) {
+                    continue;
+                }
+                int offset = x * size;
+                int fx = kernel.first( sx );
+                int fy = kernel.first( sy );
+                kernel.weights( sx, fx, xWeights, offset );
+                kernel.weights( sy, fy, yWeights, offset );
+                for ( int i = 0; i < size; i++ ) {
+                    xIndex[offset + i] = min( srcCols - 1, max( 0, fx + i ) );
+                    yIndex[offset + i] = min( srcRows - 1, max( 0, fy + i ) );
+                }
+            }
+        }
+    }
+
+    private static RowWriter createWriter( DataType type, RasterData src, RasterData dst, double[] noData, int cols ) {
+        switch ( type ) {
+        case BYTE:
+            return new ByteRowWriter( src, dst, noData, cols );
+        case SHORT:
+            return new ShortRowWriter( src, dst, noData, cols, false );
+        case USHORT:
+            return new ShortRowWriter( src, dst, noData, cols, true );
+        case INT:
+            return new IntRowWriter( src, dst, noData, cols );
+        case FLOAT:
+            return new FloatRowWriter( src, dst, noData, cols );
+        case DOUBLE:
+            return new DoubleRowWriter( src, dst, noData, cols );
+        default:
+            throw new UnsupportedOperationException( "no interpolation implementation for " + type + " found." );
+        }
+    }
+
+    /**
+     * Interpolates the samples of a destination row using the primitive type of the raster.
+     */
+    private abstract static class RowWriter {
+
+        final RasterData src, dst;
+
+        final double[] noData;
+
+        RowWriter( RasterData src, RasterData dst, double[] noData ) {
+            this.src = src;
+            this.dst = dst;
+            this.noData = noData;
+        }
+
+        abstract void write( int y, int band, Taps taps );
+    }
+
+    private static class ByteRowWriter extends RowWriter {
+
+        private final byte[] row;
+
+        ByteRowWriter( RasterData src, RasterData dst, double[] noData, int cols ) {
+            super( src, dst, noData );
+            row = new byte[cols];
+        }
+
+        @Override
+        void write( int y, int band, Taps taps ) {
+            int size = taps.size;
+            byte nd = (byte) noData[band];
+            for ( int x = 0; x < row.length; x++ ) {
+                if ( !taps.inside[x] ) {
+                    row[x] = nd;
+                    continue;
+                }
+                int off = x * size;
+                if ( size == 1 ) {
+                    row[x] = src.getByteSample( taps.xIndex[off], taps.yIndex[off], band );
+                    continue;
+                }
+                float sum = 0;
+                for ( int j = 0; j < size; j++ ) {
+                    int sy = taps.yIndex[off + j];
+                    float rowSum = 0;
+                    for ( int i = 0; i < size; i++ ) {
+                        rowSum += taps.xWeights[off + i]
+                                  * ( src.getByteSample( taps.xIndex[off + i], sy, band ) & 0xff );
+                    }
+                    sum += taps.yWeights[off + j] * rowSum;
+                }
+                row[x] = (byte) min( 255, max( 0, round( sum ) ) );
+            }
+            dst.setBytes( 0, y, row.length, 1, band, row );
+        }
+    }
+
+    private static class ShortRowWriter extends RowWriter {
+
+        private final short[] row;
+
+        private final boolean unsigned;
+
+        ShortRowWriter( RasterData src, RasterData dst, double[] noData, int cols, boolean unsigned ) {
+            super( src, dst, noData );
+            this.unsigned = unsigned;
+            row = new short[cols];
+        }
+
+        @Override
+        void write( int y, int band, Taps taps ) {
+            int size = taps.size;
+            short nd = (short) (int) noData[band];
+            int minValue = unsigned ? 0 : Short.MIN_VALUE;
+            int maxValue = unsigned ? 0xffff : Short.MAX_VALUE;
+            int mask = unsigned ? 0xffff : 0xffffffff;
+            for ( int x = 0; x < row.length; x++ ) {
+                if ( !taps.inside[x] ) {
+                    row[x] = nd;
+                    continue;
+                }
+                int off = x * size;
+                if ( size == 1 ) {
+                    row[x] = src.getShortSample( taps.xIndex[off], taps.yIndex[off], band );
+                    continue;
+                }
+                float sum = 0;
+                for ( int j = 0; j < size; j++ ) {
+                    int sy = taps.yIndex[off + j];
+                    float rowSum = 0;
+                    for ( int i = 0; i < size; i++ ) {
+                        rowSum += taps.xWeights[off + i]
+                                  * ( src.getShortSample( taps.xIndex[off + i], sy, band ) & mask );
+                    }
+                    sum += taps.yWeights[off + j] * rowSum;
+                }
+                row[x] = (short) min( maxValue, max( minValue, round( sum ) ) );
+            }
+            dst.setShorts( 0, y, row.length, 1, band, row );
+        }
+    }
+
+    private static class IntRowWriter extends RowWriter {
+
+        private final int[] row;
+
+        IntRowWriter( RasterData src, RasterData dst, double[] noData, int cols ) {
+            super( src, dst, noData );
+            row = new int[cols];
+        }
+
+        @Override
+        void write( int y, int band, Taps taps ) {
+            int size = taps.size;
+            int nd = (int) noData[band];
+            for ( int x = 0; x < row.length; x++ ) {
+                if ( !taps.inside[x] ) {
+                    row[x] = nd;
+                    continue;
+                }
+                int off = x * size;
+                if ( size == 1 ) {
+                    row[x] = src.getIntSample( taps.xIndex[off], taps.yIndex[off], band );
+                    continue;
+                }
+                double sum = 0;
+                for ( int j = 0; j < size; j++ ) {
+                    int sy = taps.yIndex[off + j];
+                    double rowSum = 0;
+                    for ( int i = 0; i < size; i++ ) {
+                        rowSum += taps.xWeights[off + i] * src.getIntSample( taps.xIndex[off + i], sy, band );
+                    }
+                    sum += taps.yWeights[off + j] * rowSum;
+                }
+                row[x] = (int) min( Integer.MAX_VALUE, max( Integer.MIN_VALUE, round( sum ) ) );
+            }
+            dst.setInts( 0, y, row.length, 1, band, row );
+        }
+    }
+
+    private static class FloatRowWriter extends RowWriter {
+
+        private final float[] row;
+
+        FloatRowWriter( RasterData src, RasterData dst, double[] noData, int cols ) {
+            super( src, dst, noData );
+            row = new float[cols];
+        }
+
+        @Override
+        void write( int y, int band, Taps taps ) {
+            int size = taps.size;
+            float nd = (float) noData[band];
+            for ( int x = 0; x < row.length; x++ ) {
+                if ( !taps.inside[x] ) {
+                    row[x] = nd;
+                    continue;
+                }
+                int off = x * size;
+                if ( size == 1 ) {
+                    row[x] = src.getFloatSample( taps.xIndex[off], taps.yIndex[off], band );
+                    continue;
+                }
+                float sum = 0;
+                for ( int j = 0; j < size; j++ ) {
+                    int sy = taps.yIndex[off + j];
+                    float rowSum = 0;
+                    for ( int i = 0; i < size; i++ ) {
+                        rowSum += taps.xWeights[off + i] * src.getFloatSample( taps.xIndex[off + i], sy, band );
+                    }
+                    sum += taps.yWeights[off + j] * rowSum;
+                }
+                row[x] = sum;
+            }
+            dst.setFloats( 0, y, row.length, 1, band, row );
+        }
+    }
+
+    private static class DoubleRowWriter extends RowWriter {
+
+        private final double[] row;
+
+        DoubleRowWriter( RasterData src, RasterData dst, double[] noData, int cols ) {
+            super( src, dst, noData );
+            row = new double[cols];
+        }
+
+        @Override
+        void write( int y, int band, Taps taps ) {
+            int size = taps.size;
+            for ( int x = 0; x < row.length; x++ ) {
+                if ( !taps.inside[x] ) {
+                    row[x] = noData[band];
+                    continue;
+                }
+                int off = x * size;
+                if ( size == 1 ) {
+                    row[x] = src.getDoubleSample( taps.xIndex[off], taps.yIndex[off], band );
+                    continue;
+                }
+                double sum = 0;
+                for ( int j = 0; j < size; j++ ) {
+                    int sy = taps.yIndex[off + j];
+                    double rowSum = 0;
+                    for ( int i = 0; i < size; i++ ) {
+                        rowSum += taps.xWeights[off + i] * src.getDoubleSample( taps.xIndex[off + i], sy, band );
+                    }
+                    sum += taps.yWeights[off + j] * rowSum;
+                }
+                row[x] = sum;
+            }
+            dst.setDoubles( 0, y, row.length, 1, band, row );
+        }
+    }
+
+}
@@ -0,0 +1,144 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+   Department of Geography, University of Bonn
+ and
+   lat/lon GmbH
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+----------------------------------------------------------------------------*/
+package org.deegree.coverage.raster.utils;
+
+import static java.lang.Math.min;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Processes raster rows in horizontal stripes on a shared thread pool. Small rasters are processed in the calling
+ * thread.
+ * <p>
+ * Tasks must only write to rows of their own stripe. Lazily initialized raster data must be accessed once before
+ * executing the stripes, as its initialization is not thread safe.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ *
+ * @version $Revision$, $Date$
+ */
+public final class StripeExecutor {
+
+    private static final int MIN_PARALLEL_PIXELS = 256 * 256;
+
+    private static final int NUM_THREADS = Runtime.getRuntime().availableProcessors();
+
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool( NUM_THREADS, new ThreadFactory() {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread( Runnable r ) {
+            Thread t = new Thread( r, "raster-stripes-" + count.incrementAndGet() );
+            t.setDaemon( true );
+            return t;
+        }
+    } );
+
+    private StripeExecutor() {
+        // avoid instantiation
+    }
+
+    /**
+     * Processes a range of rows.
+     */
+    public interface StripeTask {
+
+        /**
+         * @param minRow
+         *            first row to process
+         * @param maxRow
+         *            row after the last one to process
+         */
+        void process( int minRow, int maxRow );
+    }
+
+    /**
+     * Executes the given task for all rows and waits for its completion.
+     *
+     * @param rows
+     *            number of rows
+     * @param columns
+     *            number of columns, used to decide whether parallel processing pays off
+     * @param task
+     *            task to execute, must not be <code>null</code>
+     */
+    public static void execute( int rows, int columns, final StripeTask task ) {
+        int threads = min( NUM_THREADS, rows );
+        if ( threads < 2 || (long) rows * columns < MIN_PARALLEL_PIXELS ) {
+            task.process( 0, rows );
+            return;
+        }
+        int numStripes = min( rows, threads * 4 );
+        int rowsPerStripe = ( rows + numStripes - 1 ) / numStripes;
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>( numStripes );
+        for ( int row = 0; row < rows; row += rowsPerStripe ) {
+            final int minRow = row;
+            final int maxRow = min( rows, row + rowsPerStripe );
+            tasks.add( new Callable<Void>() {
+                @Override
+                public Void call() {
+                    task.process( minRow, maxRow );
+                    return null;
+                }
+            } );
+        }
+        try {
+            for ( Future<Void> f : EXECUTOR.invokeAll( tasks ) ) {
+                f.get();
+            }
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException( "Interrupted while processing raster stripes.", e );
+        } catch ( ExecutionException e ) {
+            Throwable cause = e.getCause();
+            if ( cause instanceof RuntimeException ) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException( cause.getMessage(), cause );
+        }
+    }
+
+}
@@ -0,0 +1,277 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.coverage.raster.interpolation;
+
+import static org.deegree.coverage.raster.data.RasterDataFactory.createRasterData;
+import static org.deegree.coverage.raster.interpolation.InterpolationType.BICUBIC;
+import static org.deegree.coverage.raster.interpolation.InterpolationType.BILINEAR;
+import static org.deegree.coverage.raster.interpolation.InterpolationType.LANCZOS;
+import static org.deegree.coverage.raster.interpolation.InterpolationType.NEAREST_NEIGHBOR;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import javax.media.jai.Warp;
+
+import org.deegree.coverage.raster.data.RasterData;
+import org.deegree.coverage.raster.data.info.DataType;
+import org.junit.Test;
+
+/**
+ * Tests for {@link RasterWarper}, checks the resampled pixel values on small grids.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+public class RasterWarperTest {
+
+    /**
+     * Maps destination pixel positions to source pixel positions using sx = scaleX * x + offsetX and sy = scaleY * y +
+     * offsetY.
+     */
+    private static class LinearWarp extends Warp {
+
+        private static final long serialVersionUID = 1L;
+
+        private final float scaleX, offsetX, scaleY, offsetY;
+
+        LinearWarp( float scaleX, float offsetX, float scaleY, float offsetY ) {
+            this.scaleX = scaleX;
+            this.offsetX = offsetX;
+            this.scaleY = scaleY;
+            this.offsetY = offsetY;
+        }
+
+        @Override
+        public float[] warpSparseRect( int x, int y, int width, int height, int periodX, int periodY,
+                                       float[] destRect ) {
+            int cols = ( width + periodX - 1 ) / periodX;
+            int rows = ( height + periodY - 1 ) / periodY;
+            float[] result = destRect;
+            if ( result == null ) {
+                result = new float[2 * cols * rows];
+            }
+            int i = 0;
+            for ( int row = 0; row < rows; row++ ) {
+                for ( int col = 0; col < cols; col++ ) {
+                    result[i++] = scaleX * ( x + col * periodX ) + offsetX;
+                    result[i++] = scaleY * ( y + row * periodY ) + offsetY;
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Maps destination pixel positions to source pixel positions using sx = x * x / 10.
+     */
+    private static class QuadraticWarp extends Warp {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public float[] warpSparseRect( int x, int y, int width, int height, int periodX, int periodY,
+                                       float[] destRect ) {
+            int cols = ( width + periodX - 1 ) / periodX;
+            int rows = ( height + periodY - 1 ) / periodY;
+            float[] result = destRect;
+            if ( result == null ) {
+                result = new float[2 * cols * rows];
+            }
+            int i = 0;
+            for ( int row = 0; row < rows; row++ ) {
+                for ( int col = 0; col < cols; col++ ) {
+                    float sx = x + col * periodX;
+                    result[i++] = sx * sx / 10;
+                    result[i++] = y + row * periodY;
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * @return a byte raster with the value 10 * row + col + 1 at each pixel
+     */
+    private static RasterData createByteRaster( int cols, int rows ) {
+        RasterData data = createRasterData( cols, rows, DataType.BYTE, false );
+        for ( int y = 0; y < rows; y++ ) {
+            for ( int x = 0; x < cols; x++ ) {
+                data.setByteSample( x, y, 0, (byte) ( 10 * y + x + 1 ) );
+            }
+        }
+        return data;
+    }
+
+    /**
+     * @return a float raster with the linear function 2 * col + 3 * row at each pixel
+     */
+    private static RasterData createFloatRaster( int cols, int rows ) {
+        RasterData data = createRasterData( cols, rows, DataType.FLOAT, false );
+        for ( int y = 0; y < rows; y++ ) {
+            for ( int x = 0; x < cols; x++ ) {
+                data.setFloatSample( x, y, 0, 2 * x + 3 * y );
+            }
+        }
+        return data;
+    }
+
+    @Test
+    public void testNearestIdentity() {
+        RasterData src = createByteRaster( 5, 4 );
+        RasterData dst = createRasterData( 5, 4, DataType.BYTE, false );
+        RasterWarper.warp( new LinearWarp( 1, 0, 1, 0 ), NEAREST_NEIGHBOR, src, dst );
+        for ( int y = 0; y < 4; y++ ) {
+            for ( int x = 0; x < 5; x++ ) {
+                assertEquals( src.getByteSample( x, y, 0 ), dst.getByteSample( x, y, 0 ) );
+            }
+        }
+    }
+
+    @Test
+    public void testNearestDownsample() {
+        RasterData src = createByteRaster( 6, 6 );
+        RasterData dst = createRasterData( 3, 3, DataType.BYTE, false );
+        RasterWarper.warp( new LinearWarp( 2, 0, 2, 0 ), NEAREST_NEIGHBOR, src, dst );
+        for ( int y = 0; y < 3; y++ ) {
+            for ( int x = 0; x < 3; x++ ) {
+                assertEquals( 10 * 2 * y + 2 * x + 1, dst.getByteSample( x, y, 0 ) );
+            }
+        }
+    }
+
+    @Test
+    public void testNearestRounding() {
+        RasterData src = createByteRaster( 4, 1 );
+        RasterData dst = createRasterData( 4, 1, DataType.BYTE, false );
+        // positions -0.4, 0.6, 1.6, 2.6
+        RasterWarper.warp( new LinearWarp( 1, -0.4f, 1, 0 ), NEAREST_NEIGHBOR, src, dst );
+        assertEquals( 1, dst.getByteSample( 0, 0, 0 ) );
+        assertEquals( 2, dst.getByteSample( 1, 0, 0 ) );
+        assertEquals( 3, dst.getByteSample( 2, 0, 0 ) );
+        assertEquals( 4, dst.getByteSample( 3, 0, 0 ) );
+    }
+
+    @Test
+    public void testOutsideIsNoData() {
+        RasterData src = createByteRaster( 4, 4 );
+        RasterData dst = createRasterData( 4, 4, DataType.BYTE, false );
+        // the first two columns map inside, the last two outside of the source raster
+        RasterWarper.warp( new LinearWarp( 1, 2, 1, 0 ), BILINEAR, src, dst );
+        for ( int y = 0; y < 4; y++ ) {
+            assertEquals( 10 * y + 3, dst.getByteSample( 0, y, 0 ) );
+            assertEquals( 10 * y + 4, dst.getByteSample( 1, y, 0 ) );
+            // the default no data value is 0
+            assertEquals( 0, dst.getByteSample( 2, y, 0 ) );
+            assertEquals( 0, dst.getByteSample( 3, y, 0 ) );
+        }
+    }
+
+    @Test
+    public void testBilinearHalfPixelShift() {
+        RasterData src = createFloatRaster( 6, 5 );
+        RasterData dst = createRasterData( 5, 4, DataType.FLOAT, false );
+        RasterWarper.warp( new LinearWarp( 1, 0.5f, 1, 0.5f ), BILINEAR, src, dst );
+        for ( int y = 0; y < 4; y++ ) {
+            for ( int x = 0; x < 5; x++ ) {
+                assertEquals( 2 * ( x + 0.5f ) + 3 * ( y + 0.5f ), dst.getFloatSample( x, y, 0 ), 1e-4f );
+            }
+        }
+    }
+
+    @Test
+    public void testBilinearByteRounding() {
+        RasterData src = createByteRaster( 3, 1 );
+        RasterData dst = createRasterData( 2, 1, DataType.BYTE, false );
+        // values 1 and 2 at 0.25: 1.25 rounds to 1, values 2 and 3 at 1.75: 2.75 rounds to 3
+        RasterWarper.warp( new LinearWarp( 1.5f, 0.25f, 1, 0 ), BILINEAR, src, dst );
+        assertEquals( 1, dst.getByteSample( 0, 0, 0 ) );
+        assertEquals( 3, dst.getByteSample( 1, 0, 0 ) );
+    }
+
+    @Test
+    public void testBicubicReproducesLinearFunction() {
+        RasterData src = createFloatRaster( 10, 10 );
+        RasterData dst = createRasterData( 5, 5, DataType.FLOAT, false );
+        // stay away from the edges, taps outside of the source are clamped
+        RasterWarper.warp( new LinearWarp( 1, 2.3f, 1, 2.6f ), BICUBIC, src, dst );
+        for ( int y = 0; y < 5; y++ ) {
+            for ( int x = 0; x < 5; x++ ) {
+                assertEquals( 2 * ( x + 2.3f ) + 3 * ( y + 2.6f ), dst.getFloatSample( x, y, 0 ), 1e-3f );
+            }
+        }
+    }
+
+    @Test
+    public void testLanczosIntegerPositions() {
+        RasterData src = createFloatRaster( 12, 12 );
+        RasterData dst = createRasterData( 4, 4, DataType.FLOAT, false );
+        RasterWarper.warp( new LinearWarp( 1, 4, 1, 4 ), LANCZOS, src, dst );
+        for ( int y = 0; y < 4; y++ ) {
+            for ( int x = 0; x < 4; x++ ) {
+                assertEquals( src.getFloatSample( x + 4, y + 4, 0 ), dst.getFloatSample( x, y, 0 ), 1e-4f );
+            }
+        }
+    }
+
+    @Test
+    public void testApproximateLinearRowIsExact() {
+        int cols = 50;
+        Warp warp = new LinearWarp( 0.75f, 1.5f, 2, 0.5f );
+        float[] approximated = new float[cols * 2];
+        RasterWarper.approximateRow( warp, 3, cols, approximated );
+        float[] exact = warp.warpRect( 0, 3, cols, 1, null );
+        assertArrayEquals( exact, approximated, 1e-4f );
+    }
+
+    @Test
+    public void testApproximateRowExactAtStepsAndLastColumn() {
+        int cols = 40;
+        Warp warp = new QuadraticWarp();
+        float[] approximated = new float[cols * 2];
+        RasterWarper.approximateRow( warp, 0, cols, approximated );
+        float[] exact = warp.warpRect( 0, 0, cols, 1, null );
+        int step = Integer.getInteger( "deegree.raster.warp.step", RasterWarper.DEFAULT_APPROXIMATION_STEP );
+        for ( int x = 0; x < cols; x += step ) {
+            assertEquals( exact[x * 2], approximated[x * 2], 1e-4f );
+        }
+        assertEquals( exact[( cols - 1 ) * 2], approximated[( cols - 1 ) * 2], 1e-4f );
+        for ( int x = 0; x < cols; x++ ) {
+            assertEquals( 0, approximated[x * 2 + 1], 1e-4f );
+        }
+    }
+
+}
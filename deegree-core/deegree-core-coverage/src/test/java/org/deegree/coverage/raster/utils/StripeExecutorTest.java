@@ -0,0 +1,113 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.coverage.raster.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.deegree.coverage.raster.utils.StripeExecutor.StripeTask;
+import org.junit.Test;
+
+/**
+ * Tests for {@link StripeExecutor}.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+public class StripeExecutorTest {
+
+    private static AtomicIntegerArray process( int rows, int columns ) {
+        final AtomicIntegerArray counts = new AtomicIntegerArray( rows );
+        StripeExecutor.execute( rows, columns, new StripeTask() {
+            @Override
+            public void process( int minRow, int maxRow ) {
+                assertTrue( minRow <= maxRow );
+                for ( int row = minRow; row < maxRow; row++ ) {
+                    counts.incrementAndGet( row );
+                }
+            }
+        } );
+        return counts;
+    }
+
+    private static void assertProcessedOnce( AtomicIntegerArray counts ) {
+        for ( int row = 0; row < counts.length(); row++ ) {
+            assertEquals( "Row " + row, 1, counts.get( row ) );
+        }
+    }
+
+    @Test
+    public void testSmallRasterProcessedOnce() {
+        assertProcessedOnce( process( 10, 10 ) );
+    }
+
+    @Test
+    public void testLargeRasterProcessedOnce() {
+        assertProcessedOnce( process( 1023, 1024 ) );
+    }
+
+    @Test
+    public void testFewRowsProcessedOnce() {
+        assertProcessedOnce( process( 3, 100000 ) );
+    }
+
+    @Test
+    public void testNoRows() {
+        assertEquals( 0, process( 0, 100 ).length() );
+    }
+
+    @Test
+    public void testExceptionIsPropagated() {
+        try {
+            StripeExecutor.execute( 1024, 1024, new StripeTask() {
+                @Override
+                public void process( int minRow, int maxRow ) {
+                    if ( maxRow == 1024 ) {
+                        throw new IllegalStateException( "last stripe" );
+                    }
+                }
+            } );
+            fail( "Expected an exception." );
+        } catch ( IllegalStateException e ) {
+            assertEquals( "last stripe", e.getMessage() );
+        }
+    }
+
+}
@@ -186,6 +186,9 @@ public class WCSConstants {
                 case BILINEAR:
                     result = Bilinear;
                     break;
+                case BICUBIC:
+                    result = Bicubic;
+                    break;
                 case NONE:
                     result = None;
                     break;
@@ -91,7 +91,9 @@ public class WMSConstants {
         /** Retrieve a XSD application schema for given layers. deegree specific request. */
         GetFeatureInfoSchema, /***/
         GetLegendGraphic, /** Invented request to output the WMS 1.1.1 DTD. */
-        DTD, GetStyles, PutStyles
+        DTD, GetStyles, PutStyles,
+        /** Retrieve the legends of several layers in a single image. deegree specific request. */
+        GetLegendGraphicSprite
 
     }
 }
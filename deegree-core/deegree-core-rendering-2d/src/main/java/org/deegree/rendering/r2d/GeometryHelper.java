@@ -46,13 +46,18 @@ import static org.slf4j.LoggerFactory.getLogger;
 
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Path2D.Double;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 
 import org.deegree.cs.coordinatesystems.ICRS;
 import org.deegree.cs.exceptions.TransformationException;
 import org.deegree.cs.exceptions.UnknownCRSException;
+import org.deegree.cs.persistence.CRSManager;
+import org.deegree.cs.transformations.Transformation;
 import org.deegree.geometry.Envelope;
 import org.deegree.geometry.Geometry;
+import org.deegree.geometry.GeometryFactory;
 import org.deegree.geometry.GeometryTransformer;
 import org.deegree.geometry.linearization.GeometryLinearizer;
 import org.deegree.geometry.linearization.NumPointsCriterion;
@@ -64,6 +69,11 @@ import org.slf4j.Logger;
 
 /**
  * Used to transform, linearize, clip and fix geometry orientation for rendering.
+ * <p>
+ * If the system property <code>deegree.rendering.transform.grid</code> is set to a positive number (such as 32),
+ * geometries are transformed approximately, by interpolating within a grid of that many cells per direction over the
+ * map extent (see {@link GridTransformation}). The error is kept below a quarter of a pixel.
+ * </p>
  * 
  * @author <a href="mailto:schmitz@occamlabs.de">Andreas Schmitz</a>
  * @author last edited by: $Author: stranger $
@@ -76,12 +86,29 @@ class GeometryHelper {
 
     private static final GeometryLinearizer linearizer = new GeometryLinearizer();
 
+    private static final int GRID_SIZE = Integer.getInteger( "deegree.rendering.transform.grid", 0 );
+
+    // maximum error of approximated transformations in pixels
+    private static final double TOLERANCE = 0.25;
+
     private GeometryTransformer transformer;
 
     private AffineTransform worldToScreen;
 
+    private Envelope bbox;
+
+    private double tolerance;
+
+    // maps source crs to approximating transformers
+    private Map<ICRS, GeometryTransformer> approximations;
+
     GeometryHelper( Envelope bbox, int width, AffineTransform worldToScreen ) {
         this.worldToScreen = worldToScreen;
+        this.bbox = bbox;
+        if ( GRID_SIZE > 0 && width > 0 ) {
+            approximations = new HashMap<ICRS, GeometryTransformer>();
+            tolerance = TOLERANCE * bbox.getSpan0() / width;
+        }
         try {
             if ( bbox.getCoordinateSystem() != null && ( !bbox.getCoordinateSystem().getAlias().equals( "CRS:1" ) ) ) {
                 transformer = new GeometryTransformer( bbox.getCoordinateSystem() );
@@ -138,7 +165,7 @@ class GeometryHelper {
                 if ( transformer.getTargetCRS().equals( crs ) ) {
                     return g;
                 }
-                T g2 = transformer.transform( g );
+                T g2 = getTransformer( crs ).transform( g );
                 if ( g2 == null ) {
                     LOG.warn( "Geometry transformer returned null for geometry of type {}, crs was {}.",
                               g.getClass().getSimpleName(), crs );
@@ -168,6 +195,36 @@ class GeometryHelper {
         return g;
     }
 
+    private GeometryTransformer getTransformer( ICRS crs ) {
+        if ( approximations == null ) {
+            return transformer;
+        }
+        GeometryTransformer t = approximations.get( crs );
+        if ( t == null ) {
+            t = transformer;
+            try {
+                ICRS target = transformer.getTargetCRS();
+                Transformation exact = CRSManager.getTransformation( null, crs, target );
+                if ( exact != null && !exact.isIdentity() ) {
+                    Envelope env = new GeometryTransformer( crs ).transform( bbox );
+                    // also approximate vertices slightly outside of the map
+                    double dx = 0.1 * env.getSpan0(), dy = 0.1 * env.getSpan1();
+                    env = new GeometryFactory().createEnvelope( env.getMin().get0() - dx, env.getMin().get1() - dy,
+                                                                env.getMax().get0() + dx, env.getMax().get1() + dy,
+                                                                crs );
+                    t = new GeometryTransformer( new GridTransformation( exact, crs, target, env, GRID_SIZE,
+                                                                         tolerance ) );
+                }
+            } catch ( Throwable e ) {
+                LOG.debug( "Unable to approximate transformation from {}, using exact transformation: {}", crs,
+                           e.getLocalizedMessage() );
+                LOG.trace( "Stack trace:", e );
+            }
+            approximations.put( crs, t );
+        }
+        return t;
+    }
+
     private <T extends Geometry> T transformLinearized( T g ) {
         if ( g instanceof Surface ) {
             @SuppressWarnings("unchecked")
@@ -0,0 +1,231 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.rendering.r2d;
+
+import static java.lang.Double.isInfinite;
+import static java.lang.Double.isNaN;
+import static java.lang.Math.hypot;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.vecmath.Point3d;
+
+import org.deegree.cs.coordinatesystems.ICRS;
+import org.deegree.cs.exceptions.TransformationException;
+import org.deegree.cs.transformations.Transformation;
+import org.deegree.geometry.Envelope;
+
+/**
+ * Approximates a transformation by interpolating between exactly transformed control points.
+ * <p>
+ * The control points form a regular grid over an envelope in the source CRS. Each grid cell is checked by transforming
+ * its centre exactly: if the bilinear interpolation is off by more than the tolerance, the cell is split into four
+ * (up to four times), cells that are still too inaccurate afterwards are transformed exactly. Points outside the
+ * envelope are transformed exactly as well.
+ * </p>
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+class GridTransformation extends Transformation {
+
+    private static final int MAX_DEPTH = 4;
+
+    private final Transformation exact;
+
+    private final double minx, miny, cellWidth, cellHeight, tolerance;
+
+    private final int size;
+
+    private final Cell[] cells;
+
+    /**
+     * @param exact
+     *            the transformation to approximate, must not be <code>null</code>
+     * @param sourceCrs
+     *            the source crs of the geometries to be transformed
+     * @param targetCrs
+     *            the target crs
+     * @param env
+     *            the envelope to approximate the transformation in, in the source crs
+     * @param size
+     *            the number of grid cells in each direction
+     * @param tolerance
+     *            the maximum interpolation error, in target crs units
+     * @throws TransformationException
+     *             if the control points could not be transformed
+     */
+    GridTransformation( Transformation exact, ICRS sourceCrs, ICRS targetCrs, Envelope env, int size,
+                        double tolerance ) throws TransformationException {
+        super( sourceCrs, targetCrs, exact );
+        this.exact = exact;
+        this.size = size;
+        this.tolerance = tolerance;
+        minx = env.getMin().get0();
+        miny = env.getMin().get1();
+        cellWidth = env.getSpan0() / size;
+        cellHeight = env.getSpan1() / size;
+
+        List<Point3d> points = new ArrayList<Point3d>( ( size + 1 ) * ( size + 1 ) );
+        for ( int j = 0; j <= size; ++j ) {
+            for ( int i = 0; i <= size; ++i ) {
+                points.add( new Point3d( minx + i * cellWidth, miny + j * cellHeight, 0 ) );
+            }
+        }
+        List<Point3d> targets = exact.doTransform( points );
+        cells = new Cell[size * size];
+        for ( int j = 0; j < size; ++j ) {
+            for ( int i = 0; i < size; ++i ) {
+                int ll = j * ( size + 1 ) + i;
+                int ul = ll + size + 1;
+                cells[j * size + i] = createCell( minx + i * cellWidth, miny + j * cellHeight,
+                                                  minx + ( i + 1 ) * cellWidth, miny + ( j + 1 ) * cellHeight,
+                                                  targets.get( ll ), targets.get( ll + 1 ), targets.get( ul ),
+                                                  targets.get( ul + 1 ), 0 );
+            }
+        }
+    }
+
+    private Cell createCell( double x0, double y0, double x1, double y1, Point3d ll, Point3d lr, Point3d ul,
+                             Point3d ur, int depth ) {
+        Cell cell = new Cell( x0, y0, x1, y1, ll, lr, ul, ur );
+        if ( !isValid( ll ) || !isValid( lr ) || !isValid( ul ) || !isValid( ur ) ) {
+            cell.exact = true;
+            return cell;
+        }
+        double cx = ( x0 + x1 ) / 2, cy = ( y0 + y1 ) / 2;
+        Point3d c = transformExactly( cx, cy );
+        if ( c != null ) {
+            double ix = ( ll.x + lr.x + ul.x + ur.x ) / 4, iy = ( ll.y + lr.y + ul.y + ur.y ) / 4;
+            if ( hypot( c.x - ix, c.y - iy ) <= tolerance ) {
+                return cell;
+            }
+        }
+        Point3d b = transformExactly( cx, y0 ), t = transformExactly( cx, y1 );
+        Point3d l = transformExactly( x0, cy ), r = transformExactly( x1, cy );
+        if ( depth == MAX_DEPTH || c == null || b == null || t == null || l == null || r == null ) {
+            cell.exact = true;
+            return cell;
+        }
+        cell.children = new Cell[] { createCell( x0, y0, cx, cy, ll, b, l, c, depth + 1 ),
+                                    createCell( cx, y0, x1, cy, b, lr, c, r, depth + 1 ),
+                                    createCell( x0, cy, cx, y1, l, c, ul, t, depth + 1 ),
+                                    createCell( cx, cy, x1, y1, c, r, t, ur, depth + 1 ) };
+        return cell;
+    }
+
+    private Point3d transformExactly( double x, double y ) {
+        try {
+            Point3d p = exact.doTransform( new Point3d( x, y, 0 ) );
+            return isValid( p ) ? p : null;
+        } catch ( TransformationException e ) {
+            return null;
+        }
+    }
+
+    private static boolean isValid( Point3d p ) {
+        return p != null && !isNaN( p.x ) && !isNaN( p.y ) && !isInfinite( p.x ) && !isInfinite( p.y );
+    }
+
+    @Override
+    public Point3d doTransform( Point3d p )
+                            throws TransformationException {
+        double fx = ( p.x - minx ) / cellWidth, fy = ( p.y - miny ) / cellHeight;
+        if ( !( fx >= 0 && fy >= 0 && fx < size && fy < size ) ) {
+            return exact.doTransform( p );
+        }
+        Cell cell = cells[( (int) fy ) * size + (int) fx];
+        while ( cell.children != null ) {
+            int idx = ( p.x < ( cell.x0 + cell.x1 ) / 2 ? 0 : 1 ) + ( p.y < ( cell.y0 + cell.y1 ) / 2 ? 0 : 2 );
+            cell = cell.children[idx];
+        }
+        if ( cell.exact ) {
+            return exact.doTransform( p );
+        }
+        double u = ( p.x - cell.x0 ) / ( cell.x1 - cell.x0 ), v = ( p.y - cell.y0 ) / ( cell.y1 - cell.y0 );
+        double x = ( 1 - v ) * ( ( 1 - u ) * cell.ll.x + u * cell.lr.x )
+                   + v * ( ( 1 - u ) * cell.ul.x + u * cell.ur.x );
+        double y = ( 1 - v ) * ( ( 1 - u ) * cell.ll.y + u * cell.lr.y )
+                   + v * ( ( 1 - u ) * cell.ul.y + u * cell.ur.y );
+        return new Point3d( x, y, p.z );
+    }
+
+    @Override
+    public List<Point3d> doTransform( List<Point3d> srcPts )
+                            throws TransformationException {
+        List<Point3d> result = new ArrayList<Point3d>( srcPts.size() );
+        for ( Point3d p : srcPts ) {
+            result.add( doTransform( p ) );
+        }
+        return result;
+    }
+
+    @Override
+    public String getImplementationName() {
+        return "GridTransformation";
+    }
+
+    @Override
+    public boolean isIdentity() {
+        return false;
+    }
+
+    private static class Cell {
+
+        final double x0, y0, x1, y1;
+
+        // exactly transformed corners
+        final Point3d ll, lr, ul, ur;
+
+        Cell[] children;
+
+        boolean exact;
+
+        Cell( double x0, double y0, double x1, double y1, Point3d ll, Point3d lr, Point3d ul, Point3d ur ) {
+            this.x0 = x0;
+            this.y0 = y0;
+            this.x1 = x1;
+            this.y1 = y1;
+            this.ll = ll;
+            this.lr = lr;
+            this.ul = ul;
+            this.ur = ur;
+        }
+    }
+
+}
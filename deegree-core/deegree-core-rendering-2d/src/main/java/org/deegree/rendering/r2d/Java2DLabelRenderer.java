@@ -43,7 +43,6 @@ package org.deegree.rendering.r2d;
 
 import static java.awt.BasicStroke.CAP_BUTT;
 import static java.awt.BasicStroke.JOIN_ROUND;
-import static java.awt.geom.AffineTransform.getTranslateInstance;
 import static java.lang.Math.toRadians;
 import static org.deegree.commons.utils.math.MathUtils.isZero;
 import static org.deegree.commons.utils.math.MathUtils.round;
@@ -51,8 +50,6 @@ import static org.slf4j.LoggerFactory.getLogger;
 
 import java.awt.BasicStroke;
 import java.awt.Font;
-import java.awt.font.FontRenderContext;
-import java.awt.font.TextLayout;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Point2D;
 import java.awt.geom.Path2D.Double;
@@ -69,6 +66,7 @@ import org.deegree.geometry.primitive.Curve;
 import org.deegree.geometry.primitive.GeometricPrimitive;
 import org.deegree.geometry.primitive.Point;
 import org.deegree.geometry.primitive.Surface;
+import org.deegree.rendering.r2d.TextLayoutCache.CachedLayout;
 import org.deegree.rendering.r2d.strokes.OffsetStroke;
 import org.deegree.rendering.r2d.strokes.TextStroke;
 import org.deegree.style.styling.TextStyling;
@@ -163,15 +161,8 @@ public class Java2DLabelRenderer implements LabelRenderer {
     @Override
     public Label createLabel( TextStyling styling, Font font, String text, Point p ){
 
-        TextLayout layout;
-        synchronized ( FontRenderContext.class ) {
-            // apparently getting the font render context is not threadsafe (despite having different graphics here)
-            // so do this globally synchronized to fix:
-            // http://tracker.deegree.org/deegree-core/ticket/200
-            FontRenderContext frc = renderer.graphics.getFontRenderContext();
-            layout = new TextLayout( text, font, frc );
-        }
-        
+        CachedLayout layout = Java2DTextRenderer.getLayout( renderer, font, text );
+
         Point2D.Double origin = (Point2D.Double) renderer.worldToScreen.transform( new Point2D.Double( p.get0(), p.get1() ),null );
         Label aLable = new Label(layout,styling,font,text,origin,context);
         
@@ -195,10 +186,12 @@ public class Java2DLabelRenderer implements LabelRenderer {
     
     @Override
     public void render( Label pLabel ) {
+        renderer.flush();
 
         renderer.graphics.setFont( pLabel.getFont() );
         AffineTransform transform = renderer.graphics.getTransform();
         renderer.graphics.rotate( toRadians( pLabel.getStyling().rotation ), pLabel.getOrigin().x, pLabel.getOrigin().y );
+        Point2D.Double dp = pLabel.getDrawPosition();
 
 
         if ( pLabel.getStyling().halo != null ) {
@@ -208,14 +201,16 @@ public class Java2DLabelRenderer implements LabelRenderer {
                                                                                                 pLabel.getStyling().uom ) ),
                                                   CAP_BUTT, JOIN_ROUND );
             renderer.graphics.setStroke( stroke );
-            renderer.graphics.draw( pLabel.getLayout().getOutline( getTranslateInstance( pLabel.getDrawPosition().x, pLabel.getDrawPosition().y ) ) );
+            renderer.graphics.translate( dp.x, dp.y );
+            renderer.graphics.draw( pLabel.getCachedLayout().getOutline() );
+            renderer.graphics.translate( -dp.x, -dp.y );
         }
 
-        //LOG.debug("LabelRender w:" + pLabel.getLayout().getBounds().getWidth() + "   h: "+pLabel.getLayout().getBounds().getHeight()+"   x: "+pLabel.getDrawPosition().x + "   y: "+pLabel.getDrawPosition().y);
+        //LOG.debug("LabelRender w:" + pLabel.getWidth() + "   h: "+pLabel.getHeight()+"   x: "+pLabel.getDrawPosition().x + "   y: "+pLabel.getDrawPosition().y);
         renderer.graphics.setStroke( new BasicStroke() );
 
         context.fillRenderer.applyFill( pLabel.getStyling().fill, pLabel.getStyling().uom );
-        pLabel.getLayout().draw( renderer.graphics, (float) pLabel.getDrawPosition().x, (float) pLabel.getDrawPosition().y );
+        Java2DTextRenderer.fillText( renderer.graphics, pLabel.getCachedLayout().getOutline(), dp.x, dp.y );
 
         renderer.graphics.setTransform( transform );
     }
@@ -56,12 +56,15 @@ import org.deegree.coverage.raster.data.info.BandType;
 import org.deegree.coverage.raster.data.info.DataType;
 import org.deegree.coverage.raster.geom.RasterGeoReference;
 import org.deegree.coverage.raster.utils.RasterFactory;
+import org.deegree.coverage.raster.utils.StripeExecutor;
+import org.deegree.coverage.raster.utils.StripeExecutor.StripeTask;
 import org.deegree.geometry.Envelope;
 import org.deegree.geometry.Geometry;
 import org.deegree.style.styling.RasterChannelSelection;
 import org.deegree.style.styling.RasterChannelSelection.ChannelSelectionMode;
 import org.deegree.style.styling.RasterStyling;
 import org.deegree.style.styling.RasterStyling.ContrastEnhancement;
+import org.deegree.style.styling.RasterStyling.ShadedRelief;
 import org.deegree.style.styling.Styling;
 import org.deegree.style.utils.Raster2Feature;
 import org.deegree.style.utils.RasterDataUtility;
@@ -302,20 +305,37 @@ public class Java2DRasterRenderer implements RasterRenderer {
      *            ContrastEnhancement to perform
      * @return modified RasterData container
      */
-    private RasterData setEnhancedChannelData( RasterData newData, RasterDataUtility rasutil, int inIndex,
-                                               int outIndex, ContrastEnhancement enhancement ) {
-        int i = 0, j = 0, val = 0, cols = newData.getColumns(), rows = newData.getRows();
+    private RasterData setEnhancedChannelData( final RasterData newData, final RasterDataUtility rasutil,
+                                               final int inIndex, final int outIndex, ContrastEnhancement enhancement ) {
+        final int cols = newData.getColumns();
+        int rows = newData.getRows();
 
         rasutil.setContrastEnhancement( enhancement );
         if ( enhancement != null ) {
             LOG.trace( "Using gamma {} for channel '{}'...", enhancement.gamma, inIndex );
         }
+        if ( cols == 0 || rows == 0 ) {
+            return newData;
+        }
 
-        for ( i = 0; i < cols; i++ )
-            for ( j = 0; j < rows; j++ ) {
-                val = (int) rasutil.getEnhanced( i, j, inIndex );
-                newData.setByteSample( i, j, outIndex, int2byte( val ) );
+        // lazily loaded buffers must be initialized before concurrent access
+        rasutil.getEnhanced( 0, 0, inIndex );
+        newData.getByteSample( 0, 0, outIndex );
+
+        StripeExecutor.execute( rows, cols, new StripeTask() {
+            @Override
+            public void process( int minRow, int maxRow ) {
+                float[] in = new float[cols];
+                byte[] out = new byte[cols];
+                for ( int row = minRow; row < maxRow; row++ ) {
+                    in = rasutil.getEnhancedRow( row, inIndex, in );
+                    for ( int col = 0; col < cols; col++ ) {
+                        out[col] = int2byte( (int) in[col] );
+                    }
+                    newData.setBytes( 0, row, cols, 1, outIndex, out );
+                }
             }
+        } );
 
         return newData;
     }
@@ -336,68 +356,100 @@ public class Java2DRasterRenderer implements RasterRenderer {
     public AbstractRaster performHillShading( AbstractRaster raster, RasterStyling style ) {
         LOG.debug( "Performing Hill-Shading '{}'.", style.shaded );
 
-        int cols = raster.getColumns(), rows = raster.getRows();
-        RasterDataUtility data = new RasterDataUtility( raster, style.channelSelection );
+        final int cols = raster.getColumns(), rows = raster.getRows();
         RasterData shadeData = RasterDataFactory.createRasterData( cols - 2, rows - 2, DataType.BYTE, false );
         RasterGeoReference ref = raster.getRasterReference();
         double resx = cols * ref.getResolutionX() / ( cols - 2 );
         double resy = rows * ref.getResolutionY() / ( rows - 2 );
         ref = new RasterGeoReference( ref.getOriginLocation(), resx, resy, ref.getOrigin()[0], ref.getOrigin()[1] );
         SimpleRaster hillShade = new SimpleRaster( shadeData, raster.getEnvelope(), ref, null );
+        if ( cols < 3 || rows < 3 ) {
+            return hillShade;
+        }
 
-        final double zenith_rad = Math.toRadians( 90 - style.shaded.alt );
-        final double azimuth_rad = Math.toRadians( 90 - style.shaded.azimuthAngle );
-        final double sinZenith = Math.sin( zenith_rad );
-        final double cosZenith = Math.cos( zenith_rad );
-        double slope_rad;
-        double aspect_rad = 0;
-        byte shade = 0;
-        double dx, dy;
-        float m[][] = new float[3][3];
-
-        for ( int row = 1; row < rows - 1; row++ ) {
-            for ( int col = 1; col < cols - 1; col++ ) {
-                m[0][0] = data.get( col - 1, row - 1 );
-                m[0][1] = data.get( col, row - 1 );
-                m[0][2] = data.get( col + 1, row - 1 );
-                m[1][0] = data.get( col - 1, row );
-                m[1][1] = data.get( col, row );
-                m[1][2] = data.get( col + 1, row );
-                m[2][0] = data.get( col - 1, row + 1 );
-                m[2][1] = data.get( col, row + 1 );
-                m[2][2] = data.get( col + 1, row + 1 );
-
-                dx = ( ( m[0][2] + 2 * m[1][2] + m[2][2] ) - ( m[0][0] + 2 * m[1][0] + m[2][0] ) ) / 8;
-                dy = ( ( m[2][0] + 2 * m[2][1] + m[2][2] ) - ( m[0][0] + 2 * m[0][1] + m[0][2] ) ) / 8;
-                slope_rad = Math.atan( style.shaded.reliefFactor * Math.sqrt( dx * dx + dy * dy ) );
-                if ( dx != 0 ) {
-                    aspect_rad = Math.atan2( dy, -dx );
-                    if ( aspect_rad < 0 )
-                        aspect_rad += Math.PI * 2;
-                }
-                if ( dx == 0 ) {
-                    if ( dy > 0 )
-                        aspect_rad = Math.PI / 2;
-                    else if ( dy < 0 )
-                        aspect_rad = 2 * Math.PI - Math.PI / 2;
-                    else
-                        aspect_rad = 0;
-                }
-
-                long val = Math.round( 255.0 * ( ( cosZenith * Math.cos( slope_rad ) ) + ( sinZenith
-                                                                                           * Math.sin( slope_rad ) * Math.cos( azimuth_rad
-                                                                                                                               - aspect_rad ) ) ) );
-                if ( val < 0 )
-                    val = 0;
-                shade = (byte) val;
+        RasterDataUtility data = new RasterDataUtility( raster, style.channelSelection );
+        byte[] shades = computeHillShade( data, cols, rows, style.shaded );
 
-                shadeData.setByteSample( col - 1, row - 1, 0, shade );
-            }
+        int shadeCols = cols - 2;
+        byte[] row = new byte[shadeCols];
+        for ( int y = 0; y < rows - 2; y++ ) {
+            System.arraycopy( shades, y * shadeCols, row, 0, shadeCols );
+            shadeData.setBytes( 0, y, shadeCols, 1, 0, row );
         }
 
         return hillShade;
     }
 
+    /**
+     * Computes the shades for all inner cells of a DEM, based on the algorithm presented at
+     * http://edndoc.esri.com/arcobjects/9.2/net/shared/geoprocessing/spatial_analyst_tools/how_hillshade_works.htm
+     * 
+     * @return shade values, row by row, (rows - 2) * (cols - 2) entries
+     */
+    private static byte[] computeHillShade( final RasterDataUtility data, final int cols, final int rows,
+                                            ShadedRelief shaded ) {
+        final byte[] shades = new byte[( cols - 2 ) * ( rows - 2 )];
+
+        final double zenith_rad = Math.toRadians( 90 - shaded.alt );
+        final double azimuth_rad = Math.toRadians( 90 - shaded.azimuthAngle );
+        final double sinZenith = Math.sin( zenith_rad );
+        final double cosZenith = Math.cos( zenith_rad );
+        final double reliefFactor = shaded.reliefFactor;
+
+        // lazily loaded buffers must be initialized before concurrent access
+        data.get( 0, 0 );
+
+        StripeExecutor.execute( rows - 2, cols - 2, new StripeTask() {
+            @Override
+            public void process( int minRow, int maxRow ) {
+                // row buffers for the rows above, at and below the current one
+                float[] above = data.getRow( minRow, null );
+                float[] center = data.getRow( minRow + 1, null );
+                float[] below = data.getRow( minRow + 2, null );
+                double slope_rad;
+                double aspect_rad = 0;
+                double dx, dy;
+
+                for ( int y = minRow; y < maxRow; y++ ) {
+                    if ( y > minRow ) {
+                        float[] tmp = above;
+                        above = center;
+                        center = below;
+                        below = data.getRow( y + 2, tmp );
+                    }
+                    int offset = y * ( cols - 2 ) - 1;
+                    for ( int col = 1; col < cols - 1; col++ ) {
+                        dx = ( ( above[col + 1] + 2 * center[col + 1] + below[col + 1] ) - ( above[col - 1] + 2
+                                                                                                * center[col - 1] + below[col - 1] ) ) / 8;
+                        dy = ( ( below[col - 1] + 2 * below[col] + below[col + 1] ) - ( above[col - 1] + 2
+                                                                                          * above[col] + above[col + 1] ) ) / 8;
+                        slope_rad = Math.atan( reliefFactor * Math.sqrt( dx * dx + dy * dy ) );
+                        if ( dx != 0 ) {
+                            aspect_rad = Math.atan2( dy, -dx );
+                            if ( aspect_rad < 0 )
+                                aspect_rad += Math.PI * 2;
+                        } else {
+                            if ( dy > 0 )
+                                aspect_rad = Math.PI / 2;
+                            else if ( dy < 0 )
+                                aspect_rad = 2 * Math.PI - Math.PI / 2;
+                            else
+                                aspect_rad = 0;
+                        }
+
+                        long val = Math.round( 255.0 * ( ( cosZenith * Math.cos( slope_rad ) ) + ( sinZenith
+                                                                                                   * Math.sin( slope_rad ) * Math.cos( azimuth_rad
+                                                                                                                                       - aspect_rad ) ) ) );
+                        if ( val < 0 )
+                            val = 0;
+                        shades[offset + col] = (byte) val;
+                    }
+                }
+            }
+        } );
+        return shades;
+    }
+
     private void render( final AbstractRaster raster ) {
         render( RasterFactory.imageFromRaster( raster ), raster.getEnvelope() );
     }
@@ -84,6 +84,8 @@ public class Java2DRenderer implements Renderer {
 
     private int width;
 
+    private int height;
+
     public RendererContext rendererContext;
 
     /**
@@ -109,6 +111,7 @@ public class Java2DRenderer implements Renderer {
     public Java2DRenderer( Graphics2D graphics, int width, int height, Envelope bbox ) {
         this.graphics = graphics;
         this.width = width;
+        this.height = height;
 
         if ( bbox != null ) {
             Pair<Envelope, DoublePair> p = RenderHelper.getWorldToScreenTransform( worldToScreen, bbox, width, height );
@@ -138,6 +141,40 @@ public class Java2DRenderer implements Renderer {
         rendererContext = new RendererContext( pixelSize, res, graphics, this, bbox, width, worldToScreen );
     }
 
+    /**
+     * Enables or disables batching of consecutive shapes with the same styling (see {@link ShapeBatch}). If enabled,
+     * {@link #flush()} must be called before anything else draws on the graphics, and when rendering is finished.
+     * Only renderers that have been created with a size can batch shapes.
+     * 
+     * @param batching
+     */
+    public void setBatching( boolean batching ) {
+        rendererContext.flush();
+        if ( batching && width > 0 && height > 0 ) {
+            rendererContext.batch = new ShapeBatch( rendererContext, width, height );
+        } else {
+            rendererContext.batch = null;
+        }
+    }
+
+    /**
+     * Enables or disables drawing point symbols as cached, pre-rendered images (see {@link SpriteCache}). Sprites are
+     * quantized to quarter pixel positions and full degree rotations, so results may differ slightly from drawing the
+     * symbols directly.
+     * 
+     * @param caching
+     */
+    public void setSpriteCaching( boolean caching ) {
+        rendererContext.sprites = caching ? SpriteCache.INSTANCE : null;
+    }
+
+    /**
+     * Draws the shapes that have been collected, if batching is enabled.
+     */
+    public void flush() {
+        rendererContext.flush();
+    }
+
     @Override
     public void render( final PointStyling styling, final Geometry geom ) {
         if ( geom == null ) {
@@ -186,6 +223,12 @@ public class Java2DRenderer implements Renderer {
         }
         if ( renderGeometry instanceof Curve ) {
             final Double line = rendererContext.geomHelper.fromCurve( (Curve) renderGeometry, false );
+            ShapeBatch batch = rendererContext.batch;
+            if ( batch != null && ShapeBatch.isBatchableLine( styling.stroke, styling.perpendicularOffset ) ) {
+                batch.addLine( styling, styling.stroke, styling.uom, line );
+                return;
+            }
+            rendererContext.flush();
             rendererContext.strokeRenderer.applyStroke( styling.stroke, styling.uom, line, styling.perpendicularOffset,
                                                         styling.perpendicularOffsetType );
         } else if ( renderGeometry instanceof Surface ) {
@@ -40,7 +40,12 @@ import static java.awt.BasicStroke.JOIN_ROUND;
 import static java.awt.Font.BOLD;
 import static java.awt.Font.ITALIC;
 import static java.awt.Font.PLAIN;
-import static java.awt.geom.AffineTransform.getTranslateInstance;
+import static java.awt.RenderingHints.KEY_ANTIALIASING;
+import static java.awt.RenderingHints.KEY_TEXT_ANTIALIASING;
+import static java.awt.RenderingHints.VALUE_ANTIALIAS_OFF;
+import static java.awt.RenderingHints.VALUE_ANTIALIAS_ON;
+import static java.awt.RenderingHints.VALUE_TEXT_ANTIALIAS_DEFAULT;
+import static java.awt.RenderingHints.VALUE_TEXT_ANTIALIAS_OFF;
 import static java.lang.Math.toRadians;
 import static org.deegree.commons.utils.math.MathUtils.isZero;
 import static org.deegree.commons.utils.math.MathUtils.round;
@@ -48,8 +53,9 @@ import static org.slf4j.LoggerFactory.getLogger;
 
 import java.awt.BasicStroke;
 import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Shape;
 import java.awt.font.FontRenderContext;
-import java.awt.font.TextLayout;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Path2D.Double;
 import java.awt.geom.Point2D;
@@ -67,6 +73,7 @@ import org.deegree.geometry.primitive.Point;
 import org.deegree.geometry.primitive.Surface;
 import org.deegree.geometry.primitive.patches.PolygonPatch;
 import org.deegree.geometry.primitive.patches.SurfacePatch;
+import org.deegree.rendering.r2d.TextLayoutCache.CachedLayout;
 import org.deegree.rendering.r2d.strokes.OffsetStroke;
 import org.deegree.rendering.r2d.strokes.TextStroke;
 import org.deegree.style.styling.TextStyling;
@@ -119,6 +126,7 @@ public class Java2DTextRenderer implements TextRenderer {
         if ( renderGeometry == null ) {
             return;
         }
+        renderer.flush();
         final Font font = convertFont( styling );
         handleGeometryTypes( styling, text, font, renderGeometry );
     }
@@ -177,16 +185,9 @@ public class Java2DTextRenderer implements TextRenderer {
         renderer.graphics.setFont( font );
         AffineTransform transform = renderer.graphics.getTransform();
         renderer.graphics.rotate( toRadians( styling.rotation ), x, y );
-        TextLayout layout;
-        synchronized ( FontRenderContext.class ) {
-            // apparently getting the font render context is not threadsafe (despite having different graphics here)
-            // so do this globally synchronized to fix:
-            // http://tracker.deegree.org/deegree-core/ticket/200
-            FontRenderContext frc = renderer.graphics.getFontRenderContext();
-            layout = new TextLayout( text, font, frc );
-        }
-        double width = layout.getBounds().getWidth();
-        double height = layout.getBounds().getHeight();
+        CachedLayout layout = getLayout( renderer, font, text );
+        double width = layout.getWidth();
+        double height = layout.getHeight();
         double px = x - styling.anchorPointX * width;
         double py = y + styling.anchorPointY * height;
 
@@ -198,17 +199,56 @@ public class Java2DTextRenderer implements TextRenderer {
                                                                                                                  styling.uom ) ),
                                                   CAP_BUTT, JOIN_ROUND );
             renderer.graphics.setStroke( stroke );
-            renderer.graphics.draw( layout.getOutline( getTranslateInstance( px, py ) ) );
+            renderer.graphics.translate( px, py );
+            renderer.graphics.draw( layout.getOutline() );
+            renderer.graphics.translate( -px, -py );
         }
 
         renderer.graphics.setStroke( new BasicStroke() );
 
         renderer.rendererContext.fillRenderer.applyFill( styling.fill, styling.uom );
-        layout.draw( renderer.graphics, (float) px, (float) py );
+        fillText( renderer.graphics, layout.getOutline(), px, py );
 
         renderer.graphics.setTransform( transform );
     }
 
+    /**
+     * Fills the outline of a text, antialiased if antialiasing is enabled for text.
+     * 
+     * @param g
+     * @param outline
+     *            the outline of the text at the origin
+     * @param x
+     * @param y
+     */
+    static void fillText( Graphics2D g, Shape outline, double x, double y ) {
+        Object antialias = g.getRenderingHint( KEY_ANTIALIASING );
+        Object textAntialias = g.getRenderingHint( KEY_TEXT_ANTIALIASING );
+        boolean on = textAntialias != null && textAntialias != VALUE_TEXT_ANTIALIAS_OFF
+                     && textAntialias != VALUE_TEXT_ANTIALIAS_DEFAULT;
+        g.setRenderingHint( KEY_ANTIALIASING, on ? VALUE_ANTIALIAS_ON : VALUE_ANTIALIAS_OFF );
+        g.translate( x, y );
+        g.fill( outline );
+        g.translate( -x, -y );
+        if ( antialias != null ) {
+            g.setRenderingHint( KEY_ANTIALIASING, antialias );
+        }
+    }
+
+    /**
+     * @return the layout of the text from the shared {@link TextLayoutCache}
+     */
+    static CachedLayout getLayout( Java2DRenderer renderer, Font font, String text ) {
+        FontRenderContext frc;
+        synchronized ( FontRenderContext.class ) {
+            // apparently getting the font render context is not threadsafe (despite having different graphics here)
+            // so do this globally synchronized to fix:
+            // http://tracker.deegree.org/deegree-core/ticket/200
+            frc = renderer.graphics.getFontRenderContext();
+        }
+        return TextLayoutCache.INSTANCE.get( text, font, frc );
+    }
+
     void render( TextStyling styling, Font font, String text, Curve c ) {
         renderer.rendererContext.fillRenderer.applyFill( styling.fill, styling.uom );
         java.awt.Stroke stroke = new TextStroke( text, font, styling.linePlacement );
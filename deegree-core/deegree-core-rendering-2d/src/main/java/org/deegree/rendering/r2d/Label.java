@@ -42,9 +42,9 @@
 package org.deegree.rendering.r2d;
 
 import java.awt.Font;
-import java.awt.font.TextLayout;
 import java.awt.geom.Point2D;
 
+import org.deegree.rendering.r2d.TextLayoutCache.CachedLayout;
 import org.deegree.style.styling.TextStyling;
 
 /**
@@ -58,15 +58,17 @@ import org.deegree.style.styling.TextStyling;
 
 public class Label {
     
-    public TextLayout mLayout;
     public TextStyling mStyling;
     public Font mFont;
     public String mText;
     public Point2D.Double mOrigin;
     public Point2D.Double mDrawPosition;
     
-    Label(TextLayout pLayout, TextStyling pStyling, Font pFont, String pText, Point2D.Double pOrigin, RendererContext context){
-        mLayout = pLayout;
+    private final CachedLayout mCachedLayout;
+    
+    Label(CachedLayout pLayout, TextStyling pStyling, Font pFont, String pText, Point2D.Double pOrigin,
+          RendererContext context){
+        mCachedLayout = pLayout;
         mStyling = pStyling;
         mFont = pFont;
         mText = pText;
@@ -75,14 +77,28 @@ public class Label {
         double ox = mOrigin.x + context.uomCalculator.considerUOM( mStyling.displacementX, mStyling.uom );
         double oy = mOrigin.y - context.uomCalculator.considerUOM( mStyling.displacementY, mStyling.uom );
         
-        double px = ox - ( mStyling.anchorPointX * mLayout.getBounds().getWidth() );
-        double py = oy + ( mStyling.anchorPointY * mLayout.getBounds().getHeight() );
+        double px = ox - ( mStyling.anchorPointX * pLayout.getWidth() );
+        double py = oy + ( mStyling.anchorPointY * pLayout.getHeight() );
         mDrawPosition =  new Point2D.Double(px,py);
         
     }
     
-    public TextLayout getLayout() {
-        return mLayout;
+    /**
+     * @return the width of the text
+     */
+    public double getWidth() {
+        return mCachedLayout.getWidth();
+    }
+
+    /**
+     * @return the height of the text
+     */
+    public double getHeight() {
+        return mCachedLayout.getHeight();
+    }
+
+    CachedLayout getCachedLayout() {
+        return mCachedLayout;
     }
 
     public TextStyling getStyling() {
@@ -42,10 +42,13 @@
 package org.deegree.rendering.r2d;
 
 import static java.lang.Math.toRadians;
+import static java.util.Collections.singletonList;
 import static org.deegree.commons.utils.math.MathUtils.isZero;
 import static org.deegree.commons.utils.math.MathUtils.round;
 import static org.deegree.rendering.r2d.RenderHelper.renderMark;
+import static org.deegree.style.utils.ShapeHelper.getShapeFromMark;
 
+import java.awt.Shape;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
@@ -53,6 +56,7 @@ import java.awt.image.BufferedImage;
 
 import org.deegree.style.styling.PointStyling;
 import org.deegree.style.styling.components.Graphic;
+import org.deegree.style.styling.components.Mark;
 
 /**
  * <code>PointRenderer</code>
@@ -82,9 +86,21 @@ class PointRenderer {
         Rectangle2D.Double rect = rendererContext.fillRenderer.getGraphicBounds( g, x, y, styling.uom );
 
         if ( g.image == null && g.imageURL == null ) {
-            renderMark( g.mark, g.size < 0 ? 6
-                                          : round( rendererContext.uomCalculator.considerUOM( g.size, styling.uom ) ),
-                        styling.uom, rendererContext, rect.getMinX(), rect.getMinY(), g.rotation );
+            int size = g.size < 0 ? 6 : round( rendererContext.uomCalculator.considerUOM( g.size, styling.uom ) );
+            SpriteCache sprites = rendererContext.sprites;
+            if ( sprites != null && sprites.drawMark( rendererContext, styling, size, rect.x, rect.y ) ) {
+                return;
+            }
+            if ( !addToBatch( styling, size, rect ) ) {
+                renderMark( g.mark, size, styling.uom, rendererContext, rect.getMinX(), rect.getMinY(), g.rotation );
+            }
+            return;
+        }
+
+        rendererContext.flush();
+
+        SpriteCache sprites = rendererContext.sprites;
+        if ( sprites != null && sprites.drawGraphic( rendererContext, rect, g ) ) {
             return;
         }
 
@@ -109,4 +125,17 @@ class PointRenderer {
         }
     }
 
+    private boolean addToBatch( PointStyling styling, int size, Rectangle2D.Double rect ) {
+        ShapeBatch batch = rendererContext.batch;
+        Mark mark = styling.graphic.mark;
+        if ( batch == null || size == 0 || ( mark.fill == null && mark.stroke == null )
+             || !ShapeBatch.isBatchableArea( mark.stroke, 0 ) ) {
+            rendererContext.flush();
+            return false;
+        }
+        Shape shape = getShapeFromMark( mark, size - 1, styling.graphic.rotation, true, rect.getMinX(),
+                                        rect.getMinY() );
+        return batch.addArea( styling, mark.fill, mark.stroke, styling.uom, shape, singletonList( shape ) );
+    }
+
 }
@@ -76,13 +76,16 @@ class PolygonRenderer {
 
     private Java2DRenderer renderer;
 
+    private RendererContext context;
+
     PolygonRenderer( GeometryHelper geomHelper, Java2DFillRenderer fillRenderer, Java2DStrokeRenderer strokeRenderer,
-                     Graphics2D graphics, Java2DRenderer renderer ) {
+                     Graphics2D graphics, Java2DRenderer renderer, RendererContext context ) {
         this.geomHelper = geomHelper;
         this.fillRenderer = fillRenderer;
         this.strokeRenderer = strokeRenderer;
         this.graphics = graphics;
         this.renderer = renderer;
+        this.context = context;
     }
 
     void render( PolygonStyling styling, Surface surface ) {
@@ -100,6 +103,12 @@ class PolygonRenderer {
                     polygon.append( d, false );
                 }
 
+                ShapeBatch batch = context.batch;
+                if ( batch != null && ShapeBatch.isBatchableArea( styling.stroke, styling.perpendicularOffset )
+                     && batch.addArea( styling, styling.fill, styling.stroke, styling.uom, polygon, lines ) ) {
+                    continue;
+                }
+                context.flush();
                 fillRenderer.applyFill( styling.fill, styling.uom );
                 graphics.fill( polygon );
                 for ( Double d : lines ) {
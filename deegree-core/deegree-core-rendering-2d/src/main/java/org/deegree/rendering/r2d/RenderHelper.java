@@ -253,7 +253,12 @@ public class RenderHelper {
         return new Pair<Envelope, DoublePair>( bbox, new DoublePair( scalex, scaley ) );
     }
 
-    private static boolean isXyOrdered( final ICRS crs ) {
+    /**
+     * @param crs
+     *            may be <code>null</code>
+     * @return true, if the first axis of the crs points to the east (or the crs is <code>null</code> or CRS:1)
+     */
+    public static boolean isXyOrdered( final ICRS crs ) {
         return crs == null || crs.getAlias().equals( "CRS:1" ) || crs.getAxis()[0].getOrientation() == AO_EAST;
     }
 
@@ -77,6 +77,21 @@ public class RendererContext {
 
     PointRenderer pointRenderer;
 
+    // null, if shapes are drawn one by one
+    ShapeBatch batch;
+
+    // null, if point symbols are drawn directly
+    SpriteCache sprites;
+
+    /**
+     * Draws the shapes collected so far, if batching is enabled.
+     */
+    void flush() {
+        if ( batch != null ) {
+            batch.flush();
+        }
+    }
+
     RendererContext( double pixelSize, double res, Graphics2D graphics, Java2DRenderer renderer, Envelope bbox,
                      int width, AffineTransform worldToScreen ) {
         this.graphics = graphics;
@@ -88,7 +103,7 @@ public class RendererContext {
         fillRenderer = new Java2DFillRenderer( uomCalculator, graphics );
         strokeRenderer = new Java2DStrokeRenderer( graphics, uomCalculator, fillRenderer );
         svgRenderer = new SvgRenderer();
-        polygonRenderer = new PolygonRenderer( geomHelper, fillRenderer, strokeRenderer, graphics, renderer );
+        polygonRenderer = new PolygonRenderer( geomHelper, fillRenderer, strokeRenderer, graphics, renderer, this );
         curveRenderer = new CurveRenderer( renderer );
         pointRenderer = new PointRenderer( renderer.worldToScreen, this );
     }
@@ -0,0 +1,243 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.rendering.r2d;
+
+import static java.awt.geom.Path2D.WIND_EVEN_ODD;
+import static java.lang.Math.ceil;
+import static java.lang.Math.floor;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static org.deegree.commons.utils.math.MathUtils.isZero;
+
+import java.awt.Shape;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import org.deegree.style.styling.components.Fill;
+import org.deegree.style.styling.components.Stroke;
+import org.deegree.style.styling.components.UOM;
+
+/**
+ * Collects consecutive shapes that share the same styling, so they can be drawn with a single fill and draw call.
+ * <p>
+ * Lines are only collected if they are drawn with an opaque, simple stroke, so overlapping lines look the same whether
+ * they are drawn one by one or at once. Areas (polygons and marks) are only collected if their bounds (including the
+ * stroke) do not intersect the bounds of the other shapes of the batch, which is tracked on a coarse grid of screen
+ * cells. This way the painting order of overlapping shapes is never changed.
+ * </p>
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+class ShapeBatch {
+
+    private static final int MAX_SHAPES = 1024;
+
+    private static final int CELL_SIZE = 16;
+
+    private static final int MAX_CELLS = 256;
+
+    // maximum extent of a stroke around the geometry in stroke widths (miter limit is 10)
+    private static final double STROKE_EXTENT = 5;
+
+    private final RendererContext context;
+
+    private final int columns, rows;
+
+    private final BitSet cells = new BitSet();
+
+    private int[] usedCells = new int[1024];
+
+    private int numUsedCells;
+
+    private final Path2D.Double fillPath = new Path2D.Double( WIND_EVEN_ODD );
+
+    private final Path2D.Double strokePath = new Path2D.Double();
+
+    private Object styling;
+
+    private boolean lines;
+
+    private Fill fill;
+
+    private Stroke stroke;
+
+    private UOM uom;
+
+    private int count;
+
+    ShapeBatch( RendererContext context, int width, int height ) {
+        this.context = context;
+        this.columns = max( 1, ( width + CELL_SIZE - 1 ) / CELL_SIZE );
+        this.rows = max( 1, ( height + CELL_SIZE - 1 ) / CELL_SIZE );
+    }
+
+    /**
+     * @param stroke
+     * @param perpendicularOffset
+     * @return true, if lines with this stroke can be collected
+     */
+    static boolean isBatchableLine( Stroke stroke, double perpendicularOffset ) {
+        return stroke != null && !isZero( stroke.width ) && stroke.stroke == null && stroke.fill == null
+               && stroke.color != null && stroke.color.getAlpha() == 255 && isZero( perpendicularOffset );
+    }
+
+    /**
+     * @param stroke
+     * @param perpendicularOffset
+     * @return true, if areas with this outline can be collected
+     */
+    static boolean isBatchableArea( Stroke stroke, double perpendicularOffset ) {
+        return stroke == null || ( stroke.stroke == null && isZero( perpendicularOffset ) );
+    }
+
+    /**
+     * Adds a line, the stroke must be batchable (see {@link #isBatchableLine(Stroke, double)}).
+     */
+    void addLine( Object styling, Stroke stroke, UOM uom, Shape line ) {
+        if ( styling != this.styling || !lines ) {
+            flush();
+            start( styling, true, null, stroke, uom );
+        }
+        strokePath.append( line, false );
+        if ( ++count == MAX_SHAPES ) {
+            flush();
+        }
+    }
+
+    /**
+     * Adds an area, the stroke must be batchable (see {@link #isBatchableArea(Stroke, double)}).
+     * 
+     * @param area
+     *            the shape to fill
+     * @param outlines
+     *            the shapes to stroke
+     * @return false, if the area is too large to be collected, the current batch has been flushed in this case
+     */
+    boolean addArea( Object styling, Fill fill, Stroke stroke, UOM uom, Shape area,
+                     Iterable<? extends Shape> outlines ) {
+        Rectangle2D bounds = area.getBounds2D();
+        double extent = 1;
+        if ( stroke != null ) {
+            extent += STROKE_EXTENT * context.uomCalculator.considerUOM( stroke.width, uom );
+        }
+        int minCol = max( 0, (int) floor( ( bounds.getMinX() - extent ) / CELL_SIZE ) );
+        int minRow = max( 0, (int) floor( ( bounds.getMinY() - extent ) / CELL_SIZE ) );
+        int maxCol = min( columns - 1, (int) ceil( ( bounds.getMaxX() + extent ) / CELL_SIZE ) );
+        int maxRow = min( rows - 1, (int) ceil( ( bounds.getMaxY() + extent ) / CELL_SIZE ) );
+        if ( ( maxCol - minCol + 1 ) * ( maxRow - minRow + 1 ) > MAX_CELLS ) {
+            flush();
+            return false;
+        }
+        if ( styling != this.styling || lines || fill != this.fill || stroke != this.stroke
+             || intersects( minCol, minRow, maxCol, maxRow ) ) {
+            flush();
+            start( styling, false, fill, stroke, uom );
+        }
+        for ( int row = minRow; row <= maxRow; ++row ) {
+            for ( int col = minCol; col <= maxCol; ++col ) {
+                int cell = row * columns + col;
+                cells.set( cell );
+                if ( numUsedCells == usedCells.length ) {
+                    usedCells = Arrays.copyOf( usedCells, usedCells.length * 2 );
+                }
+                usedCells[numUsedCells++] = cell;
+            }
+        }
+        if ( fill != null ) {
+            fillPath.append( area, false );
+        }
+        if ( stroke != null ) {
+            for ( Shape outline : outlines ) {
+                strokePath.append( outline, false );
+            }
+        }
+        if ( ++count == MAX_SHAPES ) {
+            flush();
+        }
+        return true;
+    }
+
+    private boolean intersects( int minCol, int minRow, int maxCol, int maxRow ) {
+        if ( maxCol < minCol ) {
+            return false;
+        }
+        for ( int row = minRow; row <= maxRow; ++row ) {
+            int next = cells.nextSetBit( row * columns + minCol );
+            if ( next >= 0 && next <= row * columns + maxCol ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void start( Object styling, boolean lines, Fill fill, Stroke stroke, UOM uom ) {
+        this.styling = styling;
+        this.lines = lines;
+        this.fill = fill;
+        this.stroke = stroke;
+        this.uom = uom;
+    }
+
+    /**
+     * Draws the collected shapes.
+     */
+    void flush() {
+        if ( count == 0 ) {
+            styling = null;
+            return;
+        }
+        if ( fill != null ) {
+            context.fillRenderer.applyFill( fill, uom );
+            context.graphics.fill( fillPath );
+        }
+        if ( stroke != null ) {
+            context.strokeRenderer.applyStroke( stroke, uom, strokePath, 0, null );
+        }
+        fillPath.reset();
+        strokePath.reset();
+        for ( int i = 0; i < numUsedCells; ++i ) {
+            cells.clear( usedCells[i] );
+        }
+        numUsedCells = 0;
+        count = 0;
+        styling = null;
+    }
+
+}
@@ -0,0 +1,315 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.rendering.r2d;
+
+import static java.awt.AlphaComposite.SrcOver;
+import static java.awt.RenderingHints.KEY_ANTIALIASING;
+import static java.awt.RenderingHints.KEY_INTERPOLATION;
+import static java.awt.RenderingHints.KEY_STROKE_CONTROL;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+import static java.lang.Math.ceil;
+import static java.lang.Math.floor;
+import static java.lang.Math.max;
+import static java.lang.Math.rint;
+import static java.lang.Math.round;
+import static java.lang.Math.toRadians;
+import static org.deegree.style.utils.ShapeHelper.getShapeFromMark;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import org.deegree.style.styling.PointStyling;
+import org.deegree.style.styling.components.Graphic;
+import org.deegree.style.styling.components.Mark;
+import org.deegree.style.styling.components.Stroke;
+
+/**
+ * Caches point symbols rasterized to small ARGB images, so rendering a point becomes an image blit.
+ * <p>
+ * Sprites are keyed by the symbol definition (the URL for external graphics), the size, the rotation (quantized to full
+ * degrees) and, for marks, the sub-pixel position (quantized to quarter pixels). Only symbols that look the same when
+ * blitted are cached: marks with plain color fills and strokes, and external graphics, drawn with source over
+ * compositing onto a graphics that is not scaled. The cache is shared by all renderers and bounded by the size of the
+ * sprites (and of inline images referenced by their keys), which can be set in bytes using the system property
+ * <code>deegree.rendering.sprites.cache.bytes</code> (16 MB by default).
+ * </p>
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+class SpriteCache {
+
+    static final SpriteCache INSTANCE = new SpriteCache( max( 0, Long.getLong( "deegree.rendering.sprites.cache.bytes",
+                                                                               16 * 1024 * 1024 ) ) );
+
+    private static final int SUBPIXELS = 4;
+
+    private static final int MAX_SIZE = 256;
+
+    private static final Object MARK = new Object();
+
+    private static final Object IMAGE = new Object();
+
+    private final LinkedHashMap<List<Object>, Sprite> sprites = new LinkedHashMap<List<Object>, Sprite>( 256, 0.75f,
+                                                                                                        true );
+
+    private final long maxBytes;
+
+    private long bytes;
+
+    SpriteCache( long maxBytes ) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Draws a mark using a cached sprite.
+     * 
+     * @param context
+     * @param styling
+     * @param size
+     *            the mark size in pixels
+     * @param x
+     *            the left of the mark in screen coordinates
+     * @param y
+     *            the top of the mark in screen coordinates
+     * @return false, if the mark cannot be drawn as sprite and must be rendered directly
+     */
+    boolean drawMark( RendererContext context, PointStyling styling, int size, double x, double y ) {
+        Mark mark = styling.graphic.mark;
+        Graphics2D g = context.graphics;
+        if ( size <= 0 || size > MAX_SIZE || ( mark.fill == null && mark.stroke == null )
+             || ( mark.fill != null && mark.fill.graphic != null ) || !isPlain( mark.stroke ) || !isBlittable( g ) ) {
+            return false;
+        }
+        double factor = context.uomCalculator.considerUOM( 1, styling.uom );
+        double strokeWidth = mark.stroke == null ? 0 : mark.stroke.width * factor;
+        // leave room for miter joins
+        int pad = (int) ceil( 5 * strokeWidth ) + 2;
+        double ix = floor( x ), iy = floor( y );
+        int fx = (int) round( ( x - ix ) * SUBPIXELS ), fy = (int) round( ( y - iy ) * SUBPIXELS );
+        long rotation = round( styling.graphic.rotation );
+
+        List<Object> key;
+        Stroke s = mark.stroke;
+        if ( s == null ) {
+            key = Arrays.<Object> asList( MARK, mark.wellKnown, mark.font, mark.markIndex, mark.shape,
+                                          mark.fill.color, size, rotation, fx, fy,
+                                          g.getRenderingHint( KEY_ANTIALIASING ),
+                                          g.getRenderingHint( KEY_STROKE_CONTROL ) );
+        } else {
+            String dashes = s.dasharray == null ? null : Arrays.toString( s.dasharray );
+            key = Arrays.<Object> asList( MARK, mark.wellKnown, mark.font, mark.markIndex, mark.shape,
+                                          mark.fill == null ? null : mark.fill.color, s.color, s.width, s.linejoin,
+                                          s.linecap, dashes, s.dashoffset, factor, size, rotation, fx, fy,
+                                          g.getRenderingHint( KEY_ANTIALIASING ),
+                                          g.getRenderingHint( KEY_STROKE_CONTROL ) );
+        }
+
+        Sprite sprite = get( key );
+        if ( sprite == null ) {
+            int dim = size + 2 * pad + 1;
+            BufferedImage img = new BufferedImage( dim, dim, TYPE_INT_ARGB_PRE );
+            Graphics2D sg = img.createGraphics();
+            sg.setRenderingHints( g.getRenderingHints() );
+            Java2DFillRenderer fillRenderer = new Java2DFillRenderer( context.uomCalculator, sg );
+            Java2DStrokeRenderer strokeRenderer = new Java2DStrokeRenderer( sg, context.uomCalculator, fillRenderer );
+            Shape shape = getShapeFromMark( mark, size - 1, rotation, true, pad + (double) fx / SUBPIXELS,
+                                            pad + (double) fy / SUBPIXELS );
+            if ( mark.fill != null ) {
+                fillRenderer.applyFill( mark.fill, styling.uom );
+                sg.fill( shape );
+            }
+            if ( mark.stroke != null ) {
+                strokeRenderer.applyStroke( mark.stroke, styling.uom, shape, 0, null );
+            }
+            sg.dispose();
+            sprite = new Sprite( img, -pad, -pad );
+            put( key, sprite );
+        }
+        context.flush();
+        g.drawImage( sprite.image, (int) ix + sprite.dx, (int) iy + sprite.dy, null );
+        return true;
+    }
+
+    /**
+     * Draws an external graphic using a cached, scaled and rotated sprite. Graphics loaded from a URL are keyed by the
+     * URL, so SVG graphics, which are rasterized anew for every request, are found across requests. Inline images are
+     * keyed by the image itself, which is counted in the weight of the sprite.
+     * 
+     * @param context
+     * @param rect
+     *            the graphic's bounds in screen coordinates
+     * @param graphic
+     * @return false, if the graphic cannot be drawn as sprite and must be rendered directly
+     */
+    boolean drawGraphic( RendererContext context, Rectangle2D.Double rect, Graphic graphic ) {
+        Graphics2D g = context.graphics;
+        int x = (int) round( rect.x ), y = (int) round( rect.y );
+        int width = (int) round( rect.width ), height = (int) round( rect.height );
+        Object source = graphic.imageURL != null ? graphic.imageURL : graphic.image;
+        if ( source == null || width <= 0 || height <= 0 || width > MAX_SIZE || height > MAX_SIZE
+             || !isBlittable( g ) ) {
+            return false;
+        }
+        long rotation = round( graphic.rotation );
+        // same rotation point as when drawing directly, relative to the image origin
+        int rx = (int) round( rect.x + rect.width * graphic.anchorPointX ) - x;
+        int ry = (int) round( rect.y + rect.height * graphic.anchorPointY ) - y;
+
+        List<Object> key = Arrays.<Object> asList( IMAGE, source, width, height, rotation, rx, ry,
+                                                   g.getRenderingHint( KEY_INTERPOLATION ),
+                                                   g.getRenderingHint( KEY_ANTIALIASING ) );
+        Sprite sprite = get( key );
+        if ( sprite == null ) {
+            BufferedImage img = graphic.image;
+            if ( img == null ) {
+                img = context.svgRenderer.prepareSvg( rect, graphic );
+                if ( img == null ) {
+                    return false;
+                }
+            }
+            AffineTransform t = new AffineTransform();
+            if ( rotation % 360 != 0 ) {
+                t.rotate( toRadians( rotation ), rx, ry );
+            }
+            Rectangle bounds = t.createTransformedShape( new Rectangle( 0, 0, width, height ) ).getBounds();
+            BufferedImage sprImg = new BufferedImage( bounds.width, bounds.height, TYPE_INT_ARGB_PRE );
+            Graphics2D sg = sprImg.createGraphics();
+            sg.setRenderingHints( g.getRenderingHints() );
+            sg.translate( -bounds.x, -bounds.y );
+            sg.transform( t );
+            sg.drawImage( img, 0, 0, width, height, null );
+            sg.dispose();
+            sprite = new Sprite( sprImg, bounds.x, bounds.y );
+            if ( source instanceof BufferedImage ) {
+                sprite.bytes += getBytes( (BufferedImage) source );
+            }
+            put( key, sprite );
+        }
+        g.drawImage( sprite.image, x + sprite.dx, y + sprite.dy, null );
+        return true;
+    }
+
+    private static boolean isPlain( Stroke stroke ) {
+        return stroke == null || ( stroke.stroke == null && stroke.fill == null );
+    }
+
+    /**
+     * Sprites can only be blitted if the graphics is not scaled or rotated, and uses plain source over compositing.
+     */
+    private static boolean isBlittable( Graphics2D g ) {
+        AffineTransform t = g.getTransform();
+        if ( ( t.getType() & ~AffineTransform.TYPE_TRANSLATION ) != 0 ) {
+            return false;
+        }
+        if ( t.getTranslateX() != rint( t.getTranslateX() ) || t.getTranslateY() != rint( t.getTranslateY() ) ) {
+            return false;
+        }
+        return SrcOver.equals( g.getComposite() );
+    }
+
+    private synchronized Sprite get( List<Object> key ) {
+        return sprites.get( key );
+    }
+
+    private synchronized void put( List<Object> key, Sprite sprite ) {
+        if ( sprite.bytes > maxBytes ) {
+            return;
+        }
+        Sprite old = sprites.put( key, sprite );
+        if ( old != null ) {
+            bytes -= old.bytes;
+        }
+        bytes += sprite.bytes;
+        Iterator<Sprite> iter = sprites.values().iterator();
+        while ( bytes > maxBytes && iter.hasNext() ) {
+            bytes -= iter.next().bytes;
+            iter.remove();
+        }
+    }
+
+    /**
+     * @return the number of cached sprites
+     */
+    synchronized int size() {
+        return sprites.size();
+    }
+
+    /**
+     * @return the weight of the cached sprites in bytes
+     */
+    synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @param img
+     * @return the size of the image's data buffer in bytes
+     */
+    static long getBytes( BufferedImage img ) {
+        DataBuffer buf = img.getRaster().getDataBuffer();
+        return (long) buf.getSize() * buf.getNumBanks() * DataBuffer.getDataTypeSize( buf.getDataType() ) / 8;
+    }
+
+    private static class Sprite {
+
+        final BufferedImage image;
+
+        // offset of the sprite relative to the symbol position
+        final int dx, dy;
+
+        // the weight of the sprite, including a referenced source image
+        long bytes;
+
+        Sprite( BufferedImage image, int dx, int dy ) {
+            this.image = image;
+            this.dx = dx;
+            this.dy = dy;
+            this.bytes = getBytes( image );
+        }
+    }
+
+}
@@ -0,0 +1,158 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.rendering.r2d;
+
+import static java.lang.Math.max;
+
+import java.awt.Font;
+import java.awt.Shape;
+import java.awt.font.FontRenderContext;
+import java.awt.font.TextLayout;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map.Entry;
+
+/**
+ * Caches the measured bounds and outlines of label texts, so the glyphs of a label are laid out only once, not each
+ * time the label is drawn.
+ * <p>
+ * Entries are keyed by the text, the font (including its size and transform) and the font render context. Text
+ * layouts themselves are not thread safe (they compute their metrics lazily), so only their immutable results are
+ * kept, and the cache is shared by all rendering threads. It is bounded by the number of entries, which can be set
+ * using the system property <code>deegree.rendering.text.cache.size</code> (1024 by default), and evicts the least
+ * recently used entries first.
+ * </p>
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+class TextLayoutCache {
+
+    private static final int MAX_SIZE = Integer.getInteger( "deegree.rendering.text.cache.size", 1024 );
+
+    static final TextLayoutCache INSTANCE = new TextLayoutCache( max( 0, MAX_SIZE ) );
+
+    private final LinkedHashMap<List<Object>, CachedLayout> layouts;
+
+    TextLayoutCache( final int maxSize ) {
+        layouts = new LinkedHashMap<List<Object>, CachedLayout>( 256, 0.75f, true ) {
+            private static final long serialVersionUID = -1398724735425876541L;
+
+            @Override
+            protected boolean removeEldestEntry( Entry<List<Object>, CachedLayout> eldest ) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @param text
+     * @param font
+     * @param frc
+     * @return the (possibly cached) layout of the text, never null
+     */
+    CachedLayout get( String text, Font font, FontRenderContext frc ) {
+        List<Object> key = Arrays.<Object> asList( text, font, frc );
+        synchronized ( layouts ) {
+            CachedLayout layout = layouts.get( key );
+            if ( layout != null ) {
+                return layout;
+            }
+        }
+        // lay out the text outside of the lock, a concurrent miss on the same key just creates an equal entry
+        CachedLayout layout = new CachedLayout( new TextLayout( text, font, frc ) );
+        synchronized ( layouts ) {
+            layouts.put( key, layout );
+        }
+        return layout;
+    }
+
+    /**
+     * @return the number of cached layouts
+     */
+    int size() {
+        synchronized ( layouts ) {
+            return layouts.size();
+        }
+    }
+
+    /**
+     * The bounds and outline of a laid out text.
+     */
+    static class CachedLayout {
+
+        private final Rectangle2D bounds;
+
+        private final Shape outline;
+
+        CachedLayout( TextLayout layout ) {
+            bounds = layout.getBounds();
+            outline = layout.getOutline( null );
+        }
+
+        /**
+         * @return the width of the text's bounds
+         */
+        double getWidth() {
+            return bounds.getWidth();
+        }
+
+        /**
+         * @return the height of the text's bounds
+         */
+        double getHeight() {
+            return bounds.getHeight();
+        }
+
+        /**
+         * @return a copy of the bounds of the text, relative to the origin of the text
+         */
+        Rectangle2D getBounds() {
+            return (Rectangle2D) bounds.clone();
+        }
+
+        /**
+         * @return the outline of the text, drawn at the origin, must not be modified
+         */
+        Shape getOutline() {
+            return outline;
+        }
+    }
+
+}
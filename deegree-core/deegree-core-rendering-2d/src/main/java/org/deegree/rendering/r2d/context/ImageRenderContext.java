@@ -77,6 +77,9 @@ public class ImageRenderContext extends Java2DRenderContext {
         
         this.image = image;
         this.format = info.getFormat();
+        // layers are separated by applyOptions, labels are drawn after all shapes
+        renderer.setBatching( true );
+        renderer.setSpriteCaching( true );
     }
     
     public static RenderContext createInstance( RenderingInfo info, BufferedImage image, OutputStream outputStream ) {
@@ -93,6 +96,7 @@ public class ImageRenderContext extends Java2DRenderContext {
     @Override
     public boolean close() throws IOException {        
         try {
+            renderer.flush();
             graphics.dispose();
             if ( outputStream != null ) {
                 String format = this.format.substring( this.format.indexOf( "/" ) + 1 );
@@ -112,12 +116,19 @@ public class ImageRenderContext extends Java2DRenderContext {
 
     @Override
     public void applyOptions( MapOptions options ) {
+        renderer.flush();
         applyQuality( options );
         applyInterpolation( options );
-        applyAntialias( options );
+        applyAntialias( graphics, options );
     }
 
-    private void applyAntialias( MapOptions options ) {
+    /**
+     * Sets the antialiasing hints for shapes and text.
+     * 
+     * @param graphics
+     * @param options
+     */
+    static void applyAntialias( Graphics2D graphics, MapOptions options ) {
         switch ( options.getAntialias() ) {
         case IMAGE:
             graphics.setRenderingHint( KEY_ANTIALIASING, VALUE_ANTIALIAS_ON );
@@ -1,19 +1,26 @@
 package org.deegree.rendering.r2d.context;
 
 import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.List;
+import java.util.Random;
 
 import org.deegree.rendering.r2d.Java2DLabelRenderer;
 import org.deegree.rendering.r2d.Java2DRasterRenderer;
 import org.deegree.rendering.r2d.Java2DRenderer;
 import org.deegree.rendering.r2d.Java2DTextRenderer;
 import org.deegree.rendering.r2d.Java2DTileRenderer;
+import org.deegree.rendering.r2d.Label;
 import org.deegree.rendering.r2d.labelplacement.AutoLabelPlacement;
 
 public abstract class Java2DRenderContext implements RenderContext {
-    
+
+    // labels are placed reproducibly, so a map rendered in stripes gets the same labels as one rendered at once
+    static final long LABEL_PLACEMENT_SEED = 0;
+
     protected final Graphics2D graphics;
     
     protected final OutputStream outputStream;
@@ -28,9 +35,19 @@ public abstract class Java2DRenderContext implements RenderContext {
 
     protected final Java2DTileRenderer tileRenderer;
 
+    private final int width;
+
+    private final int height;
+
+    private List<Label> placedLabels;
+
+    private int labelOffsetX, labelOffsetY;
+
     public Java2DRenderContext( RenderingInfo info, Graphics2D graphics, OutputStream outputStream ) {        
         this.graphics = graphics;
         this.outputStream = outputStream;
+        this.width = info.getWidth();
+        this.height = info.getHeight();
         
         renderer = new Java2DRenderer( graphics, info.getWidth(), info.getHeight(), info.getEnvelope(),
                                        info.getPixelSize() * 1000 );
@@ -57,33 +74,85 @@ public abstract class Java2DRenderContext implements RenderContext {
 
     @Override
     public Java2DRasterRenderer getRasterRenderer() {
+        renderer.flush();
         return rasterRenderer;
     }
 
     @Override
     public Java2DTileRenderer getTileRenderer() {
+        renderer.flush();
         return tileRenderer;
     }
     
+    /**
+     * Makes this context draw labels that have been placed for a larger map this context renders a part of, instead of
+     * placing the labels created in this context. Labels along lines are not affected, they are drawn when they are
+     * created.
+     * 
+     * @param labels
+     *            the placed labels in the pixel coordinates of the larger map, must not be <code>null</code>
+     * @param x
+     *            the column of the larger map that is the first column of this context
+     * @param y
+     *            the row of the larger map that is the first row of this context
+     */
+    public void setPlacedLabels( List<Label> labels, int x, int y ) {
+        placedLabels = labels;
+        labelOffsetX = x;
+        labelOffsetY = y;
+    }
+
     @Override
     public void optimizeAndDrawLabels() {
+        renderer.flush();
+        if ( placedLabels != null ) {
+            drawPlacedLabels();
+            return;
+        }
         //Optimize Label Placement here, if pointplacement set to auto=true
         try{
-            new AutoLabelPlacement(labelRenderer.getLabels(), renderer );
+            new AutoLabelPlacement( labelRenderer.getLabels(), renderer, AutoLabelPlacement.DEFAULT_MAX_ANNEALING_TIME,
+                                    new Random( LABEL_PLACEMENT_SEED ) );
         } catch ( Throwable e ) {
             e.printStackTrace();
         }
         labelRenderer.render( );
     }
+
+    private void drawPlacedLabels() {
+        labelRenderer.getLabels().clear();
+        AffineTransform transform = graphics.getTransform();
+        graphics.translate( -labelOffsetX, -labelOffsetY );
+        for ( Label l : placedLabels ) {
+            if ( isVisible( l ) ) {
+                labelRenderer.render( l );
+            }
+        }
+        graphics.setTransform( transform );
+    }
+
+    private boolean isVisible( Label l ) {
+        // labels are rotated around their origin, the halo is drawn outside of the text bounds
+        double reach = l.getOrigin().distance( l.getDrawPosition() ) + l.getWidth() + l.getHeight();
+        if ( l.getStyling().halo != null ) {
+            reach += renderer.rendererContext.uomCalculator.considerUOM( l.getStyling().halo.radius,
+                                                                         l.getStyling().uom );
+        }
+        double x = l.getOrigin().x - labelOffsetX;
+        double y = l.getOrigin().y - labelOffsetY;
+        return x + reach >= 0 && x - reach <= width && y + reach >= 0 && y - reach <= height;
+    }
     
     @Override
     public void paintImage( BufferedImage img ) {
+        renderer.flush();
         graphics.drawImage( img, 0, 0, null );
     }
     
     @Override
     public boolean close() 
                             throws IOException {
+        renderer.flush();
         graphics.dispose();
         return true;
     }
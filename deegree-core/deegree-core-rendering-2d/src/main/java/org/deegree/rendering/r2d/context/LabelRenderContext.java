@@ -0,0 +1,223 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.rendering.r2d.context;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.deegree.coverage.raster.AbstractRaster;
+import org.deegree.geometry.Geometry;
+import org.deegree.rendering.r2d.Java2DLabelRenderer;
+import org.deegree.rendering.r2d.Java2DRenderer;
+import org.deegree.rendering.r2d.Java2DTextRenderer;
+import org.deegree.rendering.r2d.Label;
+import org.deegree.rendering.r2d.LabelRenderer;
+import org.deegree.rendering.r2d.RasterRenderer;
+import org.deegree.rendering.r2d.Renderer;
+import org.deegree.rendering.r2d.TextRenderer;
+import org.deegree.rendering.r2d.TileRenderer;
+import org.deegree.rendering.r2d.labelplacement.AutoLabelPlacement;
+import org.deegree.style.styling.LineStyling;
+import org.deegree.style.styling.PointStyling;
+import org.deegree.style.styling.PolygonStyling;
+import org.deegree.style.styling.RasterStyling;
+import org.deegree.style.styling.Styling;
+import org.deegree.style.styling.TextStyling;
+import org.deegree.tile.Tile;
+import org.slf4j.Logger;
+
+/**
+ * A render context that only creates and places the point labels of a map, everything else is discarded.
+ * <p>
+ * Used to place the labels of a map that is rendered in parts once for the whole map (see {@link StripedImage}), the
+ * placed labels are then drawn by the contexts of the parts (see
+ * {@link Java2DRenderContext#setPlacedLabels(List, int, int)}). The labels are placed the same way as by a
+ * {@link Java2DRenderContext} for the whole map.
+ * </p>
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+class LabelRenderContext implements RenderContext {
+
+    private static final Logger LOG = getLogger( LabelRenderContext.class );
+
+    private static final Renderer VECTOR_RENDERER = new Renderer() {
+        @Override
+        public void render( PointStyling styling, Geometry geom ) {
+            // only labels are needed
+        }
+
+        @Override
+        public void render( LineStyling styling, Geometry geom ) {
+            // only labels are needed
+        }
+
+        @Override
+        public void render( PolygonStyling styling, Geometry geom ) {
+            // only labels are needed
+        }
+
+        @Override
+        public void render( Styling styling, Collection<Geometry> geoms ) {
+            // only labels are needed
+        }
+
+        @Override
+        public void render( Styling styling, Geometry geom ) {
+            // only labels are needed
+        }
+    };
+
+    private static final TextRenderer TEXT_RENDERER = new TextRenderer() {
+        @Override
+        public void render( TextStyling styling, String text, Geometry geom ) {
+            // texts are drawn by the contexts of the parts of the map
+        }
+
+        @Override
+        public void render( TextStyling styling, String text, Collection<Geometry> geoms ) {
+            // texts are drawn by the contexts of the parts of the map
+        }
+    };
+
+    private static final RasterRenderer RASTER_RENDERER = new RasterRenderer() {
+        @Override
+        public void render( RasterStyling styling, AbstractRaster raster ) {
+            // only labels are needed
+        }
+    };
+
+    private static final TileRenderer TILE_RENDERER = new TileRenderer() {
+        @Override
+        public void render( Tile tile ) {
+            // only labels are needed
+        }
+    };
+
+    private final Graphics2D graphics;
+
+    private final Java2DRenderer renderer;
+
+    private final Java2DLabelRenderer labelRenderer;
+
+    private List<Label> labels = Collections.emptyList();
+
+    /**
+     * @param info
+     *            describes the whole map, must not be <code>null</code>
+     */
+    LabelRenderContext( RenderingInfo info ) {
+        // labels are measured using the font render context of the graphics, drawing is discarded
+        graphics = new BufferedImage( 1, 1, TYPE_INT_ARGB ).createGraphics();
+        renderer = new Java2DRenderer( graphics, info.getWidth(), info.getHeight(), info.getEnvelope(),
+                                       info.getPixelSize() * 1000 );
+        labelRenderer = new Java2DLabelRenderer( renderer, new Java2DTextRenderer( renderer ) );
+    }
+
+    @Override
+    public Renderer getVectorRenderer() {
+        return VECTOR_RENDERER;
+    }
+
+    @Override
+    public TextRenderer getTextRenderer() {
+        return TEXT_RENDERER;
+    }
+
+    @Override
+    public LabelRenderer getLabelRenderer() {
+        return labelRenderer;
+    }
+
+    @Override
+    public RasterRenderer getRasterRenderer() {
+        return RASTER_RENDERER;
+    }
+
+    @Override
+    public TileRenderer getTileRenderer() {
+        return TILE_RENDERER;
+    }
+
+    @Override
+    public void optimizeAndDrawLabels() {
+        labels = new ArrayList<Label>( labelRenderer.getLabels() );
+        labelRenderer.getLabels().clear();
+        try {
+            new AutoLabelPlacement( labels, renderer, AutoLabelPlacement.DEFAULT_MAX_ANNEALING_TIME,
+                                    new Random( Java2DRenderContext.LABEL_PLACEMENT_SEED ) );
+        } catch ( Throwable e ) {
+            LOG.warn( "Unable to place labels: {}", e.getLocalizedMessage() );
+            LOG.trace( "Stack trace:", e );
+        }
+    }
+
+    /**
+     * @return the labels placed by {@link #optimizeAndDrawLabels()}, in pixel coordinates of the whole map, never
+     *         <code>null</code>
+     */
+    List<Label> getLabels() {
+        return labels;
+    }
+
+    @Override
+    public void paintImage( BufferedImage img ) {
+        // only labels are needed
+    }
+
+    @Override
+    public boolean close() {
+        graphics.dispose();
+        return true;
+    }
+
+    @Override
+    public void applyOptions( MapOptions options ) {
+        // the text antialiasing hint changes the font render context, and thus the size of the labels
+        ImageRenderContext.applyAntialias( graphics, options );
+    }
+
+}
@@ -0,0 +1,437 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.rendering.r2d.context;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+import javax.media.jai.ImageLayout;
+import javax.media.jai.PlanarImage;
+
+import org.deegree.geometry.Envelope;
+import org.deegree.geometry.GeometryFactory;
+import org.deegree.rendering.r2d.Label;
+import org.deegree.rendering.r2d.RenderHelper;
+import org.deegree.style.utils.ImageUtils;
+import org.slf4j.Logger;
+
+/**
+ * A map image that is rendered in horizontal stripes while it is being written, so the memory needed does not depend
+ * on the height of the map.
+ * <p>
+ * Each stripe is rendered into a separate, reused image buffer that extends the stripe by a margin of
+ * {@value #MARGIN} pixels above and below, so features near the border of two stripes are rendered in both of them.
+ * Symbols larger than the margin are cut at the stripe border.
+ * </p>
+ * <p>
+ * Point labels are placed once for the whole map before the stripes are rendered (see
+ * {@link StripeRenderer#renderLabels(RenderContext, RenderingInfo)}), each stripe draws the placed labels that reach
+ * into it, instead of placing the labels of its own features. So labels are neither cut nor placed differently at the
+ * stripe borders, and they are placed the same way as if the map was rendered at once.
+ * </p>
+ * <p>
+ * Image writers request the rows of the image in order, while a stripe is being encoded, the following stripes are
+ * rendered in parallel. The number of stripes rendered in advance can be set using the system property
+ * <code>deegree.rendering.stripes.parallel</code> (default: number of processors, at most 4). All images share a pool
+ * of <code>deegree.rendering.stripes.threads</code> threads (default: number of processors), if the pool is busy, the
+ * stripes are rendered by the thread writing the image.
+ * </p>
+ * <p>
+ * Striping is used for PNG and TIFF images with at least <code>deegree.rendering.stripes.threshold</code> pixels
+ * (default 4096 * 4096).
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ *
+ * @version $Revision$, $Date$
+ */
+public class StripedImage extends PlanarImage {
+
+    private static final Logger LOG = getLogger( StripedImage.class );
+
+    /** Number of rows of a stripe. */
+    public static final int STRIPE_HEIGHT = 512;
+
+    /** Number of rows rendered above and below each stripe. */
+    public static final int MARGIN = 128;
+
+    private static final long THRESHOLD = Long.getLong( "deegree.rendering.stripes.threshold", 4096L * 4096 );
+
+    private static final int PARALLEL = max( 1, Integer.getInteger( "deegree.rendering.stripes.parallel",
+                                                                    min( 4, Runtime.getRuntime()
+                                                                                   .availableProcessors() ) ) );
+
+    private static final int THREADS = max( 1, Integer.getInteger( "deegree.rendering.stripes.threads",
+                                                                   Runtime.getRuntime().availableProcessors() ) );
+
+    private static final ThreadPoolExecutor EXECUTOR = createExecutor();
+
+    private static ThreadPoolExecutor createExecutor() {
+        ThreadFactory factory = new ThreadFactory() {
+
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread( Runnable r ) {
+                Thread t = new Thread( r, "map-stripes-" + count.incrementAndGet() );
+                t.setDaemon( true );
+                return t;
+            }
+        };
+        // stripes that do not fit into the queue are rendered by the thread writing the image
+        ThreadPoolExecutor executor = new ThreadPoolExecutor( THREADS, THREADS, 60, TimeUnit.SECONDS,
+                                                              new ArrayBlockingQueue<Runnable>( THREADS * PARALLEL ),
+                                                              factory, new ThreadPoolExecutor.CallerRunsPolicy() );
+        executor.allowCoreThreadTimeOut( true );
+        return executor;
+    }
+
+    /**
+     * Renders the map content of a stripe.
+     */
+    public interface StripeRenderer {
+
+        /**
+         * Called concurrently for different stripes.
+         *
+         * @param ctx
+         *            the context to render to, never <code>null</code>
+         * @param info
+         *            envelope and size of the stripe including its margins, never <code>null</code>
+         * @throws Exception
+         */
+        void render( RenderContext ctx, RenderingInfo info )
+                                throws Exception;
+
+        /**
+         * Called once for the whole map before the stripes are rendered, to create the point labels of the map. Only
+         * labels are kept, so layers that cannot contain point labels can be skipped.
+         *
+         * @param ctx
+         *            the context to render to, never <code>null</code>
+         * @param info
+         *            envelope and size of the whole map, never <code>null</code>
+         * @throws Exception
+         */
+        void renderLabels( RenderContext ctx, RenderingInfo info )
+                                throws Exception;
+    }
+
+    private final RenderingInfo info;
+
+    private final StripeRenderer renderer;
+
+    private final int numStripes;
+
+    private final Map<Integer, Future<BufferedImage>> stripes = new HashMap<Integer, Future<BufferedImage>>();
+
+    private final ArrayDeque<BufferedImage> buffers = new ArrayDeque<BufferedImage>();
+
+    private final Object labelLock = new Object();
+
+    // placed labels of the whole map, null until placed
+    private volatile List<Label> labels;
+
+    /**
+     * @param info
+     *            describes the whole map, must not be <code>null</code>
+     * @param renderer
+     *            renders the stripes, must not be <code>null</code>
+     */
+    public StripedImage( RenderingInfo info, StripeRenderer renderer ) {
+        super( createLayout( info ), null, null );
+        this.info = info;
+        this.renderer = renderer;
+        this.numStripes = ( info.getHeight() + STRIPE_HEIGHT - 1 ) / STRIPE_HEIGHT;
+    }
+
+    /**
+     * @param info
+     *            describes the requested map, must not be <code>null</code>
+     * @return true, if the map should be rendered in stripes
+     */
+    public static boolean isApplicable( RenderingInfo info ) {
+        String format = info.getFormat();
+        if ( !"image/png".equals( format ) && !"image/tiff".equals( format ) ) {
+            return false;
+        }
+        return info.getHeight() > STRIPE_HEIGHT && (long) info.getWidth() * info.getHeight() >= THRESHOLD;
+    }
+
+    private static ImageLayout createLayout( RenderingInfo info ) {
+        BufferedImage prototype = ImageUtils.prepareImage( info.getFormat(), 1, 1, info.getTransparent(),
+                                                           info.getBgColor() );
+        ImageLayout layout = new ImageLayout( 0, 0, info.getWidth(), info.getHeight() );
+        layout.setTileGridXOffset( 0 );
+        layout.setTileGridYOffset( 0 );
+        layout.setTileWidth( info.getWidth() );
+        layout.setTileHeight( STRIPE_HEIGHT );
+        layout.setSampleModel( prototype.getSampleModel().createCompatibleSampleModel( info.getWidth(),
+                                                                                       STRIPE_HEIGHT ) );
+        layout.setColorModel( prototype.getColorModel() );
+        return layout;
+    }
+
+    /**
+     * Places the labels of the map and renders the first stripe, to be called before writing the image, so errors can
+     * be reported before the output starts.
+     *
+     * @throws Exception
+     *             the exception thrown by the stripe renderer
+     */
+    public void prepare()
+                            throws Exception {
+        placeLabels();
+        FutureTask<BufferedImage> first = new FutureTask<BufferedImage>( createTask( 0 ) );
+        first.run();
+        try {
+            first.get();
+        } catch ( ExecutionException e ) {
+            if ( e.getCause() instanceof Exception ) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+        synchronized ( stripes ) {
+            stripes.put( 0, first );
+        }
+    }
+
+    /**
+     * Writes the image to the given stream, the stream is not closed.
+     *
+     * @param out
+     * @return false, if no image writer for the format was found
+     * @throws IOException
+     */
+    public boolean write( OutputStream out )
+                            throws IOException {
+        String format = info.getFormat().substring( info.getFormat().indexOf( "/" ) + 1 );
+        try {
+            return ImageIO.write( this, format, out );
+        } finally {
+            dispose();
+        }
+    }
+
+    @Override
+    public Raster getTile( int tileX, int tileY ) {
+        if ( tileX != 0 || tileY < 0 || tileY >= numStripes ) {
+            return null;
+        }
+        Future<BufferedImage> future;
+        // tasks are started outside of the lock, they may be run by this thread
+        List<FutureTask<BufferedImage>> tasks = new ArrayList<FutureTask<BufferedImage>>();
+        synchronized ( stripes ) {
+            future = stripes.get( tileY );
+            if ( future == null ) {
+                LOG.debug( "Stripe {} was requested out of order.", tileY );
+                FutureTask<BufferedImage> task = new FutureTask<BufferedImage>( createTask( tileY ) );
+                tasks.add( task );
+                future = task;
+                stripes.put( tileY, future );
+            }
+            // stripes above are not needed any more, the writer requests the rows in order
+            Iterator<Map.Entry<Integer, Future<BufferedImage>>> iter = stripes.entrySet().iterator();
+            while ( iter.hasNext() ) {
+                Map.Entry<Integer, Future<BufferedImage>> e = iter.next();
+                if ( e.getKey() < tileY && e.getValue().isDone() ) {
+                    iter.remove();
+                    release( e.getValue() );
+                }
+            }
+            for ( int i = tileY + 1; i < min( numStripes, tileY + PARALLEL ); ++i ) {
+                if ( !stripes.containsKey( i ) ) {
+                    FutureTask<BufferedImage> task = new FutureTask<BufferedImage>( createTask( i ) );
+                    tasks.add( task );
+                    stripes.put( i, task );
+                }
+            }
+        }
+        for ( FutureTask<BufferedImage> task : tasks ) {
+            EXECUTOR.execute( task );
+        }
+        BufferedImage img;
+        try {
+            img = future.get();
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException( "Interrupted while rendering map stripe.", e );
+        } catch ( ExecutionException e ) {
+            throw new RuntimeException( "Unable to render map stripe: " + e.getCause().getLocalizedMessage(),
+                                        e.getCause() );
+        }
+        return img.getRaster().createChild( 0, MARGIN, getWidth(), STRIPE_HEIGHT, 0, tileY * STRIPE_HEIGHT, null );
+    }
+
+    @Override
+    public void dispose() {
+        synchronized ( stripes ) {
+            for ( Future<BufferedImage> f : stripes.values() ) {
+                f.cancel( true );
+            }
+            stripes.clear();
+            buffers.clear();
+        }
+        super.dispose();
+    }
+
+    private void release( Future<BufferedImage> future ) {
+        try {
+            buffers.add( future.get() );
+        } catch ( Exception e ) {
+            // buffer is lost, a new one will be created
+        }
+    }
+
+    private BufferedImage takeBuffer() {
+        BufferedImage img;
+        synchronized ( stripes ) {
+            img = buffers.poll();
+        }
+        int rows = STRIPE_HEIGHT + 2 * MARGIN;
+        if ( img == null ) {
+            return ImageUtils.prepareImage( info.getFormat(), getWidth(), rows, info.getTransparent(),
+                                            info.getBgColor() );
+        }
+        Graphics2D g = img.createGraphics();
+        if ( info.getTransparent() ) {
+            g.setComposite( AlphaComposite.Clear );
+            g.fillRect( 0, 0, getWidth(), rows );
+        } else {
+            g.setBackground( info.getBgColor() );
+            g.clearRect( 0, 0, getWidth(), rows );
+        }
+        g.dispose();
+        return img;
+    }
+
+    /**
+     * Places the labels of the whole map, if not done yet.
+     */
+    private List<Label> placeLabels()
+                            throws Exception {
+        synchronized ( labelLock ) {
+            if ( labels == null ) {
+                LabelRenderContext ctx = new LabelRenderContext( info );
+                try {
+                    renderer.renderLabels( ctx, info );
+                } finally {
+                    ctx.close();
+                }
+                labels = ctx.getLabels();
+                LOG.debug( "Placed {} labels for the whole map.", labels.size() );
+            }
+            return labels;
+        }
+    }
+
+    private Callable<BufferedImage> createTask( final int stripe ) {
+        return new Callable<BufferedImage>() {
+            @Override
+            public BufferedImage call()
+                                    throws Exception {
+                List<Label> placed = placeLabels();
+                BufferedImage img = takeBuffer();
+                int minRow = stripe * STRIPE_HEIGHT - MARGIN;
+                int rows = STRIPE_HEIGHT + 2 * MARGIN;
+                Envelope env = getStripeEnvelope( info.getEnvelope(), info.getHeight(), minRow, rows );
+                RenderingInfo stripeInfo = new RenderingInfo( info.getFormat(), getWidth(), rows,
+                                                              info.getTransparent(), info.getBgColor(), env,
+                                                              info.getPixelSize(), info.getParameterMap() );
+                RenderContext ctx = ImageRenderContext.createInstance( stripeInfo, img, null );
+                ( (Java2DRenderContext) ctx ).setPlacedLabels( placed, 0, minRow );
+                try {
+                    renderer.render( ctx, stripeInfo );
+                } finally {
+                    ctx.close();
+                }
+                LOG.debug( "Rendered map stripe {} of {}.", stripe + 1, numStripes );
+                return img;
+            }
+        };
+    }
+
+    /**
+     * Calculates the envelope of a range of rows of a map, the rows may lie outside of the map.
+     *
+     * @param bbox
+     *            the envelope of the map
+     * @param height
+     *            the number of rows of the map
+     * @param minRow
+     *            first row, counted from the top
+     * @param rows
+     *            number of rows
+     * @return the envelope of the rows
+     */
+    static Envelope getStripeEnvelope( Envelope bbox, int height, int minRow, int rows ) {
+        double[] min = bbox.getMin().getAsArray().clone();
+        double[] max = bbox.getMax().getAsArray().clone();
+        // rows run along the northing axis, which is the first one for some crs
+        int axis = RenderHelper.isXyOrdered( bbox.getCoordinateSystem() ) ? 1 : 0;
+        double res = ( max[axis] - min[axis] ) / height;
+        double top = max[axis];
+        max[axis] = top - minRow * res;
+        min[axis] = top - ( minRow + rows ) * res;
+        return new GeometryFactory().createEnvelope( min, max, bbox.getCoordinateSystem() );
+    }
+
+}
@@ -39,7 +39,9 @@ import static org.slf4j.LoggerFactory.getLogger;
 import org.slf4j.Logger;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
 import org.deegree.rendering.r2d.Label;
 import org.deegree.rendering.r2d.Renderer;
@@ -47,6 +49,8 @@ import org.deegree.rendering.r2d.RendererContext;
 import org.deegree.rendering.r2d.Java2DRenderer;
 import org.deegree.style.utils.UomCalculator;
 
+import com.vividsolutions.jts.geom.Envelope;
+
 /**
  * <code>Automatic Label Placement, based on org.deegree.graphics.optimizers.LabelOptimizer from deegree2 </code>
  * 
@@ -66,10 +70,21 @@ public class AutoLabelPlacement {
     
     private static final Logger LOG = getLogger( AutoLabelPlacement.class );
 
+    /**
+     * Default time budget (in milliseconds) for the simulated annealing of one request.
+     */
+    public static final long DEFAULT_MAX_ANNEALING_TIME = 2000;
+
+    private static final int MAX_ITERATIONS = 2500;
+
     private ArrayList<PointLabelPositionOptions> labelPositionsList;
     
-    // collision matrix of PointLabelPositionOptions that may overlap
-    private boolean[][] collisionMatrix;
+    // indices of the PointLabelPositionOptions that may overlap, per option
+    private int[][] neighbours;
+
+    private final long maxAnnealingTime;
+
+    private final Random random;
     
     float placementQuality = 0.0f;
     int intersectionQuality = 0;
@@ -82,7 +97,41 @@ public class AutoLabelPlacement {
      */
     public AutoLabelPlacement( List<Label> labelList, Renderer renderer )
                             throws Exception {
+        this( labelList, renderer, DEFAULT_MAX_ANNEALING_TIME );
+    }
+
+    /**
+     * Finds optimized {@link Label} positions for all Labels in the List. Labels should have {@link TextStyling}.auto
+     * set to true
+     *
+     * @param labelList 
+     *          List of Labels to optimize
+     * @param maxAnnealingTime
+     *          maximum time (in milliseconds) to spend on optimizing the positions, if less than or equal to zero, only
+     *          the iteration limit applies
+     */
+    public AutoLabelPlacement( List<Label> labelList, Renderer renderer, long maxAnnealingTime )
+                            throws Exception {
+        this( labelList, renderer, maxAnnealingTime, new Random() );
+    }
+
+    /**
+     * Finds optimized {@link Label} positions for all Labels in the List. Labels should have {@link TextStyling}.auto
+     * set to true
+     *
+     * @param labelList 
+     *          List of Labels to optimize
+     * @param maxAnnealingTime
+     *          maximum time (in milliseconds) to spend on optimizing the positions, if less than or equal to zero, only
+     *          the iteration limit applies
+     * @param random
+     *          source of the random choices, the placement is reproducible if it is seeded
+     */
+    public AutoLabelPlacement( List<Label> labelList, Renderer renderer, long maxAnnealingTime, Random random )
+                            throws Exception {
 
+        this.maxAnnealingTime = maxAnnealingTime;
+        this.random = random;
         UomCalculator uomCalculator = ((Java2DRenderer)renderer).rendererContext.uomCalculator;
 
         labelPositionsList = new ArrayList<PointLabelPositionOptions>(); 
@@ -94,7 +143,7 @@ public class AutoLabelPlacement {
         LOG.debug( "Added "+labelPositionsList.size() + " Labels of " + labelList.size() + " to auto placement" );
     
         if( labelPositionsList.size() > 1 ){
-            buildCollisionMatrix();
+            buildNeighbours();
     
             // do the magic
             try {
@@ -122,14 +171,20 @@ public class AutoLabelPlacement {
         int counter = 0;
         int successCounter = 0;
 //        int failCounter = 0;
-        java.util.Random rand = new java.util.Random();
 
         int n = labelPositionsList.size();
 
         LOG.debug( "Starting Annealing with value: " + currentQuality + ", trying to reach: " + ( n + 0.8 * 40 ));
         long now = System.currentTimeMillis();
+        long deadline = maxAnnealingTime > 0 ? now + maxAnnealingTime : Long.MAX_VALUE;
 
-        while ( counter <= 2500 && currentQuality > ( n + 0.8 * 40 ) ) {
+        while ( counter <= MAX_ITERATIONS && currentQuality > ( n + 0.8 * 40 ) ) {
+
+            // checking the clock on every iteration is more expensive than the iteration itself
+            if ( ( counter & 0xff ) == 0 && System.currentTimeMillis() > deadline ) {
+                LOG.debug( "Annealing time budget of " + maxAnnealingTime + " ms exceeded." );
+                break;
+            }
 
             counter++;
             if ( successCounter == 5 ) {
@@ -138,7 +193,7 @@ public class AutoLabelPlacement {
             }
 
             //choose one Label from the list randomly
-            int choiceIndex = rand.nextInt( n );
+            int choiceIndex = random.nextInt( n );
             //int choiceIndex = (int) ( Math.random() * ( n - 1 ) + 0.5 );
             PointLabelPositionOptions choice = labelPositionsList.get( choiceIndex );
             
@@ -158,7 +213,7 @@ public class AutoLabelPlacement {
 //                failCounter = 0;
             } else {
                 // no -> only keep it with a certain probability
-                if ( Math.random() < temperature ) {
+                if ( random.nextDouble() < temperature ) {
                     currentQuality = quality;
 //                    failCounter = 0;
                 } else {
@@ -174,28 +229,138 @@ public class AutoLabelPlacement {
         long duration = System.currentTimeMillis() - now;
         
         LOG.debug( "Final value: " + currentQuality + ", needed " + counter + " iterations");
-        LOG.debug( "Annealing took: " + duration + " ms, ( " + (int)((double)duration/(double)counter * 1000) + " µs per iteration  )"  );
+        LOG.debug( "Annealing took: " + duration + " ms, ( " + (int)((double)duration/(double)Math.max( counter, 1 ) * 1000) + " µs per iteration  )"  );
     }
 
     /**
-     * Builds the collision matrix for all <code>PointLabelPositionOptions</code>.
+     * Determines the possibly colliding <code>PointLabelPositionOptions</code> for every option. A uniform grid over the
+     * bounding boxes of all options is used, so only options sharing a grid cell are tested against each other.
      */
-    private void buildCollisionMatrix() {
+    private void buildNeighbours() {
         
         long now = System.currentTimeMillis();
-        collisionMatrix = new boolean[labelPositionsList.size()][labelPositionsList.size()];
-        
-        for ( int i = 0; i < labelPositionsList.size(); i++ ) {
+        int n = labelPositionsList.size();
+
+        double[] minX = new double[n];
+        double[] minY = new double[n];
+        double[] maxX = new double[n];
+        double[] maxY = new double[n];
+        double envMinX = Double.MAX_VALUE, envMinY = Double.MAX_VALUE;
+        double envMaxX = -Double.MAX_VALUE, envMaxY = -Double.MAX_VALUE;
+        double sumSize = 0;
+        for ( int i = 0; i < n; i++ ) {
+            PointLabelPositionOptions option = labelPositionsList.get( i );
+            if ( option.label.getStyling().rotation != 0 ) {
+                Envelope env = option.totalPolygon.getEnvelopeInternal();
+                minX[i] = env.getMinX();
+                minY[i] = env.getMinY();
+                maxX[i] = env.getMaxX();
+                maxY[i] = env.getMaxY();
+            } else {
+                minX[i] = option.getMinX();
+                minY[i] = option.getMinY();
+                maxX[i] = option.getMaxX();
+                maxY[i] = option.getMaxY();
+            }
+            envMinX = Math.min( envMinX, minX[i] );
+            envMinY = Math.min( envMinY, minY[i] );
+            envMaxX = Math.max( envMaxX, maxX[i] );
+            envMaxY = Math.max( envMaxY, maxY[i] );
+            sumSize += Math.max( maxX[i] - minX[i], maxY[i] - minY[i] );
+        }
+
+        // cells of roughly the size of an average label, but never more cells than a few per label
+        double cellSize = Math.max( 1.0, sumSize / n );
+        double maxCells = 4.0 * n;
+        while ( ( ( envMaxX - envMinX ) / cellSize + 1 ) * ( ( envMaxY - envMinY ) / cellSize + 1 ) > maxCells ) {
+            cellSize *= 2;
+        }
+        int cols = (int) ( ( envMaxX - envMinX ) / cellSize ) + 1;
+        int rows = (int) ( ( envMaxY - envMinY ) / cellSize ) + 1;
+
+        int[] firstCol = new int[n];
+        int[] lastCol = new int[n];
+        int[] firstRow = new int[n];
+        int[] lastRow = new int[n];
+        int[] cellStart = new int[cols * rows + 1];
+        for ( int i = 0; i < n; i++ ) {
+            firstCol[i] = (int) ( ( minX[i] - envMinX ) / cellSize );
+            lastCol[i] = Math.min( cols - 1, (int) ( ( maxX[i] - envMinX ) / cellSize ) );
+            firstRow[i] = (int) ( ( minY[i] - envMinY ) / cellSize );
+            lastRow[i] = Math.min( rows - 1, (int) ( ( maxY[i] - envMinY ) / cellSize ) );
+            for ( int r = firstRow[i]; r <= lastRow[i]; r++ ) {
+                for ( int c = firstCol[i]; c <= lastCol[i]; c++ ) {
+                    cellStart[r * cols + c + 1]++;
+                }
+            }
+        }
+        for ( int cell = 0; cell < cols * rows; cell++ ) {
+            cellStart[cell + 1] += cellStart[cell];
+        }
+        int[] cellEntries = new int[cellStart[cols * rows]];
+        int[] fill = new int[cols * rows];
+        for ( int i = 0; i < n; i++ ) {
+            for ( int r = firstRow[i]; r <= lastRow[i]; r++ ) {
+                for ( int c = firstCol[i]; c <= lastCol[i]; c++ ) {
+                    int cell = r * cols + c;
+                    cellEntries[cellStart[cell] + fill[cell]++] = i;
+                }
+            }
+        }
+
+        neighbours = new int[n][];
+        int[] neighbourCount = new int[n];
+        for ( int i = 0; i < n; i++ ) {
+            neighbours[i] = new int[4];
+        }
+        // marks the last label a candidate has been tested against, so labels sharing several cells are tested once
+        int[] lastTested = new int[n];
+        Arrays.fill( lastTested, -1 );
+        long tests = 0;
+        for ( int i = 0; i < n; i++ ) {
             PointLabelPositionOptions choice1 = labelPositionsList.get( i );
-            
-            for ( int j = i + 1; j < labelPositionsList.size(); j++ ) {
-                PointLabelPositionOptions choice2 = labelPositionsList.get( j );
-                collisionMatrix[i][j] = choice1.intersectsAny( choice2 );
+            for ( int r = firstRow[i]; r <= lastRow[i]; r++ ) {
+                for ( int c = firstCol[i]; c <= lastCol[i]; c++ ) {
+                    int cell = r * cols + c;
+                    for ( int k = cellStart[cell]; k < cellStart[cell + 1]; k++ ) {
+                        int j = cellEntries[k];
+                        if ( j <= i || lastTested[j] == i ) {
+                            continue;
+                        }
+                        lastTested[j] = i;
+                        tests++;
+                        if ( choice1.intersectsAny( labelPositionsList.get( j ) ) ) {
+                            addNeighbour( neighbourCount, i, j );
+                            addNeighbour( neighbourCount, j, i );
+                        }
+                    }
+                }
             }
-            
         }
-        
-        LOG.debug( "Building of collision matrix took: " + ( System.currentTimeMillis() - now ) + " millis." );
+        for ( int i = 0; i < n; i++ ) {
+            if ( neighbours[i].length != neighbourCount[i] ) {
+                neighbours[i] = Arrays.copyOf( neighbours[i], neighbourCount[i] );
+            }
+        }
+
+        LOG.debug( "Building of collision candidates (" + cols + "x" + rows + " grid, " + tests
+                   + " tests) took: " + ( System.currentTimeMillis() - now ) + " millis." );
+    }
+
+    /**
+     * @param index
+     *          index of an auto placed label
+     * @return the indices of the labels that may overlap with the label, never <code>null</code>
+     */
+    int[] getNeighbours( int index ) {
+        return neighbours[index];
+    }
+
+    private void addNeighbour( int[] neighbourCount, int i, int j ) {
+        if ( neighbourCount[i] == neighbours[i].length ) {
+            neighbours[i] = Arrays.copyOf( neighbours[i], neighbours[i].length * 2 );
+        }
+        neighbours[i][neighbourCount[i]++] = j;
     }
     
     /**
@@ -209,23 +374,8 @@ public class AutoLabelPlacement {
      */
     private void updateChoiceAndQuality(PointLabelPositionOptions changedLabel, int choice) {
        
-        int changedLabelIntersectionQuality = 0;
-        
-        
         //calculate, how much the (to bee) changedLabel does contribute to the intersectionQuality
-        for ( int i = 0; i < choice; i++ ) {
-            PointLabelPositionOptions choice1 = labelPositionsList.get( i );
-            if ( collisionMatrix[i][choice] && ( changedLabel.intersectsSelection(choice1) )) {
-                changedLabelIntersectionQuality += 40;
-            }
-        }
-        
-        for (int i = choice+1; i <  labelPositionsList.size(); i++ ) {
-            PointLabelPositionOptions choice1 = labelPositionsList.get( i );
-            if ( collisionMatrix[choice][i] && ( changedLabel.intersectsSelection(choice1) )) {
-                changedLabelIntersectionQuality += 40;
-            }
-        }
+        int changedLabelIntersectionQuality = getIntersectionQuality( changedLabel, choice );
         
         //subtract the qualities of the label which is going to be changed
         intersectionQuality -= changedLabelIntersectionQuality;
@@ -233,29 +383,26 @@ public class AutoLabelPlacement {
 
 
         //select a new position randomly
-        changedLabel.selectLabelPositionRandomly();
+        changedLabel.selectLabelPositionRandomly( random );
 
         
         //calculate, how much the changedLabel does contribute to the intersectionQuality
-        changedLabelIntersectionQuality = 0;
-        for ( int i = 0; i < choice; i++ ) {
-            PointLabelPositionOptions choice1 = labelPositionsList.get( i );
-            if ( collisionMatrix[i][choice] && ( changedLabel.intersectsSelection(choice1) )) {
-                changedLabelIntersectionQuality += 40;
-            }
-        }
-        
-        for (int i = choice+1; i <  labelPositionsList.size(); i++ ) {
-            PointLabelPositionOptions choice1 = labelPositionsList.get( i );
-            if ( collisionMatrix[choice][i] && ( changedLabel.intersectsSelection(choice1) )) {
-                changedLabelIntersectionQuality += 40;
-            }
-        }
+        changedLabelIntersectionQuality = getIntersectionQuality( changedLabel, choice );
         
         //add the new qualities
         intersectionQuality += changedLabelIntersectionQuality;
         placementQuality += changedLabel.getQuality();
     }
+
+    private int getIntersectionQuality( PointLabelPositionOptions label, int index ) {
+        int quality = 0;
+        for ( int i : neighbours[index] ) {
+            if ( label.intersectsSelection( labelPositionsList.get( i ) ) ) {
+                quality += 40;
+            }
+        }
+        return quality;
+    }
     
     /**
      * Calculates the initial quality values for the currently selected combination of {@link Label}s.
@@ -271,8 +418,8 @@ public class AutoLabelPlacement {
             //placementQuality += choice1.getQuality() + 1.0f;
             placementQuality += choice1.getQuality();
             
-            for ( int j = i + 1; j < labelPositionsList.size(); j++ ) {
-                if ( collisionMatrix[i][j] ) {
+            for ( int j : neighbours[i] ) {
+                if ( j > i ) {
                     PointLabelPositionOptions choice2 = labelPositionsList.get( j );
                     if ( choice1.intersectsSelection( choice2 ) ) {
                         intersectionQuality += 40;
@@ -38,7 +38,7 @@ package org.deegree.rendering.r2d.labelplacement;
 import static org.slf4j.LoggerFactory.getLogger;
 
 import java.awt.geom.Point2D;
-import java.awt.geom.Rectangle2D;
+import java.util.Random;
 
 import org.deegree.rendering.r2d.Label;
 import org.deegree.style.styling.TextStyling;
@@ -169,14 +169,13 @@ public class PointLabelPositionOptions {
         selection = selected;
         
         Point2D.Double origin = label.getOrigin();
-        Rectangle2D bounds = label.getLayout().getBounds();
         
         selMinX = origin.x + displacementX * displacmentMultiplicatorX[selection] + 0.5;
         selMaxY = origin.y - displacementY * displacmentMultiplicatorY[selection] + 0.5;
-        selMinX -= anchorPointX[selection] * bounds.getWidth();
-        selMaxY += anchorPointY[selection] * bounds.getHeight();
-        selMaxX = selMinX + bounds.getWidth();
-        selMinY = selMaxY - bounds.getHeight();
+        selMinX -= anchorPointX[selection] * label.getWidth();
+        selMaxY += anchorPointY[selection] * label.getHeight();
+        selMaxX = selMinX + label.getWidth();
+        selMinY = selMaxY - label.getHeight();
         
         selectedPolygon = getPolygon( selMinX, selMinY, selMaxX, selMaxY );
     }
@@ -201,6 +200,16 @@ public class PointLabelPositionOptions {
     public void selectLabelPositionRandomly() {
         select( (int) ( Math.random() * ( 8 - 1 ) + 0.5 ) );
     }
+
+    /**
+     * Selects one of the possible label positions randomly.
+     * 
+     * @param random
+     *          source of the random choice
+     */
+    public void selectLabelPositionRandomly( Random random ) {
+        select( (int) ( random.nextDouble() * ( 8 - 1 ) + 0.5 ) );
+    }
     
     /**
      * Tests the currently selected label position for intersection with the current selection of another label position.
@@ -289,21 +298,20 @@ public class PointLabelPositionOptions {
         totalMaxY = -Float.MAX_VALUE;
         
         Point2D.Double origin = label.getOrigin();
-        Rectangle2D bounds = label.getLayout().getBounds();
         
         for ( int i = 0; i < 4; i++){
         
             double px = origin.x + displacementX * displacmentMultiplicatorX[i] + 0.5;
             double py = origin.y - displacementY * displacmentMultiplicatorY[i] + 0.5;
-            px -= anchorPointX[i] * bounds.getWidth();
-            py += anchorPointY[i] * bounds.getHeight();
+            px -= anchorPointX[i] * label.getWidth();
+            py += anchorPointY[i] * label.getHeight();
             if( px < totalMinX ) totalMinX = (float) px;
             if( px > totalMaxX ) totalMaxX = (float) px;
             if( py < totalMinY ) totalMinY = (float) py;
             if( py > totalMaxY ) totalMaxY = (float) py;
         }
-        totalMaxX += bounds.getWidth();
-        totalMinY -= bounds.getHeight();
+        totalMaxX += label.getWidth();
+        totalMinY -= label.getHeight();
         
     }
     
@@ -0,0 +1,101 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.rendering.r2d;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import javax.vecmath.Point3d;
+
+import org.deegree.cs.coordinatesystems.ICRS;
+import org.deegree.cs.persistence.CRSManager;
+import org.deegree.cs.transformations.Transformation;
+import org.deegree.geometry.Envelope;
+import org.deegree.geometry.GeometryFactory;
+import org.junit.Test;
+
+/**
+ * Checks that approximated transformations stay within the tolerance.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+public class GridTransformationTest {
+
+    private final Random rnd = new Random( 42 );
+
+    @Test
+    public void testWithinTolerance()
+                            throws Exception {
+        assertWithinTolerance( "EPSG:4326", "EPSG:25832", 5, 47, 15, 55, 1 );
+        assertWithinTolerance( "EPSG:4326", "EPSG:3857", -30, -60, 60, 70, 10 );
+    }
+
+    @Test
+    public void testOutsideGrid()
+                            throws Exception {
+        ICRS source = CRSManager.lookup( "EPSG:4326" );
+        ICRS target = CRSManager.lookup( "EPSG:25832" );
+        Transformation exact = CRSManager.getTransformation( null, source, target );
+        Envelope env = new GeometryFactory().createEnvelope( 5, 47, 15, 55, source );
+        GridTransformation approx = new GridTransformation( exact, source, target, env, 8, 1 );
+        Point3d expected = exact.doTransform( new Point3d( 20, 50, 0 ) );
+        Point3d actual = approx.doTransform( new Point3d( 20, 50, 0 ) );
+        assertEquals( expected.x, actual.x, 1e-6 );
+        assertEquals( expected.y, actual.y, 1e-6 );
+    }
+
+    private void assertWithinTolerance( String src, String tgt, double minx, double miny, double maxx, double maxy,
+                                        double tolerance )
+                            throws Exception {
+        ICRS source = CRSManager.lookup( src );
+        ICRS target = CRSManager.lookup( tgt );
+        Transformation exact = CRSManager.getTransformation( null, source, target );
+        Envelope env = new GeometryFactory().createEnvelope( minx, miny, maxx, maxy, source );
+        GridTransformation approx = new GridTransformation( exact, source, target, env, 32, tolerance );
+        for ( int i = 0; i < 1000; ++i ) {
+            double x = minx + rnd.nextDouble() * ( maxx - minx );
+            double y = miny + rnd.nextDouble() * ( maxy - miny );
+            Point3d expected = exact.doTransform( new Point3d( x, y, 0 ) );
+            Point3d actual = approx.doTransform( new Point3d( x, y, 0 ) );
+            assertEquals( expected.x, actual.x, tolerance );
+            assertEquals( expected.y, actual.y, tolerance );
+        }
+    }
+
+}
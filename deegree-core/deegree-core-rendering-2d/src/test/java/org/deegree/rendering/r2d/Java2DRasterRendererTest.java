@@ -0,0 +1,203 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.rendering.r2d;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.deegree.coverage.raster.geom.RasterGeoReference.OriginLocation.OUTER;
+import static org.junit.Assert.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import org.deegree.coverage.raster.AbstractRaster;
+import org.deegree.coverage.raster.SimpleRaster;
+import org.deegree.coverage.raster.data.RasterData;
+import org.deegree.coverage.raster.data.RasterDataFactory;
+import org.deegree.coverage.raster.data.info.DataType;
+import org.deegree.coverage.raster.geom.RasterGeoReference;
+import org.deegree.geometry.GeometryFactory;
+import org.deegree.style.styling.RasterStyling;
+import org.deegree.style.styling.RasterStyling.ShadedRelief;
+import org.deegree.style.utils.RasterDataUtility;
+import org.junit.Test;
+
+/**
+ * Tests the hill shading of {@link Java2DRasterRenderer} against the cell by cell implementation it replaced.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ *
+ * @version $Revision$, $Date$
+ */
+public class Java2DRasterRendererTest {
+
+    private final BufferedImage image = new BufferedImage( 1, 1, TYPE_INT_ARGB );
+
+    private final Java2DRasterRenderer renderer = new Java2DRasterRenderer( image.createGraphics() );
+
+    @Test
+    public void testHillShadingFloat() {
+        assertSameShades( createDem( 157, 93, DataType.FLOAT, 1 ), createStyle( null ) );
+    }
+
+    @Test
+    public void testHillShadingShort() {
+        assertSameShades( createDem( 120, 80, DataType.SHORT, 2 ), createStyle( null ) );
+    }
+
+    @Test
+    public void testHillShadingParameters() {
+        ShadedRelief shaded = new ShadedRelief();
+        shaded.azimuthAngle = 45;
+        shaded.alt = 30;
+        shaded.reliefFactor = 5;
+        assertSameShades( createDem( 64, 64, DataType.FLOAT, 3 ), createStyle( shaded ) );
+    }
+
+    @Test
+    public void testHillShadingInStripes() {
+        // large enough to be shaded in parallel stripes
+        assertSameShades( createDem( 300, 700, DataType.FLOAT, 4 ), createStyle( null ) );
+    }
+
+    @Test
+    public void testHillShadingSmallest() {
+        assertSameShades( createDem( 3, 3, DataType.FLOAT, 5 ), createStyle( null ) );
+    }
+
+    private void assertSameShades( AbstractRaster dem, RasterStyling style ) {
+        RasterData expected = performHillShadingCellByCell( dem, style );
+        RasterData actual = renderer.performHillShading( dem, style ).getAsSimpleRaster().getRasterData();
+        assertEquals( expected.getColumns(), actual.getColumns() );
+        assertEquals( expected.getRows(), actual.getRows() );
+        for ( int y = 0; y < expected.getRows(); ++y ) {
+            for ( int x = 0; x < expected.getColumns(); ++x ) {
+                assertEquals( "Shade at " + x + ", " + y, expected.getByteSample( x, y, 0 ),
+                              actual.getByteSample( x, y, 0 ) );
+            }
+        }
+    }
+
+    private static RasterStyling createStyle( ShadedRelief shaded ) {
+        RasterStyling style = new RasterStyling();
+        style.shaded = shaded == null ? new ShadedRelief() : shaded;
+        return style;
+    }
+
+    /**
+     * Hills, plateaus (flat cells and edges in one direction only) and noise.
+     */
+    private static AbstractRaster createDem( int cols, int rows, DataType type, long seed ) {
+        Random rnd = new Random( seed );
+        RasterData data = RasterDataFactory.createRasterData( cols, rows, type, false );
+        for ( int y = 0; y < rows; ++y ) {
+            for ( int x = 0; x < cols; ++x ) {
+                double z = 200 * Math.sin( x / 17.0 ) * Math.cos( y / 11.0 );
+                if ( ( x / 10 + y / 10 ) % 4 == 0 ) {
+                    z = 50;
+                } else if ( ( x / 10 ) % 5 == 0 ) {
+                    z = 10 * ( y / 7 );
+                } else {
+                    z += rnd.nextInt( 20 );
+                }
+                if ( type == DataType.FLOAT ) {
+                    data.setFloatSample( x, y, 0, (float) z );
+                } else {
+                    data.setShortSample( x, y, 0, (short) z );
+                }
+            }
+        }
+        RasterGeoReference ref = new RasterGeoReference( OUTER, 1, -1, 0, rows );
+        return new SimpleRaster( data, new GeometryFactory().createEnvelope( 0, 0, cols, rows, null ), ref, null );
+    }
+
+    /**
+     * The implementation hill shading was based on before the rows were shaded in stripes.
+     */
+    private static RasterData performHillShadingCellByCell( AbstractRaster raster, RasterStyling style ) {
+        int cols = raster.getColumns(), rows = raster.getRows();
+        RasterDataUtility data = new RasterDataUtility( raster, style.channelSelection );
+        RasterData shadeData = RasterDataFactory.createRasterData( cols - 2, rows - 2, DataType.BYTE, false );
+
+        final double zenith_rad = Math.toRadians( 90 - style.shaded.alt );
+        final double azimuth_rad = Math.toRadians( 90 - style.shaded.azimuthAngle );
+        final double sinZenith = Math.sin( zenith_rad );
+        final double cosZenith = Math.cos( zenith_rad );
+        double slope_rad;
+        double aspect_rad = 0;
+        double dx, dy;
+        float m[][] = new float[3][3];
+
+        for ( int row = 1; row < rows - 1; row++ ) {
+            for ( int col = 1; col < cols - 1; col++ ) {
+                m[0][0] = data.get( col - 1, row - 1 );
+                m[0][1] = data.get( col, row - 1 );
+                m[0][2] = data.get( col + 1, row - 1 );
+                m[1][0] = data.get( col - 1, row );
+                m[1][1] = data.get( col, row );
+                m[1][2] = data.get( col + 1, row );
+                m[2][0] = data.get( col - 1, row + 1 );
+                m[2][1] = data.get( col, row + 1 );
+                m[2][2] = data.get( col + 1, row + 1 );
+
+                dx = ( ( m[0][2] + 2 * m[1][2] + m[2][2] ) - ( m[0][0] + 2 * m[1][0] + m[2][0] ) ) / 8;
+                dy = ( ( m[2][0] + 2 * m[2][1] + m[2][2] ) - ( m[0][0] + 2 * m[0][1] + m[0][2] ) ) / 8;
+                slope_rad = Math.atan( style.shaded.reliefFactor * Math.sqrt( dx * dx + dy * dy ) );
+                if ( dx != 0 ) {
+                    aspect_rad = Math.atan2( dy, -dx );
+                    if ( aspect_rad < 0 )
+                        aspect_rad += Math.PI * 2;
+                }
+                if ( dx == 0 ) {
+                    if ( dy > 0 )
+                        aspect_rad = Math.PI / 2;
+                    else if ( dy < 0 )
+                        aspect_rad = 2 * Math.PI - Math.PI / 2;
+                    else
+                        aspect_rad = 0;
+                }
+
+                long val = Math.round( 255.0 * ( ( cosZenith * Math.cos( slope_rad ) ) + ( sinZenith
+                                                                                           * Math.sin( slope_rad ) * Math.cos( azimuth_rad
+                                                                                                                               - aspect_rad ) ) ) );
+                if ( val < 0 )
+                    val = 0;
+                shadeData.setByteSample( col - 1, row - 1, 0, (byte) val );
+            }
+        }
+        return shadeData;
+    }
+
+}
@@ -0,0 +1,135 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.rendering.r2d;
+
+import static java.awt.RenderingHints.KEY_ANTIALIASING;
+import static java.awt.RenderingHints.VALUE_ANTIALIAS_OFF;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.deegree.rendering.r2d.GeometryGenerator.randomCurve;
+import static org.deegree.rendering.r2d.GeometryGenerator.randomPoint;
+import static org.deegree.rendering.r2d.GeometryGenerator.randomTriangle;
+import static org.junit.Assert.assertArrayEquals;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.deegree.cs.persistence.CRSManager;
+import org.deegree.geometry.Envelope;
+import org.deegree.geometry.Geometry;
+import org.deegree.geometry.GeometryFactory;
+import org.deegree.style.styling.LineStyling;
+import org.deegree.style.styling.PointStyling;
+import org.deegree.style.styling.PolygonStyling;
+import org.deegree.style.styling.Styling;
+import org.junit.Test;
+
+/**
+ * Checks that batched rendering yields the same images as rendering the shapes one by one.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+public class ShapeBatchTest {
+
+    private static final int SIZE = 200;
+
+    private final Random rnd = new Random( 42 );
+
+    @Test
+    public void testLines() {
+        LineStyling styling = new LineStyling();
+        styling.stroke.color = Color.blue;
+        styling.stroke.width = 3;
+        List<Geometry> geoms = new ArrayList<Geometry>();
+        for ( int i = 0; i < 300; ++i ) {
+            geoms.add( randomCurve( 20, rnd.nextDouble() * 180, rnd.nextDouble() * 180 ) );
+        }
+        assertSameImage( styling, geoms );
+    }
+
+    @Test
+    public void testPolygons() {
+        PolygonStyling styling = new PolygonStyling();
+        styling.fill.color = new Color( 255, 0, 0, 128 );
+        styling.stroke.color = Color.black;
+        styling.stroke.width = 2;
+        List<Geometry> geoms = new ArrayList<Geometry>();
+        for ( int i = 0; i < 300; ++i ) {
+            geoms.add( randomTriangle( 10, rnd.nextDouble() * 190, rnd.nextDouble() * 190 ) );
+        }
+        assertSameImage( styling, geoms );
+    }
+
+    @Test
+    public void testMarks() {
+        PointStyling styling = new PointStyling();
+        styling.graphic.size = 8;
+        styling.graphic.mark.fill.color = Color.green;
+        styling.graphic.mark.stroke.color = Color.black;
+        List<Geometry> geoms = new ArrayList<Geometry>();
+        for ( int i = 0; i < 300; ++i ) {
+            geoms.add( randomPoint( 190, 5, 5 ) );
+        }
+        assertSameImage( styling, geoms );
+    }
+
+    private static void assertSameImage( Styling styling, List<Geometry> geoms ) {
+        int[] expected = render( styling, geoms, false );
+        int[] actual = render( styling, geoms, true );
+        assertArrayEquals( expected, actual );
+    }
+
+    private static int[] render( Styling styling, List<Geometry> geoms, boolean batching ) {
+        BufferedImage img = new BufferedImage( SIZE, SIZE, TYPE_INT_ARGB );
+        Graphics2D g = img.createGraphics();
+        g.setRenderingHint( KEY_ANTIALIASING, VALUE_ANTIALIAS_OFF );
+        Envelope bbox = new GeometryFactory().createEnvelope( 0, 0, SIZE, SIZE, CRSManager.getCRSRef( "CRS:1" ) );
+        Java2DRenderer renderer = new Java2DRenderer( g, SIZE, SIZE, bbox );
+        renderer.setBatching( batching );
+        for ( Geometry geom : geoms ) {
+            renderer.render( styling, geom );
+        }
+        renderer.flush();
+        g.dispose();
+        return img.getRGB( 0, 0, SIZE, SIZE, null, 0, SIZE );
+    }
+
+}
@@ -0,0 +1,215 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.rendering.r2d;
+
+import static java.awt.RenderingHints.KEY_ANTIALIASING;
+import static java.awt.RenderingHints.KEY_INTERPOLATION;
+import static java.awt.RenderingHints.VALUE_ANTIALIAS_OFF;
+import static java.awt.RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR;
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.deegree.style.styling.components.Mark.SimpleMark.CIRCLE;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.deegree.cs.coordinatesystems.ICRS;
+import org.deegree.cs.persistence.CRSManager;
+import org.deegree.geometry.Envelope;
+import org.deegree.geometry.Geometry;
+import org.deegree.geometry.GeometryFactory;
+import org.deegree.style.styling.PointStyling;
+import org.junit.Test;
+
+/**
+ * Checks that point symbols drawn from cached sprites look the same as symbols drawn directly, and how sprites are
+ * keyed and weighed.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+public class SpriteCacheTest {
+
+    private static final int SIZE = 200;
+
+    private static final ICRS CRS = CRSManager.getCRSRef( "CRS:1" );
+
+    private final Random rnd = new Random( 42 );
+
+    @Test
+    public void testSquares() {
+        PointStyling styling = new PointStyling();
+        styling.graphic.size = 8;
+        styling.graphic.mark.fill.color = Color.green;
+        styling.graphic.mark.stroke.color = Color.black;
+        assertSameImage( styling, randomPoints() );
+    }
+
+    @Test
+    public void testCircles() {
+        PointStyling styling = new PointStyling();
+        styling.graphic.size = 12;
+        styling.graphic.mark.wellKnown = CIRCLE;
+        styling.graphic.mark.fill.color = Color.red;
+        styling.graphic.mark.stroke.color = Color.blue;
+        styling.graphic.mark.stroke.width = 2;
+        assertSameImage( styling, randomPoints() );
+    }
+
+    @Test
+    public void testImages() {
+        PointStyling styling = new PointStyling();
+        styling.graphic.size = 14;
+        styling.graphic.image = randomSymbol();
+        assertSameImage( styling, randomPoints() );
+    }
+
+    @Test
+    public void testGraphicsKeyedByURL() {
+        SpriteCache cache = new SpriteCache( 1024 * 1024 );
+        PointStyling styling = new PointStyling();
+        styling.graphic.size = 14;
+        styling.graphic.image = randomSymbol();
+        styling.graphic.imageURL = "file:/symbols/symbol.png";
+        render( styling, randomPoints(), cache );
+        assertEquals( 1, cache.size() );
+        long bytes = cache.getBytes();
+
+        // a new image instance, as loaded by a new request, is found by its URL
+        PointStyling other = styling.copy();
+        other.graphic.image = randomSymbol();
+        render( other, randomPoints(), cache );
+        assertEquals( 1, cache.size() );
+        assertEquals( bytes, cache.getBytes() );
+    }
+
+    @Test
+    public void testInlineImageCountsInWeight() {
+        BufferedImage symbol = randomSymbol();
+        PointStyling styling = new PointStyling();
+        styling.graphic.size = 14;
+        styling.graphic.image = symbol;
+        styling.graphic.imageURL = "file:/symbols/symbol.png";
+        SpriteCache byUrl = new SpriteCache( 1024 * 1024 );
+        render( styling, randomPoints(), byUrl );
+
+        styling.graphic.imageURL = null;
+        SpriteCache byImage = new SpriteCache( 1024 * 1024 );
+        render( styling, randomPoints(), byImage );
+        assertEquals( 1, byImage.size() );
+        assertEquals( byUrl.getBytes() + SpriteCache.getBytes( symbol ), byImage.getBytes() );
+    }
+
+    @Test
+    public void testWeightBound() {
+        PointStyling styling = new PointStyling();
+        styling.graphic.size = 14;
+        styling.graphic.image = randomSymbol();
+        SpriteCache cache = new SpriteCache( 1024 * 1024 );
+        render( styling, randomPoints(), cache );
+        long bytes = cache.getBytes();
+
+        // room for two sprites only
+        cache = new SpriteCache( 2 * bytes );
+        for ( int i = 0; i < 3; ++i ) {
+            styling.graphic.image = randomSymbol();
+            render( styling, randomPoints(), cache );
+        }
+        assertEquals( 2, cache.size() );
+        assertEquals( 2 * bytes, cache.getBytes() );
+    }
+
+    @Test
+    public void testImageBytes() {
+        assertEquals( 4 * 5 * 7, SpriteCache.getBytes( new BufferedImage( 5, 7, TYPE_INT_ARGB ) ) );
+        assertEquals( 5 * 7, SpriteCache.getBytes( new BufferedImage( 5, 7, TYPE_BYTE_GRAY ) ) );
+    }
+
+    private BufferedImage randomSymbol() {
+        BufferedImage symbol = new BufferedImage( 5, 7, TYPE_INT_ARGB );
+        for ( int x = 0; x < 5; ++x ) {
+            for ( int y = 0; y < 7; ++y ) {
+                symbol.setRGB( x, y, rnd.nextInt() | 0xff000000 );
+            }
+        }
+        return symbol;
+    }
+
+    private List<Geometry> randomPoints() {
+        GeometryFactory fac = new GeometryFactory();
+        List<Geometry> geoms = new ArrayList<Geometry>();
+        for ( int i = 0; i < 300; ++i ) {
+            geoms.add( fac.createPoint( null, 10 + rnd.nextInt( 180 ), 10 + rnd.nextInt( 180 ), CRS ) );
+        }
+        return geoms;
+    }
+
+    private static void assertSameImage( PointStyling styling, List<Geometry> geoms ) {
+        int[] expected = render( styling, geoms, false );
+        int[] actual = render( styling, geoms, true );
+        assertArrayEquals( expected, actual );
+        // second run draws from the cache only
+        actual = render( styling, geoms, true );
+        assertArrayEquals( expected, actual );
+    }
+
+    private static int[] render( PointStyling styling, List<Geometry> geoms, boolean sprites ) {
+        return render( styling, geoms, sprites ? SpriteCache.INSTANCE : null );
+    }
+
+    private static int[] render( PointStyling styling, List<Geometry> geoms, SpriteCache sprites ) {
+        BufferedImage img = new BufferedImage( SIZE, SIZE, TYPE_INT_ARGB );
+        Graphics2D g = img.createGraphics();
+        g.setRenderingHint( KEY_ANTIALIASING, VALUE_ANTIALIAS_OFF );
+        g.setRenderingHint( KEY_INTERPOLATION, VALUE_INTERPOLATION_NEAREST_NEIGHBOR );
+        Envelope bbox = new GeometryFactory().createEnvelope( 0, 0, SIZE, SIZE, CRS );
+        Java2DRenderer renderer = new Java2DRenderer( g, SIZE, SIZE, bbox );
+        renderer.rendererContext.sprites = sprites;
+        for ( Geometry geom : geoms ) {
+            renderer.render( styling, geom );
+        }
+        g.dispose();
+        return img.getRGB( 0, 0, SIZE, SIZE, null, 0, SIZE );
+    }
+
+}
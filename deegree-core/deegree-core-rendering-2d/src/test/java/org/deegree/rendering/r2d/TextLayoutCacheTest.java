@@ -0,0 +1,149 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.rendering.r2d;
+
+import static java.awt.Font.PLAIN;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.awt.Font;
+import java.awt.font.FontRenderContext;
+import java.awt.font.TextLayout;
+import java.awt.geom.Rectangle2D;
+
+import org.deegree.rendering.r2d.TextLayoutCache.CachedLayout;
+import org.junit.Test;
+
+/**
+ * Tests the reuse and eviction of cached text layouts, and that they are shared between threads.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+public class TextLayoutCacheTest {
+
+    private static final FontRenderContext FRC = new FontRenderContext( null, true, true );
+
+    private static final Font FONT = new Font( "SansSerif", PLAIN, 12 );
+
+    @Test
+    public void testReuse() {
+        TextLayoutCache cache = new TextLayoutCache( 10 );
+        CachedLayout layout = cache.get( "Bonn", FONT, FRC );
+        assertSame( layout, cache.get( "Bonn", new Font( "SansSerif", PLAIN, 12 ), FRC ) );
+        assertNotSame( layout, cache.get( "Bonn", FONT.deriveFont( 14f ), FRC ) );
+        assertNotSame( layout, cache.get( "Bonn", FONT, new FontRenderContext( null, false, false ) ) );
+        assertSame( layout.getOutline(), layout.getOutline() );
+    }
+
+    @Test
+    public void testBoundsAndOutline() {
+        CachedLayout layout = new TextLayoutCache( 10 ).get( "Bonn", FONT, FRC );
+        TextLayout expected = new TextLayout( "Bonn", FONT, FRC );
+        assertEquals( expected.getBounds(), layout.getBounds() );
+        assertEquals( expected.getBounds().getWidth(), layout.getWidth(), 0 );
+        assertEquals( expected.getBounds().getHeight(), layout.getHeight(), 0 );
+        assertEquals( expected.getOutline( null ).getBounds2D(), layout.getOutline().getBounds2D() );
+    }
+
+    @Test
+    public void testBoundsNotModifiable() {
+        CachedLayout layout = new TextLayoutCache( 10 ).get( "Bonn", FONT, FRC );
+        Rectangle2D bounds = layout.getBounds();
+        double width = bounds.getWidth();
+        bounds.setRect( 0, 0, 1000, 1000 );
+        assertEquals( width, layout.getBounds().getWidth(), 0 );
+        assertEquals( width, layout.getWidth(), 0 );
+    }
+
+    @Test
+    public void testEviction() {
+        TextLayoutCache cache = new TextLayoutCache( 2 );
+        CachedLayout a = cache.get( "a", FONT, FRC );
+        cache.get( "b", FONT, FRC );
+        cache.get( "a", FONT, FRC );
+        cache.get( "c", FONT, FRC );
+        assertEquals( 2, cache.size() );
+        // "b" was least recently used
+        assertSame( a, cache.get( "a", FONT, FRC ) );
+    }
+
+    @Test
+    public void testSharedBetweenThreads()
+                            throws InterruptedException {
+        final TextLayoutCache cache = new TextLayoutCache( 10 );
+        CachedLayout layout = cache.get( "Bonn", FONT, FRC );
+        final CachedLayout[] other = new CachedLayout[2];
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                other[0] = cache.get( "Bonn", FONT, FRC );
+                other[1] = cache.get( "Koeln", FONT, FRC );
+            }
+        };
+        t.start();
+        t.join();
+        assertSame( layout, other[0] );
+        assertSame( other[1], cache.get( "Koeln", FONT, FRC ) );
+        assertEquals( 2, cache.size() );
+    }
+
+    @Test
+    public void testBoundedAcrossThreads()
+                            throws InterruptedException {
+        final TextLayoutCache cache = new TextLayoutCache( 5 );
+        Thread[] threads = new Thread[4];
+        for ( int i = 0; i < threads.length; ++i ) {
+            final int offset = i * 100;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for ( int j = 0; j < 50; ++j ) {
+                        cache.get( "label " + ( offset + j ), FONT, FRC );
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for ( Thread t : threads ) {
+            t.join();
+        }
+        assertEquals( 5, cache.size() );
+    }
+
+}
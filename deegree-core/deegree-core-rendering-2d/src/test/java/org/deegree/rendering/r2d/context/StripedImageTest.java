@@ -0,0 +1,177 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.rendering.r2d.context;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.deegree.cs.coordinatesystems.ICRS;
+import org.deegree.cs.persistence.CRSManager;
+import org.deegree.geometry.Envelope;
+import org.deegree.geometry.GeometryFactory;
+import org.deegree.style.styling.TextStyling;
+import org.deegree.style.utils.ImageUtils;
+import org.junit.Test;
+
+/**
+ * Tests that a {@link StripedImage} looks the same as the map rendered at once, in particular for labels placed near
+ * the stripe borders.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ *
+ * @version $Revision$, $Date$
+ */
+public class StripedImageTest {
+
+    private static final int WIDTH = 300;
+
+    private static final int HEIGHT = 2 * StripedImage.STRIPE_HEIGHT + 76;
+
+    private static final ICRS CRS = CRSManager.getCRSRef( "CRS:1" );
+
+    private final GeometryFactory fac = new GeometryFactory();
+
+    @Test
+    public void testStripedLabelsMatchSingleImage()
+                            throws Exception {
+        RenderingInfo info = createInfo();
+        LabelMapRenderer renderer = new LabelMapRenderer();
+
+        BufferedImage single = ImageUtils.prepareImage( info.getFormat(), WIDTH, HEIGHT, true, null );
+        RenderContext ctx = ImageRenderContext.createInstance( info, single, null );
+        renderer.render( ctx, info );
+        ctx.close();
+
+        StripedImage striped = new StripedImage( info, renderer );
+        BufferedImage stripedImage;
+        try {
+            striped.prepare();
+            stripedImage = striped.getAsBufferedImage();
+        } finally {
+            striped.dispose();
+        }
+
+        assertTrue( "Nothing was drawn.", countDrawn( single ) > 0 );
+        assertSameImage( single, stripedImage );
+    }
+
+    @Test
+    public void testLabelsArePlacedOnce()
+                            throws Exception {
+        final AtomicInteger labelPasses = new AtomicInteger();
+        StripedImage striped = new StripedImage( createInfo(), new LabelMapRenderer() {
+            @Override
+            public void renderLabels( RenderContext ctx, RenderingInfo info )
+                                    throws Exception {
+                labelPasses.incrementAndGet();
+                super.renderLabels( ctx, info );
+            }
+        } );
+        try {
+            striped.prepare();
+            striped.getAsBufferedImage();
+        } finally {
+            striped.dispose();
+        }
+        assertEquals( 1, labelPasses.get() );
+    }
+
+    private RenderingInfo createInfo() {
+        Envelope env = fac.createEnvelope( 0, 0, WIDTH, HEIGHT, CRS );
+        return new RenderingInfo( "image/png", WIDTH, HEIGHT, true, null, env, 0.28, new HashMap<String, String>() );
+    }
+
+    private static int countDrawn( BufferedImage img ) {
+        int cnt = 0;
+        for ( int y = 0; y < img.getHeight(); ++y ) {
+            for ( int x = 0; x < img.getWidth(); ++x ) {
+                if ( img.getRGB( x, y ) != 0 ) {
+                    ++cnt;
+                }
+            }
+        }
+        return cnt;
+    }
+
+    private static void assertSameImage( BufferedImage expected, BufferedImage actual ) {
+        assertEquals( expected.getWidth(), actual.getWidth() );
+        assertEquals( expected.getHeight(), actual.getHeight() );
+        for ( int y = 0; y < expected.getHeight(); ++y ) {
+            for ( int x = 0; x < expected.getWidth(); ++x ) {
+                assertEquals( "Pixel " + x + ", " + y, expected.getRGB( x, y ), actual.getRGB( x, y ) );
+            }
+        }
+    }
+
+    /**
+     * Creates crowded, automatically placed labels across the stripe borders and some fixed labels, the same way a
+     * feature layer does.
+     */
+    private class LabelMapRenderer implements StripedImage.StripeRenderer {
+
+        @Override
+        public void render( RenderContext ctx, RenderingInfo info )
+                                throws Exception {
+            for ( int border = StripedImage.STRIPE_HEIGHT; border < HEIGHT; border += StripedImage.STRIPE_HEIGHT ) {
+                // the y axis points up, the border row is at HEIGHT - border in world coordinates
+                double y = HEIGHT - border;
+                for ( int i = 0; i < 8; ++i ) {
+                    TextStyling styling = new TextStyling();
+                    styling.auto = true;
+                    ctx.getLabelRenderer().createLabel( styling, "Label " + i,
+                                                        fac.createPoint( null, 40 + i * 30, y + ( i % 3 - 1 ) * 4,
+                                                                         CRS ) );
+                }
+            }
+            TextStyling fixed = new TextStyling();
+            fixed.rotation = 30;
+            ctx.getLabelRenderer().createLabel( fixed, "Fixed", fac.createPoint( null, 150, HEIGHT - 508, CRS ) );
+            ctx.getLabelRenderer().createLabel( fixed, "Far away", fac.createPoint( null, 150, 10, CRS ) );
+            ctx.optimizeAndDrawLabels();
+        }
+
+        @Override
+        public void renderLabels( RenderContext ctx, RenderingInfo info )
+                                throws Exception {
+            render( ctx, info );
+        }
+    }
+
+}
@@ -0,0 +1,205 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.rendering.r2d.labelplacement;
+
+import static java.awt.Font.PLAIN;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Font;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.deegree.cs.coordinatesystems.ICRS;
+import org.deegree.cs.persistence.CRSManager;
+import org.deegree.geometry.GeometryFactory;
+import org.deegree.rendering.r2d.Java2DLabelRenderer;
+import org.deegree.rendering.r2d.Java2DRenderer;
+import org.deegree.rendering.r2d.Java2DTextRenderer;
+import org.deegree.rendering.r2d.Label;
+import org.deegree.style.styling.TextStyling;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link AutoLabelPlacement}: the collision candidates found using the grid, and the resolution of overlaps.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+public class AutoLabelPlacementTest {
+
+    private static final int SIZE = 1000;
+
+    private static final ICRS CRS = CRSManager.getCRSRef( "CRS:1" );
+
+    private static final Font FONT = new Font( "SansSerif", PLAIN, 12 );
+
+    private final GeometryFactory fac = new GeometryFactory();
+
+    private Java2DRenderer renderer;
+
+    private Java2DLabelRenderer labelRenderer;
+
+    @Before
+    public void setup() {
+        BufferedImage img = new BufferedImage( SIZE, SIZE, TYPE_INT_ARGB );
+        renderer = new Java2DRenderer( img.createGraphics(), SIZE, SIZE, fac.createEnvelope( 0, 0, SIZE, SIZE, CRS ) );
+        labelRenderer = new Java2DLabelRenderer( renderer, new Java2DTextRenderer( renderer ) );
+    }
+
+    @Test
+    public void testNeighboursMatchPairwiseTests()
+                            throws Exception {
+        Random rnd = new Random( 42 );
+        List<Label> labels = new ArrayList<Label>();
+        for ( int i = 0; i < 300; ++i ) {
+            TextStyling styling = createStyling();
+            if ( i % 10 == 0 ) {
+                styling.rotation = rnd.nextInt( 360 );
+            }
+            styling.displacementX = rnd.nextInt( 10 );
+            styling.displacementY = rnd.nextInt( 10 );
+            labels.add( createLabel( styling, "Label " + i, rnd.nextDouble() * SIZE, rnd.nextDouble() * SIZE ) );
+        }
+        List<PointLabelPositionOptions> options = new ArrayList<PointLabelPositionOptions>();
+        for ( Label l : labels ) {
+            options.add( new PointLabelPositionOptions( l, renderer.rendererContext.uomCalculator ) );
+        }
+
+        AutoLabelPlacement placement = new AutoLabelPlacement( labels, renderer, 0, new Random( 1 ) );
+
+        int candidates = 0;
+        for ( int i = 0; i < options.size(); ++i ) {
+            Set<Integer> expected = new HashSet<Integer>();
+            for ( int j = 0; j < options.size(); ++j ) {
+                if ( j != i && options.get( i ).intersectsAny( options.get( j ) ) ) {
+                    expected.add( j );
+                }
+            }
+            Set<Integer> actual = new HashSet<Integer>();
+            for ( int j : placement.getNeighbours( i ) ) {
+                assertTrue( "Label " + j + " is listed twice as neighbour of " + i, actual.add( j ) );
+            }
+            assertEquals( "Neighbours of label " + i, expected, actual );
+            candidates += actual.size();
+        }
+        // the layout is dense enough to have collisions, but far from all pairs collide
+        assertTrue( candidates > 0 );
+        assertTrue( candidates < options.size() * ( options.size() - 1 ) / 10 );
+    }
+
+    @Test
+    public void testNoNeighboursForDistantLabels()
+                            throws Exception {
+        List<Label> labels = new ArrayList<Label>();
+        for ( int i = 0; i < 4; ++i ) {
+            labels.add( createLabel( createStyling(), "Label", 100 + i * 250, 500 ) );
+        }
+        AutoLabelPlacement placement = new AutoLabelPlacement( labels, renderer, 0, new Random( 1 ) );
+        for ( int i = 0; i < labels.size(); ++i ) {
+            assertEquals( 0, placement.getNeighbours( i ).length );
+        }
+    }
+
+    @Test
+    public void testOverlapsResolved()
+                            throws Exception {
+        // pairs of points 5 pixels apart, the labels overlap in their initial position
+        List<Label> labels = new ArrayList<Label>();
+        for ( int i = 0; i < 6; ++i ) {
+            double x = 50 + ( i % 4 ) * 250;
+            double y = 900 - ( i / 4 ) * 200;
+            labels.add( createLabel( createStyling(), "Label", x, y ) );
+            labels.add( createLabel( createStyling(), "Label", x, y - 5 ) );
+        }
+        assertTrue( overlaps( labels.get( 0 ), labels.get( 1 ) ) );
+
+        new AutoLabelPlacement( labels, renderer, 0, new Random( 1 ) );
+
+        for ( int i = 0; i < labels.size(); ++i ) {
+            for ( int j = i + 1; j < labels.size(); ++j ) {
+                assertFalse( "Labels " + i + " and " + j + " overlap.", overlaps( labels.get( i ), labels.get( j ) ) );
+            }
+        }
+    }
+
+    @Test
+    public void testSeededPlacementIsReproducible()
+                            throws Exception {
+        List<Label> first = new ArrayList<Label>();
+        List<Label> second = new ArrayList<Label>();
+        Random rnd = new Random( 7 );
+        for ( int i = 0; i < 100; ++i ) {
+            double x = rnd.nextDouble() * SIZE, y = rnd.nextDouble() * SIZE;
+            first.add( createLabel( createStyling(), "Label " + i, x, y ) );
+            second.add( createLabel( createStyling(), "Label " + i, x, y ) );
+        }
+        new AutoLabelPlacement( first, renderer, 0, new Random( 3 ) );
+        new AutoLabelPlacement( second, renderer, 0, new Random( 3 ) );
+        for ( int i = 0; i < first.size(); ++i ) {
+            assertEquals( first.get( i ).getDrawPosition(), second.get( i ).getDrawPosition() );
+        }
+    }
+
+    private static TextStyling createStyling() {
+        TextStyling styling = new TextStyling();
+        styling.auto = true;
+        styling.anchorPointX = 0;
+        styling.anchorPointY = 0;
+        return styling;
+    }
+
+    private Label createLabel( TextStyling styling, String text, double x, double y ) {
+        return labelRenderer.createLabel( styling, FONT, text, fac.createPoint( null, x, y, CRS ) );
+    }
+
+    private static boolean overlaps( Label a, Label b ) {
+        Point2D.Double pa = a.getDrawPosition();
+        Point2D.Double pb = b.getDrawPosition();
+        return pa.x < pb.x + b.getWidth() && pa.x + a.getWidth() > pb.x && pa.y - a.getHeight() < pb.y
+               && pa.y > pb.y - b.getHeight();
+    }
+
+}
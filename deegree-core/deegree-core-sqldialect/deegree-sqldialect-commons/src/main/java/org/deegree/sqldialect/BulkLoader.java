@@ -0,0 +1,103 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.sqldialect;
+
+import java.sql.SQLException;
+import java.util.List;
+
+import org.deegree.commons.jdbc.SQLIdentifier;
+import org.deegree.commons.jdbc.TableName;
+
+/**
+ * Loads rows into database tables using a database specific bulk load mechanism (e.g. PostgreSQL's
+ * <code>COPY</code>), which is considerably faster than (batched) <code>INSERT</code> statements.
+ * <p>
+ * Bulk loading bypasses the value expressions of <code>INSERT</code> statements, so the loader has to understand the
+ * expressions (as produced by the particle converters of the dialect) of the values. Additionally, database generated
+ * values can not be retrieved, so keys have to be allocated in advance (see {@link #getColumnSequence}).
+ * </p>
+ * 
+ * @see SQLDialect#getBulkLoader(java.sql.Connection)
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+public interface BulkLoader {
+
+    /**
+     * Returns the name of the sequence that generates the default values of the given column (e.g. for serial
+     * columns).
+     * 
+     * @param table
+     *            table, must not be <code>null</code>
+     * @param column
+     *            column of the table, must not be <code>null</code>
+     * @return name of the sequence, <code>null</code> if the values of the column are not generated by a sequence
+     * @throws SQLException
+     */
+    String getColumnSequence( TableName table, SQLIdentifier column )
+                            throws SQLException;
+
+    /**
+     * Returns whether rows with the given value expressions can be bulk loaded.
+     * 
+     * @param valueExpressions
+     *            value expressions of the columns, as used in the <code>VALUES</code> clause of an <code>INSERT</code>
+     *            statement (with <code>?</code> as parameter placeholders), must not be <code>null</code>
+     * @return <code>true</code>, if the rows can be loaded, <code>false</code> otherwise
+     */
+    boolean canLoad( List<String> valueExpressions );
+
+    /**
+     * Loads the given rows into the specified table.
+     * 
+     * @param table
+     *            target table, must not be <code>null</code>
+     * @param columns
+     *            target columns, must not be <code>null</code>
+     * @param valueExpressions
+     *            value expressions of the columns (see {@link #canLoad(List)}), must not be <code>null</code>
+     * @param rows
+     *            parameter values of the rows (one value per placeholder in the value expressions, as they would be
+     *            passed to {@link java.sql.PreparedStatement#setObject(int, Object)}), must not be <code>null</code>
+     * @return number of loaded rows
+     * @throws SQLException
+     */
+    long load( TableName table, List<SQLIdentifier> columns, List<String> valueExpressions, List<Object[]> rows )
+                            throws SQLException;
+
+}
@@ -212,4 +212,52 @@ public interface SQLDialect {
      */
     String getSelectSequenceNextVal( String sequence );
 
+    /**
+     * Returns a <code>SELECT</code> statement for retrieving several subsequent values of the specified DB sequence at
+     * once (one value per row).
+     * 
+     * @param sequence
+     *            name of the database sequence, must not be <code>null</code>
+     * @param count
+     *            number of values to retrieve, must be greater than zero
+     * @return SQL <code>SELECT</code> statement, never <code>null</code>
+     */
+    String getSelectSequenceNextVals( String sequence, int count );
+
+    /**
+     * Returns the maximum number of rows that may be inserted using a single multi-row
+     * <code>INSERT ... VALUES (...),(...)</code> statement.
+     * 
+     * @param paramsPerRow
+     *            number of statement parameters per row
+     * @return maximum number of rows per statement, 1 if multi-row inserts are not supported
+     */
+    int getMaxRowsPerInsert( int paramsPerRow );
+
+    /**
+     * Returns a loader for bulk loading rows using the given connection.
+     * 
+     * @param conn
+     *            JDBC connection, must not be <code>null</code>
+     * @return bulk loader, <code>null</code> if the database (or the connection) does not support bulk loading
+     */
+    BulkLoader getBulkLoader( Connection conn );
+
+    /**
+     * Restricts the given <code>SELECT</code> statement to a window of the rows it returns.
+     * 
+     * @param select
+     *            complete <code>SELECT</code> statement (including the <code>ORDER BY</code> clause, if any), must not
+     *            be <code>null</code>
+     * @param ordered
+     *            <code>true</code>, if the statement contains an <code>ORDER BY</code> clause, <code>false</code>
+     *            otherwise
+     * @param offset
+     *            number of rows to skip, 0 to start with the first row
+     * @param limit
+     *            maximum number of rows to return, values smaller than 1 mean no limit
+     * @return <code>SELECT</code> statement that only returns the rows of the window, never <code>null</code>
+     */
+    String getPagedSelect( String select, boolean ordered, int offset, int limit );
+
 }
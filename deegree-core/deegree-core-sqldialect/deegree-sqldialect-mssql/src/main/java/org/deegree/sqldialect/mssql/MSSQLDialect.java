@@ -56,6 +56,7 @@ import org.deegree.filter.sort.SortProperty;
 import org.deegree.geometry.Envelope;
 import org.deegree.geometry.GeometryFactory;
 import org.deegree.geometry.utils.GeometryParticleConverter;
+import org.deegree.sqldialect.BulkLoader;
 import org.deegree.sqldialect.SQLDialect;
 import org.deegree.sqldialect.filter.AbstractWhereBuilder;
 import org.deegree.sqldialect.filter.PropertyNameMapper;
@@ -78,6 +79,9 @@ public class MSSQLDialect implements SQLDialect {
 
     private static Logger LOG = LoggerFactory.getLogger( MSSQLDialect.class );
 
+    // SQL Server rejects statements with 2100 or more parameters, keep a safety margin
+    private static final int MAX_PARAMETERS = 2000;
+
     @Override
     public int getMaxColumnNameLength() {
         return 128;
@@ -197,4 +201,46 @@ public class MSSQLDialect implements SQLDialect {
                                                  "Using DB sequences for FIDs is currently not supported on Microsoft SQL Server." );
     }
 
+    @Override
+    public String getSelectSequenceNextVals( String sequence, int count ) {
+        return getSelectSequenceNextVal( sequence );
+    }
+
+    /**
+     * Table value constructors are limited to 1000 rows and statements to less than 2100 parameters.
+     */
+    @Override
+    public int getMaxRowsPerInsert( int paramsPerRow ) {
+        return Math.max( 1, Math.min( 1000, MAX_PARAMETERS / Math.max( 1, paramsPerRow ) ) );
+    }
+
+    /**
+     * Uses <code>OFFSET ... FETCH</code>, which requires SQL Server 2012 or later.
+     */
+    @Override
+    public String getPagedSelect( String select, boolean ordered, int offset, int limit ) {
+        if ( offset <= 0 && limit <= 0 ) {
+            return select;
+        }
+        StringBuilder sql = new StringBuilder( select );
+        if ( !ordered ) {
+            // OFFSET/FETCH is only allowed after an ORDER BY clause
+            sql.append( " ORDER BY (SELECT NULL)" );
+        }
+        sql.append( " OFFSET " );
+        sql.append( Math.max( 0, offset ) );
+        sql.append( " ROWS" );
+        if ( limit > 0 ) {
+            sql.append( " FETCH NEXT " );
+            sql.append( limit );
+            sql.append( " ROWS ONLY" );
+        }
+        return sql.toString();
+    }
+
+    @Override
+    public BulkLoader getBulkLoader( Connection conn ) {
+        return null;
+    }
+
 }
@@ -0,0 +1,87 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.sqldialect.mssql;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Tests for the paged <code>SELECT</code> statements of {@link MSSQLDialect}.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+public class MSSQLDialectTest {
+
+    private static final String SELECT = "SELECT X1.id,X1.name FROM roads X1 WHERE X1.lanes > ?";
+
+    private static final String ORDERED = SELECT + " ORDER BY X1.name,X1.id";
+
+    private static final String UNORDERED = SELECT + " ORDER BY (SELECT NULL)";
+
+    private final MSSQLDialect dialect = new MSSQLDialect();
+
+    @Test
+    public void testNoPaging() {
+        assertEquals( SELECT, dialect.getPagedSelect( SELECT, false, 0, -1 ) );
+        assertEquals( ORDERED, dialect.getPagedSelect( ORDERED, true, 0, 0 ) );
+    }
+
+    @Test
+    public void testLimitOnly() {
+        assertEquals( UNORDERED + " OFFSET 0 ROWS FETCH NEXT 10 ROWS ONLY",
+                      dialect.getPagedSelect( SELECT, false, 0, 10 ) );
+        assertEquals( ORDERED + " OFFSET 0 ROWS FETCH NEXT 10 ROWS ONLY",
+                      dialect.getPagedSelect( ORDERED, true, 0, 10 ) );
+    }
+
+    @Test
+    public void testOffsetOnly() {
+        assertEquals( UNORDERED + " OFFSET 20 ROWS", dialect.getPagedSelect( SELECT, false, 20, -1 ) );
+        assertEquals( ORDERED + " OFFSET 20 ROWS", dialect.getPagedSelect( ORDERED, true, 20, -1 ) );
+    }
+
+    @Test
+    public void testOffsetAndLimit() {
+        assertEquals( UNORDERED + " OFFSET 20 ROWS FETCH NEXT 10 ROWS ONLY",
+                      dialect.getPagedSelect( SELECT, false, 20, 10 ) );
+        assertEquals( ORDERED + " OFFSET 20 ROWS FETCH NEXT 10 ROWS ONLY",
+                      dialect.getPagedSelect( ORDERED, true, 20, 10 ) );
+    }
+
+}
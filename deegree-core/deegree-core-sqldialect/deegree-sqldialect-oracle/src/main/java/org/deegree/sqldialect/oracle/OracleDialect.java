@@ -65,6 +65,7 @@ import org.deegree.geometry.Envelope;
 import org.deegree.geometry.Geometry;
 import org.deegree.geometry.GeometryFactory;
 import org.deegree.geometry.utils.GeometryParticleConverter;
+import org.deegree.sqldialect.BulkLoader;
 import org.deegree.sqldialect.SQLDialect;
 import org.deegree.sqldialect.filter.AbstractWhereBuilder;
 import org.deegree.sqldialect.filter.PropertyNameMapper;
@@ -267,4 +268,62 @@ public class OracleDialect implements SQLDialect {
         return "SELECT " + sequence + ".NEXTVAL from DUAL";
     }
 
+    @Override
+    public String getSelectSequenceNextVals( String sequence, int count ) {
+        return "SELECT " + sequence + ".NEXTVAL from DUAL CONNECT BY LEVEL <= " + count;
+    }
+
+    /**
+     * Oracle does not support multi-row <code>VALUES</code> clauses.
+     */
+    @Override
+    public int getMaxRowsPerInsert( int paramsPerRow ) {
+        return 1;
+    }
+
+    /**
+     * Uses <code>OFFSET ... FETCH</code> for Oracle 12 and later, <code>ROWNUM</code> for older versions.
+     */
+    @Override
+    public String getPagedSelect( String select, boolean ordered, int offset, int limit ) {
+        if ( offset <= 0 && limit <= 0 ) {
+            return select;
+        }
+        StringBuilder sql = new StringBuilder();
+        if ( versionMajor >= 12 ) {
+            sql.append( select );
+            sql.append( " OFFSET " );
+            sql.append( Math.max( 0, offset ) );
+            sql.append( " ROWS" );
+            if ( limit > 0 ) {
+                sql.append( " FETCH NEXT " );
+                sql.append( limit );
+                sql.append( " ROWS ONLY" );
+            }
+        } else if ( offset <= 0 ) {
+            // ROWNUM is assigned before ORDER BY is applied, so the ordered statement has to be nested
+            sql.append( "SELECT * FROM (" );
+            sql.append( select );
+            sql.append( ") WHERE ROWNUM <= " );
+            sql.append( limit );
+        } else {
+            // the row number column is appended, so the column indexes of the original statement stay valid
+            sql.append( "SELECT * FROM (SELECT PAGED_.*, ROWNUM RNUM_ FROM (" );
+            sql.append( select );
+            sql.append( ") PAGED_" );
+            if ( limit > 0 ) {
+                sql.append( " WHERE ROWNUM <= " );
+                sql.append( (long) offset + limit );
+            }
+            sql.append( ") WHERE RNUM_ > " );
+            sql.append( offset );
+        }
+        return sql.toString();
+    }
+
+    @Override
+    public BulkLoader getBulkLoader( Connection conn ) {
+        return null;
+    }
+
 }
@@ -0,0 +1,114 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.sqldialect.oracle;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Tests for the paged <code>SELECT</code> statements of {@link OracleDialect}, using <code>OFFSET ... FETCH</code>
+ * (Oracle 12 and later) or <code>ROWNUM</code> (older versions).
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+public class OracleDialectTest {
+
+    private static final String SELECT = "SELECT X1.id,X1.name FROM roads X1 WHERE X1.lanes > ?";
+
+    private static final String ORDERED = SELECT + " ORDER BY X1.name,X1.id";
+
+    private final OracleDialect oracle12 = new OracleDialect( "APP", 12, 1 );
+
+    private final OracleDialect oracle11 = new OracleDialect( "APP", 11, 2 );
+
+    @Test
+    public void testNoPaging() {
+        for ( OracleDialect dialect : new OracleDialect[] { oracle11, oracle12 } ) {
+            assertEquals( SELECT, dialect.getPagedSelect( SELECT, false, 0, -1 ) );
+            assertEquals( ORDERED, dialect.getPagedSelect( ORDERED, true, 0, 0 ) );
+        }
+    }
+
+    @Test
+    public void testOffsetFetch() {
+        assertEquals( ORDERED + " OFFSET 0 ROWS FETCH NEXT 10 ROWS ONLY",
+                      oracle12.getPagedSelect( ORDERED, true, 0, 10 ) );
+        assertEquals( ORDERED + " OFFSET 20 ROWS", oracle12.getPagedSelect( ORDERED, true, 20, -1 ) );
+        assertEquals( ORDERED + " OFFSET 20 ROWS FETCH NEXT 10 ROWS ONLY",
+                      oracle12.getPagedSelect( ORDERED, true, 20, 10 ) );
+        // unlike SQL Server, Oracle does not require an ORDER BY clause
+        assertEquals( SELECT + " OFFSET 20 ROWS FETCH NEXT 10 ROWS ONLY",
+                      oracle12.getPagedSelect( SELECT, false, 20, 10 ) );
+    }
+
+    @Test
+    public void testRownumLimitOnly() {
+        // the ordered statement is nested, as ROWNUM is assigned before the rows are sorted
+        assertEquals( "SELECT * FROM (" + ORDERED + ") WHERE ROWNUM <= 10",
+                      oracle11.getPagedSelect( ORDERED, true, 0, 10 ) );
+        assertEquals( "SELECT * FROM (" + SELECT + ") WHERE ROWNUM <= 10",
+                      oracle11.getPagedSelect( SELECT, false, 0, 10 ) );
+    }
+
+    @Test
+    public void testRownumOffsetOnly() {
+        assertEquals( "SELECT * FROM (SELECT PAGED_.*, ROWNUM RNUM_ FROM (" + ORDERED + ") PAGED_) WHERE RNUM_ > 20",
+                      oracle11.getPagedSelect( ORDERED, true, 20, -1 ) );
+        assertEquals( "SELECT * FROM (SELECT PAGED_.*, ROWNUM RNUM_ FROM (" + SELECT + ") PAGED_) WHERE RNUM_ > 20",
+                      oracle11.getPagedSelect( SELECT, false, 20, 0 ) );
+    }
+
+    @Test
+    public void testRownumOffsetAndLimit() {
+        assertEquals( "SELECT * FROM (SELECT PAGED_.*, ROWNUM RNUM_ FROM (" + ORDERED
+                      + ") PAGED_ WHERE ROWNUM <= 30) WHERE RNUM_ > 20",
+                      oracle11.getPagedSelect( ORDERED, true, 20, 10 ) );
+        assertEquals( "SELECT * FROM (SELECT PAGED_.*, ROWNUM RNUM_ FROM (" + SELECT
+                      + ") PAGED_ WHERE ROWNUM <= 30) WHERE RNUM_ > 20",
+                      oracle11.getPagedSelect( SELECT, false, 20, 10 ) );
+    }
+
+    @Test
+    public void testRownumUpperBoundDoesNotOverflow() {
+        assertEquals( "SELECT * FROM (SELECT PAGED_.*, ROWNUM RNUM_ FROM (" + SELECT + ") PAGED_ WHERE ROWNUM <= "
+                      + ( Integer.MAX_VALUE + 10L ) + ") WHERE RNUM_ > " + Integer.MAX_VALUE,
+                      oracle11.getPagedSelect( SELECT, false, Integer.MAX_VALUE, 10 ) );
+    }
+
+}
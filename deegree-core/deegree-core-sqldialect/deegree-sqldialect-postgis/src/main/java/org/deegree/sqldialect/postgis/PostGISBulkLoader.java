@@ -0,0 +1,306 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.sqldialect.postgis;
+
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.deegree.commons.jdbc.SQLIdentifier;
+import org.deegree.commons.jdbc.TableName;
+import org.deegree.commons.utils.JDBCUtils;
+import org.deegree.sqldialect.BulkLoader;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link BulkLoader} that streams rows using PostgreSQL's <code>COPY ... FROM STDIN</code>.
+ * <p>
+ * The rows are sent in the text format of <code>COPY</code>. Geometries (as produced by
+ * {@link PostGISGeometryConverter}) are sent as hex encoded EWKB, so they are passed to PostGIS in binary form without
+ * any conversion to WKT.
+ * </p>
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+class PostGISBulkLoader implements BulkLoader {
+
+    private static final Logger LOG = LoggerFactory.getLogger( PostGISBulkLoader.class );
+
+    private static final Charset UTF8 = Charset.forName( "UTF-8" );
+
+    // geometry expressions of PostGISGeometryConverter
+    private static final Pattern GEOMETRY_EXPR = Pattern.compile( "(?:ST_)?SetSRID\\((?:ST_)?GeomFromWKB\\(\\?\\),"
+                                                                  + "(-?\\d+)\\)" );
+
+    private static final Pattern NUMBER_EXPR = Pattern.compile( "-?\\d+(\\.\\d+)?" );
+
+    private static final int BUFFER_SIZE = 65536;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    // flag for EWKB geometries with embedded SRID
+    private static final int EWKB_SRID_FLAG = 0x20000000;
+
+    private final Connection conn;
+
+    private final CopyManager copyManager;
+
+    private final Map<String, String> columnToSequence = new HashMap<String, String>();
+
+    PostGISBulkLoader( Connection conn, CopyManager copyManager ) {
+        this.conn = conn;
+        this.copyManager = copyManager;
+    }
+
+    @Override
+    public String getColumnSequence( TableName table, SQLIdentifier column )
+                            throws SQLException {
+        String columnName = column.isEscaped() ? column.getName() : column.getName().toLowerCase();
+        String key = table + "." + columnName;
+        if ( columnToSequence.containsKey( key ) ) {
+            return columnToSequence.get( key );
+        }
+        String sequence = null;
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+        try {
+            stmt = conn.prepareStatement( "SELECT pg_get_serial_sequence(?,?)" );
+            stmt.setString( 1, table.toString() );
+            stmt.setString( 2, columnName );
+            rs = stmt.executeQuery();
+            if ( rs.next() ) {
+                sequence = rs.getString( 1 );
+            }
+        } finally {
+            JDBCUtils.close( rs, stmt, null, LOG );
+        }
+        LOG.debug( "Sequence for column '" + key + "': " + sequence );
+        columnToSequence.put( key, sequence );
+        return sequence;
+    }
+
+    @Override
+    public boolean canLoad( List<String> valueExpressions ) {
+        for ( String expr : valueExpressions ) {
+            if ( !"?".equals( expr ) && !GEOMETRY_EXPR.matcher( expr ).matches()
+                 && !NUMBER_EXPR.matcher( expr ).matches() ) {
+                LOG.debug( "Value expression '" + expr + "' can not be bulk loaded." );
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public long load( TableName table, List<SQLIdentifier> columns, List<String> valueExpressions, List<Object[]> rows )
+                            throws SQLException {
+
+        // srid for geometry columns, null for plain parameters, literal for constant values
+        List<Object> columnTypes = new ArrayList<Object>( valueExpressions.size() );
+        for ( String expr : valueExpressions ) {
+            Matcher m = GEOMETRY_EXPR.matcher( expr );
+            if ( m.matches() ) {
+                columnTypes.add( Integer.valueOf( m.group( 1 ) ) );
+            } else if ( "?".equals( expr ) ) {
+                columnTypes.add( null );
+            } else if ( NUMBER_EXPR.matcher( expr ).matches() ) {
+                columnTypes.add( expr );
+            } else {
+                throw new SQLException( "Value expression '" + expr + "' can not be bulk loaded." );
+            }
+        }
+
+        StringBuilder sql = new StringBuilder( "COPY " );
+        sql.append( table );
+        sql.append( " (" );
+        for ( int i = 0; i < columns.size(); i++ ) {
+            if ( i > 0 ) {
+                sql.append( ',' );
+            }
+            sql.append( columns.get( i ) );
+        }
+        sql.append( ") FROM STDIN" );
+        LOG.debug( "Loading " + rows.size() + " rows: " + sql );
+
+        CopyIn copyIn = copyManager.copyIn( sql.toString() );
+        try {
+            StringBuilder sb = new StringBuilder( BUFFER_SIZE );
+            for ( Object[] row : rows ) {
+                appendRow( sb, columnTypes, row );
+                if ( sb.length() >= BUFFER_SIZE ) {
+                    write( copyIn, sb );
+                }
+            }
+            write( copyIn, sb );
+            return copyIn.endCopy();
+        } finally {
+            if ( copyIn.isActive() ) {
+                copyIn.cancelCopy();
+            }
+        }
+    }
+
+    private void write( CopyIn copyIn, StringBuilder sb )
+                            throws SQLException {
+        if ( sb.length() > 0 ) {
+            byte[] bytes = sb.toString().getBytes( UTF8 );
+            copyIn.writeToCopy( bytes, 0, bytes.length );
+            sb.setLength( 0 );
+        }
+    }
+
+    private void appendRow( StringBuilder sb, List<Object> columnTypes, Object[] row ) {
+        int param = 0;
+        for ( int i = 0; i < columnTypes.size(); i++ ) {
+            if ( i > 0 ) {
+                sb.append( '\t' );
+            }
+            Object type = columnTypes.get( i );
+            if ( type instanceof String ) {
+                sb.append( (String) type );
+                continue;
+            }
+            Object value = row[param++];
+            if ( value == null ) {
+                sb.append( "\\N" );
+            } else if ( type instanceof Integer ) {
+                appendEwkb( sb, (byte[]) value, (Integer) type );
+            } else {
+                appendValue( sb, value );
+            }
+        }
+        sb.append( '\n' );
+    }
+
+    private void appendValue( StringBuilder sb, Object value ) {
+        if ( value instanceof byte[] ) {
+            // bytea hex format, backslash is escaped for COPY
+            sb.append( "\\\\x" );
+            appendHex( sb, (byte[]) value, 0, ( (byte[]) value ).length );
+        } else if ( value instanceof Boolean ) {
+            sb.append( ( (Boolean) value ) ? 't' : 'f' );
+        } else if ( value instanceof Number ) {
+            sb.append( value instanceof BigDecimal ? ( (BigDecimal) value ).toPlainString() : value.toString() );
+        } else if ( value instanceof Date && !( value instanceof java.sql.Date || value instanceof java.sql.Time ) ) {
+            sb.append( new Timestamp( ( (Date) value ).getTime() ).toString() );
+        } else {
+            appendEscaped( sb, value.toString() );
+        }
+    }
+
+    /**
+     * Appends the given WKB as hex encoded EWKB with the given SRID.
+     */
+    static void appendEwkb( StringBuilder sb, byte[] wkb, int srid ) {
+        if ( srid <= 0 || wkb.length < 5 ) {
+            appendHex( sb, wkb, 0, wkb.length );
+            return;
+        }
+        boolean littleEndian = wkb[0] == 1;
+        int type = readInt( wkb, 1, littleEndian ) | EWKB_SRID_FLAG;
+        byte[] header = new byte[9];
+        header[0] = wkb[0];
+        writeInt( header, 1, type, littleEndian );
+        writeInt( header, 5, srid, littleEndian );
+        appendHex( sb, header, 0, header.length );
+        appendHex( sb, wkb, 5, wkb.length - 5 );
+    }
+
+    private static int readInt( byte[] bytes, int off, boolean littleEndian ) {
+        int value = 0;
+        for ( int i = 0; i < 4; i++ ) {
+            int b = bytes[off + ( littleEndian ? 3 - i : i )] & 0xff;
+            value = ( value << 8 ) | b;
+        }
+        return value;
+    }
+
+    private static void writeInt( byte[] bytes, int off, int value, boolean littleEndian ) {
+        for ( int i = 0; i < 4; i++ ) {
+            byte b = (byte) ( value >>> ( 24 - 8 * i ) );
+            bytes[off + ( littleEndian ? 3 - i : i )] = b;
+        }
+    }
+
+    private static void appendHex( StringBuilder sb, byte[] bytes, int off, int len ) {
+        for ( int i = off; i < off + len; i++ ) {
+            sb.append( HEX[( bytes[i] >> 4 ) & 0x0f] );
+            sb.append( HEX[bytes[i] & 0x0f] );
+        }
+    }
+
+    /**
+     * Appends the given string, escaped for the text format of <code>COPY</code>.
+     */
+    static void appendEscaped( StringBuilder sb, String s ) {
+        for ( int i = 0; i < s.length(); i++ ) {
+            char c = s.charAt( i );
+            switch ( c ) {
+            case '\\':
+                sb.append( "\\\\" );
+                break;
+            case '\n':
+                sb.append( "\\n" );
+                break;
+            case '\r':
+                sb.append( "\\r" );
+                break;
+            case '\t':
+                sb.append( "\\t" );
+                break;
+            default:
+                sb.append( c );
+            }
+        }
+    }
+
+}
@@ -56,11 +56,13 @@ import org.deegree.geometry.Envelope;
 import org.deegree.geometry.standard.DefaultEnvelope;
 import org.deegree.geometry.standard.primitive.DefaultPoint;
 import org.deegree.geometry.utils.GeometryParticleConverter;
+import org.deegree.sqldialect.BulkLoader;
 import org.deegree.sqldialect.SQLDialect;
 import org.deegree.sqldialect.filter.AbstractWhereBuilder;
 import org.deegree.sqldialect.filter.PropertyNameMapper;
 import org.deegree.sqldialect.filter.UnmappableException;
 import org.postgis.PGboxbase;
+import org.postgresql.PGConnection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -284,4 +286,51 @@ public class PostGISDialect implements SQLDialect {
         return "SELECT nextval('" + sequence + "')";
     }
 
+    @Override
+    public String getSelectSequenceNextVals( String sequence, int count ) {
+        return "SELECT nextval('" + sequence + "') FROM generate_series(1," + count + ")";
+    }
+
+    /**
+     * The number of rows is limited by the maximum number of bind parameters of the PostgreSQL protocol (32767).
+     */
+    @Override
+    public int getMaxRowsPerInsert( int paramsPerRow ) {
+        return Math.max( 1, Math.min( 1000, 32767 / Math.max( 1, paramsPerRow ) ) );
+    }
+
+    @Override
+    public String getPagedSelect( String select, boolean ordered, int offset, int limit ) {
+        StringBuilder sql = new StringBuilder( select );
+        if ( limit > 0 ) {
+            sql.append( " LIMIT " );
+            sql.append( limit );
+        }
+        if ( offset > 0 ) {
+            sql.append( " OFFSET " );
+            sql.append( offset );
+        }
+        return sql.toString();
+    }
+
+    /**
+     * Uses the <code>COPY</code> protocol of the PostgreSQL JDBC driver, which requires access to the underlying
+     * {@link PGConnection}.
+     */
+    @Override
+    public BulkLoader getBulkLoader( Connection conn ) {
+        try {
+            PGConnection pgConn = null;
+            if ( conn instanceof PGConnection ) {
+                pgConn = (PGConnection) conn;
+            } else {
+                pgConn = conn.unwrap( PGConnection.class );
+            }
+            return new PostGISBulkLoader( conn, pgConn.getCopyAPI() );
+        } catch ( SQLException e ) {
+            LOG.debug( "Bulk loading is not available: " + e.getMessage(), e );
+            return null;
+        }
+    }
+
 }
@@ -0,0 +1,200 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.sqldialect.postgis;
+
+import static java.util.Arrays.asList;
+import static org.deegree.sqldialect.postgis.PostGISBulkLoader.appendEscaped;
+import static org.deegree.sqldialect.postgis.PostGISBulkLoader.appendEwkb;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.util.List;
+
+import org.deegree.commons.jdbc.SQLIdentifier;
+import org.deegree.commons.jdbc.TableName;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+
+/**
+ * Tests for {@link PostGISBulkLoader}.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+public class PostGISBulkLoaderTest {
+
+    // POINT(1 2), little endian
+    private static final byte[] POINT_NDR = toBytes( "0101000000000000000000f03f0000000000000040" );
+
+    // POINT(1 2), big endian
+    private static final byte[] POINT_XDR = toBytes( "00000000013ff00000000000004000000000000000" );
+
+    private static final String GEOM_EXPR = "ST_SetSRID(ST_GeomFromWKB(?),4326)";
+
+    @Test
+    public void testEscapeBackslash() {
+        assertEquals( "C:\\\\tmp\\\\x", escape( "C:\\tmp\\x" ) );
+    }
+
+    @Test
+    public void testEscapeControlCharacters() {
+        assertEquals( "a\\tb\\nc\\rd", escape( "a\tb\nc\rd" ) );
+    }
+
+    @Test
+    public void testEscapeKeepsOtherCharacters() {
+        assertEquals( "Koeln, \"N\" 'x' |;", escape( "Koeln, \"N\" 'x' |;" ) );
+        assertEquals( "\\\\N", escape( "\\N" ) );
+        assertEquals( "", escape( "" ) );
+    }
+
+    @Test
+    public void testEwkbLittleEndian() {
+        StringBuilder sb = new StringBuilder();
+        appendEwkb( sb, POINT_NDR, 4326 );
+        assertEquals( "0101000020e6100000" + "000000000000f03f0000000000000040", sb.toString() );
+    }
+
+    @Test
+    public void testEwkbBigEndian() {
+        StringBuilder sb = new StringBuilder();
+        appendEwkb( sb, POINT_XDR, 4326 );
+        assertEquals( "0020000001000010e6" + "3ff00000000000004000000000000000", sb.toString() );
+    }
+
+    @Test
+    public void testEwkbWithoutSrid() {
+        StringBuilder sb = new StringBuilder();
+        appendEwkb( sb, POINT_NDR, 0 );
+        assertEquals( "0101000000000000000000f03f0000000000000040", sb.toString() );
+        sb.setLength( 0 );
+        appendEwkb( sb, POINT_NDR, -1 );
+        assertEquals( "0101000000000000000000f03f0000000000000040", sb.toString() );
+    }
+
+    @Test
+    public void testEwkbTooShort() {
+        StringBuilder sb = new StringBuilder();
+        appendEwkb( sb, new byte[] { 1, 2 }, 4326 );
+        assertEquals( "0102", sb.toString() );
+    }
+
+    @Test
+    public void testCanLoad() {
+        PostGISBulkLoader loader = new PostGISBulkLoader( mock( Connection.class ), mock( CopyManager.class ) );
+        assertTrue( loader.canLoad( asList( "?", GEOM_EXPR, "SetSRID(GeomFromWKB(?),-1)", "42", "-1.5" ) ) );
+        assertFalse( loader.canLoad( asList( "?", "ST_Transform(?,4326)" ) ) );
+    }
+
+    @Test
+    public void testLoad()
+                            throws Exception {
+        CopyManager copyManager = mock( CopyManager.class );
+        CopyIn copyIn = mock( CopyIn.class );
+        String sql = "COPY app.t (name,geom,flag,data,n) FROM STDIN";
+        when( copyManager.copyIn( sql ) ).thenReturn( copyIn );
+        when( copyIn.endCopy() ).thenReturn( 2L );
+        PostGISBulkLoader loader = new PostGISBulkLoader( mock( Connection.class ), copyManager );
+
+        List<SQLIdentifier> columns = asList( new SQLIdentifier( "name" ), new SQLIdentifier( "geom" ),
+                                              new SQLIdentifier( "flag" ), new SQLIdentifier( "data" ),
+                                              new SQLIdentifier( "n" ) );
+        List<String> exprs = asList( "?", GEOM_EXPR, "?", "?", "42" );
+        List<Object[]> rows = asList( new Object[] { "a\tb\\c", POINT_NDR, Boolean.TRUE, new byte[] { 0, -1 } },
+                                      new Object[] { null, null, null, null } );
+        assertEquals( 2L, loader.load( new TableName( "app.t" ), columns, exprs, rows ) );
+
+        ArgumentCaptor<byte[]> bytes = ArgumentCaptor.forClass( byte[].class );
+        ArgumentCaptor<Integer> len = ArgumentCaptor.forClass( Integer.class );
+        verify( copyIn ).writeToCopy( bytes.capture(), eq( 0 ), len.capture() );
+        String expected = "a\\tb\\\\c\t0101000020e6100000000000000000f03f0000000000000040\tt\t\\\\x00ff\t42\n"
+                          + "\\N\t\\N\t\\N\t\\N\t42\n";
+        assertEquals( expected, new String( bytes.getValue(), 0, len.getValue(), "UTF-8" ) );
+        verify( copyIn, never() ).cancelCopy();
+    }
+
+    @Test
+    public void testLoadCancelsCopyOnError()
+                            throws Exception {
+        CopyManager copyManager = mock( CopyManager.class );
+        CopyIn copyIn = mock( CopyIn.class );
+        when( copyManager.copyIn( "COPY t (name) FROM STDIN" ) ).thenReturn( copyIn );
+        when( copyIn.isActive() ).thenReturn( true );
+        PostGISBulkLoader loader = new PostGISBulkLoader( mock( Connection.class ), copyManager );
+        List<Object[]> rows = asList( new Object[] { new Object() {
+            @Override
+            public String toString() {
+                throw new IllegalStateException();
+            }
+        } } );
+        try {
+            loader.load( new TableName( "t" ), asList( new SQLIdentifier( "name" ) ), asList( "?" ), rows );
+            fail();
+        } catch ( IllegalStateException e ) {
+            // expected
+        }
+        verify( copyIn ).cancelCopy();
+        verify( copyIn, never() ).writeToCopy( (byte[]) any(), anyInt(), anyInt() );
+    }
+
+    private static String escape( String s ) {
+        StringBuilder sb = new StringBuilder();
+        appendEscaped( sb, s );
+        return sb.toString();
+    }
+
+    private static byte[] toBytes( String hex ) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for ( int i = 0; i < bytes.length; i++ ) {
+            bytes[i] = (byte) Integer.parseInt( hex.substring( 2 * i, 2 * i + 2 ), 16 );
+        }
+        return bytes;
+    }
+
+}
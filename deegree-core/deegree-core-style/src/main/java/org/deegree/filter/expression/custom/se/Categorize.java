@@ -53,13 +53,12 @@ import javax.xml.stream.XMLStreamReader;
 import org.deegree.commons.tom.TypedObjectNode;
 import org.deegree.commons.tom.primitive.PrimitiveValue;
 import org.deegree.coverage.raster.AbstractRaster;
-import org.deegree.coverage.raster.data.RasterData;
 import org.deegree.feature.Feature;
 import org.deegree.filter.XPathEvaluator;
 import org.deegree.filter.expression.custom.AbstractCustomExpression;
 import org.deegree.style.se.unevaluated.Continuation;
 import org.deegree.style.styling.RasterStyling;
-import org.deegree.style.utils.RasterDataUtility;
+import org.deegree.style.utils.ColorMapRasterizer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -96,6 +95,8 @@ public class Categorize extends AbstractCustomExpression {
 
     private LinkedList<Continuation<StringBuffer>> thresholdContns;
 
+    private ColorMapRasterizer rasterizer;
+
     /***/
     public Categorize() {
         // just used for SPI
@@ -114,6 +115,24 @@ public class Categorize extends AbstractCustomExpression {
         this.thresholdsArray = thresholdsArray;
         this.valueContns = valueContns;
         this.thresholdContns = thresholdContns;
+        this.rasterizer = new ColorMapRasterizer() {
+            @Override
+            protected int lookup( double value ) {
+                return lookup2( value ).getRGB();
+            }
+
+            @Override
+            protected double[] getBreaks() {
+                if ( Categorize.this.thresholdsArray == null ) {
+                    return null;
+                }
+                double[] breaks = new double[Categorize.this.thresholdsArray.length];
+                for ( int i = 0; i < breaks.length; i++ ) {
+                    breaks[i] = Categorize.this.thresholdsArray[i];
+                }
+                return breaks;
+            }
+        };
     }
 
     @Override
@@ -204,22 +223,7 @@ public class Categorize extends AbstractCustomExpression {
      * @return a buffered image with the processed data
      */
     public BufferedImage evaluateRaster( AbstractRaster raster, RasterStyling style ) {
-        BufferedImage img = null;
-        int col = -1, row = -1;
-        RasterData data = raster.getAsSimpleRaster().getRasterData();
-
-        RasterDataUtility converter = new RasterDataUtility( raster, style.channelSelection );
-
-        img = new BufferedImage( data.getColumns(), data.getRows(), BufferedImage.TYPE_INT_ARGB );
-        LOG.trace( "Created image with H={}, L={}", img.getHeight(), img.getWidth() );
-        for ( row = 0; row < img.getHeight(); row++ ) {
-            for ( col = 0; col < img.getWidth(); col++ ) {
-                Color c = lookup2( converter.get( col, row ) );
-                img.setRGB( col, row, c.getRGB() );
-            }
-        }
-
-        return img;
+        return rasterizer.rasterize( raster, style.channelSelection );
     }
 
     /**
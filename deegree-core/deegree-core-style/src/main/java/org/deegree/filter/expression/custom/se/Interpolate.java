@@ -64,7 +64,6 @@ import org.deegree.commons.annotations.LoggingNotes;
 import org.deegree.commons.tom.TypedObjectNode;
 import org.deegree.commons.tom.primitive.PrimitiveValue;
 import org.deegree.coverage.raster.AbstractRaster;
-import org.deegree.coverage.raster.data.RasterData;
 import org.deegree.feature.Feature;
 import org.deegree.filter.FilterEvaluationException;
 import org.deegree.filter.XPathEvaluator;
@@ -72,7 +71,7 @@ import org.deegree.filter.expression.custom.AbstractCustomExpression;
 import org.deegree.style.se.parser.SymbologyParser;
 import org.deegree.style.se.unevaluated.Continuation;
 import org.deegree.style.styling.RasterStyling;
-import org.deegree.style.utils.RasterDataUtility;
+import org.deegree.style.utils.ColorMapRasterizer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -114,6 +113,8 @@ public class Interpolate extends AbstractCustomExpression {
 
     private Color fallbackColor;
 
+    private ColorMapRasterizer rasterizer;
+
     /***/
     public Interpolate() {
         // just used for SPI
@@ -450,6 +451,22 @@ public class Interpolate extends AbstractCustomExpression {
             }
             dataArray = list.toArray( dataArray );
         }
+
+        rasterizer = new ColorMapRasterizer() {
+            @Override
+            protected int lookup( double value ) {
+                return lookup2Color( value ).getRGB();
+            }
+
+            @Override
+            protected double[] getBreaks() {
+                double[] breaks = new double[dataArray.length];
+                for ( int i = 0; i < breaks.length; i++ ) {
+                    breaks[i] = dataArray[i];
+                }
+                return breaks;
+            }
+        };
     }
 
     @SuppressWarnings("unchecked")
@@ -510,22 +527,7 @@ public class Interpolate extends AbstractCustomExpression {
      * @return a buffered image with the processed data
      */
     public BufferedImage evaluateRaster( AbstractRaster raster, RasterStyling style ) {
-        BufferedImage img = null;
-        int col = -1, row = -1;
-        int rgb = 0;
-        RasterData data = raster.getAsSimpleRaster().getRasterData();
-
-        RasterDataUtility rawData = new RasterDataUtility( raster );
-
-        img = new BufferedImage( data.getColumns(), data.getRows(), BufferedImage.TYPE_INT_ARGB );
-        LOG.debug( "Created image with H={}, L={}", img.getHeight(), img.getWidth() );
-        for ( row = 0; row < img.getHeight(); row++ )
-            for ( col = 0; col < img.getWidth(); col++ ) {
-                float val = rawData.get( col, row );
-                rgb = lookup2Color( val ).getRGB();
-                img.setRGB( col, row, rgb );
-            }
-        return img;
+        return rasterizer.rasterize( raster, null );
     }
 
     /**
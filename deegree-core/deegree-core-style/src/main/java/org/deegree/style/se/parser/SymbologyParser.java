@@ -61,8 +61,10 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 
 import javax.xml.namespace.QName;
 import javax.xml.stream.FactoryConfigurationError;
@@ -83,6 +85,7 @@ import org.deegree.filter.Expression;
 import org.deegree.filter.Filter;
 import org.deegree.filter.FilterEvaluationException;
 import org.deegree.filter.XPathEvaluator;
+import org.deegree.filter.expression.ValueReference;
 import org.deegree.filter.expression.custom.se.Categorize;
 import org.deegree.filter.expression.custom.se.Interpolate;
 import org.deegree.filter.xml.Filter110XMLDecoder;
@@ -139,6 +142,9 @@ public class SymbologyParser {
      */
     public static final SymbologyParser INSTANCE = new SymbologyParser();
 
+    // collects the property names of the expressions parsed while parsing a rule, see #maybeParseRule
+    private static final ThreadLocal<LinkedHashSet<ValueReference>> RULE_PROPERTY_NAMES = new ThreadLocal<LinkedHashSet<ValueReference>>();
+
     private SymbologyParserContext context = new SymbologyParserContext( this );
 
     private ResourceLocation<StyleStore> location;
@@ -670,6 +676,7 @@ public class SymbologyParser {
                 in.next();
                 if ( in.isStartElement() ) {
                     Expression expr = parseExpression( in );
+                    collectPropertyNames( expr, RULE_PROPERTY_NAMES.get() );
                     if ( collectXMLSnippets ) {
                         StringWriter sw = new StringWriter();
                         XMLStreamWriter out = XMLOutputFactory.newInstance().createXMLStreamWriter( sw );
@@ -739,6 +746,19 @@ public class SymbologyParser {
         return new Pair<String, Continuation<T>>( collectXMLSnippets ? xmlText.toString().trim() : null, contn );
     }
 
+    private static void collectPropertyNames( Expression expr, Set<ValueReference> propNames ) {
+        if ( propNames == null || expr == null ) {
+            return;
+        }
+        if ( expr instanceof ValueReference ) {
+            propNames.add( (ValueReference) expr );
+        } else if ( expr.getParams() != null ) {
+            for ( Expression param : expr.getParams() ) {
+                collectPropertyNames( param, propNames );
+            }
+        }
+    }
+
     /**
      * @param in
      * @param uom
@@ -1259,31 +1279,38 @@ public class SymbologyParser {
             Filter filter = null;
             LinkedList<Symbolizer<?>> syms = new LinkedList<Symbolizer<?>>();
 
-            while ( !( localReader.isEndElement() && localReader.getLocalName().equals( "Rule" ) ) ) {
-                localReader.nextTag();
+            LinkedHashSet<ValueReference> propNames = new LinkedHashSet<ValueReference>();
+            LinkedHashSet<ValueReference> outerPropNames = RULE_PROPERTY_NAMES.get();
+            RULE_PROPERTY_NAMES.set( propNames );
+            try {
+                while ( !( localReader.isEndElement() && localReader.getLocalName().equals( "Rule" ) ) ) {
+                    localReader.nextTag();
 
-                parseCommon( ruleCommon, localReader );
+                    parseCommon( ruleCommon, localReader );
 
-                if ( localReader.getLocalName().equals( "Filter" ) ) {
-                    filter = Filter110XMLDecoder.parse( localReader );
-                }
+                    if ( localReader.getLocalName().equals( "Filter" ) ) {
+                        filter = Filter110XMLDecoder.parse( localReader );
+                    }
 
-                if ( localReader.getLocalName().equals( "ElseFilter" ) ) {
-                    filter = ELSEFILTER;
-                    localReader.nextTag();
-                }
+                    if ( localReader.getLocalName().equals( "ElseFilter" ) ) {
+                        filter = ELSEFILTER;
+                        localReader.nextTag();
+                    }
 
-                if ( localReader.getLocalName().equals( "MinScaleDenominator" ) ) {
-                    minScale = parseDouble( localReader.getElementText() );
-                }
-                if ( localReader.getLocalName().equals( "MaxScaleDenominator" ) ) {
-                    maxScale = parseDouble( localReader.getElementText() );
-                }
+                    if ( localReader.getLocalName().equals( "MinScaleDenominator" ) ) {
+                        minScale = parseDouble( localReader.getElementText() );
+                    }
+                    if ( localReader.getLocalName().equals( "MaxScaleDenominator" ) ) {
+                        maxScale = parseDouble( localReader.getElementText() );
+                    }
 
-                parseRuleSymbolizer( localReader, labels, labelXMLTexts, syms );
+                    parseRuleSymbolizer( localReader, labels, labelXMLTexts, syms );
+                }
+            } finally {
+                RULE_PROPERTY_NAMES.set( outerPropNames );
             }
 
-            FilterContinuation contn = new FilterContinuation( filter, syms, ruleCommon );
+            FilterContinuation contn = new FilterContinuation( filter, syms, ruleCommon, propNames );
             DoublePair scales = new DoublePair( minScale, maxScale );
             result.add( new Pair<Continuation<LinkedList<Symbolizer<?>>>, DoublePair>( contn, scales ) );
         }
@@ -1353,10 +1380,25 @@ public class SymbologyParser {
         /** Contains description and so on. */
         public Common common;
 
+        private Set<ValueReference> propertyNames;
+
         public FilterContinuation( Filter filter, LinkedList<Symbolizer<?>> syms, Common common ) {
+            this( filter, syms, common, null );
+        }
+
+        /**
+         * @param filter
+         * @param syms
+         * @param common
+         * @param propertyNames
+         *            the property names referenced by the expressions of the symbolizers, may be null if unknown
+         */
+        public FilterContinuation( Filter filter, LinkedList<Symbolizer<?>> syms, Common common,
+                                   Set<ValueReference> propertyNames ) {
             this.filter = filter;
             this.syms = syms;
             this.common = common;
+            this.propertyNames = propertyNames;
         }
 
         @Override
@@ -1380,6 +1422,14 @@ public class SymbologyParser {
             return syms;
         }
 
+        /**
+         * @return the property names referenced by the expressions of the symbolizers (not including the filter and
+         *         the geometry expressions), null if unknown
+         */
+        public Set<ValueReference> getPropertyNames() {
+            return propertyNames;
+        }
+
     }
 
 }
@@ -0,0 +1,351 @@
+//$HeadURL$
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2012 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+ and
+ - Occam Labs UG (haftungsbeschränkt) -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ Occam Labs UG (haftungsbeschränkt)
+ Godesberger Allee 139, 53175 Bonn
+ Germany
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.style.se.unevaluated;
+
+import static org.deegree.style.se.parser.SymbologyParser.ELSEFILTER;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+import javax.xml.namespace.QName;
+
+import org.deegree.commons.utils.DoublePair;
+import org.deegree.commons.utils.Pair;
+import org.deegree.commons.utils.Triple;
+import org.deegree.feature.Feature;
+import org.deegree.filter.Filter;
+import org.deegree.filter.FilterEvaluationException;
+import org.deegree.filter.XPathEvaluator;
+import org.deegree.geometry.Geometry;
+import org.deegree.style.se.parser.SymbologyParser.FilterContinuation;
+import org.deegree.style.styling.Styling;
+import org.slf4j.Logger;
+
+/**
+ * Evaluation plan of a {@link Style} bound to a feature type. The rules are unwrapped once when compiling, so
+ * evaluating a feature does not need to walk the continuation chains, look up the label expressions or allocate new
+ * collections. Obtain instances using {@link Style#compile(QName)}.
+ * <p>
+ * The results are the same as the ones of {@link Style#evaluate(Feature, XPathEvaluator)}: the matching symbolizers
+ * of all rules are collected in rule order first (an else rule matches if no symbolizers have been collected before),
+ * then they are evaluated in that order.
+ * </p>
+ * <p>
+ * Compiled styles are immutable and can be shared between threads, the per feature state is kept in a
+ * {@link Result}, which must not be shared.
+ * </p>
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+public class CompiledStyle {
+
+    private static final Logger LOG = getLogger( CompiledStyle.class );
+
+    private final Style style;
+
+    private final CompiledRule[] rules;
+
+    // false if the style cannot match features of the feature type it was compiled for
+    private final boolean matches;
+
+    private final QName typeConstraint;
+
+    CompiledStyle( Style style, QName featureType ) {
+        this.style = style;
+        QName constraint = style.getFeatureType();
+        matches = style.isDefault() || constraint == null || featureType == null || constraint.equals( featureType );
+        // like Style#evaluate, the type of the evaluated feature is checked, not the one used when compiling
+        typeConstraint = style.isDefault() ? null : constraint;
+        if ( style.isDefault() ) {
+            rules = new CompiledRule[0];
+            return;
+        }
+        List<CompiledRule> list = new ArrayList<CompiledRule>();
+        for ( Pair<Continuation<LinkedList<Symbolizer<?>>>, DoublePair> rule : style.getRules() ) {
+            list.add( new CompiledRule( rule.first, rule.second, style ) );
+        }
+        rules = list.toArray( new CompiledRule[list.size()] );
+    }
+
+    private CompiledStyle( CompiledStyle other, CompiledRule[] rules ) {
+        this.style = other.style;
+        this.matches = other.matches;
+        this.typeConstraint = other.typeConstraint;
+        this.rules = rules;
+    }
+
+    /**
+     * @param scale
+     * @return a compiled style containing only the rules applicable at the given scale, in their original order
+     */
+    public CompiledStyle filter( double scale ) {
+        List<CompiledRule> list = new ArrayList<CompiledRule>( rules.length );
+        for ( CompiledRule rule : rules ) {
+            if ( rule.minScale <= scale && rule.maxScale >= scale ) {
+                list.add( rule );
+            }
+        }
+        if ( list.size() == rules.length ) {
+            return this;
+        }
+        return new CompiledStyle( this, list.toArray( new CompiledRule[list.size()] ) );
+    }
+
+    /**
+     * @return a new, empty result buffer to be used with {@link #evaluate(Feature, XPathEvaluator, Result)}
+     */
+    public Result newResult() {
+        return new Result();
+    }
+
+    /**
+     * Evaluates the style for the given feature. The result buffer is cleared first, its contents (including the
+     * geometry lists) are reused by the next call, so they must be consumed before evaluating the next feature.
+     * 
+     * @param f
+     * @param evaluator
+     * @param result
+     *            the buffer to put the stylings, geometries and label texts into, never <code>null</code>
+     * @return the result buffer
+     */
+    public Result evaluate( Feature f, XPathEvaluator<Feature> evaluator, Result result ) {
+        result.clear();
+        if ( style.isDefault() ) {
+            for ( Triple<Styling, LinkedList<Geometry>, String> t : style.evaluate( f, evaluator ) ) {
+                Triple<Styling, LinkedList<Geometry>, String> next = result.next();
+                next.first = t.first;
+                next.second.addAll( t.second );
+                next.third = t.third;
+            }
+            return result;
+        }
+        if ( typeConstraint != null && f != null && !f.getType().getName().equals( typeConstraint ) ) {
+            return result;
+        }
+        // the symbolizers of all rules are collected first, else rules depend on the symbolizers collected before
+        LinkedList<Symbolizer<?>> syms = result.symbolizers;
+        List<Continuation<StringBuffer>> labels = result.labels;
+        for ( CompiledRule rule : rules ) {
+            if ( rule.generic != null ) {
+                int before = syms.size();
+                // continuations append to the list of all rules, like in Style#evaluate
+                rule.generic.evaluate( syms, f, evaluator );
+                Iterator<Symbolizer<?>> added = syms.listIterator( before );
+                while ( added.hasNext() ) {
+                    labels.add( style.getLabel( added.next() ) );
+                }
+                continue;
+            }
+            if ( !rule.matches( f, evaluator, syms.isEmpty() ) ) {
+                continue;
+            }
+            for ( int i = 0; i < rule.symbolizers.length; ++i ) {
+                syms.add( rule.symbolizers[i] );
+                labels.add( rule.labels[i] );
+            }
+        }
+        int i = 0;
+        for ( Symbolizer<?> s : syms ) {
+            evaluate( s, labels.get( i++ ), f, evaluator, result );
+        }
+        return result;
+    }
+
+    private static void evaluate( Symbolizer<?> s, Continuation<StringBuffer> label, Feature f,
+                                  XPathEvaluator<Feature> evaluator, Result result ) {
+        Triple<Styling, LinkedList<Geometry>, String> t = result.next();
+        t.first = s.evaluate( f, evaluator, t.second );
+        if ( label != null ) {
+            StringBuffer sb = result.text;
+            sb.setLength( 0 );
+            label.evaluate( sb, f, evaluator );
+            result.lastText = sb.toString();
+        }
+        // like Style#evaluate, a symbolizer without label repeats the text of the last labelled symbolizer
+        t.third = result.lastText;
+    }
+
+    /**
+     * @return true, if the compiled style does not contain any rules, or cannot match features of the feature type
+     *         it was compiled for
+     */
+    public boolean isEmpty() {
+        return !style.isDefault() && ( !matches || rules.length == 0 );
+    }
+
+    private static class CompiledRule {
+
+        final double minScale, maxScale;
+
+        final Filter filter;
+
+        final boolean elseRule;
+
+        final Symbolizer<?>[] symbolizers;
+
+        final Continuation<StringBuffer>[] labels;
+
+        // set if the rule cannot be unwrapped
+        final Continuation<LinkedList<Symbolizer<?>>> generic;
+
+        @SuppressWarnings("unchecked")
+        CompiledRule( Continuation<LinkedList<Symbolizer<?>>> contn, DoublePair scales, Style style ) {
+            minScale = scales.first;
+            maxScale = scales.second;
+            List<Symbolizer<?>> syms = null;
+            if ( contn instanceof FilterContinuation && contn.getNext() == null ) {
+                FilterContinuation fc = (FilterContinuation) contn;
+                filter = fc.filter;
+                syms = fc.getSymbolizers();
+            } else if ( contn instanceof Style.InsertContinuation<?, ?> && contn.getNext() == null ) {
+                filter = null;
+                syms = new ArrayList<Symbolizer<?>>( 1 );
+                syms.add( (Symbolizer<?>) ( (Style.InsertContinuation<?, ?>) contn ).value );
+            } else {
+                filter = null;
+            }
+            elseRule = filter == ELSEFILTER;
+            if ( syms == null ) {
+                generic = contn;
+                symbolizers = new Symbolizer<?>[0];
+                labels = new Continuation[0];
+            } else {
+                generic = null;
+                symbolizers = syms.toArray( new Symbolizer<?>[syms.size()] );
+                labels = new Continuation[symbolizers.length];
+                for ( int i = 0; i < symbolizers.length; ++i ) {
+                    labels[i] = style.getLabel( symbolizers[i] );
+                }
+            }
+        }
+
+        boolean matches( Feature f, XPathEvaluator<Feature> evaluator, boolean nothingMatchedYet ) {
+            if ( filter == null || f == null ) {
+                return true;
+            }
+            if ( elseRule ) {
+                return nothingMatchedYet;
+            }
+            try {
+                return filter.evaluate( f, evaluator );
+            } catch ( FilterEvaluationException e ) {
+                LOG.warn( "Evaluating the following expression resulted in an error '{}':\n'{}'",
+                          e.getLocalizedMessage(), filter.toString() );
+                LOG.debug( "Stack trace:", e );
+            }
+            return false;
+        }
+
+    }
+
+    /**
+     * Reusable buffer for the evaluation results of a single feature. The triples contain the styling, the geometries
+     * and the label text (may be <code>null</code>).
+     */
+    public static class Result {
+
+        private final ArrayList<Triple<Styling, LinkedList<Geometry>, String>> triples = new ArrayList<Triple<Styling, LinkedList<Geometry>, String>>();
+
+        private final LinkedList<Symbolizer<?>> symbolizers = new LinkedList<Symbolizer<?>>();
+
+        // the label expressions of the symbolizers
+        private final ArrayList<Continuation<StringBuffer>> labels = new ArrayList<Continuation<StringBuffer>>();
+
+        private final StringBuffer text = new StringBuffer();
+
+        private String lastText;
+
+        private int size;
+
+        Result() {
+            // use CompiledStyle#newResult
+        }
+
+        /**
+         * @return the number of evaluated stylings
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @param index
+         * @return the styling, the geometries and the label text of the given index
+         */
+        public Triple<Styling, LinkedList<Geometry>, String> get( int index ) {
+            if ( index >= size ) {
+                throw new IndexOutOfBoundsException( index + " >= " + size );
+            }
+            return triples.get( index );
+        }
+
+        void clear() {
+            size = 0;
+            lastText = null;
+            symbolizers.clear();
+            labels.clear();
+        }
+
+        private Triple<Styling, LinkedList<Geometry>, String> next() {
+            Triple<Styling, LinkedList<Geometry>, String> t;
+            if ( size == triples.size() ) {
+                t = new Triple<Styling, LinkedList<Geometry>, String>( null, new LinkedList<Geometry>(), null );
+                triples.add( t );
+            } else {
+                t = triples.get( size );
+                t.second.clear();
+            }
+            ++size;
+            t.first = null;
+            t.third = null;
+            return t;
+        }
+
+    }
+
+}
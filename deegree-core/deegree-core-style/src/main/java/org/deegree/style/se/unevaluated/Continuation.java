@@ -72,6 +72,13 @@ public abstract class Continuation<T> {
      */
     public abstract void updateStep( T base, Feature obj, XPathEvaluator<Feature> evaluator );
 
+    /**
+     * @return the next continuation in the chain, may be null
+     */
+    public Continuation<T> getNext() {
+        return next;
+    }
+
     /**
      * @param base
      * @param obj
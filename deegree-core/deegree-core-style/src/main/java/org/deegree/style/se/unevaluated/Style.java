@@ -51,6 +51,7 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.xml.namespace.QName;
 
@@ -122,6 +123,14 @@ public class Style implements Copyable<Style> {
 
     private boolean prefersGetLegendGraphicUrl;
 
+    // compiled evaluation plans per feature type, see #compile
+    private final ConcurrentHashMap<QName, CompiledStyle> compiled = new ConcurrentHashMap<QName, CompiledStyle>();
+
+    // the style this one was derived from using #filter, and the scale used
+    private Style source;
+
+    private double sourceScale;
+
     /**
      * @param rules
      * @param labels
@@ -217,7 +226,52 @@ public class Style implements Copyable<Style> {
                 LOG.debug( "Not using rule because of scale constraints, in style with name '{}'.", name );
             }
         }
-        return new Style( rules, labels, null, name, featureType );
+        Style filtered = new Style( rules, labels, null, name, featureType );
+        if ( source == null || sourceScale == scale ) {
+            filtered.source = source == null ? this : source;
+            filtered.sourceScale = scale;
+        }
+        return filtered;
+    }
+
+    /**
+     * Compiles this style for the given feature type. The compiled style is cached, so repeated calls (also on styles
+     * derived by {@link #filter(double)}) only compile once per feature type.
+     * 
+     * @param featureType
+     *            the name of the feature type the style is bound to, may be null
+     * @return the compiled style, never null
+     */
+    public CompiledStyle compile( QName featureType ) {
+        if ( source != null ) {
+            return source.compile( featureType ).filter( sourceScale );
+        }
+        // ConcurrentHashMap does not support null keys
+        QName key = featureType == null ? new QName( "" ) : featureType;
+        CompiledStyle style = compiled.get( key );
+        if ( style == null ) {
+            style = new CompiledStyle( this, featureType );
+            CompiledStyle existing = compiled.putIfAbsent( key, style );
+            if ( existing != null ) {
+                style = existing;
+            }
+        }
+        return style;
+    }
+
+    /**
+     * @return true, if the style contains text symbolizers
+     */
+    public boolean hasLabels() {
+        return !labels.isEmpty();
+    }
+
+    /**
+     * @param symbolizer
+     * @return the label expression of the symbolizer, or null, if it is not a text symbolizer
+     */
+    Continuation<StringBuffer> getLabel( Symbolizer<?> symbolizer ) {
+        return labels.get( symbolizer );
     }
 
     /**
@@ -38,6 +38,7 @@ package org.deegree.style.se.unevaluated;
 
 import static org.slf4j.LoggerFactory.getLogger;
 
+import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -174,6 +175,21 @@ public class Symbolizer<T extends Styling<T>> {
      */
     public Pair<T, LinkedList<Geometry>> evaluate( Feature f, XPathEvaluator<Feature> evaluator ) {
         LinkedList<Geometry> geoms = new LinkedList<Geometry>();
+        T styling = evaluate( f, evaluator, geoms );
+        return new Pair<T, LinkedList<Geometry>>( styling, geoms );
+    }
+
+    /**
+     * Evaluates the styling and adds the geometries to the given collection. For symbolizers without expressions
+     * (see {@link #isEvaluated()}), the shared evaluated styling is returned.
+     * 
+     * @param f
+     * @param evaluator
+     * @param geoms
+     *            the collection to add the geometries to, never <code>null</code>
+     * @return the styling
+     */
+    public T evaluate( Feature f, XPathEvaluator<Feature> evaluator, Collection<Geometry> geoms ) {
         if ( geometry != null && evaluator != null ) {
             try {
                 TypedObjectNode[] os = geometry.evaluate( f, evaluator );
@@ -182,6 +198,7 @@ public class Symbolizer<T extends Styling<T>> {
                     LOG.warn( "The geometry expression in file '{}', line {}, column {} evaluated to nothing.",
                               new Object[] { file, line, col } );
                 } else {
+                    int before = geoms.size();
                     for ( TypedObjectNode node : os ) {
                         Geometry geom = null;
                         geom = tryGeometry( node );
@@ -200,7 +217,7 @@ public class Symbolizer<T extends Styling<T>> {
                                       new Object[] { file, line, col, node.getClass() } );
                         }
                     }
-                    if ( geoms.isEmpty() ) {
+                    if ( geoms.size() == before ) {
                         LOG.warn( "The geometry expression in file '{}', line {}, column {} "
                                   + "evaluated to no geometry could be found.", new Object[] { file, line, col } );
                     }
@@ -224,35 +241,22 @@ public class Symbolizer<T extends Styling<T>> {
         }
 
         if ( f == null ) {
-            return new Pair<T, LinkedList<Geometry>>( evaluated == null ? base.copy() : evaluated.copy(), geoms );
+            return evaluated == null ? base.copy() : evaluated.copy();
         }
 
-        // String id = f.getId();
-        // if ( id != null && cache.containsKey( id ) ) {
-        // return new Pair<T, LinkedList<Geometry>>( cache.get( id ), geoms );
-        // }
-
         if ( evaluated != null ) {
-            Pair<T, LinkedList<Geometry>> pair = new Pair<T, LinkedList<Geometry>>( evaluated, geoms );
-            // if ( id != null ) {
-            // cache.put( id, pair.first );
-            // }
-            return pair;
+            return evaluated;
         }
 
         T evald = base.copy();
-        Pair<T, LinkedList<Geometry>> pair = new Pair<T, LinkedList<Geometry>>( evald, geoms );
         if ( next == null ) {
             LOG.warn( "Something wrong with SE/SLD parsing. No continuation found, and no evaluated style." );
-            return pair;
+            return evald;
         }
 
         next.evaluate( evald, f, evaluator );
-        // if ( id != null ) {
-        // cache.put( id, pair.first );
-        // }
 
-        return pair;
+        return evald;
     }
 
     /**
@@ -0,0 +1,361 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+   Department of Geography, University of Bonn
+ and
+   lat/lon GmbH
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+----------------------------------------------------------------------------*/
+package org.deegree.style.utils;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.lang.Math.abs;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+import org.deegree.coverage.raster.AbstractRaster;
+import org.deegree.coverage.raster.data.RasterData;
+import org.deegree.coverage.raster.utils.StripeExecutor;
+import org.deegree.style.styling.RasterChannelSelection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Converts rasters to ARGB images by mapping each raster value to a color, as done by the SE functions Categorize and
+ * Interpolate.
+ * <p>
+ * For single band rasters, the per-pixel lookup is replaced by a lookup table: byte and short rasters use a table with
+ * one entry per possible sample value, int and float rasters a quantized table that spans the range between the first
+ * and the last break value. The number of quantization levels can be set using the system property
+ * <code>deegree.rendering.colormap.levels</code>, table buckets that contain a break value are always looked up
+ * exactly. The ARGB values are written directly into the image buffer, large images are processed in parallel
+ * stripes (see {@link StripeExecutor}).
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ *
+ * @version $Revision$, $Date$
+ */
+public abstract class ColorMapRasterizer {
+
+    private static final Logger LOG = LoggerFactory.getLogger( ColorMapRasterizer.class );
+
+    /** Number of entries of the quantized lookup tables, if not configured otherwise. */
+    public static final int DEFAULT_QUANTIZATION_LEVELS = 4096;
+
+    private static final int QUANTIZATION_LEVELS = max( 1, Integer.getInteger( "deegree.rendering.colormap.levels",
+                                                                               DEFAULT_QUANTIZATION_LEVELS ) );
+
+    private volatile int[] byteTable;
+
+    private volatile int[] shortTable;
+
+    private volatile QuantizedTable quantizedTable;
+
+    /**
+     * Returns the color for the given raster value.
+     *
+     * @param value
+     *            raster value
+     * @return ARGB color value
+     */
+    protected abstract int lookup( double value );
+
+    /**
+     * Returns the values at which the colors may change abruptly. The lookup must yield constant colors below the first
+     * and above the last break value.
+     *
+     * @return ascending break values, may be <code>null</code> (no quantized lookup table will be used then)
+     */
+    protected abstract double[] getBreaks();
+
+    /**
+     * Converts the given raster to an ARGB image.
+     *
+     * @param raster
+     *            input raster, must not be <code>null</code>
+     * @param channels
+     *            channel mappings, can be <code>null</code>
+     * @return an image of the same size as the raster, never <code>null</code>
+     */
+    public BufferedImage rasterize( AbstractRaster raster, RasterChannelSelection channels ) {
+        RasterDataUtility utility = new RasterDataUtility( raster, channels );
+        RasterData data = utility.getData();
+        int width = data.getColumns();
+        int height = data.getRows();
+
+        BufferedImage img = new BufferedImage( width, height, TYPE_INT_ARGB );
+        LOG.trace( "Created image with H={}, L={}", height, width );
+        if ( width == 0 || height == 0 ) {
+            return img;
+        }
+        int[] argb = ( (DataBufferInt) img.getRaster().getDataBuffer() ).getData();
+
+        RowPainter painter = createPainter( utility, (long) width * height );
+        // make sure lazily loaded raster data is available before accessing it concurrently
+        utility.get( 0, 0 );
+        paint( painter, argb, width, height );
+        return img;
+    }
+
+    private RowPainter createPainter( final RasterDataUtility utility, long pixels ) {
+        if ( utility.isSingleSample() ) {
+            final RasterData data = utility.getData();
+            switch ( data.getDataType() ) {
+            case BYTE:
+                if ( pixels > 256 ) {
+                    return new ByteTablePainter( data, getByteTable() );
+                }
+                break;
+            case SHORT:
+            case USHORT:
+                if ( pixels > 65536 ) {
+                    return new ShortTablePainter( data, getShortTable() );
+                }
+                break;
+            case INT:
+            case FLOAT:
+                if ( pixels > QUANTIZATION_LEVELS ) {
+                    QuantizedTable table = getQuantizedTable();
+                    if ( table != null ) {
+                        return new QuantizedTablePainter( data, table );
+                    }
+                }
+                break;
+            default:
+                // use generic painter
+            }
+        }
+        return new DirectPainter( utility );
+    }
+
+    private int[] getByteTable() {
+        int[] table = byteTable;
+        if ( table == null ) {
+            table = new int[256];
+            for ( int i = 0; i < table.length; i++ ) {
+                table[i] = lookup( i );
+            }
+            byteTable = table;
+        }
+        return table;
+    }
+
+    private int[] getShortTable() {
+        int[] table = shortTable;
+        if ( table == null ) {
+            table = new int[65536];
+            for ( int i = 0; i < table.length; i++ ) {
+                table[i] = lookup( i );
+            }
+            shortTable = table;
+        }
+        return table;
+    }
+
+    private QuantizedTable getQuantizedTable() {
+        QuantizedTable table = quantizedTable;
+        if ( table == null ) {
+            double[] breaks = getBreaks();
+            if ( breaks == null || breaks.length < 2 || !( breaks[0] < breaks[breaks.length - 1] ) ) {
+                return null;
+            }
+            table = new QuantizedTable( breaks, QUANTIZATION_LEVELS );
+            quantizedTable = table;
+        }
+        return table;
+    }
+
+    private static void paint( final RowPainter painter, final int[] argb, final int width, int height ) {
+        StripeExecutor.execute( height, width, new StripeExecutor.StripeTask() {
+            @Override
+            public void process( int minRow, int maxRow ) {
+                painter.paint( minRow, maxRow, argb, width );
+            }
+        } );
+    }
+
+    private abstract static class RowPainter {
+
+        /**
+         * Paints the rows from minRow (inclusive) to maxRow (exclusive).
+         */
+        abstract void paint( int minRow, int maxRow, int[] argb, int width );
+    }
+
+    private class DirectPainter extends RowPainter {
+
+        private final RasterDataUtility utility;
+
+        DirectPainter( RasterDataUtility utility ) {
+            this.utility = utility;
+        }
+
+        @Override
+        void paint( int minRow, int maxRow, int[] argb, int width ) {
+            for ( int row = minRow; row < maxRow; row++ ) {
+                int offset = row * width;
+                for ( int col = 0; col < width; col++ ) {
+                    argb[offset + col] = lookup( utility.get( col, row ) );
+                }
+            }
+        }
+    }
+
+    private static class ByteTablePainter extends RowPainter {
+
+        private final RasterData data;
+
+        private final int[] table;
+
+        ByteTablePainter( RasterData data, int[] table ) {
+            this.data = data;
+            this.table = table;
+        }
+
+        @Override
+        void paint( int minRow, int maxRow, int[] argb, int width ) {
+            for ( int row = minRow; row < maxRow; row++ ) {
+                int offset = row * width;
+                for ( int col = 0; col < width; col++ ) {
+                    argb[offset + col] = table[data.getByteSample( col, row, 0 ) & 0xff];
+                }
+            }
+        }
+    }
+
+    private static class ShortTablePainter extends RowPainter {
+
+        private final RasterData data;
+
+        private final int[] table;
+
+        ShortTablePainter( RasterData data, int[] table ) {
+            this.data = data;
+            this.table = table;
+        }
+
+        @Override
+        void paint( int minRow, int maxRow, int[] argb, int width ) {
+            for ( int row = minRow; row < maxRow; row++ ) {
+                int offset = row * width;
+                for ( int col = 0; col < width; col++ ) {
+                    argb[offset + col] = table[data.getShortSample( col, row, 0 ) & 0xffff];
+                }
+            }
+        }
+    }
+
+    private class QuantizedTablePainter extends RowPainter {
+
+        private final RasterData data;
+
+        private final QuantizedTable table;
+
+        private final boolean isFloat;
+
+        QuantizedTablePainter( RasterData data, QuantizedTable table ) {
+            this.data = data;
+            this.table = table;
+            switch ( data.getDataType() ) {
+            case FLOAT:
+                isFloat = true;
+                break;
+            default:
+                isFloat = false;
+            }
+        }
+
+        @Override
+        void paint( int minRow, int maxRow, int[] argb, int width ) {
+            QuantizedTable t = table;
+            for ( int row = minRow; row < maxRow; row++ ) {
+                int offset = row * width;
+                for ( int col = 0; col < width; col++ ) {
+                    float value = isFloat ? data.getFloatSample( col, row, 0 ) : data.getIntSample( col, row, 0 );
+                    int rgb;
+                    if ( value >= t.min && value <= t.max ) {
+                        int idx = min( t.levels - 1, (int) ( ( value - t.min ) * t.scale ) );
+                        rgb = t.exact[idx] ? lookup( value ) : t.colors[idx];
+                    } else if ( value < t.min ) {
+                        rgb = t.below;
+                    } else if ( value > t.max ) {
+                        rgb = t.above;
+                    } else {
+                        // NaN
+                        rgb = lookup( value );
+                    }
+                    argb[offset + col] = rgb;
+                }
+            }
+        }
+    }
+
+    /**
+     * Quantized colors for the value range between the first and the last break.
+     */
+    private class QuantizedTable {
+
+        final double min, max, scale;
+
+        final int levels;
+
+        final int[] colors;
+
+        final boolean[] exact;
+
+        final int below, above;
+
+        QuantizedTable( double[] breaks, int levels ) {
+            this.min = breaks[0];
+            this.max = breaks[breaks.length - 1];
+            this.levels = levels;
+            this.scale = levels / ( max - min );
+            double bucketSize = ( max - min ) / levels;
+            colors = new int[levels];
+            exact = new boolean[levels];
+            for ( int i = 0; i < levels; i++ ) {
+                colors[i] = lookup( min + ( i + 0.5 ) * bucketSize );
+            }
+            for ( double b : breaks ) {
+                int idx = (int) ( ( b - min ) * scale );
+                for ( int i = max( 0, idx - 1 ); i <= min( levels - 1, idx + 1 ); i++ ) {
+                    exact[i] = true;
+                }
+            }
+            below = lookup( min - max( 1, abs( min ) ) );
+            above = lookup( max + max( 1, abs( max ) ) );
+        }
+    }
+
+}
@@ -261,6 +261,21 @@ public class RasterDataUtility {
         }
     }
 
+    /**
+     * @return true, if {@link #get(int, int)} returns the plain sample of the first band (no band combination or
+     *         channel mapping takes place)
+     */
+    boolean isSingleSample() {
+        return !channelMappings && bands == 1;
+    }
+
+    /**
+     * @return the underlying raster data
+     */
+    RasterData getData() {
+        return data;
+    }
+
     /**
      * @param col
      *            column index
@@ -297,6 +312,103 @@ public class RasterDataUtility {
 
     }
 
+    /**
+     * Returns the values of a complete row, as they would be returned by {@link #get(int, int)}. Single band rasters
+     * are read in bulk.
+     * 
+     * @param row
+     *            row index
+     * @param result
+     *            array to store the values in, can be <code>null</code> or too small (a new array is created then)
+     * @return the row values
+     */
+    public float[] getRow( int row, float[] result ) {
+        if ( result == null || result.length < width ) {
+            result = new float[width];
+        }
+        if ( !isSingleSample() ) {
+            for ( int col = 0; col < width; col++ ) {
+                result[col] = get( col, row );
+            }
+            return result;
+        }
+        switch ( data.getDataType() ) {
+        case BYTE:
+            byte[] bytes = data.getBytes( 0, row, width, 1, 0, null );
+            for ( int col = 0; col < width; col++ ) {
+                result[col] = bytes[col] & 0xff;
+            }
+            break;
+        case SHORT:
+        case USHORT:
+            short[] shorts = data.getShorts( 0, row, width, 1, 0, null );
+            for ( int col = 0; col < width; col++ ) {
+                result[col] = shorts[col] & 0xffff;
+            }
+            break;
+        case INT:
+            int[] ints = data.getInts( 0, row, width, 1, 0, null );
+            for ( int col = 0; col < width; col++ ) {
+                result[col] = ints[col];
+            }
+            break;
+        case FLOAT:
+            result = data.getFloats( 0, row, width, 1, 0, result );
+            break;
+        default:
+            LOG.error( "Cannot parse datatype '{}'", data.getDataType().toString() );
+            throw new UnsupportedOperationException( "Cannot parse datatype: " + data.getDataType() );
+        }
+        return result;
+    }
+
+    /**
+     * Returns the values of a complete row in a particular band, as they would be returned by
+     * {@link #getEnhanced(int, int, int)}. Byte and short rasters are read in bulk.
+     * 
+     * @param row
+     *            row index
+     * @param band
+     *            band index
+     * @param result
+     *            array to store the values in, can be <code>null</code> or too small (a new array is created then)
+     * @return the row values, after contrast enhancement
+     */
+    public float[] getEnhancedRow( int row, int band, float[] result ) {
+        if ( result == null || result.length < width ) {
+            result = new float[width];
+        }
+        switch ( data.getDataType() ) {
+        case BYTE:
+            byte[] bytes = data.getBytes( 0, row, width, 1, band, null );
+            for ( int col = 0; col < width; col++ ) {
+                int i = bytes[col] & 0xff;
+                if ( contrast != null ) {
+                    if ( contrast.histogram )
+                        i = histogramTable[i];
+                    else if ( contrast.normalize )
+                        i = normalizeTable[i];
+                }
+                result[col] = gammaTable[i];
+            }
+            break;
+        case SHORT:
+        case USHORT:
+            short[] shorts = data.getShorts( 0, row, width, 1, band, null );
+            double size = Short.MAX_VALUE - Short.MIN_VALUE + 1;
+            double exp = 1.0 / gamma;
+            for ( int col = 0; col < width; col++ ) {
+                result[col] = (float) ( Math.pow( shorts[col] / size, exp ) * size );
+            }
+            break;
+        default:
+            for ( int col = 0; col < width; col++ ) {
+                result[col] = getEnhanced( col, row, band );
+            }
+        }
+        return result;
+    }
+
     /**
      * @param col
      *            column index
@@ -38,13 +38,18 @@ package org.deegree.style.utils;
 import static org.deegree.style.se.parser.SymbologyParser.ELSEFILTER;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 
 import org.deegree.commons.utils.Pair;
 import org.deegree.filter.Expression;
+import org.deegree.filter.Filters;
 import org.deegree.filter.Operator;
 import org.deegree.filter.OperatorFilter;
+import org.deegree.filter.expression.ValueReference;
 import org.deegree.filter.logical.Or;
 import org.deegree.style.se.parser.SymbologyParser.FilterContinuation;
 import org.deegree.style.se.unevaluated.Style;
@@ -93,6 +98,74 @@ public class Styles {
         return sldFilter;
     }
 
+    /**
+     * Collects the property names needed to evaluate the given style: the ones used in rule filters, in symbolizer
+     * expressions and in geometry expressions. Note that symbolizers without geometry expression use all geometry
+     * properties of a feature, see {@link #usesDefaultGeometry(Style)}.
+     * 
+     * @param style
+     *            the style, usually already filtered by scale, may be null
+     * @return the property names, or null, if the style contains rules for which the referenced properties are not
+     *         known (then all properties are needed)
+     */
+    public static Set<ValueReference> getPropertyNames( Style style ) {
+        if ( style == null || style.isDefault() ) {
+            return null;
+        }
+        Set<ValueReference> propNames = new LinkedHashSet<ValueReference>();
+        // do not use full generics here, else compilation will fail
+        LinkedList<Pair> rules = (LinkedList) style.getRules();
+        for ( Pair rule : rules ) {
+            if ( !( rule.first instanceof FilterContinuation ) ) {
+                return null;
+            }
+            FilterContinuation contn = (FilterContinuation) rule.first;
+            if ( contn.getPropertyNames() == null ) {
+                return null;
+            }
+            propNames.addAll( contn.getPropertyNames() );
+            if ( contn.filter != null && contn.filter != ELSEFILTER ) {
+                propNames.addAll( Arrays.asList( Filters.getPropertyNames( contn.filter ) ) );
+            }
+            for ( Symbolizer<?> s : contn.getSymbolizers() ) {
+                Expression expr = s.getGeometryExpression();
+                if ( expr instanceof ValueReference ) {
+                    propNames.add( (ValueReference) expr );
+                } else if ( expr != null ) {
+                    // other geometry expressions (eg. functions) may use any property
+                    return null;
+                }
+            }
+        }
+        return propNames;
+    }
+
+    /**
+     * @param style
+     *            may be null
+     * @return true, if a symbolizer of the style does not have a geometry expression (and thus uses all geometry
+     *         properties of the feature)
+     */
+    public static boolean usesDefaultGeometry( Style style ) {
+        if ( style == null || style.isDefault() ) {
+            return true;
+        }
+        // do not use full generics here, else compilation will fail
+        LinkedList<Pair> rules = (LinkedList) style.getRules();
+        for ( Pair rule : rules ) {
+            if ( rule.first instanceof FilterContinuation ) {
+                for ( Symbolizer<?> s : ( (FilterContinuation) rule.first ).getSymbolizers() ) {
+                    if ( s.getGeometryExpression() == null ) {
+                        return true;
+                    }
+                }
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public static List<Expression> getGeometryExpressions( Style style ) {
         List<Expression> list = new ArrayList<Expression>();
 
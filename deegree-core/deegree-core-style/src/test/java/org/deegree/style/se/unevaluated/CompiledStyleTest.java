@@ -0,0 +1,227 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.style.se.unevaluated;
+
+import static org.deegree.commons.tom.primitive.BaseType.STRING;
+import static org.deegree.style.se.parser.SymbologyParser.ELSEFILTER;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamReader;
+
+import org.deegree.commons.tom.gml.property.Property;
+import org.deegree.commons.tom.gml.property.PropertyType;
+import org.deegree.commons.utils.DoublePair;
+import org.deegree.commons.utils.Pair;
+import org.deegree.commons.utils.Triple;
+import org.deegree.feature.Feature;
+import org.deegree.feature.GenericFeature;
+import org.deegree.feature.property.GenericProperty;
+import org.deegree.feature.property.SimpleProperty;
+import org.deegree.feature.types.GenericFeatureType;
+import org.deegree.feature.types.property.SimplePropertyType;
+import org.deegree.feature.xpath.TypedObjectNodeXPathEvaluator;
+import org.deegree.filter.XPathEvaluator;
+import org.deegree.geometry.Geometry;
+import org.deegree.geometry.GeometryFactory;
+import org.deegree.style.se.parser.SymbologyParser;
+import org.deegree.style.se.parser.SymbologyParser.FilterContinuation;
+import org.deegree.style.styling.Styling;
+import org.deegree.style.styling.TextStyling;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that {@link CompiledStyle} evaluates features the same way as {@link Style#evaluate(Feature, XPathEvaluator)}.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ *
+ * @version $Revision$, $Date$
+ */
+public class CompiledStyleTest {
+
+    private static final QName FT_NAME = new QName( "Feature" );
+
+    private static final SimplePropertyType NAME = new SimplePropertyType( new QName( "name" ), 0, 1, STRING, null,
+                                                                           null );
+
+    private static final SimplePropertyType GEOM = new SimplePropertyType( new QName( "geom" ), 0, 1, STRING, null,
+                                                                           null );
+
+    private static final double[] SCALES = { 500, 2000, 10000 };
+
+    private final XPathEvaluator<Feature> evaluator = new TypedObjectNodeXPathEvaluator();
+
+    private Style style;
+
+    private List<Feature> features;
+
+    @Before
+    public void setup()
+                            throws Exception {
+        XMLInputFactory fac = XMLInputFactory.newInstance();
+        XMLStreamReader in = fac.createXMLStreamReader( getClass().getResourceAsStream( "compiledstyle.xml" ) );
+        in.next();
+        style = SymbologyParser.INSTANCE.parse( in );
+        features = new ArrayList<Feature>();
+        for ( String name : new String[] { "a", "b", "c", null } ) {
+            features.add( createFeature( name ) );
+        }
+    }
+
+    @Test
+    public void testRulesAndElseRules() {
+        assertEquivalent( style );
+    }
+
+    @Test
+    public void testScaleRanges() {
+        for ( double scale : SCALES ) {
+            assertEquivalent( style.filter( scale ), scale );
+        }
+    }
+
+    @Test
+    public void testScaleRangesOfFilteredStyle() {
+        // a style derived by filtering compiles its source
+        Style filtered = style.filter( 2000 );
+        style.compile( null );
+        assertEquivalent( filtered, 2000 );
+        assertEquivalent( style.filter( 10000 ).filter( 500 ), 500 );
+    }
+
+    @Test
+    public void testElseRuleAfterGenericRule() {
+        // rules that cannot be unwrapped are evaluated using their continuation, else rules must see their results
+        List<Pair<Continuation<LinkedList<Symbolizer<?>>>, DoublePair>> rules = new ArrayList<Pair<Continuation<LinkedList<Symbolizer<?>>>, DoublePair>>();
+        for ( Pair<Continuation<LinkedList<Symbolizer<?>>>, DoublePair> rule : style.getRules() ) {
+            final Continuation<LinkedList<Symbolizer<?>>> contn = rule.first;
+            Continuation<LinkedList<Symbolizer<?>>> wrapped = new Continuation<LinkedList<Symbolizer<?>>>() {
+                @Override
+                public void updateStep( LinkedList<Symbolizer<?>> base, Feature f, XPathEvaluator<Feature> evaluator ) {
+                    contn.evaluate( base, f, evaluator );
+                }
+            };
+            boolean isElse = ( (FilterContinuation) contn ).filter == ELSEFILTER;
+            rules.add( new Pair<Continuation<LinkedList<Symbolizer<?>>>, DoublePair>( isElse ? contn : wrapped,
+                                                                                      rule.second ) );
+        }
+        Style mixed = copyWithRules( rules, null );
+        for ( double scale : SCALES ) {
+            assertEquivalent( mixed.filter( scale ), scale );
+        }
+    }
+
+    @Test
+    public void testFeatureTypeConstraint() {
+        Style other = copyWithRules( style.getRules(), new QName( "Other" ) );
+        assertEquivalent( other );
+        CompiledStyle compiled = other.compile( null );
+        for ( Feature f : features ) {
+            assertEquals( 0, compiled.evaluate( f, evaluator, compiled.newResult() ).size() );
+        }
+        Style matching = copyWithRules( style.getRules(), FT_NAME );
+        assertEquivalent( matching );
+        compiled = matching.compile( FT_NAME );
+        assertTrue( compiled.evaluate( features.get( 0 ), evaluator, compiled.newResult() ).size() > 0 );
+    }
+
+    @Test
+    public void testDefaultStyle() {
+        assertEquivalent( new Style() );
+    }
+
+    @SuppressWarnings("unchecked")
+    private Style copyWithRules( List<Pair<Continuation<LinkedList<Symbolizer<?>>>, DoublePair>> rules, QName ft ) {
+        Map<Symbolizer<TextStyling>, Continuation<StringBuffer>> labels = new HashMap<Symbolizer<TextStyling>, Continuation<StringBuffer>>();
+        for ( Pair<Continuation<LinkedList<Symbolizer<?>>>, DoublePair> rule : style.getRules() ) {
+            for ( Symbolizer<?> s : ( (FilterContinuation) rule.first ).getSymbolizers() ) {
+                Continuation<StringBuffer> label = style.getLabel( s );
+                if ( label != null ) {
+                    labels.put( (Symbolizer<TextStyling>) s, label );
+                }
+            }
+        }
+        return new Style( rules, labels, null, "copy", ft );
+    }
+
+    private void assertEquivalent( Style style ) {
+        assertEquivalent( style, Double.NaN );
+    }
+
+    private void assertEquivalent( Style style, double scale ) {
+        for ( QName ft : new QName[] { null, FT_NAME } ) {
+            CompiledStyle compiled = style.compile( ft );
+            CompiledStyle.Result result = compiled.newResult();
+            for ( Feature f : features ) {
+                String msg = "Feature " + f.getId() + ", scale " + scale + ", feature type " + ft;
+                LinkedList<Triple<Styling, LinkedList<Geometry>, String>> expected = style.evaluate( f, evaluator );
+                compiled.evaluate( f, evaluator, result );
+                assertEquals( msg, expected.size(), result.size() );
+                for ( int i = 0; i < expected.size(); ++i ) {
+                    Triple<Styling, LinkedList<Geometry>, String> e = expected.get( i );
+                    Triple<Styling, LinkedList<Geometry>, String> a = result.get( i );
+                    assertSame( msg + ", styling " + i, e.first, a.first );
+                    assertEquals( msg + ", geometries " + i, e.second, a.second );
+                    assertEquals( msg + ", text " + i, e.third, a.third );
+                }
+            }
+        }
+    }
+
+    private static Feature createFeature( String name ) {
+        List<PropertyType> pts = new ArrayList<PropertyType>();
+        pts.add( NAME );
+        pts.add( GEOM );
+        GenericFeatureType ft = new GenericFeatureType( FT_NAME, pts, false );
+        List<Property> props = new ArrayList<Property>();
+        if ( name != null ) {
+            props.add( new SimpleProperty( NAME, name ) );
+        }
+        props.add( new GenericProperty( GEOM, new GeometryFactory().createPoint( null, 1, 2, null ) ) );
+        return new GenericFeature( ft, "f_" + name, props, null );
+    }
+
+}
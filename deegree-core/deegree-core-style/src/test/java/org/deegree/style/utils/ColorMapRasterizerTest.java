@@ -0,0 +1,245 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.style.utils;
+
+import static org.deegree.coverage.raster.data.RasterDataFactory.createRasterData;
+import static org.deegree.coverage.raster.geom.RasterGeoReference.OriginLocation.OUTER;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+
+import org.deegree.coverage.raster.SimpleRaster;
+import org.deegree.coverage.raster.data.RasterData;
+import org.deegree.coverage.raster.data.info.DataType;
+import org.deegree.coverage.raster.geom.RasterGeoReference;
+import org.deegree.geometry.GeometryFactory;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ColorMapRasterizer}. The lookup table based paths must yield the same colors as the per pixel
+ * lookup, including values on, below and above the break values.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+public class ColorMapRasterizerTest {
+
+    private static final int BELOW = 0xff000000;
+
+    private static final int FIRST = 0xffff0000;
+
+    private static final int SECOND = 0xff00ff00;
+
+    private static final int ABOVE = 0xff0000ff;
+
+    private static final int NAN = 0x00000000;
+
+    /**
+     * Categorizes into four classes with thresholds 0, 10 and 20, values equal to a threshold belong to the upper
+     * class.
+     */
+    private static class TestCategorize extends ColorMapRasterizer {
+
+        @Override
+        protected int lookup( double value ) {
+            if ( Double.isNaN( value ) ) {
+                return NAN;
+            }
+            if ( value < 0 ) {
+                return BELOW;
+            }
+            if ( value < 10 ) {
+                return FIRST;
+            }
+            if ( value < 20 ) {
+                return SECOND;
+            }
+            return ABOVE;
+        }
+
+        @Override
+        protected double[] getBreaks() {
+            return new double[] { 0, 10, 20 };
+        }
+    }
+
+    /**
+     * Interpolates gray values from black at 0 to white at 100.
+     */
+    private static class TestInterpolate extends ColorMapRasterizer {
+
+        @Override
+        protected int lookup( double value ) {
+            int gray = (int) Math.round( Math.max( 0, Math.min( 100, value ) ) * 255 / 100 );
+            return 0xff000000 | gray << 16 | gray << 8 | gray;
+        }
+
+        @Override
+        protected double[] getBreaks() {
+            return new double[] { 0, 100 };
+        }
+    }
+
+    private static SimpleRaster createRaster( RasterData data ) {
+        RasterGeoReference ref = new RasterGeoReference( OUTER, 1, -1, 0, data.getRows() );
+        GeometryFactory fac = new GeometryFactory();
+        return new SimpleRaster( data, fac.createEnvelope( 0, 0, data.getColumns(), data.getRows(), null ), ref, null );
+    }
+
+    private static SimpleRaster createFloatRaster( int width, int height, float[] values ) {
+        RasterData data = createRasterData( width, height, DataType.FLOAT, false );
+        for ( int i = 0; i < width * height; ++i ) {
+            data.setFloatSample( i % width, i / width, 0, values[i % values.length] );
+        }
+        return createRaster( data );
+    }
+
+    private static void assertPixels( ColorMapRasterizer rasterizer, BufferedImage img, float[] values ) {
+        int width = img.getWidth();
+        for ( int i = 0; i < width * img.getHeight(); ++i ) {
+            float v = values[i % values.length];
+            assertEquals( "Wrong color for value " + v, rasterizer.lookup( v ), img.getRGB( i % width, i / width ) );
+        }
+    }
+
+    @Test
+    public void testCategorizeSmallFloatRaster() {
+        float[] values = { -5, 0, 5, 10, 15, 20, 25, Float.NaN };
+        ColorMapRasterizer rasterizer = new TestCategorize();
+        BufferedImage img = rasterizer.rasterize( createFloatRaster( 8, 1, values ), null );
+        assertEquals( 8, img.getWidth() );
+        assertEquals( 1, img.getHeight() );
+        assertEquals( BELOW, img.getRGB( 0, 0 ) );
+        assertEquals( FIRST, img.getRGB( 1, 0 ) );
+        assertEquals( FIRST, img.getRGB( 2, 0 ) );
+        assertEquals( SECOND, img.getRGB( 3, 0 ) );
+        assertEquals( SECOND, img.getRGB( 4, 0 ) );
+        assertEquals( ABOVE, img.getRGB( 5, 0 ) );
+        assertEquals( ABOVE, img.getRGB( 6, 0 ) );
+        assertEquals( NAN, img.getRGB( 7, 0 ) );
+    }
+
+    @Test
+    public void testCategorizeQuantizedEdgeClasses() {
+        // large enough to use the quantized lookup table
+        float[] values = { -1e9f, -0.001f, 0, 0.001f, 9.999f, 10, 10.001f, 19.999f, 20, 20.001f, 1e9f, Float.NaN,
+                          Math.nextAfter( 10f, 0 ), Math.nextUp( 10f ), Math.nextAfter( 20f, 0 ), Math.nextUp( 0f ) };
+        ColorMapRasterizer rasterizer = new TestCategorize();
+        BufferedImage img = rasterizer.rasterize( createFloatRaster( 100, 100, values ), null );
+        assertPixels( rasterizer, img, values );
+        assertEquals( BELOW, img.getRGB( 1, 0 ) );
+        assertEquals( FIRST, img.getRGB( 2, 0 ) );
+        assertEquals( SECOND, img.getRGB( 5, 0 ) );
+        assertEquals( ABOVE, img.getRGB( 8, 0 ) );
+    }
+
+    @Test
+    public void testCategorizeQuantizedMatchesDirectLookup() {
+        float[] values = new float[10000];
+        for ( int i = 0; i < values.length; ++i ) {
+            values[i] = -2.5f + i * 0.0025f;
+        }
+        ColorMapRasterizer rasterizer = new TestCategorize();
+        BufferedImage img = rasterizer.rasterize( createFloatRaster( 100, 100, values ), null );
+        assertPixels( rasterizer, img, values );
+    }
+
+    @Test
+    public void testInterpolateQuantized() {
+        float[] values = new float[10000];
+        for ( int i = 0; i < values.length; ++i ) {
+            values[i] = -10 + i * 0.012f;
+        }
+        ColorMapRasterizer rasterizer = new TestInterpolate();
+        BufferedImage img = rasterizer.rasterize( createFloatRaster( 100, 100, values ), null );
+        for ( int i = 0; i < values.length; ++i ) {
+            int expected = rasterizer.lookup( values[i] ) & 0xff;
+            int actual = img.getRGB( i % 100, i / 100 ) & 0xff;
+            assertTrue( "Value " + values[i] + " yields " + actual + " instead of " + expected,
+                        Math.abs( expected - actual ) <= 1 );
+        }
+        // clamped outside of the range
+        assertEquals( 0xff000000, img.getRGB( 0, 0 ) );
+        assertEquals( 0xffffffff, img.getRGB( 99, 99 ) );
+    }
+
+    @Test
+    public void testInterpolateIntegerSteps() {
+        float[] values = { 0, 25, 50, 75, 100 };
+        ColorMapRasterizer rasterizer = new TestInterpolate();
+        BufferedImage img = rasterizer.rasterize( createFloatRaster( 5, 1, values ), null );
+        assertEquals( 0xff000000, img.getRGB( 0, 0 ) );
+        assertEquals( 0xff404040, img.getRGB( 1, 0 ) );
+        assertEquals( 0xff808080, img.getRGB( 2, 0 ) );
+        assertEquals( 0xffbfbfbf, img.getRGB( 3, 0 ) );
+        assertEquals( 0xffffffff, img.getRGB( 4, 0 ) );
+    }
+
+    @Test
+    public void testByteTable() {
+        RasterData data = createRasterData( 32, 32, DataType.BYTE, false );
+        for ( int i = 0; i < 32 * 32; ++i ) {
+            data.setByteSample( i % 32, i / 32, 0, (byte) i );
+        }
+        ColorMapRasterizer rasterizer = new TestCategorize();
+        BufferedImage img = rasterizer.rasterize( createRaster( data ), null );
+        for ( int i = 0; i < 32 * 32; ++i ) {
+            // bytes are unsigned
+            assertEquals( rasterizer.lookup( i & 0xff ), img.getRGB( i % 32, i / 32 ) );
+        }
+        assertEquals( FIRST, img.getRGB( 9, 0 ) );
+        assertEquals( SECOND, img.getRGB( 10, 0 ) );
+        assertEquals( ABOVE, img.getRGB( 31, 7 ) );
+    }
+
+    @Test
+    public void testShortTable() {
+        RasterData data = createRasterData( 300, 300, DataType.SHORT, false );
+        for ( int i = 0; i < 300 * 300; ++i ) {
+            data.setShortSample( i % 300, i / 300, 0, (short) ( i % 40 - 10 ) );
+        }
+        ColorMapRasterizer rasterizer = new TestCategorize();
+        BufferedImage img = rasterizer.rasterize( createRaster( data ), null );
+        for ( int i = 0; i < 300 * 300; ++i ) {
+            // the short table treats samples as unsigned, like the per pixel lookup
+            int value = ( i % 40 - 10 ) & 0xffff;
+            assertEquals( rasterizer.lookup( value ), img.getRGB( i % 300, i / 300 ) );
+        }
+    }
+
+}
@@ -0,0 +1,137 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.style.utils;
+
+import static java.util.Arrays.asList;
+import static org.deegree.style.utils.Styles.getPropertyNames;
+import static org.deegree.style.utils.Styles.usesDefaultGeometry;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamReader;
+
+import org.deegree.commons.utils.DoublePair;
+import org.deegree.commons.utils.Pair;
+import org.deegree.filter.expression.ValueReference;
+import org.deegree.style.se.parser.SymbologyParser;
+import org.deegree.style.se.parser.SymbologyParser.FilterContinuation;
+import org.deegree.style.se.unevaluated.Continuation;
+import org.deegree.style.se.unevaluated.Style;
+import org.deegree.style.se.unevaluated.Symbolizer;
+import org.deegree.style.styling.TextStyling;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the property names {@link Styles} determines for styles.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+public class StylesTest {
+
+    private Style style;
+
+    @Before
+    public void setup()
+                            throws Exception {
+        XMLInputFactory fac = XMLInputFactory.newInstance();
+        XMLStreamReader in = fac.createXMLStreamReader( getClass().getResourceAsStream( "propertynames.xml" ) );
+        in.next();
+        style = SymbologyParser.INSTANCE.parse( in );
+    }
+
+    @Test
+    public void testPropertyNamesOfAllRules() {
+        assertEquals( names( "type", "centerline", "lanes", "name", "ref", "color" ),
+                      getNames( getPropertyNames( style ) ) );
+        assertTrue( usesDefaultGeometry( style ) );
+    }
+
+    @Test
+    public void testPropertyNamesAtScale() {
+        assertEquals( names( "type", "centerline", "lanes", "name", "ref" ),
+                      getNames( getPropertyNames( style.filter( 5000 ) ) ) );
+        assertFalse( usesDefaultGeometry( style.filter( 5000 ) ) );
+        assertEquals( names( "type", "centerline", "lanes" ), getNames( getPropertyNames( style.filter( 20000 ) ) ) );
+        assertFalse( usesDefaultGeometry( style.filter( 20000 ) ) );
+        assertEquals( names( "color" ), getNames( getPropertyNames( style.filter( 100000 ) ) ) );
+        assertTrue( usesDefaultGeometry( style.filter( 100000 ) ) );
+    }
+
+    @Test
+    public void testUnknownPropertyNames() {
+        assertNull( getPropertyNames( null ) );
+        assertNull( getPropertyNames( new Style() ) );
+        assertTrue( usesDefaultGeometry( null ) );
+        assertTrue( usesDefaultGeometry( new Style() ) );
+
+        // rules that have not been parsed by the SLD/SE parser may use any property
+        List<Pair<Continuation<LinkedList<Symbolizer<?>>>, DoublePair>> rules = new ArrayList<Pair<Continuation<LinkedList<Symbolizer<?>>>, DoublePair>>();
+        for ( Pair<Continuation<LinkedList<Symbolizer<?>>>, DoublePair> rule : style.getRules() ) {
+            FilterContinuation contn = (FilterContinuation) rule.first;
+            FilterContinuation copy = new FilterContinuation( contn.filter, contn.getSymbolizers(), contn.common );
+            rules.add( new Pair<Continuation<LinkedList<Symbolizer<?>>>, DoublePair>( copy, rule.second ) );
+        }
+        Style copy = new Style( rules, new HashMap<Symbolizer<TextStyling>, Continuation<StringBuffer>>(), null,
+                                "copy", null );
+        assertNull( getPropertyNames( copy ) );
+    }
+
+    private static Set<String> names( String... names ) {
+        return new LinkedHashSet<String>( asList( names ) );
+    }
+
+    private static Set<String> getNames( Set<ValueReference> propNames ) {
+        Set<String> names = new LinkedHashSet<String>();
+        for ( ValueReference propName : propNames ) {
+            names.add( propName.getAsText() );
+        }
+        return names;
+    }
+
+}
@@ -0,0 +1,71 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.feature.persistence;
+
+import org.deegree.feature.FeatureCollection;
+import org.deegree.protocol.wfs.transaction.action.IDGenMode;
+
+/**
+ * {@link FeatureStoreTransaction} that offers a bulk insert mode for loading large numbers of features, e.g. using a
+ * database specific bulk load mechanism.
+ * <p>
+ * Bulk inserts may use more memory and may report errors later (e.g. only when the inserted rows are flushed), but the
+ * resulting store content is the same as for regular inserts.
+ * </p>
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+public interface BulkInsertTransaction extends FeatureStoreTransaction {
+
+    /**
+     * Returns whether the bulk insert mode is supported by the store (in its current configuration).
+     * 
+     * @return <code>true</code>, if bulk inserts are supported, <code>false</code> otherwise
+     */
+    boolean isBulkInsertSupported();
+
+    /**
+     * Enables or disables the bulk insert mode for subsequent calls to
+     * {@link #performInsert(FeatureCollection, IDGenMode)}. Ignored if bulk inserts are not supported.
+     * 
+     * @param bulkInsert
+     *            <code>true</code> to enable bulk inserts, <code>false</code> to disable them
+     */
+    void setBulkInsert( boolean bulkInsert );
+
+}
@@ -0,0 +1,92 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.feature.persistence;
+
+import java.util.List;
+
+import org.deegree.feature.FeatureCollection;
+import org.deegree.protocol.wfs.transaction.action.IDGenMode;
+
+/**
+ * {@link FeatureStoreTransaction} that can insert large numbers of features in chunks, so the features don't have to
+ * be kept in memory at once.
+ * <p>
+ * A chunked insert is started with {@link #beginChunkedInsert(IDGenMode)}, followed by an arbitrary number of calls to
+ * {@link #insertChunk(FeatureCollection)} and ended with {@link #endChunkedInsert()}. References between features of
+ * different chunks (local xlinks in both directions) are resolved by the store using the original feature ids, i.e.
+ * referenced features don't need to be resolved or even available when a chunk is inserted. References that are still
+ * unresolved at the end of the insert make {@link #endChunkedInsert()} fail.
+ * </p>
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+public interface ChunkedInsertTransaction extends FeatureStoreTransaction {
+
+    /**
+     * Starts a chunked insert.
+     * 
+     * @param mode
+     *            mode for deriving the ids of the inserted objects, must not be <code>null</code>
+     * @throws FeatureStoreException
+     *             if a chunked insert is already in progress
+     */
+    void beginChunkedInsert( IDGenMode mode )
+                            throws FeatureStoreException;
+
+    /**
+     * Inserts the given chunk of features (including subfeatures).
+     * 
+     * @param chunk
+     *            features to be inserted, must not be <code>null</code>
+     * @throws FeatureStoreException
+     *             if the insertion fails or no chunked insert is in progress
+     */
+    void insertChunk( FeatureCollection chunk )
+                            throws FeatureStoreException;
+
+    /**
+     * Ends the chunked insert.
+     * 
+     * @return effective ids of the inserted features and subfeatures of all chunks
+     * @throws FeatureStoreException
+     *             if the insertion fails (e.g. because of unresolvable references) or no chunked insert is in progress
+     */
+    List<String> endChunkedInsert()
+                            throws FeatureStoreException;
+
+}
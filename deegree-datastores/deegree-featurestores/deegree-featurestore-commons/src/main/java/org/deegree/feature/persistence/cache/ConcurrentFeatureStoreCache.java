@@ -0,0 +1,373 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.feature.persistence.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.deegree.commons.tom.gml.GMLObject;
+import org.deegree.feature.persistence.FeatureStore;
+
+/**
+ * {@link FeatureStoreCache} that is partitioned into independently locked segments and evicts the least recently used
+ * objects once a maximum number of objects or a maximum (estimated) memory size is exceeded.
+ * <p>
+ * Objects are held by strong references, the memory size of each object is estimated when it is added. The maximum
+ * number of objects is split evenly among the segments, whereas the memory limit applies to the cache as a whole: if it
+ * is exceeded, the least recently used objects of the segments are evicted in turn. Objects that are larger than the
+ * memory limit are not cached at all. The number of hits, misses and evictions is counted and can be used for tuning
+ * the cache size.
+ * </p>
+ * 
+ * @see FeatureStore
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+public class ConcurrentFeatureStoreCache implements FeatureStoreCache {
+
+    /** Default maximum number of cached objects. */
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    /** Default maximum (estimated) memory size of the cached objects in bytes. */
+    public static final long DEFAULT_MAX_MEMORY = 64L * 1024 * 1024;
+
+    private final Segment[] segments;
+
+    private final int segmentMask;
+
+    private final int maxEntries;
+
+    private final long maxMemory;
+
+    // estimated memory size of all cached objects
+    private final AtomicLong memory = new AtomicLong();
+
+    // segment to evict from next if the memory limit is exceeded
+    private final AtomicInteger evictionIndex = new AtomicInteger();
+
+    /**
+     * Creates a new {@link ConcurrentFeatureStoreCache} instance with the default limits.
+     */
+    public ConcurrentFeatureStoreCache() {
+        this( DEFAULT_MAX_ENTRIES, DEFAULT_MAX_MEMORY );
+    }
+
+    /**
+     * Creates a new {@link ConcurrentFeatureStoreCache} instance with a number of segments suitable for the number of
+     * available processors.
+     * 
+     * @param maxEntries
+     *            maximum number of cached objects, must be positive
+     * @param maxMemory
+     *            maximum estimated memory size of the cached objects in bytes, must be positive
+     */
+    public ConcurrentFeatureStoreCache( int maxEntries, long maxMemory ) {
+        this( maxEntries, maxMemory, 4 * Runtime.getRuntime().availableProcessors() );
+    }
+
+    /**
+     * Creates a new {@link ConcurrentFeatureStoreCache} instance.
+     * 
+     * @param maxEntries
+     *            maximum number of cached objects, must be positive
+     * @param maxMemory
+     *            maximum estimated memory size of the cached objects in bytes, must be positive
+     * @param concurrencyLevel
+     *            estimated number of concurrently accessing threads, must be positive
+     */
+    public ConcurrentFeatureStoreCache( int maxEntries, long maxMemory, int concurrencyLevel ) {
+        if ( maxEntries < 1 || maxMemory < 1 || concurrencyLevel < 1 ) {
+            throw new IllegalArgumentException( "Cache limits and concurrency level must be positive." );
+        }
+        this.maxEntries = maxEntries;
+        this.maxMemory = maxMemory;
+        int numSegments = 1;
+        while ( numSegments < concurrencyLevel && numSegments * 2 <= maxEntries ) {
+            numSegments *= 2;
+        }
+        segments = new Segment[numSegments];
+        for ( int i = 0; i < numSegments; i++ ) {
+            segments[i] = new Segment( Math.max( 1, maxEntries / numSegments ), memory );
+        }
+        segmentMask = numSegments - 1;
+    }
+
+    private Segment getSegment( String id ) {
+        int h = id.hashCode();
+        // spread the bits, the low bits of string hash codes are often similar
+        h ^= ( h >>> 20 ) ^ ( h >>> 12 );
+        h ^= ( h >>> 7 ) ^ ( h >>> 4 );
+        return segments[h & segmentMask];
+    }
+
+    @Override
+    public GMLObject get( String id ) {
+        return getSegment( id ).get( id );
+    }
+
+    @Override
+    public void add( GMLObject obj ) {
+        String id = obj.getId();
+        if ( id == null ) {
+            return;
+        }
+        long weight = GMLObjectWeigher.weigh( obj );
+        if ( weight > maxMemory ) {
+            // too large, don't cache (but don't keep an outdated version either)
+            getSegment( id ).remove( id );
+            return;
+        }
+        getSegment( id ).put( id, obj, weight );
+        evict( id );
+    }
+
+    /**
+     * Evicts the least recently used objects of the segments (one segment after another) until the memory limit is
+     * met.
+     * 
+     * @param added
+     *            id of the object that has just been added (and is not evicted), must not be <code>null</code>
+     */
+    private void evict( String added ) {
+        int emptySegments = 0;
+        while ( memory.get() > maxMemory && emptySegments < segments.length ) {
+            Segment segment = segments[evictionIndex.getAndIncrement() & segmentMask];
+            if ( segment.evictEldest( added ) ) {
+                emptySegments = 0;
+            } else {
+                emptySegments++;
+            }
+        }
+    }
+
+    @Override
+    public void remove( String id ) {
+        getSegment( id ).remove( id );
+    }
+
+    @Override
+    public void clear() {
+        for ( Segment segment : segments ) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * @return maximum number of cached objects
+     */
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * @return maximum estimated memory size of the cached objects in bytes
+     */
+    public long getMaxMemory() {
+        return maxMemory;
+    }
+
+    /**
+     * @return number of currently cached objects
+     */
+    public int size() {
+        int size = 0;
+        for ( Segment segment : segments ) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return estimated memory size of the currently cached objects in bytes
+     */
+    public long getMemory() {
+        return memory.get();
+    }
+
+    /**
+     * @return number of lookups that returned a cached object
+     */
+    public long getHits() {
+        long hits = 0;
+        for ( Segment segment : segments ) {
+            synchronized ( segment ) {
+                hits += segment.hits;
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * @return number of lookups that did not return a cached object
+     */
+    public long getMisses() {
+        long misses = 0;
+        for ( Segment segment : segments ) {
+            synchronized ( segment ) {
+                misses += segment.misses;
+            }
+        }
+        return misses;
+    }
+
+    /**
+     * @return number of objects that have been evicted because of the cache limits
+     */
+    public long getEvictions() {
+        long evictions = 0;
+        for ( Segment segment : segments ) {
+            synchronized ( segment ) {
+                evictions += segment.evictions;
+            }
+        }
+        return evictions;
+    }
+
+    @Override
+    public String toString() {
+        long hits = getHits();
+        long lookups = hits + getMisses();
+        long hitRatio = lookups == 0 ? 0 : Math.round( 100.0 * hits / lookups );
+        return "{objects=" + size() + "/" + maxEntries + ", memory=" + ( getMemory() >> 10 ) + "/" + ( maxMemory >> 10 )
+               + " kB, hits=" + hits + ", lookups=" + lookups + " (" + hitRatio + "%), evictions=" + getEvictions()
+               + "}";
+    }
+
+    /**
+     * Access ordered part of the cache, all access is synchronized on the segment.
+     */
+    private static class Segment {
+
+        private final Map<String, Entry> map = new LinkedHashMap<String, Entry>( 16, 0.75f, true );
+
+        private final int maxEntries;
+
+        // shared by all segments
+        private final AtomicLong memory;
+
+        private long hits, misses, evictions;
+
+        Segment( int maxEntries, AtomicLong memory ) {
+            this.maxEntries = maxEntries;
+            this.memory = memory;
+        }
+
+        synchronized GMLObject get( String id ) {
+            Entry entry = map.get( id );
+            if ( entry == null ) {
+                misses++;
+                return null;
+            }
+            hits++;
+            return entry.object;
+        }
+
+        synchronized void put( String id, GMLObject object, long weight ) {
+            Entry old = map.put( id, new Entry( object, weight ) );
+            memory.addAndGet( old != null ? weight - old.weight : weight );
+            // least recently used entries first
+            Iterator<Entry> iter = map.values().iterator();
+            while ( map.size() > maxEntries && iter.hasNext() ) {
+                Entry eldest = iter.next();
+                iter.remove();
+                memory.addAndGet( -eldest.weight );
+                evictions++;
+            }
+        }
+
+        /**
+         * Evicts the least recently used entry of this segment.
+         * 
+         * @param keep
+         *            id of an entry that must not be evicted, must not be <code>null</code>
+         * @return <code>true</code>, if an entry has been evicted, <code>false</code> if the segment contains no other
+         *         entries
+         */
+        synchronized boolean evictEldest( String keep ) {
+            Iterator<Map.Entry<String, Entry>> iter = map.entrySet().iterator();
+            if ( !iter.hasNext() ) {
+                return false;
+            }
+            Map.Entry<String, Entry> eldest = iter.next();
+            if ( eldest.getKey().equals( keep ) ) {
+                // the most recently used entry is only the eldest one if it is the only one
+                return false;
+            }
+            iter.remove();
+            memory.addAndGet( -eldest.getValue().weight );
+            evictions++;
+            return true;
+        }
+
+        synchronized void remove( String id ) {
+            Entry old = map.remove( id );
+            if ( old != null ) {
+                memory.addAndGet( -old.weight );
+            }
+        }
+
+        synchronized void clear() {
+            long weight = 0;
+            for ( Entry entry : map.values() ) {
+                weight += entry.weight;
+            }
+            map.clear();
+            memory.addAndGet( -weight );
+        }
+
+        synchronized int size() {
+            return map.size();
+        }
+    }
+
+    private static class Entry {
+
+        final GMLObject object;
+
+        final long weight;
+
+        Entry( GMLObject object, long weight ) {
+            this.object = object;
+            this.weight = weight;
+        }
+    }
+
+}
@@ -0,0 +1,195 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.feature.persistence.cache;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.namespace.QName;
+
+import org.deegree.commons.tom.ElementNode;
+import org.deegree.commons.tom.Reference;
+import org.deegree.commons.tom.TypedObjectNode;
+import org.deegree.commons.tom.gml.GMLObject;
+import org.deegree.commons.tom.gml.property.Property;
+import org.deegree.commons.tom.primitive.PrimitiveValue;
+import org.deegree.feature.Feature;
+import org.deegree.geometry.Geometry;
+import org.deegree.geometry.multi.MultiGeometry;
+import org.deegree.geometry.primitive.Curve;
+import org.deegree.geometry.primitive.Point;
+import org.deegree.geometry.primitive.Ring;
+import org.deegree.geometry.primitive.Surface;
+import org.deegree.geometry.primitive.patches.PolygonPatch;
+import org.deegree.geometry.primitive.patches.SurfacePatch;
+
+/**
+ * Estimates the heap size of {@link GMLObject}s, used for weighing the entries of a {@link FeatureStoreCache}.
+ * <p>
+ * The estimation is rough, but cheap: it walks the properties of features and counts the control points of linear
+ * geometries. References are never resolved, i.e. referenced objects are not included.
+ * </p>
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+class GMLObjectWeigher {
+
+    private static final int OBJECT = 48;
+
+    private static final int POINT = 64;
+
+    private static final int NON_LINEAR_CURVE = 64 * POINT;
+
+    private static final int MAX_DEPTH = 32;
+
+    private GMLObjectWeigher() {
+        // avoid instantiation
+    }
+
+    /**
+     * Returns the approximate heap size of the given object.
+     * 
+     * @param object
+     *            object to weigh, must not be <code>null</code>
+     * @return approximate size in bytes, always positive
+     */
+    static long weigh( GMLObject object ) {
+        return OBJECT + weigh( object, 0 );
+    }
+
+    private static long weigh( TypedObjectNode node, int depth ) {
+        if ( node == null || depth > MAX_DEPTH ) {
+            return 0;
+        }
+        if ( node instanceof Reference<?> ) {
+            return OBJECT;
+        }
+        if ( node instanceof PrimitiveValue ) {
+            Object value = ( (PrimitiveValue) node ).getValue();
+            if ( value instanceof String ) {
+                return OBJECT + 2 * ( (String) value ).length();
+            }
+            return OBJECT;
+        }
+        if ( node instanceof Geometry ) {
+            return weighGeometry( (Geometry) node, depth );
+        }
+        if ( node instanceof Feature ) {
+            long size = OBJECT;
+            for ( Property prop : ( (Feature) node ).getProperties() ) {
+                size += weigh( prop, depth + 1 );
+            }
+            return size;
+        }
+        if ( node instanceof Property ) {
+            Property prop = (Property) node;
+            long size = OBJECT + weighAttributes( prop.getAttributes() );
+            TypedObjectNode value = prop.getValue();
+            if ( value != null ) {
+                return size + weigh( value, depth + 1 );
+            }
+            return size + weighChildren( prop.getChildren(), depth );
+        }
+        if ( node instanceof ElementNode ) {
+            ElementNode el = (ElementNode) node;
+            return OBJECT + weighAttributes( el.getAttributes() ) + weighChildren( el.getChildren(), depth );
+        }
+        return OBJECT;
+    }
+
+    private static long weighChildren( List<TypedObjectNode> children, int depth ) {
+        long size = 0;
+        if ( children != null ) {
+            for ( TypedObjectNode child : children ) {
+                size += weigh( child, depth + 1 );
+            }
+        }
+        return size;
+    }
+
+    private static long weighAttributes( Map<QName, PrimitiveValue> attributes ) {
+        long size = 0;
+        if ( attributes != null ) {
+            for ( PrimitiveValue value : attributes.values() ) {
+                size += OBJECT + weigh( value, 0 );
+            }
+        }
+        return size;
+    }
+
+    private static long weighGeometry( Geometry geom, int depth ) {
+        if ( geom instanceof Point ) {
+            return POINT;
+        }
+        if ( geom instanceof Curve ) {
+            return OBJECT + weighCurve( (Curve) geom );
+        }
+        if ( geom instanceof Surface ) {
+            long size = OBJECT;
+            for ( SurfacePatch patch : ( (Surface) geom ).getPatches() ) {
+                if ( patch instanceof PolygonPatch ) {
+                    for ( Ring ring : ( (PolygonPatch) patch ).getBoundaryRings() ) {
+                        size += OBJECT + weighCurve( ring );
+                    }
+                } else {
+                    size += NON_LINEAR_CURVE;
+                }
+            }
+            return size;
+        }
+        if ( geom instanceof MultiGeometry<?> && depth <= MAX_DEPTH ) {
+            long size = OBJECT;
+            for ( Geometry member : (MultiGeometry<?>) geom ) {
+                size += weighGeometry( member, depth + 1 );
+            }
+            return size;
+        }
+        // solids, composites etc.
+        return NON_LINEAR_CURVE;
+    }
+
+    private static long weighCurve( Curve curve ) {
+        try {
+            return (long) POINT * curve.getControlPoints().size();
+        } catch ( RuntimeException e ) {
+            // not linear interpolated
+            return NON_LINEAR_CURVE;
+        }
+    }
+
+}
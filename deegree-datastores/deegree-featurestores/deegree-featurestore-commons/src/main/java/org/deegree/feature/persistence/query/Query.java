@@ -97,6 +97,10 @@ public class Query {
 
     private int maxFeatures = -1;
 
+    private int startIndex = 0;
+
+    private String startAfterId;
+
     private final List<ProjectionClause> projections;
 
     /**
@@ -144,6 +148,29 @@ public class Query {
      *            sort criteria to be applied, can be <code>null</code>
      */
     public Query( TypeName[] typeNames, Filter filter, String featureVersion, ICRS srsName, SortProperty[] sortBy ) {
+        this( typeNames, filter, featureVersion, srsName, sortBy, null );
+    }
+
+    /**
+     * Creates a new {@link Query} instance.
+     * 
+     * @param typeNames
+     *            feature type names to be queried, must not be <code>null</code> and contain at least one entry
+     * @param filter
+     *            filter to be applied, can be <code>null</code>, if not <code>null</code>, all contained geometry
+     *            operands must have a non-null {@link CRS}
+     * @param featureVersion
+     *            specific feature version to be returned, can be <code>null</code>
+     * @param srsName
+     *            SRS for the returned geometries, can be <code>null</code>
+     * @param sortBy
+     *            sort criteria to be applied, can be <code>null</code>
+     * @param projections
+     *            projections to be applied to returned features, can be <code>null</code> (all properties are
+     *            returned)
+     */
+    public Query( TypeName[] typeNames, Filter filter, String featureVersion, ICRS srsName, SortProperty[] sortBy,
+                  List<ProjectionClause> projections ) {
         this.typeNames = typeNames;
         this.filter = filter;
         if ( sortBy != null ) {
@@ -151,7 +178,11 @@ public class Query {
         } else {
             this.sortBy = new SortProperty[0];
         }
-        this.projections = emptyList();
+        if ( projections != null ) {
+            this.projections = projections;
+        } else {
+            this.projections = emptyList();
+        }
     }
 
     /**
@@ -173,6 +204,31 @@ public class Query {
      */
     public Query( TypeName[] typeNames, Filter filter, SortProperty[] sortBy, int scale, int maxFeatures,
                   double resolution ) {
+        this( typeNames, filter, sortBy, scale, maxFeatures, resolution, null );
+    }
+
+    /**
+     * Creates a new {@link Query} instance.
+     * 
+     * @param typeNames
+     *            feature type names to be queried, must not be <code>null</code> and contain at least one entry
+     * @param filter
+     *            filter to be applied, can be <code>null</code>, if not <code>null</code>, all contained geometry
+     *            operands must have a non-null {@link CRS}
+     * @param sortBy
+     *            sort criteria to be applied, can be <code>null</code>
+     * @param scale
+     *            if scale is positive, a scale query hint will be used
+     * @param maxFeatures
+     *            may be -1 if no limit needs to be exercised
+     * @param resolution
+     *            if resolution is positive, a pixel resolution hint will be used
+     * @param projections
+     *            projections to be applied to returned features, can be <code>null</code> (all properties are
+     *            returned)
+     */
+    public Query( TypeName[] typeNames, Filter filter, SortProperty[] sortBy, int scale, int maxFeatures,
+                  double resolution, List<ProjectionClause> projections ) {
         this.typeNames = typeNames;
         this.filter = filter;
         if ( sortBy != null ) {
@@ -187,7 +243,11 @@ public class Query {
         if ( resolution > 0 ) {
             hints.put( HINT_RESOLUTION, resolution );
         }
-        this.projections = emptyList();
+        if ( projections != null ) {
+            this.projections = projections;
+        } else {
+            this.projections = emptyList();
+        }
     }
 
     public Object getHint( QueryHint code ) {
@@ -277,4 +337,75 @@ public class Query {
     public int getMaxFeatures() {
         return maxFeatures;
     }
+
+    /**
+     * Sets the maximum number of features to be returned.
+     * <p>
+     * Feature stores only enforce the maximum for paged queries (see {@link #isPaged()}), as the page size. For other
+     * queries, it is left to the caller (e.g. the rendering) to stop reading.
+     * </p>
+     * 
+     * @param maxFeatures
+     *            may be -1 if no limit needs to be exercised
+     */
+    public void setMaxFeatures( int maxFeatures ) {
+        this.maxFeatures = maxFeatures;
+    }
+
+    /**
+     * Returns the number of matching features to be skipped before the first feature is returned.
+     * 
+     * @return number of features to skip, 0 if the result starts with the first matching feature
+     */
+    public int getStartIndex() {
+        return startIndex;
+    }
+
+    /**
+     * Sets the number of matching features to be skipped before the first feature is returned (offset paging).
+     * <p>
+     * Feature stores have to respect the start index. Stores that cannot evaluate it in the backend (e.g. as an SQL
+     * <code>OFFSET</code>) skip the features in memory.
+     * </p>
+     * 
+     * @param startIndex
+     *            number of features to skip, 0 to start with the first matching feature
+     */
+    public void setStartIndex( int startIndex ) {
+        this.startIndex = startIndex;
+    }
+
+    /**
+     * Returns the id of the feature after which the result starts.
+     * 
+     * @return feature id, can be <code>null</code> (result starts with the first matching feature)
+     */
+    public String getStartAfterId() {
+        return startAfterId;
+    }
+
+    /**
+     * Sets the id of the feature after which the result starts (keyset paging).
+     * <p>
+     * In contrast to the start index, this allows stores to seek directly to the next page (e.g. using the primary key
+     * of the last feature of the previous page), so deep pages are as cheap as the first one. If both are given, the
+     * start index is counted from the feature following the given one. Stores that cannot seek skip all features up to
+     * (and including) the given one in memory.
+     * </p>
+     * 
+     * @param startAfterId
+     *            id of the last feature of the previous page, can be <code>null</code>
+     */
+    public void setStartAfterId( String startAfterId ) {
+        this.startAfterId = startAfterId;
+    }
+
+    /**
+     * Returns whether the result does not start with the first matching feature.
+     * 
+     * @return <code>true</code>, if a start index or a start feature id has been set, <code>false</code> otherwise
+     */
+    public boolean isPaged() {
+        return startIndex > 0 || startAfterId != null;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,211 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.feature.persistence.cache;
+
+import static org.deegree.commons.tom.primitive.BaseType.STRING;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.xml.namespace.QName;
+
+import org.deegree.commons.tom.gml.property.Property;
+import org.deegree.commons.tom.gml.property.PropertyType;
+import org.deegree.feature.Feature;
+import org.deegree.feature.GenericFeature;
+import org.deegree.feature.property.SimpleProperty;
+import org.deegree.feature.types.GenericFeatureType;
+import org.deegree.feature.types.property.SimplePropertyType;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ConcurrentFeatureStoreCache}.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+public class ConcurrentFeatureStoreCacheTest {
+
+    private static final SimplePropertyType NAME = new SimplePropertyType( new QName( "name" ), 0, 1, STRING, null,
+                                                                           null );
+
+    private static final List<PropertyType> PROPS = Collections.<PropertyType> singletonList( NAME );
+
+    private static final GenericFeatureType FT = new GenericFeatureType( new QName( "Feature" ), PROPS, false );
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        ConcurrentFeatureStoreCache cache = new ConcurrentFeatureStoreCache( 3, Long.MAX_VALUE, 1 );
+        cache.add( createFeature( "a", 0 ) );
+        cache.add( createFeature( "b", 0 ) );
+        cache.add( createFeature( "c", 0 ) );
+        assertNotNull( cache.get( "a" ) );
+        cache.add( createFeature( "d", 0 ) );
+        assertNull( cache.get( "b" ) );
+        assertNotNull( cache.get( "a" ) );
+        assertNotNull( cache.get( "c" ) );
+        assertNotNull( cache.get( "d" ) );
+        assertEquals( 3, cache.size() );
+        assertEquals( 1, cache.getEvictions() );
+    }
+
+    @Test
+    public void testEntryLimit() {
+        ConcurrentFeatureStoreCache cache = new ConcurrentFeatureStoreCache( 64, Long.MAX_VALUE, 4 );
+        for ( int i = 0; i < 1000; i++ ) {
+            cache.add( createFeature( "f" + i, 0 ) );
+            assertTrue( cache.size() <= 64 );
+        }
+        assertNotNull( cache.get( "f999" ) );
+    }
+
+    @Test
+    public void testMemoryLimit() {
+        long weight = GMLObjectWeigher.weigh( createFeature( "a", 1000 ) );
+        ConcurrentFeatureStoreCache cache = new ConcurrentFeatureStoreCache( 100, 2 * weight, 1 );
+        cache.add( createFeature( "a", 1000 ) );
+        cache.add( createFeature( "b", 1000 ) );
+        assertEquals( 2 * weight, cache.getMemory() );
+        cache.add( createFeature( "c", 1000 ) );
+        assertEquals( 2 * weight, cache.getMemory() );
+        assertNull( cache.get( "a" ) );
+        assertNotNull( cache.get( "b" ) );
+        assertNotNull( cache.get( "c" ) );
+    }
+
+    @Test
+    public void testMemoryLimitAppliesToWholeCache() {
+        long weight = GMLObjectWeigher.weigh( createFeature( "f", 1000 ) );
+        ConcurrentFeatureStoreCache cache = new ConcurrentFeatureStoreCache( 10000, 5 * weight, 64 );
+        for ( int i = 0; i < 100; i++ ) {
+            cache.add( createFeature( "f" + i, 1000 ) );
+            assertTrue( cache.getMemory() <= 5 * weight );
+            // the object that has just been added is never evicted
+            assertNotNull( cache.get( "f" + i ) );
+        }
+        assertEquals( 5, cache.size() );
+        assertEquals( 95, cache.getEvictions() );
+    }
+
+    @Test
+    public void testLargeObjectIsCached() {
+        // much larger than the share of a single segment
+        Feature large = createFeature( "large", 100000 );
+        long weight = GMLObjectWeigher.weigh( large );
+        ConcurrentFeatureStoreCache cache = new ConcurrentFeatureStoreCache( 10000, 2 * weight, 64 );
+        for ( int i = 0; i < 10; i++ ) {
+            cache.add( createFeature( "f" + i, 0 ) );
+        }
+        cache.add( large );
+        assertSame( large, cache.get( "large" ) );
+        assertEquals( 11, cache.size() );
+    }
+
+    @Test
+    public void testObjectLargerThanLimitIsNotCached() {
+        ConcurrentFeatureStoreCache cache = new ConcurrentFeatureStoreCache( 100, 10000, 4 );
+        cache.add( createFeature( "a", 0 ) );
+        long memory = cache.getMemory();
+        cache.add( createFeature( "b", 20000 ) );
+        assertNull( cache.get( "b" ) );
+        assertEquals( memory, cache.getMemory() );
+
+        // an outdated version is removed
+        cache.add( createFeature( "a", 20000 ) );
+        assertNull( cache.get( "a" ) );
+        assertEquals( 0, cache.getMemory() );
+        assertEquals( 0, cache.size() );
+    }
+
+    @Test
+    public void testReplaceUpdatesMemory() {
+        ConcurrentFeatureStoreCache cache = new ConcurrentFeatureStoreCache( 100, 1000000, 4 );
+        Feature small = createFeature( "a", 100 );
+        Feature large = createFeature( "a", 1000 );
+        cache.add( small );
+        cache.add( large );
+        assertEquals( 1, cache.size() );
+        assertEquals( GMLObjectWeigher.weigh( large ), cache.getMemory() );
+        assertSame( large, cache.get( "a" ) );
+    }
+
+    @Test
+    public void testRemoveAndClear() {
+        ConcurrentFeatureStoreCache cache = new ConcurrentFeatureStoreCache( 100, 1000000, 4 );
+        for ( int i = 0; i < 10; i++ ) {
+            cache.add( createFeature( "f" + i, 100 ) );
+        }
+        cache.remove( "f0" );
+        assertNull( cache.get( "f0" ) );
+        assertEquals( 9, cache.size() );
+        assertEquals( 9 * GMLObjectWeigher.weigh( createFeature( "f", 100 ) ), cache.getMemory() );
+        cache.clear();
+        assertEquals( 0, cache.size() );
+        assertEquals( 0, cache.getMemory() );
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        ConcurrentFeatureStoreCache cache = new ConcurrentFeatureStoreCache( 100, 1000000, 4 );
+        cache.add( createFeature( "a", 0 ) );
+        cache.get( "a" );
+        cache.get( "a" );
+        cache.get( "b" );
+        assertEquals( 2, cache.getHits() );
+        assertEquals( 1, cache.getMisses() );
+    }
+
+    /**
+     * Returns a feature with a string property of the given length.
+     */
+    private static Feature createFeature( String id, int length ) {
+        StringBuilder sb = new StringBuilder();
+        for ( int i = 0; i < length; i++ ) {
+            sb.append( 'x' );
+        }
+        List<Property> props = new ArrayList<Property>();
+        props.add( new SimpleProperty( NAME, sb.toString() ) );
+        return new GenericFeature( FT, id, props, null );
+    }
+
+}
@@ -0,0 +1,170 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.feature.persistence.cache;
+
+import static org.deegree.commons.tom.primitive.BaseType.STRING;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.xml.namespace.QName;
+
+import org.deegree.commons.tom.gml.property.Property;
+import org.deegree.commons.tom.gml.property.PropertyType;
+import org.deegree.feature.Feature;
+import org.deegree.feature.GenericFeature;
+import org.deegree.feature.property.GenericProperty;
+import org.deegree.feature.property.SimpleProperty;
+import org.deegree.feature.types.GenericFeatureType;
+import org.deegree.feature.types.property.SimplePropertyType;
+import org.deegree.geometry.GeometryFactory;
+import org.deegree.geometry.points.Points;
+import org.deegree.geometry.primitive.LinearRing;
+import org.deegree.geometry.primitive.Point;
+import org.deegree.geometry.primitive.Ring;
+import org.deegree.gml.reference.FeatureReference;
+import org.junit.Test;
+
+/**
+ * Tests for {@link GMLObjectWeigher}.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+public class GMLObjectWeigherTest {
+
+    private static final GeometryFactory FAC = new GeometryFactory();
+
+    private static final SimplePropertyType NAME = new SimplePropertyType( new QName( "name" ), 0, 1, STRING, null,
+                                                                           null );
+
+    @Test
+    public void testPoint() {
+        assertEquals( 48 + 64, GMLObjectWeigher.weigh( FAC.createPoint( "p", 1, 2, null ) ) );
+    }
+
+    @Test
+    public void testLineString() {
+        assertEquals( 48 + 48 + 3 * 64,
+                      GMLObjectWeigher.weigh( FAC.createLineString( "l", null, createPoints( 3 ) ) ) );
+        assertEquals( 48 + 48 + 100 * 64,
+                      GMLObjectWeigher.weigh( FAC.createLineString( "l", null, createPoints( 100 ) ) ) );
+    }
+
+    @Test
+    public void testPolygon() {
+        LinearRing exterior = FAC.createLinearRing( null, null, createPoints( 5 ) );
+        LinearRing interior = FAC.createLinearRing( null, null, createPoints( 4 ) );
+        List<Ring> interiors = Collections.<Ring> singletonList( interior );
+        assertEquals( 48 + 48 + ( 48 + 5 * 64 ),
+                      GMLObjectWeigher.weigh( FAC.createPolygon( "s", null, exterior, null ) ) );
+        assertEquals( 48 + 48 + ( 48 + 5 * 64 ) + ( 48 + 4 * 64 ),
+                      GMLObjectWeigher.weigh( FAC.createPolygon( "s", null, exterior, interiors ) ) );
+    }
+
+    @Test
+    public void testMultiPoint() {
+        List<Point> members = new ArrayList<Point>();
+        for ( int i = 0; i < 10; i++ ) {
+            members.add( FAC.createPoint( null, i, i, null ) );
+        }
+        assertEquals( 48 + 48 + 10 * 64, GMLObjectWeigher.weigh( FAC.createMultiPoint( "m", null, members ) ) );
+    }
+
+    @Test
+    public void testFeature() {
+        List<Property> props = new ArrayList<Property>();
+        props.add( new SimpleProperty( NAME, "abc" ) );
+        props.add( new SimpleProperty( NAME, "0123456789" ) );
+        // object + feature + 2 x (property + string value)
+        long expected = 48 + 48 + ( 48 + 48 + 2 * 3 ) + ( 48 + 48 + 2 * 10 );
+        assertEquals( expected, GMLObjectWeigher.weigh( createFeature( "f", props ) ) );
+    }
+
+    @Test
+    public void testGeometryProperty() {
+        List<Property> props = new ArrayList<Property>();
+        props.add( new GenericProperty( NAME, FAC.createLineString( "l", null, createPoints( 10 ) ) ) );
+        long expected = 48 + 48 + ( 48 + 48 + 48 + 10 * 64 );
+        assertEquals( expected, GMLObjectWeigher.weigh( createFeature( "f", props ) ) );
+    }
+
+    @Test
+    public void testReferencesAreNotResolved() {
+        List<Property> props = new ArrayList<Property>();
+        FeatureReference ref = new FeatureReference( null, "#other", null );
+        props.add( new GenericProperty( NAME, ref ) );
+        assertEquals( 48 + 48 + ( 48 + 48 ), GMLObjectWeigher.weigh( createFeature( "f", props ) ) );
+    }
+
+    @Test
+    public void testDeepNestingIsBounded() {
+        Feature feature = createFeature( "f0", new ArrayList<Property>() );
+        for ( int i = 1; i < 100; i++ ) {
+            List<Property> props = new ArrayList<Property>();
+            props.add( new GenericProperty( NAME, feature ) );
+            feature = createFeature( "f" + i, props );
+        }
+        // nested features are weighed down to a fixed depth only
+        long weight = GMLObjectWeigher.weigh( feature );
+        assertEquals( weight, GMLObjectWeigher.weigh( wrap( feature ) ) );
+    }
+
+    private static Feature createFeature( String id, List<Property> props ) {
+        List<PropertyType> pts = new ArrayList<PropertyType>();
+        pts.add( NAME );
+        GenericFeatureType ft = new GenericFeatureType( new QName( "Feature" ), pts, false );
+        return new GenericFeature( ft, id, props, null );
+    }
+
+    private static Feature wrap( Feature feature ) {
+        List<Property> props = new ArrayList<Property>();
+        props.add( new GenericProperty( NAME, feature ) );
+        return createFeature( "wrapper", props );
+    }
+
+    private static Points createPoints( int n ) {
+        List<Point> points = new ArrayList<Point>();
+        for ( int i = 0; i < n; i++ ) {
+            points.add( FAC.createPoint( null, i, i, null ) );
+        }
+        return FAC.createPoints( points );
+    }
+
+}
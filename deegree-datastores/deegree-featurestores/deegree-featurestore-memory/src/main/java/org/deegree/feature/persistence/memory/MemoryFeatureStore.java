@@ -125,7 +125,7 @@ public class MemoryFeatureStore implements FeatureStore {
     @Override
     public FeatureInputStream query( Query query )
                             throws FilterEvaluationException, FeatureStoreException {
-        return storedFeatures.query( query );
+        return storedFeatures.query( query, true );
     }
 
     @Override
@@ -165,7 +165,7 @@ public class MemoryFeatureStore implements FeatureStore {
     @Override
     public int queryHits( org.deegree.feature.persistence.query.Query query )
                             throws FilterEvaluationException, FeatureStoreException {
-        return query( query ).toCollection().size();
+        return storedFeatures.query( query, false ).toCollection().size();
     }
 
     @Override
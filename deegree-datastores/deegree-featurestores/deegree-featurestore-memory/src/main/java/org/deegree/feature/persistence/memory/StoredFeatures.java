@@ -66,6 +66,7 @@ import org.deegree.feature.persistence.query.Query;
 import org.deegree.feature.property.GenericProperty;
 import org.deegree.feature.stream.FeatureInputStream;
 import org.deegree.feature.stream.MemoryFeatureInputStream;
+import org.deegree.feature.stream.PagedFeatureInputStream;
 import org.deegree.feature.types.AppSchema;
 import org.deegree.feature.types.FeatureType;
 import org.deegree.feature.xpath.TypedObjectNodeXPathEvaluator;
@@ -157,11 +158,13 @@ class StoredFeatures {
      *
      * @param query
      *            query to be performed, must not be <code>null</code>
+     * @param applyPaging
+     *            <code>false</code>, if the paging parameters of the query shall be ignored (e.g. for counting hits)
      * @return resulting features, never <code>null</code>
      * @throws FilterEvaluationException
      * @throws FeatureStoreException
      */
-    FeatureInputStream query( Query query )
+    FeatureInputStream query( Query query, boolean applyPaging )
                             throws FilterEvaluationException, FeatureStoreException {
 
         if ( query.getTypeNames() == null || query.getTypeNames().length > 1 ) {
@@ -225,6 +228,10 @@ class StoredFeatures {
             fc = Features.sortFc( fc, sortCrit );
         }
 
+        if ( applyPaging && query.isPaged() ) {
+            return new PagedFeatureInputStream( new MemoryFeatureInputStream( fc ), query.getStartIndex(),
+                                                query.getStartAfterId(), query.getMaxFeatures() );
+        }
         return new MemoryFeatureInputStream( fc );
     }
 
@@ -187,6 +187,21 @@ public class MemoryFeatureStoreTest {
         Assert.assertEquals( 2, fc.size() );
     }
 
+    @Test
+    public void testQueryPhilosophersPaged()
+                            throws FilterEvaluationException, FeatureStoreException {
+        TypeName[] typeNames = new TypeName[] { new TypeName(
+                                                              QName.valueOf( "{http://www.deegree.org/app}Philosopher" ),
+                                                              null ) };
+        Query query = new Query( typeNames, null, null, null, null );
+        query.setStartIndex( 5 );
+        query.setMaxFeatures( 10 );
+        FeatureCollection fc = store.query( query ).toCollection();
+        Assert.assertEquals( 2, fc.size() );
+        // hits are counted regardless of the page
+        Assert.assertEquals( 7, store.queryHits( query ) );
+    }
+
     @Test
     public void testGetObjectByIdFeature() {
         Object o = store.getObjectById( "PHILOSOPHER_7" );
@@ -58,6 +58,7 @@ import org.deegree.feature.persistence.query.Query;
 import org.deegree.feature.persistence.remotewfs.jaxb.RemoteWFSFeatureStoreConfig;
 import org.deegree.feature.stream.CombinedFeatureInputStream;
 import org.deegree.feature.stream.FeatureInputStream;
+import org.deegree.feature.stream.PagedFeatureInputStream;
 import org.deegree.feature.types.AppSchema;
 import org.deegree.filter.Filter;
 import org.deegree.filter.FilterEvaluationException;
@@ -207,6 +208,10 @@ public class RemoteWFSFeatureStore implements FeatureStore {
             throw new FeatureStoreException( "Error performing GetFeature request to remote WFS: " + t.getMessage() );
         }
 
+        if ( query.isPaged() ) {
+            is = new PagedFeatureInputStream( is, query.getStartIndex(), query.getStartAfterId(),
+                                              query.getMaxFeatures() );
+        }
         return is;
     }
 
@@ -79,8 +79,8 @@ import org.deegree.feature.GenericFeatureCollection;
 import org.deegree.feature.persistence.FeatureStore;
 import org.deegree.feature.persistence.FeatureStoreException;
 import org.deegree.feature.persistence.FeatureStoreTransaction;
+import org.deegree.feature.persistence.cache.ConcurrentFeatureStoreCache;
 import org.deegree.feature.persistence.cache.FeatureStoreCache;
-import org.deegree.feature.persistence.cache.SimpleFeatureStoreCache;
 import org.deegree.feature.persistence.lock.LockManager;
 import org.deegree.feature.persistence.query.Query;
 import org.deegree.feature.persistence.shape.ShapeFeatureStoreProvider.Mapping;
@@ -90,6 +90,7 @@ import org.deegree.feature.stream.FeatureInputStream;
 import org.deegree.feature.stream.FilteredFeatureInputStream;
 import org.deegree.feature.stream.IteratorFeatureInputStream;
 import org.deegree.feature.stream.MemoryFeatureInputStream;
+import org.deegree.feature.stream.PagedFeatureInputStream;
 import org.deegree.feature.types.AppSchema;
 import org.deegree.feature.types.FeatureType;
 import org.deegree.feature.types.GenericAppSchema;
@@ -210,7 +211,7 @@ public class ShapeFeatureStore implements FeatureStore {
         if ( cache != null ) {
             this.cache = cache;
         } else {
-            this.cache = new SimpleFeatureStoreCache();
+            this.cache = new ConcurrentFeatureStoreCache();
         }
     }
 
@@ -342,6 +343,15 @@ public class ShapeFeatureStore implements FeatureStore {
     @Override
     public FeatureInputStream query( Query query )
                             throws FilterEvaluationException, FeatureStoreException {
+        return query( query, true );
+    }
+
+    /**
+     * @param applyPaging
+     *            <code>false</code>, if the paging parameters of the query shall be ignored (e.g. for counting hits)
+     */
+    private FeatureInputStream query( Query query, boolean applyPaging )
+                            throws FilterEvaluationException, FeatureStoreException {
 
         if ( query.getTypeNames() == null || query.getTypeNames().length > 1 ) {
             String msg = "Only queries with exactly one or zero type name(s) are supported.";
@@ -417,6 +427,11 @@ public class ShapeFeatureStore implements FeatureStore {
             rs = new MemoryFeatureInputStream( Features.sortFc( rs.toCollection(), p.second ) );
         }
 
+        if ( applyPaging && query.isPaged() ) {
+            rs = new PagedFeatureInputStream( rs, query.getStartIndex(), query.getStartAfterId(),
+                                              query.getMaxFeatures() );
+        }
+
         return rs;
     }
 
@@ -501,7 +516,7 @@ public class ShapeFeatureStore implements FeatureStore {
     public int queryHits( Query query )
                             throws FeatureStoreException, FilterEvaluationException {
         // TODO
-        return query( query ).toCollection().size();
+        return query( query, false ).toCollection().size();
     }
 
     @Override
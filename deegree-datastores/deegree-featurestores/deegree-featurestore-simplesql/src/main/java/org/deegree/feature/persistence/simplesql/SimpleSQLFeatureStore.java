@@ -75,6 +75,7 @@ import org.deegree.feature.stream.CombinedFeatureInputStream;
 import org.deegree.feature.stream.FeatureInputStream;
 import org.deegree.feature.stream.FilteredFeatureInputStream;
 import org.deegree.feature.stream.IteratorFeatureInputStream;
+import org.deegree.feature.stream.PagedFeatureInputStream;
 import org.deegree.feature.types.AppSchema;
 import org.deegree.feature.types.FeatureType;
 import org.deegree.feature.types.GenericAppSchema;
@@ -277,6 +278,15 @@ public class SimpleSQLFeatureStore implements FeatureStore {
 
     public FeatureInputStream query( final Query[] queries )
                             throws FeatureStoreException, FilterEvaluationException {
+        return query( queries, true );
+    }
+
+    /**
+     * @param applyPaging
+     *            <code>false</code>, if the paging parameters of the queries shall be ignored (e.g. for counting hits)
+     */
+    private FeatureInputStream query( final Query[] queries, boolean applyPaging )
+                            throws FeatureStoreException, FilterEvaluationException {
         PreparedStatement stmt = null;
         Connection conn = null;
         FeatureInputStream set = null;
@@ -306,7 +316,7 @@ public class SimpleSQLFeatureStore implements FeatureStore {
 
                 conn = connProvider.getConnection();
 
-                if ( q.getMaxFeatures() > 0 && connProvider.getDialect() instanceof PostGISDialect ) {
+                if ( q.getMaxFeatures() > 0 && !q.isPaged() && connProvider.getDialect() instanceof PostGISDialect ) {
                     sql += " limit " + q.getMaxFeatures();
                 }
 
@@ -371,6 +381,10 @@ public class SimpleSQLFeatureStore implements FeatureStore {
                 if ( q.getFilter() != null ) {
                     set = new FilteredFeatureInputStream( set, q.getFilter() );
                 }
+                if ( applyPaging && q.isPaged() ) {
+                    set = new PagedFeatureInputStream( set, q.getStartIndex(), q.getStartAfterId(),
+                                                       q.getMaxFeatures() );
+                }
 
                 list.add( set );
             }
@@ -387,7 +401,7 @@ public class SimpleSQLFeatureStore implements FeatureStore {
     public int queryHits( Query query )
                             throws FeatureStoreException, FilterEvaluationException {
         // TODO SELECT COUNT
-        return query( query ).count();
+        return query( new Query[] { query }, false ).count();
     }
 
     @Override
@@ -49,12 +49,18 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import javax.xml.namespace.QName;
 
@@ -66,11 +72,13 @@ import org.deegree.commons.tom.CombinedReferenceResolver;
 import org.deegree.commons.tom.TypedObjectNode;
 import org.deegree.commons.tom.gml.GMLObject;
 import org.deegree.commons.tom.gml.GMLReferenceResolver;
+import org.deegree.commons.tom.gml.property.PropertyType;
 import org.deegree.commons.tom.primitive.BaseType;
 import org.deegree.commons.tom.primitive.PrimitiveType;
 import org.deegree.commons.tom.primitive.PrimitiveValue;
 import org.deegree.commons.tom.sql.ParticleConverter;
 import org.deegree.commons.tom.sql.SQLValueMangler;
+import org.deegree.commons.utils.CloseableIterator;
 import org.deegree.commons.utils.JDBCUtils;
 import org.deegree.commons.utils.Pair;
 import org.deegree.cs.coordinatesystems.ICRS;
@@ -78,6 +86,7 @@ import org.deegree.db.ConnectionProvider;
 import org.deegree.db.ConnectionProviderProvider;
 import org.deegree.feature.Feature;
 import org.deegree.feature.Features;
+import org.deegree.feature.persistence.FeatureHitsEstimator;
 import org.deegree.feature.persistence.FeatureInspector;
 import org.deegree.feature.persistence.FeatureStore;
 import org.deegree.feature.persistence.FeatureStoreException;
@@ -85,8 +94,8 @@ import org.deegree.feature.persistence.FeatureStoreGMLIdResolver;
 import org.deegree.feature.persistence.FeatureStoreManager;
 import org.deegree.feature.persistence.FeatureStoreTransaction;
 import org.deegree.feature.persistence.cache.BBoxCache;
+import org.deegree.feature.persistence.cache.ConcurrentFeatureStoreCache;
 import org.deegree.feature.persistence.cache.FeatureStoreCache;
-import org.deegree.feature.persistence.cache.SimpleFeatureStoreCache;
 import org.deegree.feature.persistence.lock.DefaultLockManager;
 import org.deegree.feature.persistence.lock.LockManager;
 import org.deegree.feature.persistence.query.Query;
@@ -112,6 +121,7 @@ import org.deegree.feature.stream.FeatureInputStream;
 import org.deegree.feature.stream.FilteredFeatureInputStream;
 import org.deegree.feature.stream.IteratorFeatureInputStream;
 import org.deegree.feature.stream.MemoryFeatureInputStream;
+import org.deegree.feature.stream.PagedFeatureInputStream;
 import org.deegree.feature.types.FeatureType;
 import org.deegree.feature.types.property.GeometryPropertyType.CoordinateDimension;
 import org.deegree.feature.types.property.GeometryPropertyType.GeometryType;
@@ -120,6 +130,8 @@ import org.deegree.filter.FilterEvaluationException;
 import org.deegree.filter.IdFilter;
 import org.deegree.filter.OperatorFilter;
 import org.deegree.filter.expression.ValueReference;
+import org.deegree.filter.projection.ProjectionClause;
+import org.deegree.filter.projection.PropertyName;
 import org.deegree.filter.sort.SortProperty;
 import org.deegree.filter.spatial.BBOX;
 import org.deegree.geometry.Envelope;
@@ -135,6 +147,7 @@ import org.deegree.sqldialect.filter.PropertyNameMapping;
 import org.deegree.sqldialect.filter.TableAliasManager;
 import org.deegree.sqldialect.filter.UnmappableException;
 import org.deegree.sqldialect.filter.expression.SQLArgument;
+import org.deegree.sqldialect.postgis.PostGISDialect;
 import org.deegree.workspace.Resource;
 import org.deegree.workspace.ResourceInitException;
 import org.deegree.workspace.ResourceMetadata;
@@ -152,13 +165,18 @@ import org.slf4j.Logger;
  * @version $Revision$, $Date$
  */
 @LoggingNotes(info = "logs particle converter initialization", debug = "logs the SQL statements sent to the SQL server and startup/shutdown information")
-public class SQLFeatureStore implements FeatureStore {
+public class SQLFeatureStore implements FeatureStore, FeatureHitsEstimator {
 
     private static final Logger LOG = getLogger( SQLFeatureStore.class );
 
-    private static final int DEFAULT_FETCH_SIZE = 1000;
+    private static final Pattern PLAN_ROWS = Pattern.compile( "rows=(\\d+)" );
+
+    // time in milliseconds to reuse hits estimates
+    private static final long ESTIMATE_TTL = Long.getLong( "deegree.sqlfeaturestore.estimate.ttl", 60000 );
 
-    private static final int DEFAULT_CACHE_SIZE = 10000;
+    private static final int MAX_ESTIMATES = 1000;
+
+    private static final int DEFAULT_FETCH_SIZE = 1000;
 
     private final SQLFeatureStoreJAXB config;
 
@@ -200,6 +218,16 @@ public class SQLFeatureStore implements FeatureStore {
 
     private ConnectionProvider connProvider;
 
+    // estimate key -> { estimated hits, time of estimation }
+    private final Map<String, long[]> estimates = new LinkedHashMap<String, long[]>( 16, 0.75f, true ) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry( Map.Entry<String, long[]> eldest ) {
+            return size() > MAX_ESTIMATES;
+        }
+    };
+
     /**
      * Creates a new {@link SQLFeatureStore} for the given configuration.
      * 
@@ -225,7 +253,16 @@ public class SQLFeatureStore implements FeatureStore {
         LOG.debug( "Read auto commit: " + readAutoCommit );
 
         if ( config.getFeatureCache() != null ) {
-            cache = new SimpleFeatureStoreCache( DEFAULT_CACHE_SIZE );
+            int maxEntries = ConcurrentFeatureStoreCache.DEFAULT_MAX_ENTRIES;
+            long maxMemory = ConcurrentFeatureStoreCache.DEFAULT_MAX_MEMORY;
+            if ( config.getFeatureCache().getMaxEntries() != null ) {
+                maxEntries = config.getFeatureCache().getMaxEntries().intValue();
+            }
+            if ( config.getFeatureCache().getMaxMemory() != null ) {
+                maxMemory = config.getFeatureCache().getMaxMemory().longValue() * 1024 * 1024;
+            }
+            LOG.debug( "Feature cache: max. " + maxEntries + " objects, max. " + maxMemory + " bytes" );
+            cache = new ConcurrentFeatureStoreCache( maxEntries, maxMemory );
         } else {
             cache = null;
         }
@@ -540,7 +577,7 @@ public class SQLFeatureStore implements FeatureStore {
             throw new UnsupportedOperationException( msg );
         }
 
-        FeatureInputStream rs = queryByIdFilterRelational( new IdFilter( id ), null );
+        FeatureInputStream rs = queryByIdFilterRelational( new IdFilter( id ), null, null );
         try {
             Iterator<Feature> iter = rs.iterator();
             if ( iter.hasNext() ) {
@@ -597,7 +634,10 @@ public class SQLFeatureStore implements FeatureStore {
 
     @Override
     public void destroy() {
-        // nothing to do
+        if ( cache != null ) {
+            LOG.info( "Feature cache statistics: " + cache );
+            cache.clear();
+        }
     }
 
     @Override
@@ -627,7 +667,7 @@ public class SQLFeatureStore implements FeatureStore {
                 throw new FilterEvaluationException( msg );
             }
             // should be no problem iterating over the features (id queries usually request only a few ids)
-            hits = queryByIdFilter( (IdFilter) filter, query.getSortProperties() ).count();
+            hits = queryByIdFilter( (IdFilter) filter, query.getSortProperties(), null ).count();
         }
         return hits;
     }
@@ -661,52 +701,15 @@ public class SQLFeatureStore implements FeatureStore {
             if ( wb.getPostFilter() != null ) {
                 conn.close();
                 LOG.debug( "Filter not fully mappable to WHERE clause. Need to iterate over all features to determine count." );
-                hits = queryByOperatorFilter( query, ftName, filter ).count();
+                hits = queryByOperatorFilter( query, ftName, filter, false ).count();
             } else {
                 StringBuilder sql = new StringBuilder( "SELECT " );
                 if ( wb.getWhere() == null ) {
                     sql.append( "COUNT(*) FROM " );
                     sql.append( ftMapping.getFtTable() );
                 } else {
-                    sql.append( "COUNT(*) FROM (SELECT DISTINCT " );
-
-                    FIDMapping fidMapping = ftMapping.getFidMapping();
-                    List<Pair<SQLIdentifier, BaseType>> fidCols = fidMapping.getColumns();
-                    boolean first = true;
-                    for ( Pair<SQLIdentifier, BaseType> fidCol : fidCols ) {
-                        if ( !first ) {
-                            sql.append( "," );
-                        } else {
-                            first = false;
-                        }
-                        sql.append( fidCol.first );
-                    }
-
-                    sql.append( " FROM " );
-
-                    String ftTableAlias = wb.getAliasManager().getRootTableAlias();
-
-                    // pure relational query
-                    sql.append( ftMapping.getFtTable() );
-                    sql.append( ' ' );
-                    sql.append( ftTableAlias );
-
-                    for ( PropertyNameMapping mappedPropName : wb.getMappedPropertyNames() ) {
-                        for ( Join join : mappedPropName.getJoins() ) {
-                            sql.append( " LEFT OUTER JOIN " );
-                            sql.append( join.getToTable() );
-                            sql.append( ' ' );
-                            sql.append( join.getToTableAlias() );
-                            sql.append( " ON " );
-                            sql.append( join.getSQLJoinCondition() );
-                        }
-                    }
-
-                    LOG.debug( "WHERE clause: " + wb.getWhere() );
-                    if ( wb.getWhere() != null ) {
-                        sql.append( " WHERE " );
-                        sql.append( wb.getWhere().getSQL() );
-                    }
+                    sql.append( "COUNT(*) FROM (" );
+                    appendDistinctFidSelect( sql, ftMapping, wb );
                     sql.append( ") featureids" );
                 }
                 LOG.debug( "SQL: {}", sql );
@@ -738,6 +741,158 @@ public class SQLFeatureStore implements FeatureStore {
         return hits;
     }
 
+    private void appendDistinctFidSelect( StringBuilder sql, FeatureTypeMapping ftMapping, AbstractWhereBuilder wb ) {
+        sql.append( "SELECT DISTINCT " );
+
+        FIDMapping fidMapping = ftMapping.getFidMapping();
+        List<Pair<SQLIdentifier, BaseType>> fidCols = fidMapping.getColumns();
+        boolean first = true;
+        for ( Pair<SQLIdentifier, BaseType> fidCol : fidCols ) {
+            if ( !first ) {
+                sql.append( "," );
+            } else {
+                first = false;
+            }
+            sql.append( fidCol.first );
+        }
+
+        sql.append( " FROM " );
+
+        String ftTableAlias = wb.getAliasManager().getRootTableAlias();
+
+        // pure relational query
+        sql.append( ftMapping.getFtTable() );
+        sql.append( ' ' );
+        sql.append( ftTableAlias );
+
+        for ( PropertyNameMapping mappedPropName : wb.getMappedPropertyNames() ) {
+            for ( Join join : mappedPropName.getJoins() ) {
+                sql.append( " LEFT OUTER JOIN " );
+                sql.append( join.getToTable() );
+                sql.append( ' ' );
+                sql.append( join.getToTableAlias() );
+                sql.append( " ON " );
+                sql.append( join.getSQLJoinCondition() );
+            }
+        }
+
+        LOG.debug( "WHERE clause: " + wb.getWhere() );
+        if ( wb.getWhere() != null ) {
+            sql.append( " WHERE " );
+            sql.append( wb.getWhere().getSQL() );
+        }
+    }
+
+    /**
+     * Estimates the number of matching features using the planner statistics of PostgreSQL databases. Parts of the
+     * filter that cannot be mapped to SQL are ignored, so the estimate may be too high. Estimates are reused for
+     * queries that only differ slightly in their bounding boxes (see {@link #getEstimateKey(String, List)}) for
+     * <code>deegree.sqlfeaturestore.estimate.ttl</code> milliseconds (default one minute).
+     */
+    @Override
+    public long estimateHits( Query query ) {
+        if ( !( dialect instanceof PostGISDialect ) || getSchema().getBlobMapping() != null
+             || query.getTypeNames() == null || query.getTypeNames().length != 1
+             || !( query.getFilter() == null || query.getFilter() instanceof OperatorFilter ) ) {
+            return -1;
+        }
+        QName ftName = query.getTypeNames()[0].getFeatureTypeName();
+        FeatureType ft = getSchema().getFeatureType( ftName );
+        FeatureTypeMapping ftMapping = getMapping( ftName );
+        if ( ft == null || ftMapping == null ) {
+            return -1;
+        }
+
+        AbstractWhereBuilder wb;
+        try {
+            wb = getWhereBuilder( ft, (OperatorFilter) query.getFilter(), null, null );
+        } catch ( Exception e ) {
+            LOG.debug( "Could not estimate hits: {}", e.getLocalizedMessage() );
+            LOG.trace( "Stack trace:", e );
+            return -1;
+        }
+        StringBuilder sql = new StringBuilder( "EXPLAIN " );
+        appendDistinctFidSelect( sql, ftMapping, wb );
+        List<SQLArgument> args = wb.getWhere() == null ? new ArrayList<SQLArgument>() : wb.getWhere().getArguments();
+
+        String key = getEstimateKey( sql.toString(), args );
+        long now = System.currentTimeMillis();
+        synchronized ( estimates ) {
+            long[] estimate = estimates.get( key );
+            if ( estimate != null && now - estimate[1] < ESTIMATE_TTL ) {
+                return estimate[0];
+            }
+        }
+
+        long hits = explainHits( sql.toString(), args );
+        if ( hits >= 0 ) {
+            synchronized ( estimates ) {
+                estimates.put( key, new long[] { hits, now } );
+            }
+        }
+        return hits;
+    }
+
+    private long explainHits( String sql, List<SQLArgument> args ) {
+        Connection conn = null;
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+        try {
+            conn = getConnection();
+            LOG.debug( "SQL: {}", sql );
+            stmt = conn.prepareStatement( sql );
+            int i = 1;
+            for ( SQLArgument o : args ) {
+                o.setArgument( stmt, i++ );
+            }
+            rs = stmt.executeQuery();
+            if ( rs.next() ) {
+                Matcher m = PLAN_ROWS.matcher( rs.getString( 1 ) );
+                if ( m.find() ) {
+                    return Long.parseLong( m.group( 1 ) );
+                }
+            }
+        } catch ( Exception e ) {
+            LOG.debug( "Could not estimate hits: {}", e.getLocalizedMessage() );
+            LOG.trace( "Stack trace:", e );
+        } finally {
+            JDBCUtils.close( rs, stmt, conn, LOG );
+        }
+        return -1;
+    }
+
+    /**
+     * Builds the key to cache hits estimates. Geometry arguments are snapped outwards to a grid with a cell size of a
+     * quarter of the next power of two of their extent, so requests for neighbouring or overlapping areas of the same
+     * scale (as when panning or requesting tiles) share their estimates.
+     * 
+     * @param sql
+     *            the estimate statement, must not be <code>null</code>
+     * @param args
+     *            the statement arguments, must not be <code>null</code>
+     * @return the key, never <code>null</code>
+     */
+    static String getEstimateKey( String sql, List<SQLArgument> args ) {
+        StringBuilder key = new StringBuilder( sql );
+        for ( SQLArgument arg : args ) {
+            key.append( '|' );
+            Object value = arg.getValue();
+            if ( value instanceof Geometry && ( (Geometry) value ).getEnvelope() != null ) {
+                Envelope env = ( (Geometry) value ).getEnvelope();
+                double span = Math.max( env.getSpan0(), env.getSpan1() );
+                double cell = span > 0 ? Math.pow( 2, Math.ceil( Math.log( span ) / Math.log( 2 ) ) ) / 4 : 1;
+                key.append( cell ).append( ':' );
+                key.append( (long) Math.floor( env.getMin().get0() / cell ) ).append( ',' );
+                key.append( (long) Math.floor( env.getMin().get1() / cell ) ).append( ',' );
+                key.append( (long) Math.ceil( env.getMax().get0() / cell ) ).append( ',' );
+                key.append( (long) Math.ceil( env.getMax().get1() / cell ) );
+            } else {
+                key.append( value );
+            }
+        }
+        return key.toString();
+    }
+
     private int queryHitsByOperatorFilterBlob( Query query, QName ftName, OperatorFilter filter )
                             throws FeatureStoreException {
 
@@ -878,14 +1033,18 @@ public class SQLFeatureStore implements FeatureStore {
                 String msg = "Feature store is not configured to serve feature type '" + ftName + "'.";
                 throw new FeatureStoreException( msg );
             }
-            result = queryByOperatorFilter( query, ftName, (OperatorFilter) filter );
+            result = queryByOperatorFilter( query, ftName, (OperatorFilter) filter, true );
         } else {
             // must be an id filter based query
             if ( query.getFilter() == null || !( query.getFilter() instanceof IdFilter ) ) {
                 String msg = "Invalid query. If no type names are specified, it must contain an IdFilter.";
                 throw new FilterEvaluationException( msg );
             }
-            result = queryByIdFilter( (IdFilter) filter, query.getSortProperties() );
+            result = queryByIdFilter( (IdFilter) filter, query.getSortProperties(), query.getProjections() );
+            if ( query.isPaged() ) {
+                result = new PagedFeatureInputStream( result, query.getStartIndex(), query.getStartAfterId(),
+                                                      query.getMaxFeatures() );
+            }
         }
         return result;
     }
@@ -898,10 +1057,14 @@ public class SQLFeatureStore implements FeatureStore {
         boolean wmsStyleQuery = false;
         Envelope env = queries[0].getPrefilterBBoxEnvelope();
         if ( getSchema().getBlobMapping() != null && queries[0].getFilter() == null
-                                && queries[0].getSortProperties().length == 0 ) {
+                                && queries[0].getSortProperties().length == 0 && !queries[0].isPaged() ) {
             wmsStyleQuery = true;
             for ( int i = 1; i < queries.length; i++ ) {
                 Envelope queryBBox = queries[i].getPrefilterBBoxEnvelope();
+                if ( queries[i].isPaged() ) {
+                    wmsStyleQuery = false;
+                    break;
+                }
                 if ( queryBBox != env && queries[i].getFilter() != null && queries[i].getSortProperties() != null ) {
                     wmsStyleQuery = false;
                     break;
@@ -944,12 +1107,13 @@ public class SQLFeatureStore implements FeatureStore {
         return new CombinedFeatureInputStream( rsIter );
     }
 
-    private FeatureInputStream queryByIdFilter( IdFilter filter, SortProperty[] sortCrit )
+    private FeatureInputStream queryByIdFilter( IdFilter filter, SortProperty[] sortCrit,
+                                                List<ProjectionClause> projections )
                             throws FeatureStoreException {
         if ( blobMapping != null ) {
             return queryByIdFilterBlob( filter, sortCrit );
         }
-        return queryByIdFilterRelational( filter, sortCrit );
+        return queryByIdFilterRelational( filter, sortCrit, projections );
     }
 
     private FeatureInputStream queryByIdFilterBlob( IdFilter filter, SortProperty[] sortCrit )
@@ -991,7 +1155,8 @@ public class SQLFeatureStore implements FeatureStore {
         return result;
     }
 
-    private FeatureInputStream queryByIdFilterRelational( IdFilter filter, SortProperty[] sortCrit )
+    private FeatureInputStream queryByIdFilterRelational( IdFilter filter, SortProperty[] sortCrit,
+                                                          List<ProjectionClause> projections )
                             throws FeatureStoreException {
 
         LinkedHashMap<QName, List<IdAnalysis>> ftNameToIdAnalysis = new LinkedHashMap<QName, List<IdAnalysis>>();
@@ -1030,8 +1195,9 @@ public class SQLFeatureStore implements FeatureStore {
             conn = getConnection();
 
             String tableAlias = "X1";
+            Set<QName> projectedProps = getProjectedProperties( ft, projections, sortCrit );
             FeatureBuilder builder = new FeatureBuilderRelational( this, ft, ftMapping, conn, tableAlias,
-                                                                   nullEscalation );
+                                                                   nullEscalation, projectedProps );
             List<String> columns = builder.getInitialSelectColumns();
             StringBuilder sql = new StringBuilder( "SELECT " );
             sql.append( columns.get( 0 ) );
@@ -1082,7 +1248,7 @@ public class SQLFeatureStore implements FeatureStore {
             begin = System.currentTimeMillis();
             rs = stmt.executeQuery();
             LOG.debug( "Executing SELECT took {} [ms] ", System.currentTimeMillis() - begin );
-            result = new IteratorFeatureInputStream( new FeatureResultSetIterator( builder, rs, conn, stmt ) );
+            result = new IteratorFeatureInputStream( createFeatureIterator( builder, rs, conn, stmt ) );
         } catch ( Exception e ) {
             close( rs, stmt, conn, LOG );
             String msg = "Error performing query by id filter (relational mode): " + e.getMessage();
@@ -1099,7 +1265,8 @@ public class SQLFeatureStore implements FeatureStore {
         return conn;
     }
 
-    private FeatureInputStream queryByOperatorFilterBlob( Query query, QName ftName, OperatorFilter filter )
+    private FeatureInputStream queryByOperatorFilterBlob( Query query, QName ftName, OperatorFilter filter,
+                                                          boolean applyPaging )
                             throws FeatureStoreException {
 
         LOG.debug( "Performing blob query by operator filter" );
@@ -1240,16 +1407,37 @@ public class SQLFeatureStore implements FeatureStore {
             LOG.debug( "Applying in-memory post-sorting." );
             result = new MemoryFeatureInputStream( Features.sortFc( result.toCollection(), query.getSortProperties() ) );
         }
+        if ( applyPaging && query.isPaged() ) {
+            LOG.debug( "Applying in-memory paging." );
+            result = new PagedFeatureInputStream( result, query.getStartIndex(), query.getStartAfterId(),
+                                                  query.getMaxFeatures() );
+        }
         return result;
     }
 
-    private FeatureInputStream queryByOperatorFilter( Query query, QName ftName, OperatorFilter filter )
+    /**
+     * Performs a query by operator filter.
+     * 
+     * @param query
+     *            query, must not be <code>null</code>
+     * @param ftName
+     *            name of the queried feature type, must not be <code>null</code>
+     * @param filter
+     *            filter, can be <code>null</code>
+     * @param applyPaging
+     *            <code>true</code>, if the start index, start feature id and max features of the query shall be
+     *            respected, <code>false</code> to return all matching features
+     * @return matching features, never <code>null</code>
+     * @throws FeatureStoreException
+     */
+    private FeatureInputStream queryByOperatorFilter( Query query, QName ftName, OperatorFilter filter,
+                                                      boolean applyPaging )
                             throws FeatureStoreException {
 
         LOG.debug( "Performing query by operator filter" );
 
         if ( getSchema().getBlobMapping() != null ) {
-            return queryByOperatorFilterBlob( query, ftName, filter );
+            return queryByOperatorFilterBlob( query, ftName, filter, applyPaging );
         }
 
         AbstractWhereBuilder wb = null;
@@ -1257,6 +1445,7 @@ public class SQLFeatureStore implements FeatureStore {
         FeatureInputStream result = null;
         PreparedStatement stmt = null;
         ResultSet rs = null;
+        boolean pushDownPaging = false;
 
         FeatureType ft = getSchema().getFeatureType( ftName );
         FeatureTypeMapping ftMapping = getMapping( ftName );
@@ -1273,8 +1462,20 @@ public class SQLFeatureStore implements FeatureStore {
             LOG.debug( "WHERE clause: " + wb.getWhere() );
             LOG.debug( "ORDER BY clause: " + wb.getOrderBy() );
 
+            pushDownPaging = applyPaging && isPagingPushable( query, wb );
+            FIDMapping fidMapping = ftMapping.getFidMapping();
+            Object[] seekKernels = null;
+            if ( pushDownPaging && query.getStartAfterId() != null ) {
+                seekKernels = getSeekKernels( ftName, query.getStartAfterId() );
+            }
+
+            // in-memory post-filtering may need any property
+            Set<QName> projectedProps = null;
+            if ( wb.getPostFilter() == null ) {
+                projectedProps = getProjectedProperties( ft, query.getProjections(), query.getSortProperties() );
+            }
             FeatureBuilder builder = new FeatureBuilderRelational( this, ft, ftMapping, conn, ftTableAlias,
-                                                                   nullEscalation );
+                                                                   nullEscalation, projectedProps );
             List<String> columns = builder.getInitialSelectColumns();
 
             BlobMapping blobMapping = getSchema().getBlobMapping();
@@ -1311,14 +1512,23 @@ public class SQLFeatureStore implements FeatureStore {
                 }
                 sql.append( wb.getWhere().getSQL() );
             }
-            if ( wb.getOrderBy() != null ) {
+            if ( seekKernels != null ) {
+                sql.append( wb.getWhere() != null ? " AND " : " WHERE " );
+                appendSeekCondition( sql, ftTableAlias, fidMapping );
+            }
+            boolean ordered = wb.getOrderBy() != null;
+            if ( ordered ) {
                 sql.append( " ORDER BY " );
                 sql.append( wb.getOrderBy().getSQL() );
             }
+            String select = sql.toString();
+            if ( pushDownPaging && query.isPaged() ) {
+                select = getPagedSelect( dialect, select, ordered, ftTableAlias, fidMapping, query );
+            }
 
-            LOG.debug( "SQL: {}", sql );
+            LOG.debug( "SQL: {}", select );
             long begin = System.currentTimeMillis();
-            stmt = conn.prepareStatement( sql.toString() );
+            stmt = conn.prepareStatement( select );
             LOG.debug( "Preparing SELECT took {} [ms] ", System.currentTimeMillis() - begin );
 
             int i = 1;
@@ -1327,6 +1537,9 @@ public class SQLFeatureStore implements FeatureStore {
                     o.setArgument( stmt, i++ );
                 }
             }
+            if ( seekKernels != null ) {
+                i = setSeekArguments( stmt, i, fidMapping, seekKernels );
+            }
             if ( wb.getOrderBy() != null ) {
                 for ( SQLArgument o : wb.getOrderBy().getArguments() ) {
                     o.setArgument( stmt, i++ );
@@ -1338,7 +1551,7 @@ public class SQLFeatureStore implements FeatureStore {
             rs = stmt.executeQuery();
             LOG.debug( "Executing SELECT took {} [ms] ", System.currentTimeMillis() - begin );
 
-            result = new IteratorFeatureInputStream( new FeatureResultSetIterator( builder, rs, conn, stmt ) );
+            result = new IteratorFeatureInputStream( createFeatureIterator( builder, rs, conn, stmt ) );
         } catch ( Exception e ) {
             close( rs, stmt, conn, LOG );
             String msg = "Error performing query by operator filter: " + e.getMessage();
@@ -1354,9 +1567,174 @@ public class SQLFeatureStore implements FeatureStore {
             LOG.debug( "Applying in-memory post-sorting." );
             result = new MemoryFeatureInputStream( Features.sortFc( result.toCollection(), wb.getPostSortCriteria() ) );
         }
+        if ( applyPaging && !pushDownPaging && query.isPaged() ) {
+            LOG.debug( "Applying in-memory paging." );
+            result = new PagedFeatureInputStream( result, query.getStartIndex(), query.getStartAfterId(),
+                                                  query.getMaxFeatures() );
+        }
         return result;
     }
 
+    /**
+     * Returns whether the paging parameters of the query can be evaluated by the database, i.e. the SQL query returns
+     * exactly one row per feature in final order.
+     */
+    static boolean isPagingPushable( Query query, AbstractWhereBuilder wb ) {
+        if ( wb.getPostFilter() != null || wb.getPostSortCriteria() != null ) {
+            return false;
+        }
+        // seeking is only supported for the primary key order
+        if ( query.getStartAfterId() != null && wb.getOrderBy() != null ) {
+            return false;
+        }
+        // joins may multiply the rows of a feature
+        for ( PropertyNameMapping mappedPropName : wb.getMappedPropertyNames() ) {
+            if ( !mappedPropName.getJoins().isEmpty() ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Object[] getSeekKernels( QName ftName, String startAfterId )
+                            throws FeatureStoreException {
+        IdAnalysis analysis;
+        try {
+            analysis = getSchema().analyzeId( startAfterId );
+        } catch ( IllegalArgumentException e ) {
+            throw new FeatureStoreException( e.getMessage(), e );
+        }
+        if ( !ftName.equals( analysis.getFeatureType().getName() ) ) {
+            String msg = "Feature id '" + startAfterId + "' does not refer to a feature of type '" + ftName + "'.";
+            throw new FeatureStoreException( msg );
+        }
+        return analysis.getIdKernels();
+    }
+
+    /**
+     * Restricts the given <code>SELECT</code> statement to the page of the query. The feature id columns are appended
+     * as last sort key, as a total order is required to get stable pages.
+     */
+    static String getPagedSelect( SQLDialect dialect, String select, boolean ordered, String tableAlias,
+                                  FIDMapping fidMapping, Query query ) {
+        StringBuilder sql = new StringBuilder( select );
+        sql.append( ordered ? "," : " ORDER BY " );
+        appendFidColumns( sql, tableAlias, fidMapping );
+        return dialect.getPagedSelect( sql.toString(), true, query.getStartIndex(), query.getMaxFeatures() );
+    }
+
+    private static void appendFidColumns( StringBuilder sql, String tableAlias, FIDMapping fidMapping ) {
+        boolean first = true;
+        for ( Pair<SQLIdentifier, BaseType> fidColumn : fidMapping.getColumns() ) {
+            if ( !first ) {
+                sql.append( ',' );
+            }
+            sql.append( tableAlias );
+            sql.append( '.' );
+            sql.append( fidColumn.first );
+            first = false;
+        }
+    }
+
+    /**
+     * Appends a condition that selects the rows following the seek key in primary key order, e.g.
+     * <code>(c1&gt;?) OR (c1=? AND c2&gt;?)</code> for a key that consists of two columns.
+     */
+    static void appendSeekCondition( StringBuilder sql, String tableAlias, FIDMapping fidMapping ) {
+        List<Pair<SQLIdentifier, BaseType>> fidColumns = fidMapping.getColumns();
+        sql.append( '(' );
+        for ( int i = 0; i < fidColumns.size(); i++ ) {
+            if ( i > 0 ) {
+                sql.append( " OR " );
+            }
+            sql.append( '(' );
+            for ( int j = 0; j <= i; j++ ) {
+                if ( j > 0 ) {
+                    sql.append( " AND " );
+                }
+                sql.append( tableAlias );
+                sql.append( '.' );
+                sql.append( fidColumns.get( j ).first );
+                sql.append( j < i ? "=?" : ">?" );
+            }
+            sql.append( ')' );
+        }
+        sql.append( ')' );
+    }
+
+    static int setSeekArguments( PreparedStatement stmt, int paramIndex, FIDMapping fidMapping, Object[] kernels )
+                            throws SQLException {
+        List<Pair<SQLIdentifier, BaseType>> fidColumns = fidMapping.getColumns();
+        int i = paramIndex;
+        for ( int col = 0; col < fidColumns.size(); col++ ) {
+            for ( int j = 0; j <= col; j++ ) {
+                PrimitiveType pt = new PrimitiveType( fidColumns.get( j ).getSecond() );
+                PrimitiveValue value = new PrimitiveValue( kernels[j], pt );
+                stmt.setObject( i++, SQLValueMangler.internalToSQL( value ) );
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Determines the properties that have to be fetched in order to satisfy the given projection clauses.
+     * <p>
+     * Besides the projected properties, this includes all mandatory properties as well as the ones that are required
+     * for (in-memory) sorting.
+     * </p>
+     * 
+     * @param ft
+     *            queried feature type, must not be <code>null</code>
+     * @param projections
+     *            projection clauses, can be <code>null</code>
+     * @param sortCrit
+     *            sort criteria, can be <code>null</code>
+     * @return names of the properties to fetch, <code>null</code> if all properties have to be fetched
+     */
+    static Set<QName> getProjectedProperties( FeatureType ft, List<ProjectionClause> projections,
+                                              SortProperty[] sortCrit ) {
+        if ( projections == null || projections.isEmpty() ) {
+            return null;
+        }
+        Set<QName> propNames = new HashSet<QName>();
+        for ( ProjectionClause projection : projections ) {
+            if ( !( projection instanceof PropertyName ) ) {
+                return null;
+            }
+            if ( !addPropertyName( ft, ( (PropertyName) projection ).getPropertyName(), propNames ) ) {
+                return null;
+            }
+        }
+        if ( sortCrit != null ) {
+            for ( SortProperty sortProp : sortCrit ) {
+                if ( !addPropertyName( ft, sortProp.getSortProperty(), propNames ) ) {
+                    return null;
+                }
+            }
+        }
+        List<PropertyType> pts = ft.getPropertyDeclarations();
+        for ( PropertyType pt : pts ) {
+            if ( pt.getMinOccurs() > 0 ) {
+                propNames.add( pt.getName() );
+            }
+        }
+        if ( propNames.size() >= pts.size() ) {
+            return null;
+        }
+        LOG.debug( "Fetching properties: {}", propNames );
+        return propNames;
+    }
+
+    private static boolean addPropertyName( FeatureType ft, ValueReference propName, Set<QName> propNames ) {
+        QName qName = propName.getAsQName();
+        if ( qName == null || ft.getPropertyDeclaration( qName ) == null ) {
+            LOG.debug( "Cannot restrict fetched properties to '{}'. Fetching all properties.", propName );
+            return false;
+        }
+        propNames.add( qName );
+        return true;
+    }
+
     private FeatureInputStream queryMultipleFts( Query[] queries, Envelope looseBBox )
                             throws FeatureStoreException {
         FeatureInputStream result = null;
@@ -1467,6 +1845,89 @@ public class SQLFeatureStore implements FeatureStore {
         return dialect;
     }
 
+    private CloseableIterator<Feature> createFeatureIterator( FeatureBuilder builder, ResultSet rs, Connection conn,
+                                                             Statement stmt ) {
+        if ( builder instanceof FeatureBuilderRelational && ( (FeatureBuilderRelational) builder ).isBlockBuilding() ) {
+            return new BlockFeatureResultSetIterator( (FeatureBuilderRelational) builder, rs, conn, stmt );
+        }
+        return new FeatureResultSetIterator( builder, rs, conn, stmt );
+    }
+
+    /**
+     * Builds the features in blocks, so the rows of joined tables can be fetched for a whole block at once.
+     */
+    private class BlockFeatureResultSetIterator implements CloseableIterator<Feature> {
+
+        private final FeatureBuilderRelational builder;
+
+        private final ResultSet rs;
+
+        private final Connection conn;
+
+        private final Statement stmt;
+
+        private final LinkedList<Feature> block = new LinkedList<Feature>();
+
+        private boolean exhausted;
+
+        BlockFeatureResultSetIterator( FeatureBuilderRelational builder, ResultSet rs, Connection conn,
+                                       Statement stmt ) {
+            this.builder = builder;
+            this.rs = rs;
+            this.conn = conn;
+            this.stmt = stmt;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if ( block.isEmpty() && !exhausted ) {
+                try {
+                    block.addAll( builder.buildFeatures( rs ) );
+                } catch ( SQLException e ) {
+                    close();
+                    throw new RuntimeException( e.getMessage(), e );
+                }
+                exhausted = block.isEmpty();
+            }
+            return !block.isEmpty();
+        }
+
+        @Override
+        public Feature next() {
+            if ( !hasNext() ) {
+                throw new NoSuchElementException();
+            }
+            return block.removeFirst();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+            LOG.debug( "Closing JDBC ResultSet, Statement and Connection" );
+            JDBCUtils.close( rs, stmt, conn, LOG );
+        }
+
+        @Override
+        public List<Feature> getAsListAndClose() {
+            List<Feature> list = new LinkedList<Feature>();
+            getAsCollectionAndClose( list );
+            return list;
+        }
+
+        @Override
+        public Collection<Feature> getAsCollectionAndClose( Collection<Feature> collection ) {
+            while ( hasNext() ) {
+                collection.add( next() );
+            }
+            close();
+            return collection;
+        }
+    }
+
     private class FeatureResultSetIterator extends ResultSetIterator<Feature> {
 
         private final FeatureBuilder builder;
@@ -44,6 +44,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -72,12 +73,15 @@ import org.deegree.feature.Feature;
 import org.deegree.feature.FeatureCollection;
 import org.deegree.feature.GenericFeatureCollection;
 import org.deegree.feature.persistence.BBoxTracker;
+import org.deegree.feature.persistence.BulkInsertTransaction;
+import org.deegree.feature.persistence.ChunkedInsertTransaction;
 import org.deegree.feature.persistence.FeatureInspector;
 import org.deegree.feature.persistence.FeatureStore;
 import org.deegree.feature.persistence.FeatureStoreException;
 import org.deegree.feature.persistence.FeatureStoreTransaction;
 import org.deegree.feature.persistence.lock.Lock;
 import org.deegree.feature.persistence.query.Query;
+import org.deegree.feature.persistence.cache.FeatureStoreCache;
 import org.deegree.feature.persistence.sql.blob.BlobCodec;
 import org.deegree.feature.persistence.sql.blob.BlobMapping;
 import org.deegree.feature.persistence.sql.expressions.TableJoin;
@@ -111,6 +115,15 @@ import org.slf4j.LoggerFactory;
 
 /**
  * {@link FeatureStoreTransaction} implementation for {@link SQLFeatureStore}.
+ * <p>
+ * In bulk insert mode (relational mapping only), inserted rows are loaded using the bulk loader of the SQL dialect
+ * (e.g. PostgreSQL <code>COPY</code>), with keys allocated in advance. If the dialect does not offer bulk loading,
+ * batched <code>INSERT</code> statements are used.
+ * </p>
+ * <p>
+ * Chunked inserts share a single {@link InsertRowManager} for all chunks, so references between features of different
+ * chunks are resolved by their original feature ids.
+ * </p>
  * 
  * @author <a href="mailto:schneider@lat-lon.de">Markus Schneider</a>
  * @author <a href="mailto:schmitz@lat-lon.de">Andreas Schmitz</a>
@@ -118,7 +131,7 @@ import org.slf4j.LoggerFactory;
  * 
  * @version $Revision$, $Date$
  */
-public class SQLFeatureStoreTransaction implements FeatureStoreTransaction {
+public class SQLFeatureStoreTransaction implements BulkInsertTransaction, ChunkedInsertTransaction {
 
     private static final Logger LOG = LoggerFactory.getLogger( SQLFeatureStoreTransaction.class );
 
@@ -137,6 +150,20 @@ public class SQLFeatureStoreTransaction implements FeatureStoreTransaction {
     // TODO
     private ParticleConverter<Geometry> blobGeomConverter;
 
+    private boolean bulkInsert;
+
+    // ids of updated/deleted objects (for invalidating the feature cache)
+    private final Set<String> invalidatedIds = new HashSet<String>();
+
+    private IDGenMode chunkedInsertMode;
+
+    // used for all chunks, keeps track of the inserted (and referenced) features
+    private InsertRowManager chunkedInsertManager;
+
+    private List<FeatureRow> chunkedIdAssignments;
+
+    private List<String> chunkedIds;
+
     /**
      * Creates a new {@link SQLFeatureStoreTransaction} instance.
      * 
@@ -172,8 +199,10 @@ public class SQLFeatureStoreTransaction implements FeatureStoreTransaction {
                             throws FeatureStoreException {
 
         LOG.debug( "Committing transaction." );
+        endChunkedInsertQuietly();
         try {
             conn.commit();
+            invalidateCacheOnCommit();
             updateBBoxCache();
         } catch ( Throwable t ) {
             LOG.debug( t.getMessage(), t );
@@ -229,6 +258,7 @@ public class SQLFeatureStoreTransaction implements FeatureStoreTransaction {
     public void rollback()
                             throws FeatureStoreException {
         LOG.debug( "Performing rollback of transaction." );
+        endChunkedInsertQuietly();
         try {
             conn.rollback();
         } catch ( SQLException e ) {
@@ -258,6 +288,16 @@ public class SQLFeatureStoreTransaction implements FeatureStoreTransaction {
         return conn;
     }
 
+    @Override
+    public boolean isBulkInsertSupported() {
+        return blobMapping == null;
+    }
+
+    @Override
+    public void setBulkInsert( boolean bulkInsert ) {
+        this.bulkInsert = bulkInsert;
+    }
+
     @Override
     public int performDelete( QName ftName, OperatorFilter filter, Lock lock )
                             throws FeatureStoreException {
@@ -274,6 +314,7 @@ public class SQLFeatureStoreTransaction implements FeatureStoreTransaction {
         } else {
             deleted = performDeleteRelational( filter, lock );
         }
+        invalidateCache( filter );
 
         // TODO improve this
         for ( FeatureType ft : schema.getFeatureTypes( null, false, false ) ) {
@@ -283,6 +324,30 @@ public class SQLFeatureStoreTransaction implements FeatureStoreTransaction {
         return deleted;
     }
 
+    /**
+     * Removes the given objects from the feature cache. The ids are removed again on commit, as concurrent readers may
+     * have cached the old versions in the meantime.
+     */
+    private void invalidateCache( IdFilter filter ) {
+        FeatureStoreCache cache = fs.getCache();
+        if ( cache != null ) {
+            for ( ResourceId id : filter.getSelectedIds() ) {
+                cache.remove( id.getRid() );
+                invalidatedIds.add( id.getRid() );
+            }
+        }
+    }
+
+    private void invalidateCacheOnCommit() {
+        FeatureStoreCache cache = fs.getCache();
+        if ( cache != null ) {
+            for ( String id : invalidatedIds ) {
+                cache.remove( id );
+            }
+        }
+        invalidatedIds.clear();
+    }
+
     private int performDeleteBlob( IdFilter filter, Lock lock )
                             throws FeatureStoreException {
         int deleted = 0;
@@ -293,9 +358,6 @@ public class SQLFeatureStoreTransaction implements FeatureStoreTransaction {
             for ( ResourceId id : filter.getSelectedIds() ) {
                 stmt.setString( 1, id.getRid() );
                 stmt.addBatch();
-                if ( fs.getCache() != null ) {
-                    fs.getCache().remove( id.getRid() );
-                }
             }
             int[] deletes = stmt.executeBatch();
             for ( int noDeleted : deletes ) {
@@ -644,19 +706,12 @@ public class SQLFeatureStoreTransaction implements FeatureStoreTransaction {
             } else {
                 // pure relational mode
                 List<FeatureRow> idAssignments = new ArrayList<FeatureRow>();
-                InsertRowManager insertManager = new InsertRowManager( fs, conn, mode );
-                for ( Feature feature : features ) {
-                    FeatureTypeMapping ftMapping = fs.getMapping( feature.getName() );
-                    if ( ftMapping == null ) {
-                        throw new FeatureStoreException( "Cannot insert feature of type '" + feature.getName()
-                                                         + "'. No mapping defined and BLOB mode is off." );
-                    }
-                    idAssignments.add( insertManager.insertFeature( feature, ftMapping ) );
-                    Pair<TableName, GeometryMapping> mapping = ftMapping.getDefaultGeometryMapping();
-                    if ( mapping != null ) {
-                        ICRS storageSrs = mapping.second.getCRS();
-                        bboxTracker.insert( feature, storageSrs );
-                    }
+                InsertRowManager insertManager = new InsertRowManager( fs, conn, mode, bulkInsert );
+                try {
+                    insertRelational( insertManager, features, idAssignments );
+                    insertManager.flush();
+                } finally {
+                    insertManager.close();
                 }
                 if ( insertManager.getDelayedRows() != 0 ) {
                     String msg = "After insertion, " + insertManager.getDelayedRows()
@@ -681,6 +736,118 @@ public class SQLFeatureStoreTransaction implements FeatureStoreTransaction {
         return new ArrayList<String>( fids );
     }
 
+    private void insertRelational( InsertRowManager insertManager, Collection<Feature> features,
+                                   List<FeatureRow> idAssignments )
+                            throws SQLException, FeatureStoreException, FilterEvaluationException {
+        for ( Feature feature : features ) {
+            FeatureTypeMapping ftMapping = fs.getMapping( feature.getName() );
+            if ( ftMapping == null ) {
+                throw new FeatureStoreException( "Cannot insert feature of type '" + feature.getName()
+                                                 + "'. No mapping defined and BLOB mode is off." );
+            }
+            idAssignments.add( insertManager.insertFeature( feature, ftMapping ) );
+            Pair<TableName, GeometryMapping> mapping = ftMapping.getDefaultGeometryMapping();
+            if ( mapping != null ) {
+                ICRS storageSrs = mapping.second.getCRS();
+                bboxTracker.insert( feature, storageSrs );
+            }
+        }
+    }
+
+    @Override
+    public void beginChunkedInsert( IDGenMode mode )
+                            throws FeatureStoreException {
+        if ( chunkedInsertMode != null ) {
+            throw new FeatureStoreException( "Chunked insert is already in progress." );
+        }
+        LOG.debug( "Beginning chunked insert." );
+        chunkedInsertMode = mode;
+        chunkedIds = new ArrayList<String>();
+        if ( blobMapping == null ) {
+            chunkedInsertManager = new InsertRowManager( fs, conn, mode, bulkInsert );
+            chunkedIdAssignments = new ArrayList<FeatureRow>();
+        }
+    }
+
+    @Override
+    public void insertChunk( FeatureCollection chunk )
+                            throws FeatureStoreException {
+        if ( chunkedInsertMode == null ) {
+            throw new FeatureStoreException( "No chunked insert in progress." );
+        }
+        if ( chunkedInsertManager == null ) {
+            chunkedIds.addAll( performInsert( chunk, chunkedInsertMode ) );
+            return;
+        }
+
+        Set<Geometry> geometries = new LinkedHashSet<Geometry>();
+        Set<Feature> features = new LinkedHashSet<Feature>();
+        Set<String> fids = new LinkedHashSet<String>();
+        Set<String> gids = new LinkedHashSet<String>();
+        for ( Feature member : chunk ) {
+            findFeaturesAndGeometries( member, geometries, features, fids, gids );
+        }
+        LOG.debug( "Inserting chunk: " + features.size() + " features / " + geometries.size() + " geometries" );
+
+        for ( FeatureInspector inspector : inspectors ) {
+            for ( Feature f : features ) {
+                inspector.inspect( f );
+            }
+        }
+
+        try {
+            insertRelational( chunkedInsertManager, features, chunkedIdAssignments );
+        } catch ( Throwable t ) {
+            endChunkedInsertQuietly();
+            String msg = "Error inserting feature: " + t.getMessage();
+            LOG.error( msg );
+            LOG.trace( "Stack trace:", t );
+            throw new FeatureStoreException( msg, t );
+        }
+    }
+
+    @Override
+    public List<String> endChunkedInsert()
+                            throws FeatureStoreException {
+        if ( chunkedInsertMode == null ) {
+            throw new FeatureStoreException( "No chunked insert in progress." );
+        }
+        InsertRowManager insertManager = chunkedInsertManager;
+        List<String> ids = chunkedIds;
+        try {
+            if ( insertManager != null ) {
+                insertManager.flush();
+                if ( insertManager.getDelayedRows() != 0 ) {
+                    String msg = "After insertion, " + insertManager.getDelayedRows() + " delayed rows left "
+                                 + "uninserted. Probably unresolvable references or a cyclic key constraint.";
+                    throw new FeatureStoreException( msg );
+                }
+                for ( FeatureRow assignment : chunkedIdAssignments ) {
+                    ids.add( assignment.getNewId() );
+                }
+            }
+        } catch ( SQLException e ) {
+            String msg = "Error inserting feature: " + e.getMessage();
+            LOG.error( msg );
+            LOG.trace( "Stack trace:", e );
+            throw new FeatureStoreException( msg, e );
+        } finally {
+            endChunkedInsertQuietly();
+        }
+        LOG.debug( "Ended chunked insert of " + ids.size() + " features." );
+        return ids;
+    }
+
+    private void endChunkedInsertQuietly() {
+        if ( chunkedInsertManager != null ) {
+            chunkedInsertManager.close();
+        }
+        chunkedInsertMode = null;
+        chunkedInsertManager = null;
+        chunkedIdAssignments = null;
+        chunkedIds = null;
+    }
+
     private String generateNewId() {
         return UUID.randomUUID().toString();
     }
@@ -778,11 +945,7 @@ public class SQLFeatureStoreTransaction implements FeatureStoreTransaction {
         } else {
             try {
                 updated = performUpdateRelational( ftName, replacementProps, filter );
-                if ( fs.getCache() != null ) {
-                    for ( ResourceId id : filter.getSelectedIds() ) {
-                        fs.getCache().remove( id.getRid() );
-                    }
-                }
+                invalidateCache( filter );
             } catch ( Exception e ) {
                 LOG.debug( e.getMessage(), e );
                 throw new FeatureStoreException( e.getMessage(), e );
@@ -966,12 +1129,17 @@ public class SQLFeatureStoreTransaction implements FeatureStoreTransaction {
             break;
         }
         InsertRowManager mgr = new InsertRowManager( fs, conn, null );
-        List<Property> props = Collections.singletonList( replacement.getNewValue() );
-        for ( ResourceId id : list ) {
-            IdAnalysis analysis = schema.analyzeId( id.getRid() );
-            FeatureType featureType = schema.getFeatureType( ftMapping.getFeatureType() );
-            Feature f = featureType.newFeature( id.getRid(), props, null );
-            mgr.updateFeature( f, ftMapping, analysis.getIdKernels(), mapping, replacement );
+        try {
+            List<Property> props = Collections.singletonList( replacement.getNewValue() );
+            for ( ResourceId id : list ) {
+                IdAnalysis analysis = schema.analyzeId( id.getRid() );
+                FeatureType featureType = schema.getFeatureType( ftMapping.getFeatureType() );
+                Feature f = featureType.newFeature( id.getRid(), props, null );
+                mgr.updateFeature( f, ftMapping, analysis.getIdKernels(), mapping, replacement );
+            }
+            mgr.flush();
+        } finally {
+            mgr.close();
         }
     }
 
@@ -169,7 +169,10 @@ public class FeatureRow extends InsertRow {
     protected Set<SQLIdentifier> getAutogenColumns( boolean propagateNonFidAutoGenColumns ) {
         Set<SQLIdentifier> cols = super.getAutogenColumns( propagateNonFidAutoGenColumns );
         for ( Pair<SQLIdentifier, BaseType> fidColumn : fidMapping.getColumns() ) {
-            cols.add( fidColumn.first );
+            // fid values that have been generated before the insert (sequence, UUID, existing) are known already
+            if ( get( fidColumn.first ) == null ) {
+                cols.add( fidColumn.first );
+            }
         }
         return cols;
     }
@@ -0,0 +1,305 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.feature.persistence.sql.insert;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.deegree.commons.jdbc.SQLIdentifier;
+import org.deegree.commons.jdbc.TableName;
+import org.deegree.commons.tom.sql.ParticleConversion;
+import org.deegree.commons.utils.JDBCUtils;
+import org.deegree.sqldialect.BulkLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects the arguments of {@link InsertRow}s that share the same <code>INSERT</code> statement, so they can be sent
+ * to the database in JDBC batches.
+ * <p>
+ * If the dialect supports it, the rows are inserted using multi-row <code>VALUES</code> clauses. The prepared
+ * statements are kept open and reused for subsequent batches until {@link #close()} is called.
+ * </p>
+ * <p>
+ * Alternatively, the rows can be passed to a {@link BulkLoader}. In this case, the particle conversions are evaluated
+ * into plain JDBC values before loading.
+ * </p>
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+class InsertBatch {
+
+    private static final Logger LOG = LoggerFactory.getLogger( InsertBatch.class );
+
+    // INSERT INTO ...(...) VALUES
+    private final String insertSql;
+
+    // (...)
+    private final String valuesSql;
+
+    private final int maxRowsPerStatement;
+
+    private final List<Object[]> rows = new ArrayList<Object[]>();
+
+    private int seq;
+
+    private PreparedStatement singleRowStmt;
+
+    private PreparedStatement multiRowStmt;
+
+    private BulkLoader bulkLoader;
+
+    private TableName table;
+
+    private List<SQLIdentifier> columns;
+
+    private List<String> valueExpressions;
+
+    /**
+     * Creates a new {@link InsertBatch} instance.
+     * 
+     * @param insertSql
+     *            <code>INSERT</code> statement up to (and including) the <code>VALUES</code> keyword, must not be
+     *            <code>null</code>
+     * @param valuesSql
+     *            parenthesized values of a single row, must not be <code>null</code>
+     * @param maxRowsPerStatement
+     *            maximum number of rows per multi-row <code>INSERT</code> statement, 1 for single-row statements
+     */
+    InsertBatch( String insertSql, String valuesSql, int maxRowsPerStatement ) {
+        this.insertSql = insertSql;
+        this.valuesSql = valuesSql;
+        this.maxRowsPerStatement = maxRowsPerStatement;
+    }
+
+    /**
+     * Makes this batch use the given {@link BulkLoader} instead of <code>INSERT</code> statements.
+     * 
+     * @param bulkLoader
+     *            bulk loader, must not be <code>null</code> and must be able to load the value expressions
+     * @param table
+     *            target table, must not be <code>null</code>
+     * @param columns
+     *            target columns, must not be <code>null</code>
+     * @param valueExpressions
+     *            value expressions of the columns, must not be <code>null</code>
+     */
+    void setBulkLoader( BulkLoader bulkLoader, TableName table, List<SQLIdentifier> columns,
+                        List<String> valueExpressions ) {
+        this.bulkLoader = bulkLoader;
+        this.table = table;
+        this.columns = columns;
+        this.valueExpressions = valueExpressions;
+    }
+
+    /**
+     * Adds the arguments of a row.
+     * 
+     * @param arguments
+     *            statement arguments of the row (in parameter order), must not be <code>null</code>
+     */
+    void add( Object[] arguments ) {
+        rows.add( arguments );
+    }
+
+    boolean isEmpty() {
+        return rows.isEmpty();
+    }
+
+    int size() {
+        return rows.size();
+    }
+
+    /**
+     * Returns the sequence number of this batch, batches are executed in ascending order of sequence numbers.
+     * 
+     * @return sequence number of the batch
+     */
+    int getSeq() {
+        return seq;
+    }
+
+    void setSeq( int seq ) {
+        this.seq = seq;
+    }
+
+    /**
+     * Inserts all collected rows.
+     * 
+     * @param conn
+     *            JDBC connection to use, must not be <code>null</code>
+     * @throws SQLException
+     */
+    void execute( Connection conn )
+                            throws SQLException {
+        if ( bulkLoader != null ) {
+            LOG.debug( "Bulk loading {} rows into table {}", rows.size(), table );
+            List<Object[]> jdbcRows = new ArrayList<Object[]>( rows.size() );
+            for ( Object[] row : rows ) {
+                jdbcRows.add( toJdbcValues( row ) );
+            }
+            rows.clear();
+            bulkLoader.load( table, columns, valueExpressions, jdbcRows );
+            return;
+        }
+        LOG.debug( "Executing insert batch ({} rows): {}", rows.size(), getSql( 1 ) );
+        int idx = 0;
+        if ( maxRowsPerStatement > 1 ) {
+            int statements = rows.size() / maxRowsPerStatement;
+            if ( statements > 0 ) {
+                if ( multiRowStmt == null ) {
+                    multiRowStmt = conn.prepareStatement( getSql( maxRowsPerStatement ) );
+                }
+                for ( int i = 0; i < statements; i++ ) {
+                    setArguments( multiRowStmt, idx, maxRowsPerStatement );
+                    multiRowStmt.addBatch();
+                    idx += maxRowsPerStatement;
+                }
+                multiRowStmt.executeBatch();
+            }
+            int remaining = rows.size() - idx;
+            if ( remaining > 1 ) {
+                PreparedStatement stmt = conn.prepareStatement( getSql( remaining ) );
+                try {
+                    setArguments( stmt, idx, remaining );
+                    stmt.execute();
+                } finally {
+                    JDBCUtils.close( stmt );
+                }
+                idx += remaining;
+            }
+        }
+        if ( idx < rows.size() ) {
+            if ( singleRowStmt == null ) {
+                singleRowStmt = conn.prepareStatement( getSql( 1 ) );
+            }
+            for ( ; idx < rows.size(); idx++ ) {
+                setArguments( singleRowStmt, idx, 1 );
+                singleRowStmt.addBatch();
+            }
+            singleRowStmt.executeBatch();
+        }
+        rows.clear();
+    }
+
+    /**
+     * Closes the prepared statements of this batch.
+     */
+    void close() {
+        JDBCUtils.close( singleRowStmt );
+        JDBCUtils.close( multiRowStmt );
+        singleRowStmt = null;
+        multiRowStmt = null;
+    }
+
+    private void setArguments( PreparedStatement stmt, int firstRow, int numRows )
+                            throws SQLException {
+        int columnId = 1;
+        for ( int i = firstRow; i < firstRow + numRows; i++ ) {
+            for ( Object argument : rows.get( i ) ) {
+                InsertRow.setArgument( stmt, columnId++, argument );
+            }
+        }
+    }
+
+    /**
+     * Evaluates the {@link ParticleConversion}s of the given arguments into the values they pass to the statement.
+     */
+    private static Object[] toJdbcValues( Object[] arguments )
+                            throws SQLException {
+        Object[] values = new Object[arguments.length];
+        Class<?>[] interfaces = new Class<?>[] { PreparedStatement.class };
+        for ( int i = 0; i < arguments.length; i++ ) {
+            if ( arguments[i] instanceof ParticleConversion<?> ) {
+                ValueRecorder recorder = new ValueRecorder();
+                ClassLoader cl = InsertBatch.class.getClassLoader();
+                PreparedStatement stmt = (PreparedStatement) Proxy.newProxyInstance( cl, interfaces, recorder );
+                ( (ParticleConversion<?>) arguments[i] ).setParticle( stmt, 1 );
+                values[i] = recorder.value;
+            } else {
+                values[i] = arguments[i];
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Records the value passed to a <code>PreparedStatement.setXYZ(int, value, ...)</code> method.
+     */
+    private static class ValueRecorder implements InvocationHandler {
+
+        private Object value;
+
+        @Override
+        public Object invoke( Object proxy, Method method, Object[] args )
+                                throws Throwable {
+            if ( method.getDeclaringClass() == Object.class ) {
+                if ( method.getName().equals( "equals" ) ) {
+                    return proxy == args[0];
+                } else if ( method.getName().equals( "hashCode" ) ) {
+                    return System.identityHashCode( proxy );
+                }
+                return "ValueRecorder";
+            }
+            if ( method.getName().startsWith( "set" ) && args != null && args.length >= 2
+                 && args[0] instanceof Integer ) {
+                value = method.getName().equals( "setNull" ) ? null : args[1];
+                return null;
+            }
+            throw new UnsupportedOperationException( "Method '" + method.getName()
+                                                     + "' is not supported when bulk loading." );
+        }
+    }
+
+    private String getSql( int numRows ) {
+        StringBuilder sql = new StringBuilder( insertSql );
+        sql.append( valuesSql );
+        for ( int i = 1; i < numRows; i++ ) {
+            sql.append( ',' );
+            sql.append( valuesSql );
+        }
+        return sql.toString();
+    }
+
+}
@@ -39,7 +39,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -51,7 +51,6 @@ import java.util.UUID;
 import org.deegree.commons.jdbc.SQLIdentifier;
 import org.deegree.commons.jdbc.TransactionRow;
 import org.deegree.commons.tom.sql.ParticleConversion;
-import org.deegree.commons.utils.JDBCUtils;
 import org.deegree.feature.persistence.FeatureStoreException;
 import org.deegree.feature.persistence.sql.id.AutoIDGenerator;
 import org.deegree.feature.persistence.sql.id.IDGenerator;
@@ -96,7 +95,7 @@ public abstract class InsertRow extends TransactionRow {
             for ( SQLIdentifier autoKeyColumn : keyColumnToGenerator.keySet() ) {
                 IDGenerator idGenerator = keyColumnToGenerator.get( autoKeyColumn );
                 if ( idGenerator instanceof SequenceIDGenerator ) {
-                    int seqVal = getSequenceNextVal( ( (SequenceIDGenerator) idGenerator ).getSequence() );
+                    int seqVal = mgr.getSequenceNextVal( ( (SequenceIDGenerator) idGenerator ).getSequence() );
                     LOG.debug( "Got key value for column '" + autoKeyColumn.getName() + "' from sequence: " + seqVal );
                     addPreparedArgument( autoKeyColumn, seqVal );
                 } else if ( idGenerator instanceof UUIDGenerator ) {
@@ -104,7 +103,14 @@ public abstract class InsertRow extends TransactionRow {
                     LOG.debug( "Got key value for column '" + autoKeyColumn.getName() + "' from UUID: " + uuid );
                     addPreparedArgument( autoKeyColumn, uuid );
                 } else if ( idGenerator instanceof AutoIDGenerator ) {
-                    LOG.debug( "Key for column '" + autoKeyColumn.getName() + "' will be generated on insert by DB." );
+                    Integer value = mgr.preallocateKey( table, autoKeyColumn );
+                    if ( value != null ) {
+                        LOG.debug( "Pre-allocated key value for column '" + autoKeyColumn.getName() + "': " + value );
+                        addPreparedArgument( autoKeyColumn, value );
+                    } else {
+                        LOG.debug( "Key for column '" + autoKeyColumn.getName()
+                                   + "' will be generated on insert by DB." );
+                    }
                 } else {
                     LOG.warn( "Unhandled ID generator: " + idGenerator.getClass().getName() );
                 }
@@ -112,29 +118,6 @@ public abstract class InsertRow extends TransactionRow {
         }
     }
 
-    private int getSequenceNextVal( String sequenceName )
-                            throws FeatureStoreException {
-        String sql = mgr.getDialect().getSelectSequenceNextVal( sequenceName );
-        Statement stmt = null;
-        ResultSet rs = null;
-        try {
-            stmt = mgr.getConnection().createStatement();
-            LOG.debug( "Determing feature ID from db sequence: " + sql );
-            rs = stmt.executeQuery( sql );
-            if ( rs.next() ) {
-                return rs.getInt( 1 );
-            } else {
-                String msg = "Error determining ID from db sequence. No value returned for: " + sql;
-                throw new FeatureStoreException( msg );
-            }
-        } catch ( SQLException e ) {
-            String msg = "Error determining ID from db sequence. No value returned for: " + sql;
-            throw new FeatureStoreException( msg, e );
-        } finally {
-            JDBCUtils.close( rs, stmt, null, LOG );
-        }
-    }
-
     void addParent( ParentRowReference ref ) {
         parentToRef.put( ref.getTarget(), ref );
     }
@@ -178,6 +161,10 @@ public abstract class InsertRow extends TransactionRow {
 
     /**
      * Performs the insertion and deals with propagating the values of auto-generated columns to child rows.
+     * <p>
+     * If no auto-generated values have to be retrieved, the row is only added to the pending insert batches of the
+     * {@link InsertRowManager} and may actually be inserted later.
+     * </p>
      * 
      * @param conn
      *            JDBC connection to use for insertion, must not be <code>null</code>
@@ -192,72 +179,92 @@ public abstract class InsertRow extends TransactionRow {
 
         if ( LOG.isDebugEnabled() ) {
             LOG.debug( "Inserting row: " + this );
+            for ( Entry<SQLIdentifier, Object> entry : columnToObject.entrySet() ) {
+                Object value = entry.getValue();
+                LOG.debug( "- Argument " + entry.getKey() + " = " + value
+                           + ( value != null ? " (" + value.getClass() + ")" : "" ) );
+            }
         }
 
-        String sql = getSql();
-        PreparedStatement stmt = null;
-
         Set<SQLIdentifier> autoGenColumns = getAutogenColumns( propagateNonFidAutoGenColumns );
         if ( autoGenColumns.isEmpty() ) {
-            stmt = conn.prepareStatement( sql );
-        } else {
-            String[] cols = new String[autoGenColumns.size()];
-            int i = 0;
-            for ( SQLIdentifier id : autoGenColumns ) {
-                if ( !id.isEscaped() ) {
-                    cols[i++] = id.getName().toLowerCase();
-                } else {
-                    cols[i++] = id.getName();
-                }
-            }
-            stmt = conn.prepareStatement( sql, cols );
+            mgr.addToBatch( this );
+            return;
         }
+
+        PreparedStatement stmt = mgr.getKeyedStatement( this, autoGenColumns );
         int columnId = 1;
-        for ( Entry<SQLIdentifier, Object> entry : columnToObject.entrySet() ) {
-            if ( entry.getValue() != null ) {
-                LOG.debug( "- Argument " + entry.getKey() + " = " + entry.getValue() + " ("
-                           + entry.getValue().getClass() + ")" );
-                if ( entry.getValue() instanceof ParticleConversion<?> ) {
-                    ParticleConversion<?> conversion = (ParticleConversion<?>) entry.getValue();
-                    conversion.setParticle( stmt, columnId++ );
-                } else {
-                    stmt.setObject( columnId++, entry.getValue() );
-                }
-            } else {
-                LOG.debug( "- Argument " + entry.getKey() + " = NULL" );
-                stmt.setObject( columnId++, null );
-            }
+        for ( Object value : columnToObject.values() ) {
+            setArgument( stmt, columnId++, value );
         }
         stmt.execute();
 
-        if ( !autoGenColumns.isEmpty() ) {
-            ResultSet rs = null;
-            try {
-                rs = stmt.getGeneratedKeys();
-                if ( rs.next() ) {
-                    int i = 1;
-                    for ( SQLIdentifier autoGenCol : autoGenColumns ) {
-                        Object keyValue = rs.getObject( i++ );
-                        columnToObject.put( autoGenCol, keyValue );
-                        LOG.debug( "Retrieved auto generated key: " + autoGenCol + "=" + keyValue );
-                    }
-                } else {
-                    throw new FeatureStoreException( "DB didn't return auto-generated columns." );
-                }
-            } finally {
-                if ( rs != null ) {
-                    rs.close();
+        ResultSet rs = null;
+        try {
+            rs = stmt.getGeneratedKeys();
+            if ( rs.next() ) {
+                int i = 1;
+                for ( SQLIdentifier autoGenCol : autoGenColumns ) {
+                    Object keyValue = rs.getObject( i++ );
+                    columnToObject.put( autoGenCol, keyValue );
+                    LOG.debug( "Retrieved auto generated key: " + autoGenCol + "=" + keyValue );
                 }
+            } else {
+                throw new FeatureStoreException( "DB didn't return auto-generated columns." );
+            }
+        } finally {
+            if ( rs != null ) {
+                rs.close();
             }
         }
-        stmt.close();
+    }
+
+    /**
+     * Returns the statement arguments of this row (in parameter order).
+     * 
+     * @return statement arguments, never <code>null</code>
+     */
+    Object[] getArguments() {
+        return columnToObject.values().toArray();
+    }
+
+    /**
+     * Returns the columns of this row (in the order of the <code>INSERT</code> statement).
+     * 
+     * @return columns, never <code>null</code>
+     */
+    List<SQLIdentifier> getInsertColumns() {
+        return new ArrayList<SQLIdentifier>( columnToLiteral.keySet() );
+    }
+
+    /**
+     * Returns the value expressions of this row (in the order of the <code>INSERT</code> statement).
+     * 
+     * @return value expressions, never <code>null</code>
+     */
+    List<String> getValueExpressions() {
+        return new ArrayList<String>( columnToLiteral.values() );
+    }
+
+    static void setArgument( PreparedStatement stmt, int columnId, Object value )
+                            throws SQLException {
+        if ( value instanceof ParticleConversion<?> ) {
+            ( (ParticleConversion<?>) value ).setParticle( stmt, columnId );
+        } else {
+            stmt.setObject( columnId, value );
+        }
     }
 
     protected Set<SQLIdentifier> getAutogenColumns( boolean propagateNonFidAutoGenColumns ) {
         Set<SQLIdentifier> cols = new LinkedHashSet<SQLIdentifier>();
         if ( propagateNonFidAutoGenColumns ) {
             if ( mgr.getGenColumns( table ) != null ) {
-                cols.addAll( mgr.getGenColumns( table ) );
+                for ( SQLIdentifier col : mgr.getGenColumns( table ) ) {
+                    // values that have been generated before the insert don't need to be retrieved
+                    if ( get( col ) == null ) {
+                        cols.add( col );
+                    }
+                }
             }
         }
         return cols;
@@ -265,6 +272,15 @@ public abstract class InsertRow extends TransactionRow {
 
     @Override
     public String getSql() {
+        return getInsertSql() + getValuesSql();
+    }
+
+    /**
+     * Returns the <code>INSERT</code> statement up to (and including) the <code>VALUES</code> keyword.
+     * 
+     * @return statement prefix, never <code>null</code>
+     */
+    String getInsertSql() {
         StringBuilder sql = new StringBuilder( "INSERT INTO " + table + "(" );
         boolean first = true;
         for ( SQLIdentifier column : columnToLiteral.keySet() ) {
@@ -275,8 +291,18 @@ public abstract class InsertRow extends TransactionRow {
             }
             sql.append( column );
         }
-        sql.append( ") VALUES(" );
-        first = true;
+        sql.append( ") VALUES" );
+        return sql.toString();
+    }
+
+    /**
+     * Returns the parenthesized values of this row.
+     * 
+     * @return values, never <code>null</code>
+     */
+    String getValuesSql() {
+        StringBuilder sql = new StringBuilder( "(" );
+        boolean first = true;
         for ( Entry<SQLIdentifier, String> entry : columnToLiteral.entrySet() ) {
             if ( !first ) {
                 sql.append( ',' );
@@ -36,11 +36,17 @@
 package org.deegree.feature.persistence.sql.insert;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -55,6 +61,7 @@ import org.deegree.commons.tom.gml.property.Property;
 import org.deegree.commons.tom.primitive.BaseType;
 import org.deegree.commons.tom.primitive.PrimitiveValue;
 import org.deegree.commons.tom.sql.ParticleConverter;
+import org.deegree.commons.utils.JDBCUtils;
 import org.deegree.commons.utils.Pair;
 import org.deegree.feature.Feature;
 import org.deegree.feature.persistence.FeatureStoreException;
@@ -78,6 +85,7 @@ import org.deegree.geometry.Geometry;
 import org.deegree.gml.reference.FeatureReference;
 import org.deegree.protocol.wfs.transaction.action.IDGenMode;
 import org.deegree.protocol.wfs.transaction.action.ParsedPropertyReplacement;
+import org.deegree.sqldialect.BulkLoader;
 import org.deegree.sqldialect.SQLDialect;
 import org.deegree.sqldialect.filter.DBField;
 import org.deegree.sqldialect.filter.MappingExpression;
@@ -93,7 +101,23 @@ import org.slf4j.LoggerFactory;
  * <li>Usability for complex structures/mappings</li>
  * <li>Coping with unresolved feature references (forward/backward xlinks)</li>
  * <li>Auto-generated feature ids/key columns</li>
+ * <li>Batching of rows that don't need to retrieve auto-generated values from the DB</li>
  * </ul>
+ * </p>
+ * <p>
+ * Prepared statements are reused for all rows that share the same <code>INSERT</code> statement. Rows are collected in
+ * batches that are executed as soon as the configured batch size is reached (system property
+ * <code>deegree.sqlfeaturestore.insertbatchsize</code>, defaults to 1000) or executing them later would insert a row
+ * before a row it depends on. Sequence values are fetched in ranges of growing size (up to the batch size) instead of
+ * one query per row. Callers must invoke {@link #flush()} after the last row and {@link #close()} to release the
+ * statements.
+ * </p>
+ * <p>
+ * In bulk load mode, the batches are loaded using the {@link BulkLoader} of the dialect (if available, e.g. PostgreSQL
+ * <code>COPY</code>) and values of DB generated key columns are allocated in advance from the sequences that back the
+ * columns. Batches are larger in this mode (system property <code>deegree.sqlfeaturestore.bulkbatchsize</code>,
+ * defaults to 10000).
+ * </p>
  * 
  * @author <a href="mailto:schneider@lat-lon.de">Markus Schneider</a>
  * @author last edited by: $Author$
@@ -104,6 +128,12 @@ public class InsertRowManager {
 
     private static Logger LOG = LoggerFactory.getLogger( InsertRowManager.class );
 
+    private static final int BATCH_SIZE = Math.max( 1, Integer.getInteger( "deegree.sqlfeaturestore.insertbatchsize",
+                                                                           1000 ) );
+
+    private static final int BULK_BATCH_SIZE = Math.max( 1, Integer.getInteger( "deegree.sqlfeaturestore.bulkbatchsize",
+                                                                                10000 ) );
+
     private final SQLFeatureStore fs;
 
     private final SQLDialect dialect;
@@ -114,6 +144,14 @@ public class InsertRowManager {
 
     private final TableDependencies tableDeps;
 
+    private final boolean bulkLoad;
+
+    private final int batchSize;
+
+    private BulkLoader bulkLoader;
+
+    private boolean bulkLoaderRequested;
+
     // key: original feature id (from Feature or FeatureReference), value: feature row
     private final Map<String, FeatureRow> origFidToFeatureRow = new HashMap<String, FeatureRow>();
 
@@ -126,6 +164,28 @@ public class InsertRowManager {
     // values: rows that have not been inserted yet, but can be inserted (no parents)
     private final Set<InsertRow> rootRows = new HashSet<InsertRow>();
 
+    // key: INSERT statement, value: batch
+    private final Map<String, InsertBatch> sqlToBatch = new HashMap<String, InsertBatch>();
+
+    // key: INSERT statement (plus auto-generated columns), value: statement for rows that retrieve generated keys
+    private final Map<String, PreparedStatement> sqlToKeyedStmt = new HashMap<String, PreparedStatement>();
+
+    // key: row that has been added to a batch that has not been executed yet, value: sequence number of the batch
+    private final Map<InsertRow, Integer> batchedRowToSeq = new HashMap<InsertRow, Integer>();
+
+    // key: row, value: highest sequence number of the unexecuted batches that contain parents of the row
+    private final Map<InsertRow, Integer> rowToParentSeq = new HashMap<InsertRow, Integer>();
+
+    private int nextBatchSeq;
+
+    private int batchedRows;
+
+    // key: sequence name, value: sequence values fetched in advance
+    private final Map<String, LinkedList<Integer>> sequenceToValues = new HashMap<String, LinkedList<Integer>>();
+
+    // key: sequence name, value: number of values to fetch with the next query
+    private final Map<String, Integer> sequenceToFetchSize = new HashMap<String, Integer>();
+
     /**
      * Creates a new {@link InsertRowManager} instance.
      * 
@@ -137,11 +197,30 @@ public class InsertRowManager {
      *            feature id generation mode, must not be <code>null</code>
      */
     public InsertRowManager( SQLFeatureStore fs, Connection conn, IDGenMode idGenMode ) {
+        this( fs, conn, idGenMode, false );
+    }
+
+    /**
+     * Creates a new {@link InsertRowManager} instance.
+     * 
+     * @param fs
+     *            feature store, must not be <code>null</code>
+     * @param conn
+     *            connection, must not be <code>null</code>
+     * @param idGenMode
+     *            feature id generation mode, must not be <code>null</code>
+     * @param bulkLoad
+     *            <code>true</code>, if the rows shall be bulk loaded (if supported by the dialect), <code>false</code>
+     *            otherwise
+     */
+    public InsertRowManager( SQLFeatureStore fs, Connection conn, IDGenMode idGenMode, boolean bulkLoad ) {
         this.fs = fs;
         this.dialect = fs.getDialect();
         this.conn = conn;
         this.idGenMode = idGenMode;
         this.tableDeps = fs.getSchema().getKeyDependencies();
+        this.bulkLoad = bulkLoad;
+        this.batchSize = bulkLoad ? BULK_BATCH_SIZE : BATCH_SIZE;
     }
 
     /**
@@ -391,6 +470,7 @@ public class InsertRowManager {
                         if ( !delayedRows.contains( subFeatureRow ) ) {
                             // sub feature already inserted, propagate key values right away
                             currentRow.removeParent( subFeatureRow );
+                            trackBatchedParent( subFeatureRow, currentRow );
                         }
                     }
                 }
@@ -529,6 +609,7 @@ public class InsertRowManager {
                     for ( InsertRow childRow : childRows ) {
                         LOG.debug( "Child row: " + childRow );
                         childRow.removeParent( row );
+                        trackBatchedParent( row, childRow );
                         if ( !childRow.hasParents() ) {
                             rootAdds.add( childRow );
                         }
@@ -541,6 +622,247 @@ public class InsertRowManager {
         }
     }
 
+    /**
+     * Remembers that the given child row has to be inserted after the batch that contains the given parent row (if the
+     * parent has been added to a batch that has not been executed yet).
+     * 
+     * @param parent
+     *            parent row, must not be <code>null</code>
+     * @param child
+     *            child row, must not be <code>null</code>
+     */
+    void trackBatchedParent( InsertRow parent, InsertRow child ) {
+        Integer seq = batchedRowToSeq.get( parent );
+        if ( seq != null ) {
+            Integer parentSeq = rowToParentSeq.get( child );
+            if ( parentSeq == null || parentSeq < seq ) {
+                rowToParentSeq.put( child, seq );
+            }
+        }
+    }
+
+    /**
+     * Adds the given row to the batch for its <code>INSERT</code> statement.
+     * <p>
+     * Batches are executed in the order of their sequence numbers. If a parent row of the given row waits in a batch
+     * that would not be executed before the row's batch, all pending batches are executed first.
+     * </p>
+     * 
+     * @param row
+     *            row to be inserted, must not be <code>null</code>
+     * @throws SQLException
+     */
+    void addToBatch( InsertRow row )
+                            throws SQLException {
+        String sql = row.getSql();
+        InsertBatch batch = sqlToBatch.get( sql );
+        if ( batch == null ) {
+            Object[] arguments = row.getArguments();
+            int maxRows = dialect.getMaxRowsPerInsert( arguments.length );
+            batch = new InsertBatch( row.getInsertSql(), row.getValuesSql(), maxRows );
+            BulkLoader loader = getBulkLoader();
+            if ( loader != null ) {
+                List<String> valueExpressions = row.getValueExpressions();
+                if ( loader.canLoad( valueExpressions ) ) {
+                    batch.setBulkLoader( loader, row.getTable(), row.getInsertColumns(), valueExpressions );
+                }
+            }
+            sqlToBatch.put( sql, batch );
+        }
+        Integer parentSeq = rowToParentSeq.remove( row );
+        if ( parentSeq != null && !batch.isEmpty() && parentSeq >= batch.getSeq() ) {
+            flush();
+        }
+        if ( batch.isEmpty() ) {
+            batch.setSeq( nextBatchSeq++ );
+        }
+        batch.add( row.getArguments() );
+        batchedRowToSeq.put( row, batch.getSeq() );
+        if ( ++batchedRows >= batchSize ) {
+            flush();
+        }
+    }
+
+    /**
+     * Returns a prepared statement for inserting the given row and retrieving the specified auto-generated columns.
+     * <p>
+     * If parents of the row are still waiting in a batch, all pending batches are executed first.
+     * </p>
+     * 
+     * @param row
+     *            row to be inserted, must not be <code>null</code>
+     * @param autoGenColumns
+     *            auto-generated columns, must not be <code>null</code>
+     * @return prepared statement (owned by this manager), never <code>null</code>
+     * @throws SQLException
+     */
+    PreparedStatement getKeyedStatement( InsertRow row, Set<SQLIdentifier> autoGenColumns )
+                            throws SQLException {
+        if ( rowToParentSeq.remove( row ) != null ) {
+            flush();
+        }
+        String sql = row.getSql();
+        String[] cols = new String[autoGenColumns.size()];
+        int i = 0;
+        for ( SQLIdentifier id : autoGenColumns ) {
+            if ( !id.isEscaped() ) {
+                cols[i++] = id.getName().toLowerCase();
+            } else {
+                cols[i++] = id.getName();
+            }
+        }
+        String key = sql + " " + Arrays.toString( cols );
+        PreparedStatement stmt = sqlToKeyedStmt.get( key );
+        if ( stmt == null ) {
+            stmt = conn.prepareStatement( sql, cols );
+            sqlToKeyedStmt.put( key, stmt );
+        }
+        return stmt;
+    }
+
+    /**
+     * Returns the next value of the given DB sequence.
+     * <p>
+     * Values are fetched in advance, the number of values per query doubles with every query (up to the batch size).
+     * Values that have been fetched, but are not used, are lost.
+     * </p>
+     * 
+     * @param sequenceName
+     *            name of the sequence, must not be <code>null</code>
+     * @return next sequence value
+     * @throws FeatureStoreException
+     */
+    int getSequenceNextVal( String sequenceName )
+                            throws FeatureStoreException {
+        LinkedList<Integer> values = sequenceToValues.get( sequenceName );
+        if ( values == null ) {
+            values = new LinkedList<Integer>();
+            sequenceToValues.put( sequenceName, values );
+        }
+        if ( values.isEmpty() ) {
+            Integer fetchSize = sequenceToFetchSize.get( sequenceName );
+            if ( fetchSize == null ) {
+                fetchSize = 1;
+            }
+            fetchSequenceValues( sequenceName, fetchSize, values );
+            sequenceToFetchSize.put( sequenceName, Math.min( batchSize, fetchSize * 2 ) );
+        }
+        return values.removeFirst();
+    }
+
+    /**
+     * Allocates a value for a key column that is generated by the DB on insert (only in bulk load mode).
+     * 
+     * @param table
+     *            table, must not be <code>null</code>
+     * @param column
+     *            key column, must not be <code>null</code>
+     * @return allocated value, <code>null</code> if not in bulk load mode or the value can not be allocated in advance
+     * @throws FeatureStoreException
+     */
+    Integer preallocateKey( TableName table, SQLIdentifier column )
+                            throws FeatureStoreException {
+        BulkLoader loader = getBulkLoader();
+        if ( loader == null ) {
+            return null;
+        }
+        String sequence = null;
+        try {
+            sequence = loader.getColumnSequence( table, column );
+        } catch ( SQLException e ) {
+            String msg = "Error determining sequence of column '" + column + "' of table '" + table + "': "
+                         + e.getMessage();
+            throw new FeatureStoreException( msg, e );
+        }
+        if ( sequence == null ) {
+            return null;
+        }
+        return getSequenceNextVal( sequence );
+    }
+
+    private BulkLoader getBulkLoader() {
+        if ( bulkLoad && !bulkLoaderRequested ) {
+            bulkLoader = dialect.getBulkLoader( conn );
+            bulkLoaderRequested = true;
+            if ( bulkLoader == null ) {
+                LOG.warn( "Bulk loading is not supported by the SQL dialect/connection, using batched INSERTs." );
+            }
+        }
+        return bulkLoader;
+    }
+
+    private void fetchSequenceValues( String sequenceName, int count, List<Integer> values )
+                            throws FeatureStoreException {
+        String sql = count == 1 ? dialect.getSelectSequenceNextVal( sequenceName )
+                                : dialect.getSelectSequenceNextVals( sequenceName, count );
+        Statement stmt = null;
+        ResultSet rs = null;
+        try {
+            stmt = conn.createStatement();
+            LOG.debug( "Determing feature ID from db sequence: " + sql );
+            rs = stmt.executeQuery( sql );
+            while ( rs.next() ) {
+                values.add( rs.getInt( 1 ) );
+            }
+        } catch ( SQLException e ) {
+            String msg = "Error determining ID from db sequence. No value returned for: " + sql;
+            throw new FeatureStoreException( msg, e );
+        } finally {
+            JDBCUtils.close( rs, stmt, null, LOG );
+        }
+        if ( values.isEmpty() ) {
+            String msg = "Error determining ID from db sequence. No value returned for: " + sql;
+            throw new FeatureStoreException( msg );
+        }
+        // values are not necessarily returned in order
+        Collections.sort( values );
+    }
+
+    /**
+     * Executes all pending insert batches.
+     * 
+     * @throws SQLException
+     */
+    public void flush()
+                            throws SQLException {
+        if ( batchedRows == 0 ) {
+            return;
+        }
+        List<InsertBatch> batches = new ArrayList<InsertBatch>();
+        for ( InsertBatch batch : sqlToBatch.values() ) {
+            if ( !batch.isEmpty() ) {
+                batches.add( batch );
+            }
+        }
+        Collections.sort( batches, new Comparator<InsertBatch>() {
+            @Override
+            public int compare( InsertBatch b1, InsertBatch b2 ) {
+                return b1.getSeq() < b2.getSeq() ? -1 : ( b1.getSeq() == b2.getSeq() ? 0 : 1 );
+            }
+        } );
+        LOG.debug( "Executing " + batches.size() + " insert batches (" + batchedRows + " rows)." );
+        for ( InsertBatch batch : batches ) {
+            batch.execute( conn );
+        }
+        batchedRowToSeq.clear();
+        rowToParentSeq.clear();
+        batchedRows = 0;
+    }
+
+    /**
+     * Releases the prepared statements of this manager. Pending batches are not executed.
+     */
+    public void close() {
+        for ( InsertBatch batch : sqlToBatch.values() ) {
+            batch.close();
+        }
+        for ( PreparedStatement stmt : sqlToKeyedStmt.values() ) {
+            JDBCUtils.close( stmt );
+        }
+        sqlToBatch.clear();
+        sqlToKeyedStmt.clear();
+    }
+
     /**
      * Returns the number of currently delayed rows (rows that depend on some other row to be inserted first).
      * 
@@ -0,0 +1,139 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.feature.persistence.sql.rules;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Blob;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * Snapshot of a single {@link ResultSet} row that stays accessible after the result set has been advanced or closed.
+ * <p>
+ * Used by the {@link FeatureBuilderRelational} to buffer the rows of a block of features, so the rows of joined tables
+ * can be fetched for the whole block before the features are built. Only the accessors used by the particle converters
+ * are supported: <code>getObject(int)</code>, <code>getBytes(int)</code>, <code>getString(int)</code> and
+ * <code>wasNull()</code>.
+ * </p>
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+final class BufferedRow implements InvocationHandler {
+
+    private final Object[] values;
+
+    private boolean wasNull;
+
+    private BufferedRow( Object[] values ) {
+        this.values = values;
+    }
+
+    /**
+     * Copies the first columns of the current row of the given result set.
+     * 
+     * @param rs
+     *            result set, must be positioned on a row
+     * @param columns
+     *            number of columns to copy
+     * @return result set view of the copied row, never <code>null</code>
+     * @throws SQLException
+     */
+    static ResultSet copy( ResultSet rs, int columns )
+                            throws SQLException {
+        Object[] values = new Object[columns];
+        for ( int i = 0; i < columns; i++ ) {
+            values[i] = rs.getObject( i + 1 );
+            if ( values[i] instanceof Blob ) {
+                Blob blob = (Blob) values[i];
+                values[i] = blob.getBytes( 1, (int) blob.length() );
+            }
+        }
+        return (ResultSet) Proxy.newProxyInstance( BufferedRow.class.getClassLoader(),
+                                                   new Class<?>[] { ResultSet.class }, new BufferedRow( values ) );
+    }
+
+    @Override
+    public Object invoke( Object proxy, Method method, Object[] args )
+                            throws Throwable {
+        String name = method.getName();
+        if ( args != null && args.length == 1 && args[0] instanceof Integer ) {
+            Object value = getValue( (Integer) args[0] );
+            if ( name.equals( "getObject" ) ) {
+                return value;
+            }
+            if ( name.equals( "getBytes" ) && ( value == null || value instanceof byte[] ) ) {
+                return value;
+            }
+            if ( name.equals( "getString" ) ) {
+                return value == null ? null : value.toString();
+            }
+        } else if ( args == null ) {
+            if ( name.equals( "wasNull" ) ) {
+                return wasNull;
+            }
+            if ( name.equals( "close" ) ) {
+                return null;
+            }
+            if ( name.equals( "isClosed" ) ) {
+                return false;
+            }
+            if ( name.equals( "hashCode" ) ) {
+                return System.identityHashCode( proxy );
+            }
+            if ( name.equals( "toString" ) ) {
+                return "BufferedRow" + Arrays.toString( values );
+            }
+        } else if ( name.equals( "equals" ) && args.length == 1 ) {
+            return proxy == args[0];
+        }
+        throw new SQLException( "Method '" + method + "' is not supported for buffered rows." );
+    }
+
+    private Object getValue( int columnIndex )
+                            throws SQLException {
+        if ( columnIndex < 1 || columnIndex > values.length ) {
+            throw new SQLException( "Invalid column index: " + columnIndex );
+        }
+        Object value = values[columnIndex - 1];
+        wasNull = value == null;
+        return value;
+    }
+}
@@ -36,11 +36,14 @@
 package org.deegree.feature.persistence.sql.rules;
 
 import static java.lang.Boolean.TRUE;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
 import static org.deegree.commons.utils.JDBCUtils.close;
 import static org.deegree.commons.xml.CommonNamespaces.XSINS;
 import static org.deegree.commons.xml.CommonNamespaces.XSI_PREFIX;
 import static org.jaxen.saxpath.Axis.CHILD;
 
+import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -51,6 +54,7 @@ import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.xml.namespace.QName;
 
@@ -101,6 +105,12 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Builds {@link Feature} instances from SQL result set rows (relational mode).
+ * <p>
+ * Properties that are mapped to joined tables require subsequent SELECTs. If features are built in blocks (see
+ * {@link #buildFeatures(ResultSet)}), the joined rows for all features of a block are fetched using a single SELECT
+ * per join (and per level of nested joins) instead of one SELECT per feature and join. The block size can be set using
+ * the system property <code>deegree.sqlfeaturestore.joinblocksize</code> (default: 500, 1 disables block building).
+ * </p>
  * 
  * @author <a href="mailto:schneider@lat-lon.de">Markus Schneider</a>
  * @author last edited by: $Author$
@@ -111,6 +121,14 @@ public class FeatureBuilderRelational implements FeatureBuilder {
 
     private static final Logger LOG = LoggerFactory.getLogger( FeatureBuilderRelational.class );
 
+    private static final int BLOCK_SIZE = max( 1, Integer.getInteger( "deegree.sqlfeaturestore.joinblocksize", 500 ) );
+
+    // stays below the parameter limit of SQL Server (2100)
+    private static final int MAX_PARAMETERS = 2000;
+
+    // maximum number of expressions in an IN list (Oracle)
+    private static final int MAX_IN_LIST = 1000;
+
     private final SQLFeatureStore fs;
 
     private final FeatureType ft;
@@ -129,6 +147,13 @@ public class FeatureBuilderRelational implements FeatureBuilder {
 
     private final boolean nullEscalation;
 
+    private final Set<QName> projectedProps;
+
+    private final List<Mapping> joinedMappings = new ArrayList<Mapping>();
+
+    // rows of joined tables that have been fetched for the current block of features
+    private Map<Mapping, JoinedRows> prefetched;
+
     /**
      * Creates a new {@link FeatureBuilderRelational} instance.
      * 
@@ -145,7 +170,35 @@ public class FeatureBuilderRelational implements FeatureBuilder {
      */
     public FeatureBuilderRelational( SQLFeatureStore fs, FeatureType ft, FeatureTypeMapping ftMapping, Connection conn,
                                      String ftTableAlias, boolean nullEscalation ) {
+        this( fs, ft, ftMapping, conn, ftTableAlias, nullEscalation, null );
+    }
+
+    /**
+     * Creates a new {@link FeatureBuilderRelational} instance that only fetches and builds a subset of the properties.
+     * <p>
+     * Mappings for other properties are omitted completely, i.e. their columns are not selected and their joins are not
+     * performed. As the resulting features are incomplete, they are never added to the feature cache.
+     * </p>
+     * 
+     * @param fs
+     *            feature store, must not be <code>null</code>
+     * @param ft
+     *            feature type, must not be <code>null</code>
+     * @param ftMapping
+     *            feature type mapping, must not be <code>null</code>
+     * @param conn
+     *            JDBC connection (used for performing subsequent SELECTs), must not be <code>null</code>
+     * @param ftTableAlias
+     *            alias of the feature type table, must not be <code>null</code>
+     * @param nullEscalation
+     *            true, if the void escalation policy should be applied
+     * @param projectedProps
+     *            names of the properties to be fetched, can be <code>null</code> (all properties)
+     */
+    public FeatureBuilderRelational( SQLFeatureStore fs, FeatureType ft, FeatureTypeMapping ftMapping, Connection conn,
+                                     String ftTableAlias, boolean nullEscalation, Set<QName> projectedProps ) {
         this.fs = fs;
+        this.projectedProps = projectedProps;
         this.ft = ft;
         this.ftMapping = ftMapping;
         this.conn = conn;
@@ -156,6 +209,11 @@ public class FeatureBuilderRelational implements FeatureBuilder {
             String ns = fs.getNamespaceContext().get( prefix );
             nsBindings.addNamespace( prefix, ns );
         }
+        for ( Mapping mapping : ftMapping.getMappings() ) {
+            if ( isProjected( mapping ) ) {
+                collectJoinedMappings( mapping, joinedMappings );
+            }
+        }
         // if ( ft.getSchema().getGMLSchema() != null ) {
         // this.gmlVersion = ft.getSchema().getGMLSchema().getVersion();
         // } else {
@@ -169,12 +227,22 @@ public class FeatureBuilderRelational implements FeatureBuilder {
             addColumn( colToRsIdx, tableAlias + "." + fidColumn.first.getName() );
         }
         for ( Mapping mapping : ftMapping.getMappings() ) {
-            addSelectColumns( mapping, colToRsIdx, true );
+            if ( isProjected( mapping ) ) {
+                addSelectColumns( mapping, colToRsIdx, true );
+            }
         }
         LOG.debug( "Initial select columns: " + colToRsIdx );
         return new ArrayList<String>( colToRsIdx.keySet() );
     }
 
+    private boolean isProjected( Mapping mapping ) {
+        if ( projectedProps == null ) {
+            return true;
+        }
+        QName childEl = getChildElementStepAsQName( mapping.getPath() );
+        return childEl != null && projectedProps.contains( childEl );
+    }
+
     private void addColumn( LinkedHashMap<String, Integer> colToRsIdx, String column ) {
         if ( !colToRsIdx.containsKey( column ) ) {
             colToRsIdx.put( column, colToRsIdx.size() + 1 );
@@ -236,26 +304,107 @@ public class FeatureBuilderRelational implements FeatureBuilder {
         }
     }
 
+    /**
+     * Returns whether features should be built in blocks using {@link #buildFeatures(ResultSet)}, i.e. whether the
+     * mapping involves joined tables and block building has not been disabled.
+     * 
+     * @return <code>true</code>, if features should be built in blocks, <code>false</code> otherwise
+     */
+    public boolean isBlockBuilding() {
+        return BLOCK_SIZE > 1 && !joinedMappings.isEmpty();
+    }
+
+    /**
+     * Builds the {@link Feature} instances for the next block of rows of the given {@link ResultSet}.
+     * <p>
+     * The result set is advanced by up to the block size rows (starting with calling <code>next()</code>). The rows of
+     * joined tables are fetched for all features of the block at once.
+     * </p>
+     * 
+     * @param rs
+     *            SQL result set, must not be <code>null</code>
+     * @return created {@link Feature} instances in row order, empty if the result set has been exhausted
+     * @throws SQLException
+     */
+    public List<Feature> buildFeatures( ResultSet rs )
+                            throws SQLException {
+        List<ResultSet> rows = new ArrayList<ResultSet>();
+        while ( rows.size() < BLOCK_SIZE && rs.next() ) {
+            rows.add( BufferedRow.copy( rs, colToRsIdx.size() ) );
+        }
+        List<Feature> features = new ArrayList<Feature>( rows.size() );
+        if ( rows.isEmpty() ) {
+            return features;
+        }
+        // no need to fetch joined rows for features that will be taken from the cache (the cache is only looked up
+        // once per feature, so the hit/miss statistics of the cache are not distorted)
+        List<ResultSet> rowsToBuild = rows;
+        Feature[] cached = new Feature[rows.size()];
+        if ( fs.getCache() != null ) {
+            rowsToBuild = new ArrayList<ResultSet>();
+            for ( int i = 0; i < rows.size(); i++ ) {
+                cached[i] = (Feature) fs.getCache().get( getGmlId( rows.get( i ) ) );
+                if ( cached[i] == null ) {
+                    rowsToBuild.add( rows.get( i ) );
+                }
+            }
+        }
+        long begin = System.currentTimeMillis();
+        prefetched = new HashMap<Mapping, JoinedRows>();
+        try {
+            if ( !rowsToBuild.isEmpty() ) {
+                prefetchJoinedRows( joinedMappings, rowsToBuild, colToRsIdx );
+            }
+            LOG.debug( "Fetching joined rows for {} features took {} [ms]", rowsToBuild.size(),
+                       System.currentTimeMillis() - begin );
+            for ( int i = 0; i < rows.size(); i++ ) {
+                if ( cached[i] != null ) {
+                    LOG.debug( "Cache hit." );
+                    features.add( cached[i] );
+                } else {
+                    features.add( buildFeature( rows.get( i ), false ) );
+                }
+            }
+        } finally {
+            prefetched = null;
+        }
+        return features;
+    }
+
+    private String getGmlId( ResultSet rs )
+                            throws SQLException {
+        String gmlId = ftMapping.getFidMapping().getPrefix();
+        List<Pair<SQLIdentifier, BaseType>> fidColumns = ftMapping.getFidMapping().getColumns();
+        gmlId += rs.getObject( colToRsIdx.get( tableAlias + "." + fidColumns.get( 0 ).first ) );
+        for ( int i = 1; i < fidColumns.size(); i++ ) {
+            gmlId += ftMapping.getFidMapping().getDelimiter()
+                     + rs.getObject( colToRsIdx.get( tableAlias + "." + fidColumns.get( i ).first ) );
+        }
+        return gmlId;
+    }
+
     @Override
     public Feature buildFeature( ResultSet rs )
                             throws SQLException {
+        return buildFeature( rs, true );
+    }
+
+    private Feature buildFeature( ResultSet rs, boolean lookupCache )
+                            throws SQLException {
 
         Feature feature = null;
         try {
-            String gmlId = ftMapping.getFidMapping().getPrefix();
-            List<Pair<SQLIdentifier, BaseType>> fidColumns = ftMapping.getFidMapping().getColumns();
-            gmlId += rs.getObject( colToRsIdx.get( tableAlias + "." + fidColumns.get( 0 ).first ) );
-            for ( int i = 1; i < fidColumns.size(); i++ ) {
-                gmlId += ftMapping.getFidMapping().getDelimiter()
-                                        + rs.getObject( colToRsIdx.get( tableAlias + "." + fidColumns.get( i ).first ) );
-            }
-            if ( fs.getCache() != null ) {
+            String gmlId = getGmlId( rs );
+            if ( lookupCache && fs.getCache() != null ) {
                 feature = (Feature) fs.getCache().get( gmlId );
             }
             if ( feature == null ) {
                 LOG.debug( "Recreating feature '" + gmlId + "' from db (relational mode)." );
                 List<Property> props = new ArrayList<Property>();
                 for ( Mapping mapping : ftMapping.getMappings() ) {
+                    if ( !isProjected( mapping ) ) {
+                        continue;
+                    }
                     ValueReference propName = mapping.getPath();
                     QName childEl = getChildElementStepAsQName( propName );
                     if ( childEl != null ) {
@@ -269,7 +418,8 @@ public class FeatureBuilderRelational implements FeatureBuilder {
                     }
                 }
                 feature = ft.newFeature( gmlId, props, null );
-                if ( fs.getCache() != null ) {
+                // partial features must not be served to queries that expect all properties
+                if ( fs.getCache() != null && projectedProps == null ) {
                     fs.getCache().add( feature );
                 }
             } else {
@@ -324,6 +474,26 @@ public class FeatureBuilderRelational implements FeatureBuilder {
 
         if ( !( mapping instanceof FeatureMapping ) && mapping.getJoinedTable() != null ) {
             List<TypedObjectNode> values = new ArrayList<TypedObjectNode>();
+            JoinedRows joined = prefetched != null ? prefetched.get( mapping ) : null;
+            List<Object> key = null;
+            if ( joined != null ) {
+                key = getJoinKey( mapping.getJoinedTable().get( 0 ).getFromColumns(), rs, colToRsIdx );
+            }
+            // rows of features that have been evicted from the cache in the meantime have not been fetched
+            if ( joined != null && ( key == null || joined.keys.contains( key ) ) ) {
+                List<ResultSet> rows = key != null ? joined.keyToRows.get( key ) : null;
+                if ( rows != null ) {
+                    int i = 0;
+                    for ( ResultSet row : rows ) {
+                        TypedObjectNode particle = buildParticle( mapping, row, joined.colToRsIdx,
+                                                                  idPrefix + "_" + ( i++ ) );
+                        if ( particle != null ) {
+                            values.add( particle );
+                        }
+                    }
+                }
+                return values;
+            }
             ResultSet rs2 = null;
             try {
                 Pair<ResultSet, LinkedHashMap<String, Integer>> p = getJoinedResultSet( mapping.getJoinedTable().get( 0 ),
@@ -619,7 +789,47 @@ public class FeatureBuilderRelational implements FeatureBuilder {
 
         LinkedHashMap<String, Integer> rsToIdx = getSubsequentSelectColumns( mapping );
 
-        StringBuilder sql = new StringBuilder( "SELECT " );
+        StringBuilder sql = new StringBuilder();
+        appendJoinedSelect( sql, jc, rsToIdx );
+        boolean first = true;
+        for ( SQLIdentifier keyColumn : jc.getToColumns() ) {
+            if ( !first ) {
+                sql.append( " AND " );
+            }
+            sql.append( keyColumn );
+            sql.append( " = ?" );
+            first = false;
+        }
+        appendJoinedOrderBy( sql, jc );
+        LOG.debug( "SQL: {}", sql );
+
+        PreparedStatement stmt = null;
+        ResultSet rs2 = null;
+        try {
+            long begin = System.currentTimeMillis();
+            stmt = conn.prepareStatement( sql.toString() );
+
+            LOG.debug( "Preparing subsequent SELECT took {} [ms] ", System.currentTimeMillis() - begin );
+            int i = 1;
+            for ( SQLIdentifier keyColumn : jc.getFromColumns() ) {
+                Object key = rs.getObject( colToRsIdx.get( tableAlias + "." + keyColumn ) );
+                LOG.debug( "? = '{}' ({})", key, keyColumn );
+                stmt.setObject( i++, key );
+            }
+            begin = System.currentTimeMillis();
+            rs2 = stmt.executeQuery();
+            LOG.debug( "Executing SELECT took {} [ms] ", System.currentTimeMillis() - begin );
+        } catch ( Throwable t ) {
+            close( rs2, stmt, null, LOG );
+            String msg = "Error performing subsequent SELECT: " + t.getMessage();
+            LOG.error( msg, t );
+            throw new SQLException( msg, t );
+        }
+        return new Pair<ResultSet, LinkedHashMap<String, Integer>>( rs2, rsToIdx );
+    }
+
+    private void appendJoinedSelect( StringBuilder sql, TableJoin jc, LinkedHashMap<String, Integer> rsToIdx ) {
+        sql.append( "SELECT " );
         boolean first = true;
         for ( String column : rsToIdx.keySet() ) {
             if ( !first ) {
@@ -633,18 +843,12 @@ public class FeatureBuilderRelational implements FeatureBuilder {
         sql.append( ' ' );
         sql.append( tableAlias );
         sql.append( " WHERE " );
-        first = true;
-        for ( SQLIdentifier keyColumn : jc.getToColumns() ) {
-            if ( !first ) {
-                sql.append( " AND " );
-            }
-            sql.append( keyColumn );
-            sql.append( " = ?" );
-            first = false;
-        }
+    }
+
+    private void appendJoinedOrderBy( StringBuilder sql, TableJoin jc ) {
         if ( jc.getOrderColumns() != null && !jc.getOrderColumns().isEmpty() ) {
             sql.append( " ORDER BY " );
-            first = true;
+            boolean first = true;
             for ( SQLIdentifier orderColumn : jc.getOrderColumns() ) {
                 if ( !first ) {
                     sql.append( "," );
@@ -658,31 +862,212 @@ public class FeatureBuilderRelational implements FeatureBuilder {
                 first = false;
             }
         }
+    }
+
+    /**
+     * Adds the mapping (if it requires a subsequent SELECT) or the joined mappings nested in it.
+     */
+    private void collectJoinedMappings( Mapping mapping, List<Mapping> joined ) {
+        if ( !( mapping instanceof FeatureMapping ) && mapping.getJoinedTable() != null ) {
+            joined.add( mapping );
+        } else if ( mapping instanceof CompoundMapping ) {
+            for ( Mapping particle : ( (CompoundMapping) mapping ).getParticles() ) {
+                collectJoinedMappings( particle, joined );
+            }
+        }
+    }
+
+    /**
+     * Fetches the joined rows of the given mappings for all given parent rows (and recursively the joined rows of the
+     * mappings nested in them).
+     */
+    private void prefetchJoinedRows( List<Mapping> mappings, List<ResultSet> parentRows,
+                                     LinkedHashMap<String, Integer> parentColToRsIdx )
+                            throws SQLException {
+        for ( Mapping mapping : mappings ) {
+            TableJoin jc = mapping.getJoinedTable().get( 0 );
+            Map<List<Object>, List<Object>> keys = new LinkedHashMap<List<Object>, List<Object>>();
+            for ( ResultSet row : parentRows ) {
+                List<Object> key = getJoinKeyValues( jc.getFromColumns(), row, parentColToRsIdx );
+                if ( key != null ) {
+                    keys.put( toLookupKey( key ), key );
+                }
+            }
+            JoinedRows joined = new JoinedRows( getSubsequentSelectColumns( mapping ), keys.keySet() );
+            for ( SQLIdentifier keyColumn : jc.getToColumns() ) {
+                addColumn( joined.colToRsIdx, tableAlias + "." + keyColumn );
+            }
+            List<List<Object>> keyValues = new ArrayList<List<Object>>( keys.values() );
+            int keysPerSelect = getKeysPerSelect( jc.getToColumns().size(), BLOCK_SIZE );
+            for ( int i = 0; i < keyValues.size(); i += keysPerSelect ) {
+                fetchJoinedRows( jc, keyValues.subList( i, min( keyValues.size(), i + keysPerSelect ) ), joined );
+            }
+            prefetched.put( mapping, joined );
+
+            List<Mapping> nested = new ArrayList<Mapping>();
+            if ( mapping instanceof CompoundMapping ) {
+                for ( Mapping particle : ( (CompoundMapping) mapping ).getParticles() ) {
+                    collectJoinedMappings( particle, nested );
+                }
+            }
+            if ( !nested.isEmpty() && !joined.rows.isEmpty() ) {
+                prefetchJoinedRows( nested, joined.rows, joined.colToRsIdx );
+            }
+        }
+    }
+
+    /**
+     * Determines how many join keys can be looked up using a single SELECT, so the number of statement parameters stays
+     * below the limits of the databases.
+     * 
+     * @param keyColumns
+     *            number of columns of a join key, at least 1
+     * @param blockSize
+     *            configured number of keys per SELECT
+     * @return number of keys per SELECT, at least 1
+     */
+    static int getKeysPerSelect( int keyColumns, int blockSize ) {
+        int keys = min( blockSize, MAX_PARAMETERS / keyColumns );
+        if ( keyColumns == 1 ) {
+            keys = min( keys, MAX_IN_LIST );
+        }
+        return max( 1, keys );
+    }
+
+    private void fetchJoinedRows( TableJoin jc, List<List<Object>> keys, JoinedRows joined )
+                            throws SQLException {
+        List<SQLIdentifier> keyColumns = jc.getToColumns();
+        StringBuilder sql = new StringBuilder();
+        appendJoinedSelect( sql, jc, joined.colToRsIdx );
+        if ( keyColumns.size() == 1 ) {
+            sql.append( keyColumns.get( 0 ) );
+            sql.append( " IN (" );
+            for ( int i = 0; i < keys.size(); i++ ) {
+                sql.append( i == 0 ? "?" : ",?" );
+            }
+            sql.append( ')' );
+        } else {
+            sql.append( '(' );
+            for ( int i = 0; i < keys.size(); i++ ) {
+                if ( i > 0 ) {
+                    sql.append( " OR " );
+                }
+                sql.append( '(' );
+                for ( int j = 0; j < keyColumns.size(); j++ ) {
+                    if ( j > 0 ) {
+                        sql.append( " AND " );
+                    }
+                    sql.append( keyColumns.get( j ) );
+                    sql.append( " = ?" );
+                }
+                sql.append( ')' );
+            }
+            sql.append( ')' );
+        }
+        appendJoinedOrderBy( sql, jc );
         LOG.debug( "SQL: {}", sql );
 
         PreparedStatement stmt = null;
-        ResultSet rs2 = null;
+        ResultSet rs = null;
         try {
             long begin = System.currentTimeMillis();
             stmt = conn.prepareStatement( sql.toString() );
-
-            LOG.debug( "Preparing subsequent SELECT took {} [ms] ", System.currentTimeMillis() - begin );
             int i = 1;
-            for ( SQLIdentifier keyColumn : jc.getFromColumns() ) {
-                Object key = rs.getObject( colToRsIdx.get( tableAlias + "." + keyColumn ) );
-                LOG.debug( "? = '{}' ({})", key, keyColumn );
-                stmt.setObject( i++, key );
+            for ( List<Object> key : keys ) {
+                for ( Object value : key ) {
+                    stmt.setObject( i++, value );
+                }
             }
-            begin = System.currentTimeMillis();
-            rs2 = stmt.executeQuery();
-            LOG.debug( "Executing SELECT took {} [ms] ", System.currentTimeMillis() - begin );
-        } catch ( Throwable t ) {
-            close( rs2, stmt, null, LOG );
-            String msg = "Error performing subsequent SELECT: " + t.getMessage();
-            LOG.error( msg, t );
-            throw new SQLException( msg, t );
+            rs = stmt.executeQuery();
+            int columns = joined.colToRsIdx.size();
+            while ( rs.next() ) {
+                ResultSet row = BufferedRow.copy( rs, columns );
+                List<Object> key = getJoinKeyValues( keyColumns, row, joined.colToRsIdx );
+                if ( key != null ) {
+                    joined.add( toLookupKey( key ), row );
+                }
+            }
+            LOG.debug( "Fetching joined rows for {} keys took {} [ms]", keys.size(),
+                       System.currentTimeMillis() - begin );
+        } catch ( SQLException e ) {
+            String msg = "Error performing subsequent SELECT: " + e.getMessage();
+            LOG.error( msg, e );
+            throw new SQLException( msg, e );
+        } finally {
+            close( rs, stmt, null, LOG );
+        }
+    }
+
+    private List<Object> getJoinKey( List<SQLIdentifier> columns, ResultSet rs,
+                                     LinkedHashMap<String, Integer> colToRsIdx )
+                            throws SQLException {
+        List<Object> values = getJoinKeyValues( columns, rs, colToRsIdx );
+        return values != null ? toLookupKey( values ) : null;
+    }
+
+    /**
+     * Returns the values of the given key columns, or <code>null</code> if any of them is NULL (no joined rows).
+     */
+    private List<Object> getJoinKeyValues( List<SQLIdentifier> columns, ResultSet rs,
+                                           LinkedHashMap<String, Integer> colToRsIdx )
+                            throws SQLException {
+        List<Object> values = new ArrayList<Object>( columns.size() );
+        for ( SQLIdentifier column : columns ) {
+            Object value = rs.getObject( colToRsIdx.get( tableAlias + "." + column ) );
+            if ( value == null ) {
+                return null;
+            }
+            values.add( value );
+        }
+        return values;
+    }
+
+    /**
+     * Normalizes numeric key values to {@link BigDecimal}s without trailing zeros, as the key columns of the joined
+     * tables may have different numeric types (e.g. integer and bigint). Other values are kept, so a string never
+     * equals a number.
+     */
+    static List<Object> toLookupKey( List<Object> values ) {
+        List<Object> key = new ArrayList<Object>( values.size() );
+        for ( Object value : values ) {
+            if ( value instanceof Number ) {
+                BigDecimal d = new BigDecimal( value.toString() );
+                // stripTrailingZeros() does not normalize zero before Java 8
+                key.add( d.signum() == 0 ? BigDecimal.ZERO : d.stripTrailingZeros() );
+            } else {
+                key.add( value );
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Buffered rows of a joined table, grouped by the values of the join key columns.
+     */
+    private static class JoinedRows {
+
+        final LinkedHashMap<String, Integer> colToRsIdx;
+
+        final Set<List<Object>> keys;
+
+        final List<ResultSet> rows = new ArrayList<ResultSet>();
+
+        final Map<List<Object>, List<ResultSet>> keyToRows = new HashMap<List<Object>, List<ResultSet>>();
+
+        JoinedRows( LinkedHashMap<String, Integer> colToRsIdx, Set<List<Object>> keys ) {
+            this.colToRsIdx = colToRsIdx;
+            this.keys = keys;
+        }
+
+        void add( List<Object> key, ResultSet row ) {
+            rows.add( row );
+            List<ResultSet> keyRows = keyToRows.get( key );
+            if ( keyRows == null ) {
+                keyRows = new ArrayList<ResultSet>();
+                keyToRows.put( key, keyRows );
+            }
+            keyRows.add( row );
         }
-        return new Pair<ResultSet, LinkedHashMap<String, Integer>>( rs2, rsToIdx );
     }
 
     private QName getChildElementStepAsQName( ValueReference ref ) {
@@ -0,0 +1,101 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.feature.persistence.sql;
+
+import static org.deegree.feature.persistence.sql.SQLFeatureStore.getEstimateKey;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.deegree.commons.tom.primitive.PrimitiveValue;
+import org.deegree.geometry.GeometryFactory;
+import org.deegree.sqldialect.filter.expression.SQLArgument;
+import org.junit.Test;
+
+/**
+ * Tests for the keys of the hits estimates cache of {@link SQLFeatureStore}.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+public class SQLFeatureStoreEstimateKeyTest {
+
+    private static final String SQL = "EXPLAIN SELECT DISTINCT X1.id FROM t X1 WHERE X1.geom && ? AND X1.a = ?";
+
+    private static List<SQLArgument> args( double minx, double miny, double maxx, double maxy, String value ) {
+        GeometryFactory fac = new GeometryFactory();
+        return Arrays.asList( new SQLArgument( fac.createEnvelope( minx, miny, maxx, maxy, null ), null ),
+                              new SQLArgument( new PrimitiveValue( value ), null ) );
+    }
+
+    @Test
+    public void testSameBucketWhenPanningSlightly() {
+        String key1 = getEstimateKey( SQL, args( 1000, 2000, 1100, 2100, "x" ) );
+        String key2 = getEstimateKey( SQL, args( 1001, 2002, 1101, 2102, "x" ) );
+        assertEquals( key1, key2 );
+    }
+
+    @Test
+    public void testDifferentBucketForDistantArea() {
+        String key1 = getEstimateKey( SQL, args( 1000, 2000, 1100, 2100, "x" ) );
+        String key2 = getEstimateKey( SQL, args( 5000, 2000, 5100, 2100, "x" ) );
+        assertFalse( key1.equals( key2 ) );
+    }
+
+    @Test
+    public void testDifferentBucketForOtherScale() {
+        String key1 = getEstimateKey( SQL, args( 1000, 2000, 1100, 2100, "x" ) );
+        String key2 = getEstimateKey( SQL, args( 1000, 2000, 1400, 2400, "x" ) );
+        assertFalse( key1.equals( key2 ) );
+    }
+
+    @Test
+    public void testDifferentKeyForOtherValue() {
+        String key1 = getEstimateKey( SQL, args( 1000, 2000, 1100, 2100, "x" ) );
+        String key2 = getEstimateKey( SQL, args( 1000, 2000, 1100, 2100, "y" ) );
+        assertFalse( key1.equals( key2 ) );
+    }
+
+    @Test
+    public void testDifferentKeyForOtherStatement() {
+        List<SQLArgument> args = args( 1000, 2000, 1100, 2100, "x" );
+        assertFalse( getEstimateKey( SQL, args ).equals( getEstimateKey( SQL + " AND X1.b IS NULL", args ) ) );
+    }
+
+}
@@ -0,0 +1,219 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.feature.persistence.sql;
+
+import static org.deegree.commons.tom.primitive.BaseType.INTEGER;
+import static org.deegree.commons.tom.primitive.BaseType.STRING;
+import static org.deegree.feature.persistence.sql.SQLFeatureStore.appendSeekCondition;
+import static org.deegree.feature.persistence.sql.SQLFeatureStore.getPagedSelect;
+import static org.deegree.feature.persistence.sql.SQLFeatureStore.isPagingPushable;
+import static org.deegree.feature.persistence.sql.SQLFeatureStore.setSeekArguments;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.xml.namespace.QName;
+
+import org.deegree.commons.jdbc.SQLIdentifier;
+import org.deegree.commons.tom.primitive.BaseType;
+import org.deegree.commons.utils.Pair;
+import org.deegree.feature.persistence.query.Query;
+import org.deegree.feature.persistence.sql.id.FIDMapping;
+import org.deegree.filter.OperatorFilter;
+import org.deegree.filter.expression.ValueReference;
+import org.deegree.filter.sort.SortProperty;
+import org.deegree.protocol.wfs.getfeature.TypeName;
+import org.deegree.sqldialect.SQLDialect;
+import org.deegree.sqldialect.filter.AbstractWhereBuilder;
+import org.deegree.sqldialect.filter.Join;
+import org.deegree.sqldialect.filter.PropertyNameMapping;
+import org.deegree.sqldialect.filter.expression.SQLExpression;
+import org.deegree.sqldialect.postgis.PostGISDialect;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+/**
+ * Tests the SQL that {@link SQLFeatureStore} generates to push paging down to the database.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+public class SQLFeatureStorePagingTest {
+
+    private static final String SELECT = "SELECT X1.id,X1.name FROM roads X1 WHERE X1.lanes > ?";
+
+    private final SQLDialect dialect = new PostGISDialect( "2.0.0" );
+
+    private final FIDMapping fidMapping = createFidMapping( "id", INTEGER );
+
+    private final FIDMapping compositeFidMapping = createFidMapping( "id", INTEGER, "version", STRING );
+
+    @Test
+    public void testUnorderedPageIsOrderedByFid() {
+        Query query = createQuery( 20, 10, null );
+        assertEquals( SELECT + " ORDER BY X1.id LIMIT 10 OFFSET 20",
+                      getPagedSelect( dialect, SELECT, false, "X1", fidMapping, query ) );
+    }
+
+    @Test
+    public void testOrderedPageUsesFidAsTieBreaker() {
+        Query query = createQuery( 20, 10, null );
+        assertEquals( SELECT + " ORDER BY X1.name,X1.id LIMIT 10 OFFSET 20",
+                      getPagedSelect( dialect, SELECT + " ORDER BY X1.name", true, "X1", fidMapping, query ) );
+    }
+
+    @Test
+    public void testPageWithCompositeFid() {
+        Query query = createQuery( 0, 10, null );
+        assertEquals( SELECT + " ORDER BY X1.id,X1.version LIMIT 10",
+                      getPagedSelect( dialect, SELECT, false, "X1", compositeFidMapping, query ) );
+    }
+
+    @Test
+    public void testPageWithOffsetOnly() {
+        Query query = createQuery( 20, -1, null );
+        assertEquals( SELECT + " ORDER BY X1.id OFFSET 20",
+                      getPagedSelect( dialect, SELECT, false, "X1", fidMapping, query ) );
+    }
+
+    @Test
+    public void testSeekCondition() {
+        StringBuilder sql = new StringBuilder();
+        appendSeekCondition( sql, "X1", fidMapping );
+        assertEquals( "((X1.id>?))", sql.toString() );
+    }
+
+    @Test
+    public void testSeekConditionWithCompositeFid() {
+        StringBuilder sql = new StringBuilder();
+        appendSeekCondition( sql, "X1", compositeFidMapping );
+        assertEquals( "((X1.id>?) OR (X1.id=? AND X1.version>?))", sql.toString() );
+    }
+
+    @Test
+    public void testSeekArguments()
+                            throws Exception {
+        PreparedStatement stmt = mock( PreparedStatement.class );
+        int next = setSeekArguments( stmt, 3, compositeFidMapping, new Object[] { "5", "b" } );
+        assertEquals( 6, next );
+        InOrder inOrder = inOrder( stmt );
+        inOrder.verify( stmt ).setObject( 3, 5 );
+        inOrder.verify( stmt ).setObject( 4, 5 );
+        inOrder.verify( stmt ).setObject( 5, "b" );
+    }
+
+    @Test
+    public void testPagingIsPushable() {
+        AbstractWhereBuilder wb = createWhereBuilder( null, null, null, false );
+        assertTrue( isPagingPushable( createQuery( 20, 10, null ), wb ) );
+        assertTrue( isPagingPushable( createQuery( 0, 10, "ROAD_5" ), wb ) );
+    }
+
+    @Test
+    public void testOrderedPagingIsPushable() {
+        AbstractWhereBuilder wb = createWhereBuilder( mock( SQLExpression.class ), null, null, false );
+        assertTrue( isPagingPushable( createQuery( 20, 10, null ), wb ) );
+    }
+
+    @Test
+    public void testPagingWithPostFilterIsNotPushable() {
+        AbstractWhereBuilder wb = createWhereBuilder( null, mock( OperatorFilter.class ), null, false );
+        assertFalse( isPagingPushable( createQuery( 20, 10, null ), wb ) );
+    }
+
+    @Test
+    public void testPagingWithPostSortIsNotPushable() {
+        SortProperty[] sortCrit = { new SortProperty( new ValueReference( new QName( "name" ) ), true ) };
+        AbstractWhereBuilder wb = createWhereBuilder( null, null, sortCrit, false );
+        assertFalse( isPagingPushable( createQuery( 20, 10, null ), wb ) );
+    }
+
+    @Test
+    public void testPagingWithJoinIsNotPushable() {
+        AbstractWhereBuilder wb = createWhereBuilder( null, null, null, true );
+        assertFalse( isPagingPushable( createQuery( 20, 10, null ), wb ) );
+    }
+
+    @Test
+    public void testSeekingInOtherOrderIsNotPushable() {
+        AbstractWhereBuilder wb = createWhereBuilder( mock( SQLExpression.class ), null, null, false );
+        assertFalse( isPagingPushable( createQuery( 0, 10, "ROAD_5" ), wb ) );
+    }
+
+    private static Query createQuery( int startIndex, int maxFeatures, String startAfterId ) {
+        TypeName[] typeNames = { new TypeName( new QName( "Road" ), null ) };
+        Query query = new Query( typeNames, null, null, -1, -1, -1 );
+        query.setStartIndex( startIndex );
+        query.setMaxFeatures( maxFeatures );
+        query.setStartAfterId( startAfterId );
+        return query;
+    }
+
+    private static AbstractWhereBuilder createWhereBuilder( SQLExpression orderBy, OperatorFilter postFilter,
+                                                            SortProperty[] postSortCrit, boolean joined ) {
+        List<Join> joins = Collections.emptyList();
+        if ( joined ) {
+            joins = Collections.singletonList( new Join( "roads", "X1", "id", "lanes", "X2", "road_id" ) );
+        }
+        List<PropertyNameMapping> mappedPropNames = new ArrayList<PropertyNameMapping>();
+        mappedPropNames.add( new PropertyNameMapping( null, joins, "lane", "X2" ) );
+        AbstractWhereBuilder wb = mock( AbstractWhereBuilder.class );
+        when( wb.getOrderBy() ).thenReturn( orderBy );
+        when( wb.getPostFilter() ).thenReturn( postFilter );
+        when( wb.getPostSortCriteria() ).thenReturn( postSortCrit );
+        when( wb.getMappedPropertyNames() ).thenReturn( mappedPropNames );
+        return wb;
+    }
+
+    private static FIDMapping createFidMapping( Object... columns ) {
+        List<Pair<SQLIdentifier, BaseType>> fidColumns = new ArrayList<Pair<SQLIdentifier, BaseType>>();
+        for ( int i = 0; i < columns.length; i += 2 ) {
+            fidColumns.add( new Pair<SQLIdentifier, BaseType>( new SQLIdentifier( (String) columns[i] ),
+                                                               (BaseType) columns[i + 1] ) );
+        }
+        return new FIDMapping( "ROAD_", "_", fidColumns, null );
+    }
+
+}
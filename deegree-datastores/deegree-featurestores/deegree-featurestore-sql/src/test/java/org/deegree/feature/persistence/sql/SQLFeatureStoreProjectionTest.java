@@ -0,0 +1,167 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.feature.persistence.sql;
+
+import static org.deegree.commons.tom.primitive.BaseType.STRING;
+import static org.deegree.feature.persistence.sql.SQLFeatureStore.getProjectedProperties;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.xml.namespace.QName;
+
+import org.deegree.commons.tom.gml.property.PropertyType;
+import org.deegree.feature.persistence.query.Query;
+import org.deegree.feature.types.FeatureType;
+import org.deegree.feature.types.GenericFeatureType;
+import org.deegree.feature.types.property.SimplePropertyType;
+import org.deegree.filter.expression.ValueReference;
+import org.deegree.filter.projection.ProjectionClause;
+import org.deegree.filter.projection.PropertyName;
+import org.deegree.filter.projection.TimeSliceProjection;
+import org.deegree.filter.sort.SortProperty;
+import org.deegree.protocol.wfs.getfeature.TypeName;
+import org.junit.Test;
+
+/**
+ * Tests for the determination of the properties {@link SQLFeatureStore} fetches for projected queries.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+public class SQLFeatureStoreProjectionTest {
+
+    private static final QName ID = new QName( "id" );
+
+    private static final QName NAME = new QName( "name" );
+
+    private static final QName CODE = new QName( "code" );
+
+    private static final QName LANE = new QName( "lane" );
+
+    private final FeatureType ft = createFeatureType();
+
+    @Test
+    public void testNoProjections() {
+        assertNull( getProjectedProperties( ft, null, null ) );
+        assertNull( getProjectedProperties( ft, Collections.<ProjectionClause> emptyList(), null ) );
+    }
+
+    @Test
+    public void testDefaultQueryFetchesAllProperties() {
+        TypeName[] typeNames = { new TypeName( ft.getName(), null ) };
+        Query query = new Query( typeNames, null, null, -1, -1, -1 );
+        assertNull( getProjectedProperties( ft, query.getProjections(), query.getSortProperties() ) );
+        query = new Query( typeNames, null, null, -1, -1, -1, null );
+        assertNull( getProjectedProperties( ft, query.getProjections(), query.getSortProperties() ) );
+    }
+
+    @Test
+    public void testProjectedQuery() {
+        TypeName[] typeNames = { new TypeName( ft.getName(), null ) };
+        Query query = new Query( typeNames, null, null, -1, -1, -1, projections( CODE ) );
+        Set<QName> projected = getProjectedProperties( ft, query.getProjections(), query.getSortProperties() );
+        assertEquals( set( ID, CODE ), projected );
+    }
+
+    @Test
+    public void testProjectedAndMandatoryProperties() {
+        assertEquals( set( ID, NAME ), getProjectedProperties( ft, projections( NAME ), null ) );
+    }
+
+    @Test
+    public void testSortPropertiesAreFetched() {
+        SortProperty[] sortCrit = { new SortProperty( new ValueReference( CODE ), true ) };
+        assertEquals( set( ID, NAME, CODE ), getProjectedProperties( ft, projections( NAME ), sortCrit ) );
+    }
+
+    @Test
+    public void testAllPropertiesProjected() {
+        assertNull( getProjectedProperties( ft, projections( NAME, CODE, LANE ), null ) );
+        SortProperty[] sortCrit = { new SortProperty( new ValueReference( LANE ), false ) };
+        assertNull( getProjectedProperties( ft, projections( NAME, CODE ), sortCrit ) );
+    }
+
+    @Test
+    public void testUnknownProperty() {
+        assertNull( getProjectedProperties( ft, projections( NAME, new QName( "unknown" ) ), null ) );
+        SortProperty[] sortCrit = { new SortProperty( new ValueReference( new QName( "unknown" ) ), true ) };
+        assertNull( getProjectedProperties( ft, projections( NAME ), sortCrit ) );
+    }
+
+    @Test
+    public void testComplexPropertyName() {
+        List<ProjectionClause> projections = projections( NAME );
+        projections.add( new PropertyName( new ValueReference( "lane/text()", null ), null, null ) );
+        assertNull( getProjectedProperties( ft, projections, null ) );
+    }
+
+    @Test
+    public void testOtherProjectionClause() {
+        List<ProjectionClause> projections = projections( NAME );
+        projections.add( new TimeSliceProjection( null ) );
+        assertNull( getProjectedProperties( ft, projections, null ) );
+    }
+
+    private static List<ProjectionClause> projections( QName... propNames ) {
+        List<ProjectionClause> projections = new ArrayList<ProjectionClause>();
+        for ( QName propName : propNames ) {
+            projections.add( new PropertyName( new ValueReference( propName ), null, null ) );
+        }
+        return projections;
+    }
+
+    private static HashSet<QName> set( QName... propNames ) {
+        return new HashSet<QName>( Arrays.asList( propNames ) );
+    }
+
+    private static FeatureType createFeatureType() {
+        List<PropertyType> pts = new ArrayList<PropertyType>();
+        pts.add( new SimplePropertyType( ID, 1, 1, STRING, null, null ) );
+        pts.add( new SimplePropertyType( NAME, 0, 1, STRING, null, null ) );
+        pts.add( new SimplePropertyType( CODE, 0, 1, STRING, null, null ) );
+        pts.add( new SimplePropertyType( LANE, 0, -1, STRING, null, null ) );
+        return new GenericFeatureType( new QName( "Road" ), pts, false );
+    }
+
+}
@@ -0,0 +1,211 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.feature.persistence.sql.insert;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.deegree.commons.jdbc.SQLIdentifier;
+import org.deegree.commons.jdbc.TableName;
+import org.deegree.sqldialect.BulkLoader;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+/**
+ * Tests for {@link InsertBatch}.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+public class InsertBatchTest {
+
+    private static final String INSERT = "INSERT INTO t(a,b) VALUES";
+
+    private static final String VALUES = "(?,?)";
+
+    private Connection conn;
+
+    private PreparedStatement single;
+
+    private PreparedStatement multi;
+
+    private PreparedStatement remainder;
+
+    @Before
+    public void setup()
+                            throws SQLException {
+        conn = mock( Connection.class );
+        single = mock( PreparedStatement.class );
+        multi = mock( PreparedStatement.class );
+        remainder = mock( PreparedStatement.class );
+        when( conn.prepareStatement( INSERT + "(?,?)" ) ).thenReturn( single );
+        when( conn.prepareStatement( INSERT + "(?,?),(?,?),(?,?)" ) ).thenReturn( multi );
+        when( conn.prepareStatement( INSERT + "(?,?),(?,?)" ) ).thenReturn( remainder );
+    }
+
+    private static InsertBatch createBatch( int maxRows, int numRows ) {
+        InsertBatch batch = new InsertBatch( INSERT, VALUES, maxRows );
+        for ( int i = 0; i < numRows; i++ ) {
+            batch.add( new Object[] { i, "row" + i } );
+        }
+        return batch;
+    }
+
+    @Test
+    public void testSingleRowStatements()
+                            throws SQLException {
+        InsertBatch batch = createBatch( 1, 3 );
+        batch.execute( conn );
+        verify( conn, times( 1 ) ).prepareStatement( anyString() );
+        verify( single, times( 3 ) ).addBatch();
+        verify( single ).executeBatch();
+        verify( single ).setObject( 1, 2 );
+        verify( single ).setObject( 2, "row2" );
+        assertTrue( batch.isEmpty() );
+    }
+
+    @Test
+    public void testMultiRowStatementsWithSingleRemainder()
+                            throws SQLException {
+        InsertBatch batch = createBatch( 3, 7 );
+        batch.execute( conn );
+        verify( multi, times( 2 ) ).addBatch();
+        verify( multi ).executeBatch();
+        // parameters of the third row of the second statement
+        verify( multi ).setObject( 5, 5 );
+        verify( multi ).setObject( 6, "row5" );
+        verify( single ).addBatch();
+        verify( single ).setObject( 1, 6 );
+        verify( single ).setObject( 2, "row6" );
+        verify( single ).executeBatch();
+        verifyZeroInteractions( remainder );
+        assertEquals( 0, batch.size() );
+    }
+
+    @Test
+    public void testMultiRowStatementsWithRemainder()
+                            throws SQLException {
+        InsertBatch batch = createBatch( 3, 5 );
+        batch.execute( conn );
+        verify( multi ).addBatch();
+        verify( multi ).executeBatch();
+        verify( remainder ).setObject( 1, 3 );
+        verify( remainder ).setObject( 4, "row4" );
+        verify( remainder ).execute();
+        verify( remainder ).close();
+        verify( remainder, never() ).addBatch();
+        verifyZeroInteractions( single );
+    }
+
+    @Test
+    public void testFewerRowsThanStatementSize()
+                            throws SQLException {
+        InsertBatch batch = createBatch( 3, 2 );
+        batch.execute( conn );
+        verify( conn, never() ).prepareStatement( INSERT + "(?,?),(?,?),(?,?)" );
+        verify( remainder ).execute();
+        verifyZeroInteractions( single );
+    }
+
+    @Test
+    public void testStatementsAreReused()
+                            throws SQLException {
+        InsertBatch batch = createBatch( 3, 4 );
+        batch.execute( conn );
+        for ( int i = 0; i < 4; i++ ) {
+            batch.add( new Object[] { i, "row" + i } );
+        }
+        batch.execute( conn );
+        verify( conn, times( 1 ) ).prepareStatement( INSERT + "(?,?),(?,?),(?,?)" );
+        verify( conn, times( 1 ) ).prepareStatement( INSERT + "(?,?)" );
+        verify( multi, times( 2 ) ).executeBatch();
+        verify( single, times( 2 ) ).executeBatch();
+        batch.close();
+        verify( multi ).close();
+        verify( single ).close();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testBulkLoader()
+                            throws SQLException {
+        BulkLoader loader = mock( BulkLoader.class );
+        TableName table = new TableName( "t" );
+        List<SQLIdentifier> columns = asList( new SQLIdentifier( "a" ), new SQLIdentifier( "b" ) );
+        List<String> expressions = asList( "?", "?" );
+        InsertBatch batch = createBatch( 3, 4 );
+        batch.setBulkLoader( loader, table, columns, expressions );
+        batch.execute( conn );
+
+        ArgumentCaptor<List> rows = ArgumentCaptor.forClass( List.class );
+        verify( loader ).load( eq( table ), eq( columns ), eq( expressions ), rows.capture() );
+        List<Object[]> loaded = rows.getValue();
+        assertEquals( 4, loaded.size() );
+        assertArrayEquals( new Object[] { 3, "row3" }, loaded.get( 3 ) );
+        verify( conn, never() ).prepareStatement( anyString() );
+        assertTrue( batch.isEmpty() );
+    }
+
+    @Test
+    public void testEmptyBatch()
+                            throws SQLException {
+        InsertBatch batch = createBatch( 3, 0 );
+        batch.execute( conn );
+        verify( conn, never() ).prepareStatement( anyString() );
+        verify( single, never() ).setObject( anyInt(), anyObject() );
+        assertTrue( batch.isEmpty() );
+    }
+
+}
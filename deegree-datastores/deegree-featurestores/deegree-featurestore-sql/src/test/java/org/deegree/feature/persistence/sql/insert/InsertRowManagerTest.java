@@ -0,0 +1,290 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.feature.persistence.sql.insert;
+
+import static java.util.Arrays.asList;
+import static org.deegree.protocol.wfs.transaction.action.IDGenMode.USE_EXISTING;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.deegree.commons.jdbc.TableName;
+import org.deegree.feature.persistence.FeatureStoreException;
+import org.deegree.feature.persistence.sql.MappedAppSchema;
+import org.deegree.feature.persistence.sql.SQLFeatureStore;
+import org.deegree.feature.persistence.sql.id.TableDependencies;
+import org.deegree.sqldialect.SQLDialect;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Tests for the batching of {@link InsertRowManager} (dependency ordered execution of batches and prefetching of
+ * sequence values).
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+public class InsertRowManagerTest {
+
+    // values of the rows in the order they have been sent to the DB
+    private final List<Object> inserted = new ArrayList<Object>();
+
+    private SQLDialect dialect;
+
+    private Connection conn;
+
+    private InsertRowManager mgr;
+
+    @Before
+    public void setup()
+                            throws SQLException {
+        dialect = mock( SQLDialect.class );
+        when( dialect.getMaxRowsPerInsert( anyInt() ) ).thenReturn( 1 );
+        conn = mock( Connection.class );
+        when( conn.prepareStatement( anyString() ) ).thenAnswer( new Answer<PreparedStatement>() {
+            @Override
+            public PreparedStatement answer( InvocationOnMock invocation )
+                                    throws Throwable {
+                return createRecordingStatement();
+            }
+        } );
+        MappedAppSchema schema = mock( MappedAppSchema.class );
+        TableDependencies deps = mock( TableDependencies.class );
+        when( schema.getKeyDependencies() ).thenReturn( deps );
+        SQLFeatureStore fs = mock( SQLFeatureStore.class );
+        when( fs.getDialect() ).thenReturn( dialect );
+        when( fs.getSchema() ).thenReturn( schema );
+        mgr = new InsertRowManager( fs, conn, USE_EXISTING );
+    }
+
+    @Test
+    public void testBatchesAreExecutedInOrderOfCreation()
+                            throws SQLException {
+        mgr.addToBatch( new TestRow( mgr, "b", "b1" ) );
+        mgr.addToBatch( new TestRow( mgr, "a", "a1" ) );
+        mgr.addToBatch( new TestRow( mgr, "c", "c1" ) );
+        mgr.addToBatch( new TestRow( mgr, "a", "a2" ) );
+        assertTrue( inserted.isEmpty() );
+        mgr.flush();
+        assertEquals( asList( (Object) "b1", "a1", "a2", "c1" ), inserted );
+    }
+
+    @Test
+    public void testChildOfLaterBatchFlushesPendingBatches()
+                            throws SQLException {
+        mgr.addToBatch( new TestRow( mgr, "a", "a1" ) );
+        InsertRow parent = new TestRow( mgr, "b", "b1" );
+        mgr.addToBatch( parent );
+        InsertRow child = new TestRow( mgr, "a", "a2" );
+        mgr.trackBatchedParent( parent, child );
+
+        // the batch of table a would be executed before the batch of the parent
+        mgr.addToBatch( child );
+        assertEquals( asList( (Object) "a1", "b1" ), inserted );
+        mgr.flush();
+        assertEquals( asList( (Object) "a1", "b1", "a2" ), inserted );
+    }
+
+    @Test
+    public void testChildOfEarlierBatchDoesNotFlush()
+                            throws SQLException {
+        InsertRow parent = new TestRow( mgr, "b", "b1" );
+        mgr.addToBatch( parent );
+        InsertRow child = new TestRow( mgr, "a", "a1" );
+        mgr.trackBatchedParent( parent, child );
+        mgr.addToBatch( child );
+        assertTrue( inserted.isEmpty() );
+        mgr.flush();
+        assertEquals( asList( (Object) "b1", "a1" ), inserted );
+    }
+
+    @Test
+    public void testParentOutsideOfBatchesIsIgnored()
+                            throws SQLException {
+        mgr.addToBatch( new TestRow( mgr, "a", "a1" ) );
+        InsertRow child = new TestRow( mgr, "a", "a2" );
+        mgr.trackBatchedParent( new TestRow( mgr, "b", "b1" ), child );
+        mgr.addToBatch( child );
+        assertTrue( inserted.isEmpty() );
+        mgr.flush();
+        assertEquals( asList( (Object) "a1", "a2" ), inserted );
+    }
+
+    @Test
+    public void testFlushAtBatchSize()
+                            throws SQLException {
+        for ( int i = 0; i < 1000; i++ ) {
+            mgr.addToBatch( new TestRow( mgr, "a", i ) );
+        }
+        assertEquals( 1000, inserted.size() );
+        mgr.flush();
+        assertEquals( 1000, inserted.size() );
+    }
+
+    @Test
+    public void testSequenceValuesArePrefetched()
+                            throws Exception {
+        Statement stmt = mock( Statement.class );
+        when( conn.createStatement() ).thenReturn( stmt );
+        when( dialect.getSelectSequenceNextVal( "seq" ) ).thenReturn( "NEXT 1" );
+        when( dialect.getSelectSequenceNextVals( "seq", 2 ) ).thenReturn( "NEXT 2" );
+        when( dialect.getSelectSequenceNextVals( "seq", 4 ) ).thenReturn( "NEXT 4" );
+        ResultSet one = createResultSet( 1 );
+        ResultSet two = createResultSet( 3, 2 );
+        ResultSet four = createResultSet( 5, 4, 7, 6 );
+        when( stmt.executeQuery( "NEXT 1" ) ).thenReturn( one );
+        when( stmt.executeQuery( "NEXT 2" ) ).thenReturn( two );
+        when( stmt.executeQuery( "NEXT 4" ) ).thenReturn( four );
+
+        for ( int i = 1; i <= 7; i++ ) {
+            assertEquals( i, mgr.getSequenceNextVal( "seq" ) );
+        }
+        verify( stmt ).executeQuery( "NEXT 1" );
+        verify( stmt ).executeQuery( "NEXT 2" );
+        verify( stmt ).executeQuery( "NEXT 4" );
+        verify( dialect, never() ).getSelectSequenceNextVals( "seq", 8 );
+    }
+
+    @Test
+    public void testSequencesArePrefetchedIndependently()
+                            throws Exception {
+        Statement stmt = mock( Statement.class );
+        when( conn.createStatement() ).thenReturn( stmt );
+        when( dialect.getSelectSequenceNextVal( "seq1" ) ).thenReturn( "NEXT seq1" );
+        when( dialect.getSelectSequenceNextVal( "seq2" ) ).thenReturn( "NEXT seq2" );
+        ResultSet rs1 = createResultSet( 10 );
+        ResultSet rs2 = createResultSet( 20 );
+        when( stmt.executeQuery( "NEXT seq1" ) ).thenReturn( rs1 );
+        when( stmt.executeQuery( "NEXT seq2" ) ).thenReturn( rs2 );
+        assertEquals( 10, mgr.getSequenceNextVal( "seq1" ) );
+        assertEquals( 20, mgr.getSequenceNextVal( "seq2" ) );
+    }
+
+    @Test(expected = FeatureStoreException.class)
+    public void testEmptySequenceResult()
+                            throws Exception {
+        Statement stmt = mock( Statement.class );
+        when( conn.createStatement() ).thenReturn( stmt );
+        when( dialect.getSelectSequenceNextVal( "seq" ) ).thenReturn( "NEXT 1" );
+        ResultSet empty = createResultSet();
+        when( stmt.executeQuery( "NEXT 1" ) ).thenReturn( empty );
+        mgr.getSequenceNextVal( "seq" );
+    }
+
+    private PreparedStatement createRecordingStatement()
+                            throws SQLException {
+        final List<Object> current = new ArrayList<Object>();
+        final List<Object> batched = new ArrayList<Object>();
+        PreparedStatement stmt = mock( PreparedStatement.class );
+        doAnswer( new Answer<Void>() {
+            @Override
+            public Void answer( InvocationOnMock invocation )
+                                    throws Throwable {
+                current.add( invocation.getArguments()[1] );
+                return null;
+            }
+        } ).when( stmt ).setObject( anyInt(), anyObject() );
+        doAnswer( new Answer<Void>() {
+            @Override
+            public Void answer( InvocationOnMock invocation )
+                                    throws Throwable {
+                batched.addAll( current );
+                current.clear();
+                return null;
+            }
+        } ).when( stmt ).addBatch();
+        when( stmt.executeBatch() ).thenAnswer( new Answer<int[]>() {
+            @Override
+            public int[] answer( InvocationOnMock invocation )
+                                    throws Throwable {
+                int[] counts = new int[batched.size()];
+                inserted.addAll( batched );
+                batched.clear();
+                return counts;
+            }
+        } );
+        return stmt;
+    }
+
+    private static ResultSet createResultSet( final int... values )
+                            throws SQLException {
+        final int[] pos = new int[] { -1 };
+        ResultSet rs = mock( ResultSet.class );
+        when( rs.next() ).thenAnswer( new Answer<Boolean>() {
+            @Override
+            public Boolean answer( InvocationOnMock invocation )
+                                    throws Throwable {
+                return ++pos[0] < values.length;
+            }
+        } );
+        when( rs.getInt( 1 ) ).thenAnswer( new Answer<Integer>() {
+            @Override
+            public Integer answer( InvocationOnMock invocation )
+                                    throws Throwable {
+                return values[pos[0]];
+            }
+        } );
+        return rs;
+    }
+
+    private static class TestRow extends InsertRow {
+
+        TestRow( InsertRowManager mgr, String table, Object value ) {
+            super( mgr );
+            this.table = new TableName( table );
+            addPreparedArgument( "value", value );
+        }
+    }
+
+}
@@ -0,0 +1,146 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.feature.persistence.sql.rules;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.sql.Blob;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link BufferedRow}.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+public class BufferedRowTest {
+
+    private static ResultSet mockRow( Object... values )
+                            throws SQLException {
+        ResultSet rs = mock( ResultSet.class );
+        for ( int i = 0; i < values.length; i++ ) {
+            when( rs.getObject( i + 1 ) ).thenReturn( values[i] );
+        }
+        return rs;
+    }
+
+    @Test
+    public void testValuesSurviveSourceChanges()
+                            throws SQLException {
+        ResultSet rs = mockRow( 42, "Bonn" );
+        ResultSet row = BufferedRow.copy( rs, 2 );
+        // the source is advanced to the next row
+        when( rs.getObject( 1 ) ).thenReturn( 43 );
+        when( rs.getObject( 2 ) ).thenReturn( "Koeln" );
+        assertEquals( 42, row.getObject( 1 ) );
+        assertEquals( "Bonn", row.getObject( 2 ) );
+    }
+
+    @Test
+    public void testCopiesFirstColumnsOnly()
+                            throws SQLException {
+        ResultSet row = BufferedRow.copy( mockRow( 1, 2, 3 ), 2 );
+        assertEquals( 2, row.getObject( 2 ) );
+        try {
+            row.getObject( 3 );
+            throw new AssertionError( "Column 3 was not copied." );
+        } catch ( SQLException e ) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testGetString()
+                            throws SQLException {
+        ResultSet row = BufferedRow.copy( mockRow( 42, null ), 2 );
+        assertEquals( "42", row.getString( 1 ) );
+        assertNull( row.getString( 2 ) );
+    }
+
+    @Test
+    public void testWasNull()
+                            throws SQLException {
+        ResultSet row = BufferedRow.copy( mockRow( 42, null ), 2 );
+        row.getObject( 2 );
+        assertTrue( row.wasNull() );
+        row.getObject( 1 );
+        assertFalse( row.wasNull() );
+    }
+
+    @Test
+    public void testBlobsAreCopied()
+                            throws SQLException {
+        byte[] bytes = new byte[] { 1, 2, 3 };
+        Blob blob = mock( Blob.class );
+        when( blob.length() ).thenReturn( 3L );
+        when( blob.getBytes( 1, 3 ) ).thenReturn( bytes );
+        ResultSet row = BufferedRow.copy( mockRow( blob ), 1 );
+        assertArrayEquals( bytes, row.getBytes( 1 ) );
+        assertArrayEquals( bytes, (byte[]) row.getObject( 1 ) );
+    }
+
+    @Test
+    public void testCloseIsIgnored()
+                            throws SQLException {
+        ResultSet row = BufferedRow.copy( mockRow( 42 ), 1 );
+        row.close();
+        assertFalse( row.isClosed() );
+        assertEquals( 42, row.getObject( 1 ) );
+    }
+
+    @Test(expected = SQLException.class)
+    public void testUnsupportedAccessor()
+                            throws SQLException {
+        BufferedRow.copy( mockRow( 42 ), 1 ).getInt( 1 );
+    }
+
+    @Test(expected = SQLException.class)
+    public void testInvalidColumnIndex()
+                            throws SQLException {
+        BufferedRow.copy( mockRow( 42 ), 1 ).getObject( 0 );
+    }
+
+}
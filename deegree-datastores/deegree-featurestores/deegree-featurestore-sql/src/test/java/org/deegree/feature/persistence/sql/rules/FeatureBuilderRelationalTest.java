@@ -0,0 +1,615 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.feature.persistence.sql.rules;
+
+import static java.util.Arrays.asList;
+import static org.deegree.commons.tom.primitive.BaseType.INTEGER;
+import static org.deegree.commons.tom.primitive.BaseType.STRING;
+import static org.deegree.feature.persistence.sql.rules.FeatureBuilderRelational.getKeysPerSelect;
+import static org.deegree.feature.persistence.sql.rules.FeatureBuilderRelational.toLookupKey;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.xml.namespace.QName;
+
+import org.deegree.commons.jdbc.SQLIdentifier;
+import org.deegree.commons.jdbc.TableName;
+import org.deegree.commons.tom.TypedObjectNode;
+import org.deegree.commons.tom.genericxml.GenericXMLElement;
+import org.deegree.commons.tom.gml.GMLObject;
+import org.deegree.commons.tom.gml.property.Property;
+import org.deegree.commons.tom.gml.property.PropertyType;
+import org.deegree.commons.tom.primitive.BaseType;
+import org.deegree.commons.tom.primitive.PrimitiveType;
+import org.deegree.commons.tom.primitive.PrimitiveValue;
+import org.deegree.commons.tom.sql.ParticleConverter;
+import org.deegree.commons.utils.Pair;
+import org.deegree.feature.Feature;
+import org.deegree.feature.persistence.cache.FeatureStoreCache;
+import org.deegree.feature.persistence.sql.FeatureTypeMapping;
+import org.deegree.feature.persistence.sql.MappedAppSchema;
+import org.deegree.feature.persistence.sql.SQLFeatureStore;
+import org.deegree.feature.persistence.sql.expressions.TableJoin;
+import org.deegree.feature.persistence.sql.id.FIDMapping;
+import org.deegree.feature.types.FeatureType;
+import org.deegree.feature.types.GenericFeatureType;
+import org.deegree.feature.types.property.SimplePropertyType;
+import org.deegree.filter.expression.ValueReference;
+import org.deegree.sqldialect.filter.DBField;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Tests for {@link FeatureBuilderRelational}, using a mocked JDBC connection that serves the rows of a few tables
+ * (roads with joined lanes and sections, which in turn have joined signs).
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+public class FeatureBuilderRelationalTest {
+
+    private static final QName NAME = new QName( "name" );
+
+    private static final QName CODE = new QName( "code" );
+
+    private static final QName LANE = new QName( "lane" );
+
+    private static final QName SECTION = new QName( "section" );
+
+    private static final List<String> NO_KEY = Collections.emptyList();
+
+    private static final Table ROADS = new Table( "roads", asList( "id", "name", "code" ), NO_KEY, row( 1, "A1", "a" ),
+                                                  row( 2, "B2", "b" ), row( 3, "C3", null ) );
+
+    // numeric key columns of other types than the ones of the roads table
+    private static final Table LANES = new Table( "lanes", asList( "lane", "road_id" ), asList( "road_id" ),
+                                                  row( "l1", 1L ), row( "l2", 1L ), row( "l3", 3L ) );
+
+    private static final Table SECTIONS = new Table( "sections", asList( "length", "id", "road_id" ),
+                                                     asList( "road_id" ), row( "100", 10, 1 ), row( "200", 10, 2 ),
+                                                     row( "300", 20, 2 ) );
+
+    private static final Table SIGNS = new Table( "signs", asList( "label", "section_id", "road_id" ),
+                                                  asList( "section_id", "road_id" ), row( "stop", 10, 1 ),
+                                                  row( "yield", 10, 2 ), row( "exit", 20, 2 ), row( "none", 20, 1 ) );
+
+    private final List<String> statements = new ArrayList<String>();
+
+    private final List<List<Object>> parameters = new ArrayList<List<Object>>();
+
+    private SQLFeatureStore fs;
+
+    private Connection conn;
+
+    private FeatureType ft;
+
+    private FeatureTypeMapping ftMapping;
+
+    @Before
+    public void setup()
+                            throws SQLException {
+        List<PropertyType> pts = new ArrayList<PropertyType>();
+        pts.add( new SimplePropertyType( NAME, 0, 1, STRING, null, null ) );
+        pts.add( new SimplePropertyType( CODE, 0, 1, STRING, null, null ) );
+        pts.add( new SimplePropertyType( LANE, 0, -1, STRING, null, null ) );
+        pts.add( new SimplePropertyType( SECTION, 0, -1, STRING, null, null ) );
+        ft = new GenericFeatureType( new QName( "Road" ), pts, false );
+
+        fs = mock( SQLFeatureStore.class );
+        when( fs.getNamespaceContext() ).thenReturn( new HashMap<String, String>() );
+        MappedAppSchema schema = mock( MappedAppSchema.class );
+        when( fs.getSchema() ).thenReturn( schema );
+
+        List<Mapping> mappings = new ArrayList<Mapping>();
+        mappings.add( primitive( new ValueReference( NAME ), "name", null ) );
+        mappings.add( primitive( new ValueReference( CODE ), "code", null ) );
+        mappings.add( primitive( new ValueReference( LANE ), "lane", join( "roads", "lanes", "id", "road_id" ) ) );
+        List<Mapping> sectionParticles = new ArrayList<Mapping>();
+        sectionParticles.add( primitive( new ValueReference( "length", null ), "length", null ) );
+        List<TableJoin> signJoin = Collections.singletonList( new TableJoin( new TableName( "sections" ),
+                                                                             new TableName( "signs" ),
+                                                                             asList( "id", "road_id" ),
+                                                                             asList( "section_id", "road_id" ),
+                                                                             null, false, null ) );
+        sectionParticles.add( primitive( new ValueReference( "sign", null ), "label", signJoin ) );
+        mappings.add( new CompoundMapping( new ValueReference( SECTION ), true, sectionParticles,
+                                           join( "roads", "sections", "id", "road_id" ), null ) );
+        List<Pair<SQLIdentifier, BaseType>> fidColumns = new ArrayList<Pair<SQLIdentifier, BaseType>>();
+        fidColumns.add( new Pair<SQLIdentifier, BaseType>( new SQLIdentifier( "id" ), INTEGER ) );
+        ftMapping = new FeatureTypeMapping( ft.getName(), new TableName( "roads" ), new FIDMapping( "ROAD_", "_",
+                                                                                                   fidColumns,
+                                                                                                   null ),
+                                            mappings );
+
+        conn = mock( Connection.class );
+        when( conn.prepareStatement( anyString() ) ).thenAnswer( new Answer<PreparedStatement>() {
+            @Override
+            public PreparedStatement answer( InvocationOnMock invocation )
+                                    throws Throwable {
+                String sql = (String) invocation.getArguments()[0];
+                statements.add( sql );
+                return prepare( sql );
+            }
+        } );
+    }
+
+    @Test
+    public void testSelectColumnsWithoutProjection() {
+        FeatureBuilderRelational builder = createBuilder( null );
+        assertEquals( asList( "X1.id", "X1.name", "X1.code" ), builder.getInitialSelectColumns() );
+        assertTrue( builder.isBlockBuilding() );
+    }
+
+    @Test
+    public void testUnprojectedColumnsAreNotSelected() {
+        FeatureBuilderRelational builder = createBuilder( set( NAME ) );
+        assertEquals( asList( "X1.id", "X1.name" ), builder.getInitialSelectColumns() );
+        assertFalse( builder.isBlockBuilding() );
+    }
+
+    @Test
+    public void testUnprojectedJoinsAreNotPerformed()
+                            throws SQLException {
+        List<Feature> features = buildFeatures( createBuilder( set( NAME, CODE ) ), false );
+        verify( conn, never() ).prepareStatement( anyString() );
+        assertEquals( 3, features.size() );
+        assertEquals( asList( "A1" ), values( features.get( 0 ), NAME ) );
+        assertEquals( asList( "a" ), values( features.get( 0 ), CODE ) );
+        for ( Feature feature : features ) {
+            assertTrue( feature.getProperties( LANE ).isEmpty() );
+            assertTrue( feature.getProperties( SECTION ).isEmpty() );
+        }
+    }
+
+    @Test
+    public void testOnlyProjectedJoinsArePerformed()
+                            throws SQLException {
+        List<Feature> features = buildFeatures( createBuilder( set( LANE ) ), true );
+        assertEquals( asList( "SELECT X1.lane,X1.road_id FROM lanes X1 WHERE road_id IN (?,?,?)" ), statements );
+        assertEquals( asList( "l1", "l2" ), values( features.get( 0 ), LANE ) );
+        assertTrue( features.get( 0 ).getProperties( NAME ).isEmpty() );
+        assertTrue( features.get( 0 ).getProperties( SECTION ).isEmpty() );
+
+        statements.clear();
+        features = buildFeatures( createBuilder( set( LANE ) ), false );
+        assertEquals( 3, statements.size() );
+        for ( String sql : statements ) {
+            assertEquals( "SELECT X1.lane FROM lanes X1 WHERE road_id = ?", sql );
+        }
+        assertEquals( asList( "l3" ), values( features.get( 2 ), LANE ) );
+    }
+
+    @Test
+    public void testPartialFeaturesAreNotCached()
+                            throws SQLException {
+        FeatureStoreCache cache = mock( FeatureStoreCache.class );
+        when( fs.getCache() ).thenReturn( cache );
+        buildFeatures( createBuilder( set( NAME ) ), false );
+        buildFeatures( createBuilder( set( LANE ) ), true );
+        verify( cache, never() ).add( any( GMLObject.class ) );
+    }
+
+    @Test
+    public void testCompleteFeaturesAreCached()
+                            throws SQLException {
+        FeatureStoreCache cache = mock( FeatureStoreCache.class );
+        when( fs.getCache() ).thenReturn( cache );
+        for ( boolean block : new boolean[] { false, true } ) {
+            for ( Feature feature : buildFeatures( createBuilder( null ), block ) ) {
+                verify( cache ).add( feature );
+            }
+        }
+    }
+
+    @Test
+    public void testJoinedRowsAreGroupedByKey()
+                            throws SQLException {
+        // the lanes reference the integer road ids using longs
+        List<Feature> features = buildFeatures( createBuilder( set( LANE ) ), true );
+        assertEquals( asList( asList( (Object) 1, 2, 3 ) ), parameters );
+        assertEquals( asList( "l1", "l2" ), values( features.get( 0 ), LANE ) );
+        assertTrue( values( features.get( 1 ), LANE ).isEmpty() );
+        assertEquals( asList( "l3" ), values( features.get( 2 ), LANE ) );
+    }
+
+    @Test
+    public void testNestedJoinsArePrefetched()
+                            throws SQLException {
+        List<Feature> features = buildFeatures( createBuilder( set( SECTION ) ), true );
+        assertEquals( asList( "SELECT X1.length,X1.id,X1.road_id FROM sections X1 WHERE road_id IN (?,?,?)",
+                              "SELECT X1.label,X1.section_id,X1.road_id FROM signs X1 WHERE "
+                                                      + "((section_id = ? AND road_id = ?) OR "
+                                                      + "(section_id = ? AND road_id = ?) OR "
+                                                      + "(section_id = ? AND road_id = ?))" ), statements );
+        assertEquals( asList( (Object) 10, 1, 10, 2, 20, 2 ), parameters.get( 1 ) );
+        assertEquals( asList( "length=100,sign=stop" ), sections( features.get( 0 ) ) );
+        assertEquals( asList( "length=200,sign=yield", "length=300,sign=exit" ), sections( features.get( 1 ) ) );
+        assertTrue( sections( features.get( 2 ) ).isEmpty() );
+    }
+
+    @Test
+    public void testBlocksMatchSingleFeatures()
+                            throws SQLException {
+        List<Feature> blocks = buildFeatures( createBuilder( null ), true );
+        // lanes, sections and their signs
+        assertEquals( 3, statements.size() );
+        List<Feature> single = buildFeatures( createBuilder( null ), false );
+        assertEquals( single.size(), blocks.size() );
+        for ( int i = 0; i < single.size(); i++ ) {
+            assertEquals( values( single.get( i ), NAME ), values( blocks.get( i ), NAME ) );
+            assertEquals( values( single.get( i ), LANE ), values( blocks.get( i ), LANE ) );
+            assertEquals( sections( single.get( i ) ), sections( blocks.get( i ) ) );
+        }
+    }
+
+    @Test
+    public void testCachedFeaturesAreNotPrefetched()
+                            throws SQLException {
+        FeatureStoreCache cache = mock( FeatureStoreCache.class );
+        Feature cached = mock( Feature.class );
+        when( cache.get( "ROAD_1" ) ).thenReturn( cached );
+        when( fs.getCache() ).thenReturn( cache );
+        List<Feature> features = buildFeatures( createBuilder( set( LANE, SECTION ) ), true );
+        assertEquals( asList( "SELECT X1.lane,X1.road_id FROM lanes X1 WHERE road_id IN (?,?)",
+                              "SELECT X1.length,X1.id,X1.road_id FROM sections X1 WHERE road_id IN (?,?)",
+                              "SELECT X1.label,X1.section_id,X1.road_id FROM signs X1 WHERE "
+                                                      + "((section_id = ? AND road_id = ?) OR "
+                                                      + "(section_id = ? AND road_id = ?))" ), statements );
+        assertEquals( asList( (Object) 2, 3 ), parameters.get( 0 ) );
+        assertSame( cached, features.get( 0 ) );
+        assertEquals( asList( "l3" ), values( features.get( 2 ), LANE ) );
+        // the cache is looked up once per feature
+        verify( cache, times( 1 ) ).get( "ROAD_1" );
+    }
+
+    @Test
+    public void testNothingIsPrefetchedForCachedBlocks()
+                            throws SQLException {
+        FeatureStoreCache cache = mock( FeatureStoreCache.class );
+        when( cache.get( anyString() ) ).thenReturn( mock( Feature.class ) );
+        when( fs.getCache() ).thenReturn( cache );
+        assertEquals( 3, buildFeatures( createBuilder( null ), true ).size() );
+        verify( conn, never() ).prepareStatement( anyString() );
+    }
+
+    @Test
+    public void testLookupKeyNormalizesNumbers() {
+        List<Object> key = toLookupKey( asList( (Object) 5 ) );
+        assertEquals( key, toLookupKey( asList( (Object) 5L ) ) );
+        assertEquals( key, toLookupKey( asList( (Object) (short) 5 ) ) );
+        assertEquals( key, toLookupKey( asList( (Object) BigInteger.valueOf( 5 ) ) ) );
+        assertEquals( key, toLookupKey( asList( (Object) new BigDecimal( "5.00" ) ) ) );
+        assertEquals( key, toLookupKey( asList( (Object) 5.0d ) ) );
+        assertFalse( key.equals( toLookupKey( asList( (Object) 50 ) ) ) );
+        assertEquals( new BigDecimal( "5" ), key.get( 0 ) );
+    }
+
+    @Test
+    public void testLookupKeyNormalizesZero() {
+        List<Object> key = toLookupKey( asList( (Object) 0 ) );
+        assertEquals( key, toLookupKey( asList( (Object) new BigDecimal( "0.000" ) ) ) );
+        assertEquals( key, toLookupKey( asList( (Object) 0L ) ) );
+        assertEquals( key, toLookupKey( asList( (Object) 0.0d ) ) );
+        assertEquals( BigDecimal.ZERO, key.get( 0 ) );
+    }
+
+    @Test
+    public void testLookupKeyKeepsOtherValues() {
+        List<Object> key = toLookupKey( asList( (Object) "5", 7 ) );
+        assertEquals( "5", key.get( 0 ) );
+        assertEquals( new BigDecimal( "7" ), key.get( 1 ) );
+        assertFalse( key.equals( toLookupKey( asList( (Object) 7, "5" ) ) ) );
+        // a string is not equal to a number
+        assertFalse( toLookupKey( asList( (Object) "5" ) ).equals( toLookupKey( asList( (Object) 5 ) ) ) );
+    }
+
+    @Test
+    public void testKeysPerSelectSingleColumn() {
+        assertEquals( 500, getKeysPerSelect( 1, 500 ) );
+        // IN lists are limited to 1000 expressions
+        assertEquals( 1000, getKeysPerSelect( 1, 5000 ) );
+    }
+
+    @Test
+    public void testKeysPerSelectCompositeKeys() {
+        assertEquals( 500, getKeysPerSelect( 2, 500 ) );
+        assertEquals( 500, getKeysPerSelect( 4, 500 ) );
+        assertEquals( 400, getKeysPerSelect( 5, 500 ) );
+        assertEquals( 1000, getKeysPerSelect( 2, 5000 ) );
+        for ( int columns = 1; columns < 10; columns++ ) {
+            assertFalse( columns * getKeysPerSelect( columns, 5000 ) > 2100 );
+        }
+    }
+
+    @Test
+    public void testKeysPerSelectAtLeastOne() {
+        assertEquals( 1, getKeysPerSelect( 1, 1 ) );
+        assertEquals( 1, getKeysPerSelect( 3000, 500 ) );
+    }
+
+    private FeatureBuilderRelational createBuilder( Set<QName> projectedProps ) {
+        return new FeatureBuilderRelational( fs, ft, ftMapping, conn, "X1", false, projectedProps );
+    }
+
+    /**
+     * Builds the features for all roads, either in blocks or one by one.
+     */
+    private List<Feature> buildFeatures( FeatureBuilderRelational builder, boolean block )
+                            throws SQLException {
+        List<String> columns = builder.getInitialSelectColumns();
+        ResultSet rs = resultSet( ROADS.select( columns, Collections.emptyList() ), null );
+        List<Feature> features = new ArrayList<Feature>();
+        if ( block ) {
+            List<Feature> built = builder.buildFeatures( rs );
+            while ( !built.isEmpty() ) {
+                features.addAll( built );
+                built = builder.buildFeatures( rs );
+            }
+        } else {
+            while ( rs.next() ) {
+                features.add( builder.buildFeature( rs ) );
+            }
+        }
+        return features;
+    }
+
+    private PrimitiveMapping primitive( ValueReference path, String column, List<TableJoin> joins ) {
+        PrimitiveMapping mapping = new PrimitiveMapping( path, true, new DBField( column ), new PrimitiveType( STRING ),
+                                                         joins, null );
+        doReturn( new ColumnConverter( column ) ).when( fs ).getConverter( mapping );
+        return mapping;
+    }
+
+    private static List<TableJoin> join( String fromTable, String toTable, String fromColumn, String toColumn ) {
+        TableJoin join = new TableJoin( new TableName( fromTable ), new TableName( toTable ), asList( fromColumn ),
+                                        asList( toColumn ), null, false, null );
+        return Collections.singletonList( join );
+    }
+
+    private static Set<QName> set( QName... propNames ) {
+        return new HashSet<QName>( asList( propNames ) );
+    }
+
+    private static List<String> values( Feature feature, QName propName ) {
+        List<String> values = new ArrayList<String>();
+        for ( Property prop : feature.getProperties( propName ) ) {
+            values.add( prop.getValue().toString() );
+        }
+        return values;
+    }
+
+    /**
+     * Returns the particles of the sections of the given feature, e.g. <code>length=100,sign=stop</code>.
+     */
+    private static List<String> sections( Feature feature ) {
+        List<String> sections = new ArrayList<String>();
+        for ( Property prop : feature.getProperties( SECTION ) ) {
+            StringBuilder sb = new StringBuilder();
+            for ( TypedObjectNode child : prop.getChildren() ) {
+                GenericXMLElement el = (GenericXMLElement) child;
+                if ( sb.length() > 0 ) {
+                    sb.append( ',' );
+                }
+                sb.append( el.getName().getLocalPart() ).append( '=' ).append( el.getChildren().get( 0 ) );
+            }
+            sections.add( sb.toString() );
+        }
+        return sections;
+    }
+
+    /**
+     * Answers the (joined) SELECTs issued by the builder from the tables of the fixture.
+     */
+    private PreparedStatement prepare( String sql )
+                            throws SQLException {
+        int from = sql.indexOf( " FROM " );
+        final List<String> columns = asList( sql.substring( "SELECT ".length(), from ).split( "," ) );
+        String tableName = sql.substring( from + " FROM ".length(), sql.indexOf( ' ', from + " FROM ".length() ) );
+        final Table table = getTable( tableName );
+        final List<Object> params = new ArrayList<Object>();
+        parameters.add( params );
+        final PreparedStatement stmt = mock( PreparedStatement.class );
+        doAnswer( new Answer<Void>() {
+            @Override
+            public Void answer( InvocationOnMock invocation ) {
+                assertEquals( params.size() + 1, invocation.getArguments()[0] );
+                params.add( invocation.getArguments()[1] );
+                return null;
+            }
+        } ).when( stmt ).setObject( anyInt(), any() );
+        when( stmt.executeQuery() ).thenAnswer( new Answer<ResultSet>() {
+            @Override
+            public ResultSet answer( InvocationOnMock invocation )
+                                    throws Throwable {
+                return resultSet( table.select( columns, params ), stmt );
+            }
+        } );
+        return stmt;
+    }
+
+    private static Table getTable( String name ) {
+        for ( Table table : new Table[] { LANES, SECTIONS, SIGNS } ) {
+            if ( table.name.equals( name ) ) {
+                return table;
+            }
+        }
+        throw new IllegalArgumentException( "No table '" + name + "'." );
+    }
+
+    private static Object[] row( Object... values ) {
+        return values;
+    }
+
+    private static ResultSet resultSet( final List<Object[]> rows, Statement stmt )
+                            throws SQLException {
+        final int[] current = { -1 };
+        ResultSet rs = mock( ResultSet.class );
+        when( rs.next() ).thenAnswer( new Answer<Boolean>() {
+            @Override
+            public Boolean answer( InvocationOnMock invocation ) {
+                return ++current[0] < rows.size();
+            }
+        } );
+        when( rs.getObject( anyInt() ) ).thenAnswer( new Answer<Object>() {
+            @Override
+            public Object answer( InvocationOnMock invocation ) {
+                return rows.get( current[0] )[(Integer) invocation.getArguments()[0] - 1];
+            }
+        } );
+        when( rs.getStatement() ).thenReturn( stmt );
+        return rs;
+    }
+
+    /**
+     * Rows of a table, the key columns are the ones the joined rows are selected by.
+     */
+    private static class Table {
+
+        private final String name;
+
+        private final List<String> columns;
+
+        private final List<String> keyColumns;
+
+        private final Object[][] rows;
+
+        Table( String name, List<String> columns, List<String> keyColumns, Object[]... rows ) {
+            this.name = name;
+            this.columns = columns;
+            this.keyColumns = keyColumns;
+            this.rows = rows;
+        }
+
+        /**
+         * Selects the given (qualified) columns of the rows that match any of the keys given as statement parameters.
+         */
+        List<Object[]> select( List<String> selectColumns, List<Object> params ) {
+            List<Object[]> result = new ArrayList<Object[]>();
+            for ( Object[] row : rows ) {
+                if ( keyColumns.isEmpty() || matches( row, params ) ) {
+                    Object[] values = new Object[selectColumns.size()];
+                    for ( int i = 0; i < values.length; i++ ) {
+                        String column = selectColumns.get( i );
+                        values[i] = row[columns.indexOf( column.substring( column.indexOf( '.' ) + 1 ) )];
+                    }
+                    result.add( values );
+                }
+            }
+            return result;
+        }
+
+        private boolean matches( Object[] row, List<Object> params ) {
+            for ( int i = 0; i < params.size(); i += keyColumns.size() ) {
+                boolean matches = true;
+                for ( int j = 0; j < keyColumns.size(); j++ ) {
+                    Object value = row[columns.indexOf( keyColumns.get( j ) )];
+                    // the database compares numbers of different types by value
+                    matches &= String.valueOf( value ).equals( String.valueOf( params.get( i + j ) ) );
+                }
+                if ( matches ) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+    }
+
+    /**
+     * Converts a single column to a string value.
+     */
+    private static class ColumnConverter implements ParticleConverter<PrimitiveValue> {
+
+        private final String column;
+
+        ColumnConverter( String column ) {
+            this.column = column;
+        }
+
+        @Override
+        public String getSelectSnippet( String tableAlias ) {
+            return tableAlias + "." + column;
+        }
+
+        @Override
+        public PrimitiveValue toParticle( ResultSet rs, int colIndex )
+                                throws SQLException {
+            Object value = rs.getObject( colIndex );
+            return value == null ? null : new PrimitiveValue( value.toString(), new PrimitiveType( STRING ) );
+        }
+
+        @Override
+        public String getSetSnippet( PrimitiveValue particle ) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setParticle( PreparedStatement stmt, PrimitiveValue particle, int paramIndex )
+                                throws SQLException {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+}
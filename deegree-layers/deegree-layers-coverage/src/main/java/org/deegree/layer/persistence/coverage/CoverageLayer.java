@@ -35,6 +35,7 @@
  ----------------------------------------------------------------------------*/
 package org.deegree.layer.persistence.coverage;
 
+import static org.deegree.coverage.raster.interpolation.InterpolationType.BICUBIC;
 import static org.deegree.coverage.raster.interpolation.InterpolationType.BILINEAR;
 import static org.deegree.coverage.raster.interpolation.InterpolationType.NEAREST_NEIGHBOR;
 import static org.slf4j.LoggerFactory.getLogger;
@@ -49,6 +50,7 @@ import org.deegree.coverage.raster.interpolation.InterpolationType;
 import org.deegree.geometry.Envelope;
 import org.deegree.layer.AbstractLayer;
 import org.deegree.layer.LayerQuery;
+import org.deegree.layer.MapCostEstimator;
 import org.deegree.layer.metadata.LayerMetadata;
 import org.deegree.rendering.r2d.context.MapOptions.Interpolation;
 import org.deegree.style.StyleRef;
@@ -62,7 +64,7 @@ import org.slf4j.Logger;
  *
  * @version $Revision: $, $Date: $
  */
-public class CoverageLayer extends AbstractLayer {
+public class CoverageLayer extends AbstractLayer implements MapCostEstimator {
 
     private static final Logger LOG = getLogger( CoverageLayer.class );
 
@@ -98,7 +100,7 @@ public class CoverageLayer extends AbstractLayer {
             }
 
             return new CoverageLayerData( raster, bbox, query.getWidth(), query.getHeight(), interpol, filter, style,
-                                          getMetadata().getFeatureTypes().get( 0 ) );
+                                          getMetadata().getFeatureTypes().get( 0 ), RasterWindowCache.INSTANCE, this );
         } catch ( OWSException e ) {
             throw e;
         } catch ( Throwable e ) {
@@ -108,12 +110,36 @@ public class CoverageLayer extends AbstractLayer {
         return null;
     }
 
+    /**
+     * Estimates the cost from the map size, weighted by the resampling effort of the requested interpolation.
+     */
+    @Override
+    public double estimateMapCost( LayerQuery query ) {
+        double cost = (double) query.getWidth() * query.getHeight() / 1000000;
+        Interpolation fromRequest = query.getRenderingOptions().getInterpolation( getMetadata().getName() );
+        switch ( determineInterpolation( fromRequest ) ) {
+        case BICUBIC:
+            return 4 * cost;
+        case BILINEAR:
+            return 2 * cost;
+        default:
+            return cost;
+        }
+    }
+
+    @Override
+    public void destroy() {
+        RasterWindowCache.INSTANCE.invalidate( this );
+        super.destroy();
+    }
+
     private InterpolationType determineInterpolation( Interpolation fromRequest ) {
         InterpolationType interpol = NEAREST_NEIGHBOR;
         if ( fromRequest != null ) {
             switch ( fromRequest ) {
             case BICUBIC:
-                LOG.warn( "Raster API does not support bicubic interpolation, using bilinear instead." );
+                interpol = BICUBIC;
+                break;
             case BILINEAR:
                 interpol = BILINEAR;
                 break;
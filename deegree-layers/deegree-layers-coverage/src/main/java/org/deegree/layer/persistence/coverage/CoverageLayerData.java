@@ -87,8 +87,24 @@ public class CoverageLayerData implements LayerData {
 
     private final FeatureType featureType;
 
+    private final RasterWindowCache cache;
+
+    private final Object coverage;
+
     public CoverageLayerData( AbstractRaster raster, Envelope bbox, int width, int height, InterpolationType interpol,
                               RangeSet filter, Style style, FeatureType featureType ) {
+        this( raster, bbox, width, height, interpol, filter, style, featureType, null, null );
+    }
+
+    /**
+     * @param cache
+     *            used to look up the transformed raster, may be <code>null</code>
+     * @param coverage
+     *            the owner of the raster within the cache, may be <code>null</code> if no cache is used
+     */
+    CoverageLayerData( AbstractRaster raster, Envelope bbox, int width, int height, InterpolationType interpol,
+                       RangeSet filter, Style style, FeatureType featureType, RasterWindowCache cache,
+                       Object coverage ) {
         this.raster = raster;
         this.bbox = bbox;
         this.width = width;
@@ -97,6 +113,8 @@ public class CoverageLayerData implements LayerData {
         this.filter = filter;
         this.style = style;
         this.featureType = featureType;
+        this.cache = cache;
+        this.coverage = coverage;
     }
 
     @Override
@@ -104,8 +122,12 @@ public class CoverageLayerData implements LayerData {
         try {
             RasterRenderer renderer = context.getRasterRenderer();
 
-            raster = CoverageTransform.transform( this.raster, bbox, Grid.fromSize( width, height, MAX_VALUE, bbox ),
-                                                  interpol.toString() );
+            if ( cache != null ) {
+                raster = cache.transform( coverage, this.raster, bbox, width, height, interpol );
+            } else {
+                raster = CoverageTransform.transform( this.raster, bbox, Grid.fromSize( width, height, MAX_VALUE,
+                                                                                        bbox ), interpol.toString() );
+            }
 
             if ( filter != null ) {
                 RangeSet cbr = createBandRangeSetFromRaster( null, null, raster );
@@ -0,0 +1,350 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.layer.persistence.coverage;
+
+import static java.lang.Integer.MAX_VALUE;
+import static java.lang.Math.abs;
+import static java.lang.Math.floor;
+import static java.lang.Math.log10;
+import static java.lang.Math.pow;
+import static java.lang.Math.round;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import org.deegree.commons.tom.ReferenceResolvingException;
+import org.deegree.coverage.raster.AbstractRaster;
+import org.deegree.coverage.raster.SimpleRaster;
+import org.deegree.coverage.raster.data.RasterData;
+import org.deegree.coverage.raster.data.info.RasterDataInfo;
+import org.deegree.coverage.raster.geom.Grid;
+import org.deegree.coverage.raster.geom.RasterGeoReference;
+import org.deegree.coverage.raster.geom.RasterRect;
+import org.deegree.coverage.raster.interpolation.InterpolationType;
+import org.deegree.coverage.raster.utils.CoverageTransform;
+import org.deegree.cs.coordinatesystems.ICRS;
+import org.deegree.cs.exceptions.TransformationException;
+import org.deegree.geometry.Envelope;
+import org.deegree.geometry.GeometryFactory;
+import org.slf4j.Logger;
+
+/**
+ * Caches reprojected and resampled windows of coverages, so map requests covering the same area at the same resolution
+ * (eg. when panning) can be answered by cropping a cached window.
+ * <p>
+ * Windows are aligned to a pixel grid that is determined by the target CRS, the resolution and the sub pixel offset of
+ * the request, and are expanded to multiples of {@value #BLOCK_SIZE} pixels. The cache is limited by the number of
+ * bytes of the cached raster data (system property <code>deegree.layer.coverage.cache.bytes</code>, 0 disables the
+ * cache), least recently used windows are evicted first. Requests that do not fit into the cache or use a CRS with
+ * northing as first axis are transformed directly.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ *
+ * @version $Revision$, $Date$
+ */
+class RasterWindowCache {
+
+    private static final Logger LOG = getLogger( RasterWindowCache.class );
+
+    /** Maximum number of bytes of cached raster data, if not configured otherwise. */
+    static final long DEFAULT_MAX_BYTES = 128L * 1024 * 1024;
+
+    /** Windows are expanded to multiples of this number of pixels. */
+    static final int BLOCK_SIZE = 256;
+
+    private static final int MAX_REQUEST_SIZE = 2048;
+
+    // sub pixel offsets are distinguished in steps of 1/100 pixel
+    private static final int PHASE_STEPS = 100;
+
+    static final RasterWindowCache INSTANCE = new RasterWindowCache( Long.getLong( "deegree.layer.coverage.cache.bytes",
+                                                                                   DEFAULT_MAX_BYTES ) );
+
+    private final long maxBytes;
+
+    private final LinkedHashMap<Window, Window> windows = new LinkedHashMap<Window, Window>( 16, 0.75f, true );
+
+    private long bytes;
+
+    /**
+     * @param maxBytes
+     *            maximum number of bytes of cached raster data, 0 or less disables the cache
+     */
+    RasterWindowCache( long maxBytes ) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the raster transformed into the given envelope and size, as {@link CoverageTransform#transform} does.
+     *
+     * @param coverage
+     *            the owner of the raster, used to invalidate its windows, must not be <code>null</code>
+     * @param raster
+     *            the raster to transform
+     * @param bbox
+     *            the requested envelope
+     * @param width
+     *            the requested number of columns
+     * @param height
+     *            the requested number of rows
+     * @param interpol
+     *            the interpolation type
+     * @return a raster with the requested envelope and size, never shared with other callers
+     * @throws TransformationException
+     */
+    AbstractRaster transform( Object coverage, AbstractRaster raster, Envelope bbox, int width, int height,
+                              InterpolationType interpol )
+                            throws TransformationException {
+        double resX = bbox.getSpan0() / width;
+        double resY = bbox.getSpan1() / height;
+        if ( maxBytes <= 0 || width > MAX_REQUEST_SIZE || height > MAX_REQUEST_SIZE || !( resX > 0 )
+             || !( resY > 0 ) || !isEastingFirst( bbox.getCoordinateSystem() ) ) {
+            return transformDirectly( raster, bbox, width, height, interpol );
+        }
+
+        long qx = round( bbox.getMin().get0() / resX * PHASE_STEPS );
+        long qy = round( -bbox.getMax().get1() / resY * PHASE_STEPS );
+        long col = floorDiv( qx, PHASE_STEPS );
+        long row = floorDiv( qy, PHASE_STEPS );
+        int phaseX = (int) ( qx - col * PHASE_STEPS );
+        int phaseY = (int) ( qy - row * PHASE_STEPS );
+        Level level = new Level( coverage, raster, bbox.getCoordinateSystem(), interpol, normalize( resX ),
+                                 normalize( resY ), phaseX, phaseY );
+
+        Window window = find( level, col, row, width, height );
+        if ( window != null ) {
+            LOG.debug( "Cropping {}x{} pixels from cached coverage window.", width, height );
+            return window.crop( col, row, width, height, bbox );
+        }
+
+        long minCol = floorDiv( col, BLOCK_SIZE ) * BLOCK_SIZE;
+        long minRow = floorDiv( row, BLOCK_SIZE ) * BLOCK_SIZE;
+        int cols = (int) ( floorDiv( col + width + BLOCK_SIZE - 1, BLOCK_SIZE ) * BLOCK_SIZE - minCol );
+        int rows = (int) ( floorDiv( row + height + BLOCK_SIZE - 1, BLOCK_SIZE ) * BLOCK_SIZE - minRow );
+        RasterDataInfo info = raster.getRasterDataInfo();
+        long windowBytes = (long) cols * rows * info.bands * info.dataSize;
+        if ( windowBytes > maxBytes ) {
+            return transformDirectly( raster, bbox, width, height, interpol );
+        }
+
+        double minX = ( minCol + phaseX / (double) PHASE_STEPS ) * resX;
+        double maxY = -( minRow + phaseY / (double) PHASE_STEPS ) * resY;
+        Envelope windowEnv = new GeometryFactory().createEnvelope( minX, maxY - rows * resY, minX + cols * resX, maxY,
+                                                                   bbox.getCoordinateSystem() );
+        AbstractRaster result = transformDirectly( raster, windowEnv, cols, rows, interpol );
+        if ( result.getColumns() != cols || result.getRows() != rows ) {
+            LOG.debug( "Transformed coverage window does not have the expected size, not caching it." );
+            return transformDirectly( raster, bbox, width, height, interpol );
+        }
+
+        window = new Window( level, minCol, minRow, cols, rows, result.getAsSimpleRaster(), windowBytes );
+        add( window );
+        LOG.debug( "Cached coverage window of {}x{} pixels.", cols, rows );
+        return window.crop( col, row, width, height, bbox );
+    }
+
+    /**
+     * Removes all windows of the given coverage.
+     *
+     * @param coverage
+     */
+    synchronized void invalidate( Object coverage ) {
+        Iterator<Window> iter = windows.keySet().iterator();
+        while ( iter.hasNext() ) {
+            Window window = iter.next();
+            if ( window.level.coverage == coverage ) {
+                iter.remove();
+                bytes -= window.bytes;
+            }
+        }
+    }
+
+    private synchronized Window find( Level level, long col, long row, int width, int height ) {
+        for ( Window window : windows.keySet() ) {
+            if ( window.contains( level, col, row, width, height ) ) {
+                // update the access order
+                windows.get( window );
+                return window;
+            }
+        }
+        return null;
+    }
+
+    private synchronized void add( Window window ) {
+        windows.put( window, window );
+        bytes += window.bytes;
+        Iterator<Window> iter = windows.keySet().iterator();
+        while ( bytes > maxBytes && iter.hasNext() ) {
+            Window eldest = iter.next();
+            if ( eldest != window ) {
+                iter.remove();
+                bytes -= eldest.bytes;
+            }
+        }
+    }
+
+    /**
+     * Transforms the raster into the given envelope and size without using the cache.
+     */
+    AbstractRaster transformDirectly( AbstractRaster raster, Envelope bbox, int width, int height,
+                                      InterpolationType interpol )
+                            throws TransformationException {
+        return CoverageTransform.transform( raster, bbox, Grid.fromSize( width, height, MAX_VALUE, bbox ),
+                                            interpol.toString() );
+    }
+
+    private static boolean isEastingFirst( ICRS crs ) {
+        if ( crs == null ) {
+            return true;
+        }
+        try {
+            return crs.getEasting() == 0;
+        } catch ( ReferenceResolvingException e ) {
+            // assume x == easting, as the raster geo reference does
+            return true;
+        }
+    }
+
+    private static long floorDiv( long x, long y ) {
+        long result = x / y;
+        if ( ( x % y != 0 ) && ( ( x < 0 ) != ( y < 0 ) ) ) {
+            --result;
+        }
+        return result;
+    }
+
+    /**
+     * Rounds to ten significant digits, so resolutions calculated from slightly different envelopes match.
+     */
+    private static double normalize( double res ) {
+        double scale = pow( 10, 9 - floor( log10( abs( res ) ) ) );
+        return round( res * scale ) / scale;
+    }
+
+    /**
+     * Identifies a pixel grid of a coverage.
+     */
+    private static class Level {
+
+        final Object coverage;
+
+        final AbstractRaster raster;
+
+        final ICRS crs;
+
+        final InterpolationType interpol;
+
+        final double resX, resY;
+
+        final int phaseX, phaseY;
+
+        Level( Object coverage, AbstractRaster raster, ICRS crs, InterpolationType interpol, double resX,
+               double resY, int phaseX, int phaseY ) {
+            this.coverage = coverage;
+            this.raster = raster;
+            this.crs = crs;
+            this.interpol = interpol;
+            this.resX = resX;
+            this.resY = resY;
+            this.phaseX = phaseX;
+            this.phaseY = phaseY;
+        }
+
+        @Override
+        public boolean equals( Object o ) {
+            if ( !( o instanceof Level ) ) {
+                return false;
+            }
+            Level that = (Level) o;
+            return coverage == that.coverage && raster == that.raster && interpol == that.interpol
+                   && resX == that.resX && resY == that.resY && phaseX == that.phaseX && phaseY == that.phaseY
+                   && ( crs == null ? that.crs == null : crs.equals( that.crs ) );
+        }
+
+        @Override
+        public int hashCode() {
+            long bits = Double.doubleToLongBits( resX ) * 31 + Double.doubleToLongBits( resY );
+            return System.identityHashCode( raster ) * 31 + (int) ( bits ^ ( bits >>> 32 ) ) + phaseX * 101 + phaseY;
+        }
+    }
+
+    /**
+     * A cached window, the raster is never handed out but only copied from.
+     */
+    private static class Window {
+
+        final Level level;
+
+        final long minCol, minRow;
+
+        final int cols, rows;
+
+        final SimpleRaster raster;
+
+        final long bytes;
+
+        Window( Level level, long minCol, long minRow, int cols, int rows, SimpleRaster raster, long bytes ) {
+            this.level = level;
+            this.minCol = minCol;
+            this.minRow = minRow;
+            this.cols = cols;
+            this.rows = rows;
+            this.raster = raster;
+            this.bytes = bytes;
+        }
+
+        boolean contains( Level level, long col, long row, int width, int height ) {
+            return col >= minCol && row >= minRow && col + width <= minCol + cols && row + height <= minRow + rows
+                   && this.level.equals( level );
+        }
+
+        AbstractRaster crop( long col, long row, int width, int height, Envelope bbox ) {
+            RasterData data;
+            // reading from the raster data is not thread safe
+            synchronized ( this ) {
+                RasterData src = raster.getRasterData();
+                data = src.createCompatibleWritableRasterData( new RasterRect( 0, 0, width, height ), null );
+                data.setSubset( 0, 0, width, height, src, (int) ( col - minCol ), (int) ( row - minRow ) );
+            }
+            RasterGeoReference ref = RasterGeoReference.create( raster.getRasterReference().getOriginLocation(),
+                                                                bbox, width, height );
+            return new SimpleRaster( data, bbox, ref, null );
+        }
+    }
+
+}
@@ -0,0 +1,246 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.layer.persistence.coverage;
+
+import static java.lang.Math.round;
+import static org.deegree.coverage.raster.data.RasterDataFactory.createRasterData;
+import static org.deegree.coverage.raster.geom.RasterGeoReference.OriginLocation.OUTER;
+import static org.deegree.coverage.raster.interpolation.InterpolationType.BILINEAR;
+import static org.deegree.coverage.raster.interpolation.InterpolationType.NEAREST_NEIGHBOR;
+import static org.deegree.layer.persistence.coverage.RasterWindowCache.BLOCK_SIZE;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.deegree.coverage.raster.AbstractRaster;
+import org.deegree.coverage.raster.SimpleRaster;
+import org.deegree.coverage.raster.data.RasterData;
+import org.deegree.coverage.raster.data.info.DataType;
+import org.deegree.coverage.raster.geom.RasterGeoReference;
+import org.deegree.coverage.raster.interpolation.InterpolationType;
+import org.deegree.geometry.Envelope;
+import org.deegree.geometry.GeometryFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link RasterWindowCache}. The transformation is replaced by one that creates rasters with values derived
+ * from the pixel position, so the cropped results can be checked.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+public class RasterWindowCacheTest {
+
+    private static final GeometryFactory FAC = new GeometryFactory();
+
+    private static final long WINDOW_BYTES = BLOCK_SIZE * BLOCK_SIZE;
+
+    private final Object coverage = new Object();
+
+    private AbstractRaster source;
+
+    /**
+     * Records the transformations and creates byte rasters with a value of {@link #value(long, long)} at each pixel.
+     */
+    private static class TestCache extends RasterWindowCache {
+
+        final List<Envelope> transformed = new ArrayList<Envelope>();
+
+        TestCache( long maxBytes ) {
+            super( maxBytes );
+        }
+
+        @Override
+        AbstractRaster transformDirectly( AbstractRaster raster, Envelope bbox, int width, int height,
+                                          InterpolationType interpol ) {
+            transformed.add( bbox );
+            long minCol = round( bbox.getMin().get0() / ( bbox.getSpan0() / width ) );
+            long minRow = round( -bbox.getMax().get1() / ( bbox.getSpan1() / height ) );
+            RasterData data = createRasterData( width, height, DataType.BYTE, false );
+            for ( int y = 0; y < height; y++ ) {
+                for ( int x = 0; x < width; x++ ) {
+                    data.setByteSample( x, y, 0, value( minCol + x, minRow + y ) );
+                }
+            }
+            return createRaster( data, bbox );
+        }
+    }
+
+    private static byte value( long col, long row ) {
+        return (byte) ( 7 * col + 13 * row );
+    }
+
+    private static SimpleRaster createRaster( RasterData data, Envelope bbox ) {
+        RasterGeoReference ref = RasterGeoReference.create( OUTER, bbox, data.getColumns(), data.getRows() );
+        return new SimpleRaster( data, bbox, ref, null );
+    }
+
+    @Before
+    public void setup() {
+        source = createRaster( createRasterData( 1, 1, DataType.BYTE, false ), FAC.createEnvelope( 0, 0, 1, 1, null ) );
+    }
+
+    /**
+     * Requests width x height pixels of resolution 1 starting at the given pixel column and row.
+     */
+    private AbstractRaster request( RasterWindowCache cache, long col, long row, int width, int height )
+                            throws Exception {
+        Envelope bbox = FAC.createEnvelope( col, -row - height, col + width, -row, null );
+        return cache.transform( coverage, source, bbox, width, height, NEAREST_NEIGHBOR );
+    }
+
+    private static void assertPixels( AbstractRaster raster, long col, long row, int width, int height ) {
+        assertEquals( width, raster.getColumns() );
+        assertEquals( height, raster.getRows() );
+        RasterData data = raster.getAsSimpleRaster().getRasterData();
+        for ( int y = 0; y < height; y++ ) {
+            for ( int x = 0; x < width; x++ ) {
+                assertEquals( value( col + x, row + y ), data.getByteSample( x, y, 0 ) );
+            }
+        }
+    }
+
+    @Test
+    public void testWindowIsReusedWhenPanning() throws Exception {
+        TestCache cache = new TestCache( 4 * WINDOW_BYTES );
+        assertPixels( request( cache, 10, 10, 100, 100 ), 10, 10, 100, 100 );
+        assertEquals( 1, cache.transformed.size() );
+        Envelope window = cache.transformed.get( 0 );
+        assertEquals( 0, window.getMin().get0(), 1e-9 );
+        assertEquals( -BLOCK_SIZE, window.getMin().get1(), 1e-9 );
+        assertEquals( BLOCK_SIZE, window.getMax().get0(), 1e-9 );
+        assertEquals( 0, window.getMax().get1(), 1e-9 );
+
+        assertPixels( request( cache, 50, 60, 100, 100 ), 50, 60, 100, 100 );
+        assertPixels( request( cache, 156, 156, 100, 100 ), 156, 156, 100, 100 );
+        assertEquals( 1, cache.transformed.size() );
+    }
+
+    @Test
+    public void testWindowIsExpandedToBlocks() throws Exception {
+        TestCache cache = new TestCache( 16 * WINDOW_BYTES );
+        assertPixels( request( cache, 200, -20, 100, 100 ), 200, -20, 100, 100 );
+        assertEquals( 1, cache.transformed.size() );
+        Envelope window = cache.transformed.get( 0 );
+        // columns 0 to 512, rows -256 to 256
+        assertEquals( 0, window.getMin().get0(), 1e-9 );
+        assertEquals( 2 * BLOCK_SIZE, window.getMax().get0(), 1e-9 );
+        assertEquals( -BLOCK_SIZE, window.getMin().get1(), 1e-9 );
+        assertEquals( BLOCK_SIZE, window.getMax().get1(), 1e-9 );
+    }
+
+    @Test
+    public void testOtherResolutionOrInterpolationIsNotReused() throws Exception {
+        TestCache cache = new TestCache( 4 * WINDOW_BYTES );
+        request( cache, 10, 10, 100, 100 );
+        // same envelope, half the resolution
+        Envelope bbox = FAC.createEnvelope( 10, -110, 110, -10, null );
+        cache.transform( coverage, source, bbox, 50, 50, NEAREST_NEIGHBOR );
+        assertEquals( 2, cache.transformed.size() );
+        // same envelope and resolution, other interpolation
+        cache.transform( coverage, source, bbox, 100, 100, BILINEAR );
+        assertEquals( 3, cache.transformed.size() );
+        // sub pixel offset
+        bbox = FAC.createEnvelope( 10.5, -110, 110.5, -10, null );
+        cache.transform( coverage, source, bbox, 100, 100, NEAREST_NEIGHBOR );
+        assertEquals( 4, cache.transformed.size() );
+    }
+
+    @Test
+    public void testLeastRecentlyUsedWindowIsEvicted() throws Exception {
+        TestCache cache = new TestCache( 2 * WINDOW_BYTES );
+        request( cache, 0, 0, 100, 100 );
+        request( cache, BLOCK_SIZE, 0, 100, 100 );
+        assertEquals( 2, cache.transformed.size() );
+        // touch the first window, so the second one is the least recently used
+        request( cache, 10, 10, 100, 100 );
+        assertEquals( 2, cache.transformed.size() );
+        request( cache, 2 * BLOCK_SIZE, 0, 100, 100 );
+        assertEquals( 3, cache.transformed.size() );
+
+        // first and third window are still cached
+        assertPixels( request( cache, 20, 20, 100, 100 ), 20, 20, 100, 100 );
+        assertPixels( request( cache, 2 * BLOCK_SIZE + 20, 20, 100, 100 ), 2 * BLOCK_SIZE + 20, 20, 100, 100 );
+        assertEquals( 3, cache.transformed.size() );
+
+        // second window has been evicted
+        assertPixels( request( cache, BLOCK_SIZE + 20, 20, 100, 100 ), BLOCK_SIZE + 20, 20, 100, 100 );
+        assertEquals( 4, cache.transformed.size() );
+    }
+
+    @Test
+    public void testWindowLargerThanCacheIsTransformedDirectly() throws Exception {
+        TestCache cache = new TestCache( WINDOW_BYTES );
+        // needs a window of 2 x 1 blocks
+        assertPixels( request( cache, 200, 0, 100, 100 ), 200, 0, 100, 100 );
+        assertPixels( request( cache, 200, 0, 100, 100 ), 200, 0, 100, 100 );
+        assertEquals( 2, cache.transformed.size() );
+        assertEquals( 100, cache.transformed.get( 0 ).getSpan0(), 1e-9 );
+    }
+
+    @Test
+    public void testDisabledCache() throws Exception {
+        TestCache cache = new TestCache( 0 );
+        request( cache, 10, 10, 100, 100 );
+        request( cache, 10, 10, 100, 100 );
+        assertEquals( 2, cache.transformed.size() );
+        assertEquals( 100, cache.transformed.get( 1 ).getSpan0(), 1e-9 );
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        TestCache cache = new TestCache( 4 * WINDOW_BYTES );
+        request( cache, 10, 10, 100, 100 );
+        cache.invalidate( new Object() );
+        request( cache, 10, 10, 100, 100 );
+        assertEquals( 1, cache.transformed.size() );
+        cache.invalidate( coverage );
+        request( cache, 10, 10, 100, 100 );
+        assertEquals( 2, cache.transformed.size() );
+    }
+
+    @Test
+    public void testCroppedRasterIsNotShared() throws Exception {
+        TestCache cache = new TestCache( 4 * WINDOW_BYTES );
+        AbstractRaster first = request( cache, 10, 10, 100, 100 );
+        first.getAsSimpleRaster().getRasterData().setByteSample( 0, 0, 0, (byte) 42 );
+        assertPixels( request( cache, 10, 10, 100, 100 ), 10, 10, 100, 100 );
+    }
+
+}
@@ -49,6 +49,7 @@ import java.util.Map;
 import org.deegree.commons.config.ResourceInitException;
 import org.deegree.feature.persistence.FeatureStore;
 import org.deegree.feature.persistence.FeatureStoreProvider;
+import org.deegree.feature.stream.FeatureStreamExecutor;
 import org.deegree.feature.types.FeatureType;
 import org.deegree.layer.Layer;
 import org.deegree.layer.metadata.LayerMetadata;
@@ -104,14 +105,16 @@ class AutoFeatureLayerBuilder {
                                              + " is not available." );
         }
 
+        FeatureStreamExecutor streamExecutor = FeatureLayer.getStreamExecutor( workspace, auto.getFeatureStoreId() );
         for ( FeatureType ft : store.getSchema().getFeatureTypes() ) {
-            addLayer( store, ft, sstore, map );
+            addLayer( store, ft, sstore, map, streamExecutor );
         }
 
         return new MultipleLayerStore( map, metadata );
     }
 
-    private void addLayer( FeatureStore store, FeatureType ft, StyleStore sstore, Map<String, Layer> map ) {
+    private void addLayer( FeatureStore store, FeatureType ft, StyleStore sstore, Map<String, Layer> map,
+                           FeatureStreamExecutor streamExecutor ) {
         String name = ft.getName().getLocalPart();
         LOG.debug( "Adding layer {}.", name );
         LayerMetadata md = LayerMetadataBuilder.buildMetadataForAutoMode( store, ft, name );
@@ -130,7 +133,7 @@ class AutoFeatureLayerBuilder {
             styles.put( "default", new Style() );
         }
         md.setStyles( styles );
-        Layer l = new FeatureLayer( md, store, ft.getName(), null, null, null );
+        Layer l = new FeatureLayer( md, store, ft.getName(), null, null, null, streamExecutor );
         map.put( name, l );
     }
 
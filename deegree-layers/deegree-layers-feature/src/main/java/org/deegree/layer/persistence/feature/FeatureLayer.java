@@ -45,6 +45,7 @@ import static org.deegree.layer.persistence.feature.FilterBuilder.buildFilterFor
 import static org.deegree.style.utils.Styles.getStyleFilters;
 import static org.slf4j.LoggerFactory.getLogger;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -54,19 +55,25 @@ import javax.xml.namespace.QName;
 import org.deegree.commons.ows.exception.OWSException;
 import org.deegree.feature.persistence.FeatureStore;
 import org.deegree.feature.persistence.query.Query;
+import org.deegree.feature.stream.FeatureStreamExecutor;
+import org.deegree.feature.stream.FeatureStreamExecutors;
 import org.deegree.feature.types.AppSchemas;
 import org.deegree.filter.Expression;
 import org.deegree.filter.Filters;
 import org.deegree.filter.OperatorFilter;
 import org.deegree.filter.expression.ValueReference;
+import org.deegree.filter.projection.ProjectionClause;
 import org.deegree.filter.sort.SortProperty;
 import org.deegree.geometry.Envelope;
 import org.deegree.layer.AbstractLayer;
+import org.deegree.layer.LabelingLayer;
 import org.deegree.layer.LayerQuery;
+import org.deegree.layer.MapCostEstimator;
 import org.deegree.layer.metadata.LayerMetadata;
 import org.deegree.style.StyleRef;
 import org.deegree.style.se.unevaluated.Style;
 import org.deegree.style.utils.Styles;
+import org.deegree.workspace.Workspace;
 import org.slf4j.Logger;
 
 /**
@@ -76,10 +83,13 @@ import org.slf4j.Logger;
  * 
  * @version $Revision: $, $Date: $
  */
-public class FeatureLayer extends AbstractLayer {
+public class FeatureLayer extends AbstractLayer implements MapCostEstimator, LabelingLayer {
 
     private static final Logger LOG = getLogger( FeatureLayer.class );
 
+    // number of features that cost as much as rendering one megapixel
+    private static final double FEATURES_PER_COST_UNIT = 10000;
+
     private final FeatureStore featureStore;
 
     private final OperatorFilter filter;
@@ -90,10 +100,29 @@ public class FeatureLayer extends AbstractLayer {
 
     private final DimensionFilterBuilder dimFilterBuilder;
 
+    private final FeatureStreamExecutor streamExecutor;
+
     public FeatureLayer( LayerMetadata md, FeatureStore featureStore, QName featureType, OperatorFilter filter,
                          List<SortProperty> sortBy, List<SortProperty> sortByFeatureInfo ) {
+        this( md, featureStore, featureType, filter, sortBy, sortByFeatureInfo, null );
+    }
+
+    /**
+     * @param md
+     * @param featureStore
+     * @param featureType
+     * @param filter
+     * @param sortBy
+     * @param sortByFeatureInfo
+     * @param streamExecutor
+     *            executor to read the features in the background while rendering, may be <code>null</code>
+     */
+    public FeatureLayer( LayerMetadata md, FeatureStore featureStore, QName featureType, OperatorFilter filter,
+                         List<SortProperty> sortBy, List<SortProperty> sortByFeatureInfo,
+                         FeatureStreamExecutor streamExecutor ) {
         super( md );
         this.featureStore = featureStore;
+        this.streamExecutor = streamExecutor;
         this.featureType = featureType;
         this.filter = filter;
         if ( sortBy != null ) {
@@ -115,31 +144,13 @@ public class FeatureLayer extends AbstractLayer {
         }
         style = style.filter( query.getScale() );
 
-        OperatorFilter filter = buildFilterForMap( this.filter, style, query, dimFilterBuilder, headers );
-
-        final Envelope bbox = query.getQueryBox();
-
-        Set<Expression> exprs = new HashSet<Expression>( Styles.getGeometryExpressions( style ) );
-
-        final ValueReference geomProp;
-
-        if ( exprs.size() == 1 && exprs.iterator().next() instanceof ValueReference ) {
-            geomProp = (ValueReference) exprs.iterator().next();
-        } else {
-            geomProp = null;
-        }
-
         QName ftName = featureType == null ? style.getFeatureType() : featureType;
         if ( ftName != null && featureStore.getSchema().getFeatureType( ftName ) == null ) {
             LOG.warn( "FeatureType '" + ftName + "' is not known to the FeatureStore." );
             return null;
         }
 
-        filter = Filters.repair( filter, AppSchemas.collectProperyNames( featureStore.getSchema(), ftName ) );
-
-        QueryBuilder builder = new QueryBuilder( featureStore, filter, ftName, bbox, query, geomProp, sortBy,
-                                                 getMetadata().getName() );
-        List<Query> queries = builder.buildMapQueries();
+        List<Query> queries = buildMapQueries( query, headers, style, ftName, false );
 
         if ( queries.isEmpty() ) {
             LOG.warn( "No queries were generated. Is the configuration correct?" );
@@ -149,7 +160,7 @@ public class FeatureLayer extends AbstractLayer {
         Integer maxFeats = query.getRenderingOptions().getMaxFeatures( getMetadata().getName() );
         final int maxFeatures = maxFeats == null ? -1 : maxFeats;
 
-        return new FeatureLayerData( queries, featureStore, maxFeatures, style, ftName );
+        return new FeatureLayerData( queries, featureStore, maxFeatures, style, ftName, streamExecutor );
     }
 
     @Override
@@ -185,4 +196,98 @@ public class FeatureLayer extends AbstractLayer {
         return new FeatureLayerData( queries, featureStore, query.getFeatureCount(), style, featureType );
     }
 
+    /**
+     * Estimates the cost from the map size and the number of features, as estimated by the feature store. If the store
+     * cannot provide estimates, the features are assumed to cost as much as one megapixel.
+     */
+    @Override
+    public double estimateMapCost( LayerQuery query ) {
+        double cost = (double) query.getWidth() * query.getHeight() / 1000000;
+        Style style = resolveStyleRef( query.getStyle() );
+        if ( style == null ) {
+            return -1;
+        }
+        style = style.filter( query.getScale() );
+        QName ftName = featureType == null ? style.getFeatureType() : featureType;
+        if ( ftName != null && featureStore.getSchema().getFeatureType( ftName ) == null ) {
+            return cost;
+        }
+        try {
+            List<Query> queries = buildMapQueries( query, new ArrayList<String>(), style, ftName, true );
+            Integer maxFeats = query.getRenderingOptions().getMaxFeatures( getMetadata().getName() );
+            long hits = FeatureLayerData.estimateHits( featureStore, queries, maxFeats == null ? -1 : maxFeats );
+            return cost + ( hits < 0 ? 1 : hits / FEATURES_PER_COST_UNIT );
+        } catch ( OWSException e ) {
+            LOG.trace( "Could not estimate map cost:", e );
+            return -1;
+        }
+    }
+
+    @Override
+    public boolean mayContainLabels( LayerQuery query ) {
+        Style style = resolveStyleRef( query.getStyle() );
+        return style != null && style.hasLabels();
+    }
+
+    /**
+     * Builds the feature store queries for a map request.
+     * 
+     * @param style
+     *            the scale filtered style, must not be <code>null</code>
+     * @param ftName
+     *            the feature type to query, may be <code>null</code> for all feature types
+     * @param estimate
+     *            if true, the queries are only used to estimate the number of features, so neither property
+     *            projections nor sort criteria are added
+     * @return the queries, never <code>null</code>
+     * @throws OWSException
+     *             if the dimension parameters are invalid
+     */
+    private List<Query> buildMapQueries( LayerQuery query, List<String> headers, Style style, QName ftName,
+                                         boolean estimate )
+                            throws OWSException {
+        OperatorFilter filter = buildFilterForMap( this.filter, style, query, dimFilterBuilder, headers );
+
+        final Envelope bbox = query.getQueryBox();
+
+        Set<Expression> exprs = new HashSet<Expression>( Styles.getGeometryExpressions( style ) );
+
+        final ValueReference geomProp;
+
+        if ( exprs.size() == 1 && exprs.iterator().next() instanceof ValueReference ) {
+            geomProp = (ValueReference) exprs.iterator().next();
+        } else {
+            geomProp = null;
+        }
+
+        filter = Filters.repair( filter, AppSchemas.collectProperyNames( featureStore.getSchema(), ftName ) );
+
+        if ( estimate ) {
+            return new QueryBuilder( featureStore, filter, ftName, bbox, query, geomProp, null,
+                                     getMetadata().getName() ).buildMapQueries();
+        }
+
+        List<ProjectionClause> projections = null;
+        if ( ftName != null ) {
+            projections = QueryBuilder.buildProjections( style, filter, sortBy,
+                                                         featureStore.getSchema().getFeatureType( ftName ) );
+        }
+
+        QueryBuilder builder = new QueryBuilder( featureStore, filter, ftName, bbox, query, geomProp, sortBy,
+                                                 getMetadata().getName(), projections );
+        return builder.buildMapQueries();
+    }
+
+    /**
+     * @param workspace
+     *            the workspace, must not be <code>null</code>
+     * @param featureStoreId
+     *            the id of the feature store, must not be <code>null</code>
+     * @return the workspace managed stream executor for the feature store, may be <code>null</code>
+     */
+    static FeatureStreamExecutor getStreamExecutor( Workspace workspace, String featureStoreId ) {
+        FeatureStreamExecutors executors = workspace.getInitializable( FeatureStreamExecutors.class );
+        return executors == null ? null : executors.getExecutor( featureStoreId );
+    }
+
 }
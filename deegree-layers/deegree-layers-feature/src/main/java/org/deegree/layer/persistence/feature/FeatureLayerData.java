@@ -35,6 +35,7 @@
  ----------------------------------------------------------------------------*/
 package org.deegree.layer.persistence.feature;
 
+import static java.lang.Math.min;
 import static org.slf4j.LoggerFactory.getLogger;
 
 import java.util.HashMap;
@@ -47,9 +48,11 @@ import javax.xml.namespace.QName;
 import org.deegree.feature.Feature;
 import org.deegree.feature.FeatureCollection;
 import org.deegree.feature.GenericFeatureCollection;
+import org.deegree.feature.persistence.FeatureHitsEstimator;
 import org.deegree.feature.persistence.FeatureStore;
 import org.deegree.feature.persistence.query.Query;
 import org.deegree.feature.stream.FeatureInputStream;
+import org.deegree.feature.stream.FeatureStreamExecutor;
 import org.deegree.feature.stream.ThreadedFeatureInputStream;
 import org.deegree.feature.types.AppSchemas;
 import org.deegree.feature.xpath.TypedObjectNodeXPathEvaluator;
@@ -81,11 +84,32 @@ public class FeatureLayerData implements LayerData {
 
     private final FeatureStore featureStore;
 
+    private final QName ftName;
+
+    private final FeatureStreamExecutor streamExecutor;
+
     public FeatureLayerData( List<Query> queries, FeatureStore featureStore, int maxFeatures, Style style, QName ftName ) {
+        this( queries, featureStore, maxFeatures, style, ftName, null );
+    }
+
+    /**
+     * @param queries
+     * @param featureStore
+     * @param maxFeatures
+     * @param style
+     * @param ftName
+     * @param streamExecutor
+     *            executor to read the features in the background, if <code>null</code>, the global default pool is
+     *            used
+     */
+    public FeatureLayerData( List<Query> queries, FeatureStore featureStore, int maxFeatures, Style style,
+                             QName ftName, FeatureStreamExecutor streamExecutor ) {
         this.queries = queries;
         this.featureStore = featureStore;
         this.maxFeatures = maxFeatures;
         this.style = style;
+        this.ftName = ftName;
+        this.streamExecutor = streamExecutor;
         Map<String, QName> bindings = new HashMap<String, QName>();
         Set<QName> validNames = AppSchemas.collectProperyNames( featureStore.getSchema(), ftName );
         for ( QName name : validNames ) {
@@ -94,16 +118,47 @@ public class FeatureLayerData implements LayerData {
         evaluator = new TypedObjectNodeXPathEvaluator( bindings );
     }
 
+    /**
+     * @param featureStore
+     *            the store to query, must not be <code>null</code>
+     * @param queries
+     *            the queries, must not be <code>null</code>
+     * @param maxFeatures
+     *            the maximum number of features to render, -1 for no limit
+     * @return the estimated number of features to render (at most the maximum number of features), or -1 if the
+     *         feature store cannot provide an estimate
+     */
+    static long estimateHits( FeatureStore featureStore, List<Query> queries, int maxFeatures ) {
+        if ( !( featureStore instanceof FeatureHitsEstimator ) ) {
+            return -1;
+        }
+        long hits = 0;
+        for ( Query q : queries ) {
+            long h = ( (FeatureHitsEstimator) featureStore ).estimateHits( q );
+            if ( h < 0 ) {
+                return -1;
+            }
+            hits += h;
+        }
+        if ( maxFeatures > 0 ) {
+            hits = min( hits, maxFeatures );
+        }
+        return hits;
+    }
+
     @Override
     public void render( RenderContext context ) throws InterruptedException {
         FeatureInputStream features = null;
         try {
-            // TODO Should this always be done on this level? What about queueSize value?
             features = featureStore.query( queries.toArray( new Query[queries.size()] ) );
-            features = new ThreadedFeatureInputStream( features, 100 );
+            if ( streamExecutor != null ) {
+                features = streamExecutor.prefetch( features );
+            } else {
+                features = new ThreadedFeatureInputStream( features, 100 );
+            }
 
             FeatureStreamRenderer renderer = new FeatureStreamRenderer( context, maxFeatures, evaluator );
-            renderer.renderFeatureStream( features, style );
+            renderer.renderFeatureStream( features, style.compile( ftName ) );
         } catch ( InterruptedException e ) {
             throw e;
         } catch ( FilterEvaluationException e ) {
@@ -57,7 +57,7 @@ import org.deegree.rendering.r2d.TextRenderer;
 import org.deegree.rendering.r2d.LabelRenderer;
 import org.deegree.rendering.r2d.Label;
 import org.deegree.rendering.r2d.context.RenderContext;
-import org.deegree.style.se.unevaluated.Style;
+import org.deegree.style.se.unevaluated.CompiledStyle;
 import org.deegree.style.styling.Styling;
 import org.deegree.style.styling.TextStyling;
 import org.slf4j.Logger;
@@ -86,7 +86,7 @@ class FeatureStreamRenderer {
         this.evaluator = evaluator;
     }
 
-    void renderFeatureStream( FeatureInputStream features, Style style )
+    void renderFeatureStream( FeatureInputStream features, CompiledStyle style )
                             throws InterruptedException {
         int cnt = 0;
 
@@ -94,15 +94,16 @@ class FeatureStreamRenderer {
         //TextRenderer textRenderer = context.getTextRenderer();
         LabelRenderer labelRenderer = context.getLabelRenderer();
         //ArrayList<Label> labelList = new ArrayList<Label>();
+        CompiledStyle.Result evalds = style.newResult();
         
         for ( Feature f : features ) {
             if ( Thread.interrupted() ) {
                 throw new InterruptedException();
             }
             try {
-                LinkedList<Triple<Styling, LinkedList<Geometry>, String>> evalds = style.evaluate( f,
-                                                                                                   (XPathEvaluator<Feature>) evaluator );
-                for ( Triple<Styling, LinkedList<Geometry>, String> evald : evalds ) {
+                style.evaluate( f, (XPathEvaluator<Feature>) evaluator, evalds );
+                for ( int i = 0; i < evalds.size(); ++i ) {
+                    Triple<Styling, LinkedList<Geometry>, String> evald = evalds.get( i );
                     if ( evald.first instanceof TextStyling ) {
                         //textRenderer.render( (TextStyling) evald.first, evald.third, evald.second );
                        // labelList.addAll( 
@@ -55,6 +55,7 @@ import javax.xml.stream.XMLStreamException;
 import org.deegree.commons.utils.Pair;
 import org.deegree.feature.persistence.FeatureStore;
 import org.deegree.feature.persistence.FeatureStoreException;
+import org.deegree.feature.stream.FeatureStreamExecutor;
 import org.deegree.filter.OperatorFilter;
 import org.deegree.filter.sort.SortProperty;
 import org.deegree.layer.Layer;
@@ -96,6 +97,8 @@ class ManualFeatureLayerBuilder {
     MultipleLayerStore buildFeatureLayers()
                             throws XMLStreamException, URISyntaxException, FeatureStoreException {
         Map<String, Layer> map = new LinkedHashMap<String, Layer>();
+        String storeId = store.getMetadata().getIdentifier().getId();
+        FeatureStreamExecutor streamExecutor = FeatureLayer.getStreamExecutor( workspace, storeId );
         int index = -1;
         for ( FeatureLayerType lay : lays.getFeatureLayer() ) {
             ++index;
@@ -118,7 +121,7 @@ class ManualFeatureLayerBuilder {
             Pair<Map<String, Style>, Map<String, Style>> p = parseStyles( workspace, lay.getName(), lay.getStyleRef() );
             md.setStyles( p.first );
             md.setLegendStyles( p.second );
-            Layer l = new FeatureLayer( md, store, featureType, filter, sortBy, sortByFeatureInfo );
+            Layer l = new FeatureLayer( md, store, featureType, filter, sortBy, sortByFeatureInfo, streamExecutor );
             map.put( lay.getName(), l );
         }
         return new MultipleLayerStore( map, metadata );
@@ -45,24 +45,39 @@ import static org.deegree.commons.utils.CollectionUtils.clearNulls;
 import static org.deegree.commons.utils.CollectionUtils.map;
 import static org.deegree.commons.utils.math.MathUtils.round;
 import static org.deegree.filter.Filters.addBBoxConstraint;
+import static org.deegree.filter.Filters.getPropertyNames;
+import static org.deegree.filter.Filters.repair;
 import static org.deegree.layer.persistence.feature.FilterBuilder.buildFilter;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.xml.namespace.QName;
 
 import org.deegree.commons.utils.CollectionUtils.Mapper;
+import org.deegree.commons.tom.gml.property.PropertyType;
 import org.deegree.feature.persistence.FeatureStore;
 import org.deegree.feature.persistence.query.Query;
+import org.deegree.feature.types.AppSchemas;
 import org.deegree.feature.types.FeatureType;
+import org.deegree.feature.types.property.GeometryPropertyType;
+import org.deegree.filter.Expression;
 import org.deegree.filter.Filter;
 import org.deegree.filter.OperatorFilter;
 import org.deegree.filter.expression.ValueReference;
+import org.deegree.filter.projection.ProjectionClause;
+import org.deegree.filter.projection.PropertyName;
 import org.deegree.filter.sort.SortProperty;
 import org.deegree.geometry.Envelope;
 import org.deegree.layer.LayerQuery;
 import org.deegree.protocol.wfs.getfeature.TypeName;
+import org.deegree.style.se.unevaluated.Style;
+import org.deegree.style.utils.Styles;
 
 /**
  * Builds feature store queries for feature layers.
@@ -90,8 +105,15 @@ class QueryBuilder {
 
     private String layerName;
 
+    private List<ProjectionClause> projections;
+
     QueryBuilder( FeatureStore featureStore, OperatorFilter filter, QName ftName, Envelope bbox, LayerQuery query,
                   ValueReference geomProp, SortProperty[] sortBy, String layerName ) {
+        this( featureStore, filter, ftName, bbox, query, geomProp, sortBy, layerName, null );
+    }
+
+    QueryBuilder( FeatureStore featureStore, OperatorFilter filter, QName ftName, Envelope bbox, LayerQuery query,
+                  ValueReference geomProp, SortProperty[] sortBy, String layerName, List<ProjectionClause> projections ) {
         this.featureStore = featureStore;
         this.filter = filter;
         this.ftName = ftName;
@@ -100,6 +122,7 @@ class QueryBuilder {
         this.geomProp = geomProp;
         this.sortBy = sortBy;
         this.layerName = layerName;
+        this.projections = projections;
     }
 
     List<Query> buildMapQueries() {
@@ -119,13 +142,19 @@ class QueryBuilder {
                                  } ) );
         } else {
             Query fquery = createQuery( ftName, addBBoxConstraint( bbox, filter, geomProp, true ),
-                                        round( query.getScale() ), maxFeatures, query.getResolution(), sortBy );
+                                        round( query.getScale() ), maxFeatures, query.getResolution(), sortBy,
+                                        projections );
             queries.add( fquery );
         }
 
         return queries;
     }
 
+    /**
+     * Builds the queries for feature info requests. Note that these never carry property projections: the feature
+     * info formats (GML, templates, XSLT) may output any property and WMS GetFeatureInfo requests cannot select
+     * properties, so the complete features are fetched.
+     */
     List<Query> buildInfoQueries() {
         List<Query> queries = new ArrayList<Query>();
         if ( ftName == null ) {
@@ -156,10 +185,62 @@ class QueryBuilder {
         return queries;
     }
 
+    /**
+     * Determines the properties needed to render features of the given type with the given (scale filtered) style.
+     * 
+     * @return the property projections, or null, if all properties are needed
+     */
+    static List<ProjectionClause> buildProjections( Style style, Filter filter, SortProperty[] sort, FeatureType ft ) {
+        if ( ft == null ) {
+            return null;
+        }
+        Set<ValueReference> propNames = Styles.getPropertyNames( style );
+        if ( propNames == null ) {
+            return null;
+        }
+        propNames = new LinkedHashSet<ValueReference>( propNames );
+        // properties of filters which the store cannot map may be evaluated in memory
+        if ( filter != null ) {
+            propNames.addAll( Arrays.asList( getPropertyNames( filter ) ) );
+        }
+        if ( sort != null ) {
+            for ( SortProperty p : sort ) {
+                propNames.add( p.getSortProperty() );
+            }
+        }
+        if ( Styles.usesDefaultGeometry( style ) ) {
+            for ( PropertyType pt : ft.getPropertyDeclarations() ) {
+                if ( pt instanceof GeometryPropertyType ) {
+                    propNames.add( new ValueReference( pt.getName() ) );
+                }
+            }
+        }
+
+        Set<QName> validNames = AppSchemas.collectProperyNames( ft.getSchema(), ft.getName() );
+        Map<String, QName> bindings = new HashMap<String, QName>();
+        for ( QName name : validNames ) {
+            bindings.put( name.getLocalPart(), name );
+        }
+        List<ProjectionClause> projections = new ArrayList<ProjectionClause>();
+        Set<ValueReference> repaired = new LinkedHashSet<ValueReference>();
+        for ( ValueReference propName : propNames ) {
+            Expression expr = repair( propName, bindings, validNames );
+            if ( expr instanceof ValueReference && repaired.add( (ValueReference) expr ) ) {
+                projections.add( new PropertyName( (ValueReference) expr, null, null ) );
+            }
+        }
+        return projections;
+    }
+
     static Query createQuery( QName ftName, Filter filter, int scale, int maxFeatures, double resolution,
                               SortProperty[] sort ) {
+        return createQuery( ftName, filter, scale, maxFeatures, resolution, sort, null );
+    }
+
+    static Query createQuery( QName ftName, Filter filter, int scale, int maxFeatures, double resolution,
+                              SortProperty[] sort, List<ProjectionClause> projections ) {
         TypeName[] typeNames = new TypeName[] { new TypeName( ftName, null ) };
-        return new Query( typeNames, filter, sort, scale, maxFeatures, resolution );
+        return new Query( typeNames, filter, sort, scale, maxFeatures, resolution, projections );
     }
 
 }
@@ -0,0 +1,223 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.layer.persistence.feature;
+
+import static java.util.Arrays.asList;
+import static org.deegree.commons.tom.primitive.BaseType.INTEGER;
+import static org.deegree.commons.tom.primitive.BaseType.STRING;
+import static org.deegree.feature.types.property.GeometryPropertyType.CoordinateDimension.DIM_2;
+import static org.deegree.feature.types.property.GeometryPropertyType.GeometryType.GEOMETRY;
+import static org.deegree.feature.types.property.ValueRepresentation.BOTH;
+import static org.deegree.layer.persistence.feature.QueryBuilder.buildProjections;
+import static org.deegree.layer.persistence.feature.QueryBuilder.createQuery;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamReader;
+
+import org.deegree.commons.tom.gml.property.PropertyType;
+import org.deegree.commons.tom.primitive.PrimitiveValue;
+import org.deegree.feature.persistence.FeatureStore;
+import org.deegree.feature.persistence.query.Query;
+import org.deegree.feature.types.FeatureType;
+import org.deegree.feature.types.GenericAppSchema;
+import org.deegree.feature.types.GenericFeatureType;
+import org.deegree.feature.types.property.GeometryPropertyType;
+import org.deegree.feature.types.property.SimplePropertyType;
+import org.deegree.filter.OperatorFilter;
+import org.deegree.filter.comparison.PropertyIsEqualTo;
+import org.deegree.filter.expression.Literal;
+import org.deegree.filter.expression.ValueReference;
+import org.deegree.filter.projection.ProjectionClause;
+import org.deegree.filter.projection.PropertyName;
+import org.deegree.filter.sort.SortProperty;
+import org.deegree.geometry.Envelope;
+import org.deegree.geometry.GeometryFactory;
+import org.deegree.layer.LayerQuery;
+import org.deegree.rendering.r2d.context.MapOptionsMaps;
+import org.deegree.style.se.parser.SymbologyParser;
+import org.deegree.style.se.unevaluated.Style;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the property projections of the feature layer queries built by {@link QueryBuilder}.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+public class QueryBuilderTest {
+
+    private static final String NS = "http://www.deegree.org/app";
+
+    private static final QName FT_NAME = new QName( NS, "Road", "app" );
+
+    private static final QName TYPE = new QName( NS, "type", "app" );
+
+    private static final QName LANES = new QName( NS, "lanes", "app" );
+
+    private static final QName NAME = new QName( NS, "name", "app" );
+
+    private static final QName CODE = new QName( NS, "code", "app" );
+
+    private static final QName CENTERLINE = new QName( NS, "centerline", "app" );
+
+    private static final QName POSITION = new QName( NS, "position", "app" );
+
+    private final Envelope bbox = new GeometryFactory().createEnvelope( 0, 0, 10, 10, null );
+
+    private FeatureType ft;
+
+    private Style style;
+
+    @Before
+    public void setup()
+                            throws Exception {
+        List<PropertyType> pts = new ArrayList<PropertyType>();
+        pts.add( new SimplePropertyType( TYPE, 1, 1, STRING, null, null ) );
+        pts.add( new SimplePropertyType( LANES, 0, 1, INTEGER, null, null ) );
+        pts.add( new SimplePropertyType( NAME, 0, 1, STRING, null, null ) );
+        pts.add( new SimplePropertyType( CODE, 0, 1, STRING, null, null ) );
+        pts.add( new GeometryPropertyType( CENTERLINE, 0, 1, null, null, GEOMETRY, DIM_2, BOTH ) );
+        pts.add( new GeometryPropertyType( POSITION, 0, 1, null, null, GEOMETRY, DIM_2, BOTH ) );
+        ft = new GenericFeatureType( FT_NAME, pts, false );
+        new GenericAppSchema( new FeatureType[] { ft }, null, null, null, null, null );
+
+        XMLInputFactory fac = XMLInputFactory.newInstance();
+        XMLStreamReader in = fac.createXMLStreamReader( getClass().getResourceAsStream( "roads.xml" ) );
+        in.next();
+        style = SymbologyParser.INSTANCE.parse( in );
+    }
+
+    @Test
+    public void testProjectionsOfStyle() {
+        // the unqualified property names of the style are bound to the properties of the feature type
+        assertEquals( names( TYPE, LANES, CENTERLINE ),
+                      getNames( buildProjections( style.filter( 20000 ), null, null, ft ) ) );
+    }
+
+    @Test
+    public void testDefaultGeometryAddsGeometryProperties() {
+        assertEquals( names( TYPE, LANES, CENTERLINE, NAME, POSITION ),
+                      getNames( buildProjections( style.filter( 5000 ), null, null, ft ) ) );
+    }
+
+    @Test
+    public void testFilterAndSortPropertiesAreProjected() {
+        OperatorFilter filter = new OperatorFilter( new PropertyIsEqualTo( new ValueReference( new QName( "code" ) ),
+                                                                           new Literal<PrimitiveValue>( "x" ), true,
+                                                                           null ) );
+        SortProperty[] sort = { new SortProperty( new ValueReference( NAME ), true ) };
+        assertEquals( names( TYPE, LANES, CENTERLINE, CODE, NAME ),
+                      getNames( buildProjections( style.filter( 20000 ), filter, sort, ft ) ) );
+    }
+
+    @Test
+    public void testAllPropertiesForUnknownStyles() {
+        assertNull( buildProjections( null, null, null, ft ) );
+        assertNull( buildProjections( new Style(), null, null, ft ) );
+        assertNull( buildProjections( style, null, null, null ) );
+    }
+
+    @Test
+    public void testMapQueryCarriesProjections() {
+        List<ProjectionClause> projections = buildProjections( style.filter( 20000 ), null, null, ft );
+        QueryBuilder builder = new QueryBuilder( null, null, FT_NAME, bbox, createLayerQuery(), null, null, "roads",
+                                                 projections );
+        List<Query> queries = builder.buildMapQueries();
+        assertEquals( 1, queries.size() );
+        assertSame( projections, queries.get( 0 ).getProjections() );
+    }
+
+    @Test
+    public void testDefaultQueriesHaveNoProjections() {
+        QueryBuilder builder = new QueryBuilder( null, null, FT_NAME, bbox, createLayerQuery(), null, null, "roads" );
+        List<Query> queries = builder.buildMapQueries();
+        assertEquals( 1, queries.size() );
+        assertTrue( queries.get( 0 ).getProjections().isEmpty() );
+        assertEquals( FT_NAME, queries.get( 0 ).getTypeNames()[0].getFeatureTypeName() );
+
+        assertTrue( createQuery( FT_NAME, null, 20000, -1, 1, null ).getProjections().isEmpty() );
+        assertTrue( createQuery( FT_NAME, null, 20000, -1, 1, null, null ).getProjections().isEmpty() );
+    }
+
+    @Test
+    public void testInfoQueriesHaveNoProjections() {
+        FeatureStore store = mock( FeatureStore.class );
+        when( store.getSchema() ).thenReturn( ft.getSchema() );
+        List<ProjectionClause> projections = buildProjections( style.filter( 20000 ), null, null, ft );
+        QueryBuilder builder = new QueryBuilder( store, null, FT_NAME, bbox, createLayerQuery(), null, null, "roads",
+                                                 projections );
+        List<Query> queries = builder.buildInfoQueries();
+        assertEquals( 1, queries.size() );
+        assertTrue( queries.get( 0 ).getProjections().isEmpty() );
+    }
+
+    private static LayerQuery createLayerQuery() {
+        LayerQuery query = mock( LayerQuery.class );
+        when( query.getRenderingOptions() ).thenReturn( new MapOptionsMaps() );
+        when( query.getScale() ).thenReturn( 20000.0 );
+        when( query.getResolution() ).thenReturn( 1.0 );
+        when( query.getFeatureCount() ).thenReturn( 10 );
+        return query;
+    }
+
+    private static Set<QName> names( QName... names ) {
+        return new HashSet<QName>( asList( names ) );
+    }
+
+    private static Set<QName> getNames( List<ProjectionClause> projections ) {
+        Set<QName> names = new HashSet<QName>();
+        for ( ProjectionClause projection : projections ) {
+            names.add( ( (PropertyName) projection ).getPropertyName().getAsQName() );
+        }
+        assertEquals( "Duplicate projections.", projections.size(), names.size() );
+        return names;
+    }
+
+}
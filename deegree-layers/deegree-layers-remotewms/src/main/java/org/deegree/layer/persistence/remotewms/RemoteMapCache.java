@@ -0,0 +1,126 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.layer.persistence.remotewms;
+
+import static java.lang.Math.max;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.deegree.geometry.Envelope;
+import org.deegree.protocol.wms.client.WMSClient;
+import org.deegree.protocol.wms.ops.GetMap;
+
+/**
+ * Keeps the most recently retrieved remote maps, so a map can still be delivered if the remote WMS does not respond
+ * in time when the same map is requested again.
+ * <p>
+ * The cache is shared by all remote WMS layers and bounded by the size of the images, which can be set in bytes using
+ * the system property <code>deegree.layers.remotewms.cache.bytes</code> (32 MB by default).
+ * </p>
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+class RemoteMapCache {
+
+    private static final long MAX_BYTES = Long.getLong( "deegree.layers.remotewms.cache.bytes", 32 * 1024 * 1024 );
+
+    static final RemoteMapCache INSTANCE = new RemoteMapCache( max( 0, MAX_BYTES ) );
+
+    private final LinkedHashMap<List<Object>, BufferedImage> images;
+
+    private final long maxBytes;
+
+    private long bytes;
+
+    RemoteMapCache( long maxBytes ) {
+        this.maxBytes = maxBytes;
+        images = new LinkedHashMap<List<Object>, BufferedImage>( 16, 0.75f, true );
+    }
+
+    /**
+     * @param client
+     * @param gm
+     * @param extraParams
+     * @return a key identifying the remote map
+     */
+    static List<Object> createKey( WMSClient client, GetMap gm, Map<String, String> extraParams ) {
+        Envelope bbox = gm.getBoundingBox();
+        String bboxCrs = bbox.getCoordinateSystem() == null ? null : bbox.getCoordinateSystem().getAlias();
+        return Arrays.<Object> asList( client, gm.getLayers().toString(), bbox.getMin().get0(), bbox.getMin().get1(),
+                                       bbox.getMax().get0(), bbox.getMax().get1(), bboxCrs,
+                                       gm.getCoordinateSystem().getAlias(), gm.getWidth(), gm.getHeight(),
+                                       gm.getFormat(), gm.getTransparent(),
+                                       new HashMap<String, String>( extraParams ) );
+    }
+
+    /**
+     * @param key
+     * @return the most recently retrieved map for the key, or null
+     */
+    synchronized BufferedImage get( List<Object> key ) {
+        return images.get( key );
+    }
+
+    synchronized void put( List<Object> key, BufferedImage img ) {
+        long size = getSize( img );
+        if ( size > maxBytes ) {
+            return;
+        }
+        BufferedImage old = images.put( key, img );
+        if ( old != null ) {
+            bytes -= getSize( old );
+        }
+        bytes += size;
+        Iterator<BufferedImage> iter = images.values().iterator();
+        while ( bytes > maxBytes && iter.hasNext() ) {
+            bytes -= getSize( iter.next() );
+            iter.remove();
+        }
+    }
+
+    private static long getSize( BufferedImage img ) {
+        return 4l * img.getWidth() * img.getHeight();
+    }
+
+}
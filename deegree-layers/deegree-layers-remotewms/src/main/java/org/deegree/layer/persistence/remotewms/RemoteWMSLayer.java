@@ -58,9 +58,12 @@ class RemoteWMSLayer extends AbstractLayer {
 
     private final String originalName;
 
-    RemoteWMSLayer( String originalName, LayerMetadata md, WMSClient client, RequestOptionsType opts ) {
+    private final int timeout;
+
+    RemoteWMSLayer( String originalName, LayerMetadata md, WMSClient client, RequestOptionsType opts, int timeout ) {
         super( md );
         this.originalName = originalName;
+        this.timeout = timeout;
         md.setCascaded( md.getCascaded() + 1 );
         this.client = client;
         if ( opts != null ) {
@@ -144,7 +147,7 @@ class RemoteWMSLayer extends AbstractLayer {
 
         GetMap gm = new GetMap( singletonList( originalName ), query.getWidth(), query.getHeight(),
                                 query.getEnvelope(), crs, format, transparent );
-        return new RemoteWMSLayerData( client, gm, extraParams );
+        return new RemoteWMSLayerData( client, gm, extraParams, getMetadata().getName(), timeout, headers );
     }
 
     @Override
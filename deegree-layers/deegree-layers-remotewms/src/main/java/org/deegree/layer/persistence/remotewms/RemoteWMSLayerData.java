@@ -35,10 +35,28 @@
  ----------------------------------------------------------------------------*/
 package org.deegree.layer.persistence.remotewms;
 
+import static java.lang.Math.max;
+import static java.lang.System.currentTimeMillis;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.slf4j.LoggerFactory.getLogger;
 
 import java.awt.image.BufferedImage;
+import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.deegree.commons.utils.Pair;
 import org.deegree.feature.FeatureCollection;
@@ -51,6 +69,16 @@ import org.deegree.rendering.r2d.context.RenderContext;
 import org.slf4j.Logger;
 
 /**
+ * Layer data of remote WMS layers.
+ * <p>
+ * The remote map is requested in the background as soon as the layer data is created, so the request overlaps with the
+ * rendering of other layers. If the remote map is not available within the timeout, the most recently retrieved map
+ * for the same request is painted instead (see {@link RemoteMapCache}), or the layer is skipped. Remote requests are
+ * never queued: the number of concurrent remote requests can be set using the system property
+ * <code>deegree.layers.remotewms.threads</code> (16 by default), the number of concurrent requests to one remote WMS
+ * using <code>deegree.layers.remotewms.upstream.requests</code> (4 by default). Requests beyond these limits are
+ * rejected and handled like requests that timed out.
+ * </p>
  * 
  * @author <a href="mailto:schmitz@lat-lon.de">Andreas Schmitz</a>
  * @author last edited by: $Author: stranger $
@@ -61,6 +89,30 @@ public class RemoteWMSLayerData implements LayerData {
 
     private static final Logger LOG = getLogger( RemoteWMSLayerData.class );
 
+    private static final ThreadPoolExecutor EXECUTOR;
+
+    static final int UPSTREAM_REQUESTS = max( 1,
+                                              Integer.getInteger( "deegree.layers.remotewms.upstream.requests", 4 ) );
+
+    // limits the concurrent requests per remote WMS, weakly keyed so replaced clients are dropped
+    private static final Map<WMSClient, Semaphore> PERMITS = new WeakHashMap<WMSClient, Semaphore>();
+
+    static {
+        int threads = max( 1, Integer.getInteger( "deegree.layers.remotewms.threads", 16 ) );
+        EXECUTOR = new ThreadPoolExecutor( threads, threads, 60, SECONDS, new SynchronousQueue<Runnable>(),
+                                           new ThreadFactory() {
+                                               private final AtomicInteger count = new AtomicInteger();
+
+                                               @Override
+                                               public Thread newThread( Runnable r ) {
+                                                   Thread t = new Thread( r, "remote-wms-" + count.incrementAndGet() );
+                                                   t.setDaemon( true );
+                                                   return t;
+                                               }
+                                           }, new ThreadPoolExecutor.AbortPolicy() );
+        EXECUTOR.allowCoreThreadTimeOut( true );
+    }
+
     private GetMap gm;
 
     private final WMSClient client;
@@ -69,10 +121,107 @@ public class RemoteWMSLayerData implements LayerData {
 
     private GetFeatureInfo gfi;
 
+    private String name;
+
+    private int timeout;
+
+    private long deadline;
+
+    private List<String> headers;
+
+    private List<Object> cacheKey;
+
+    private Future<BufferedImage> map;
+
     public RemoteWMSLayerData( WMSClient client, GetMap gm, Map<String, String> extraParams ) {
+        this( client, gm, extraParams, gm.getLayers().toString(), 30, null );
+    }
+
+    /**
+     * Starts retrieving the remote map.
+     * 
+     * @param client
+     * @param gm
+     * @param extraParams
+     * @param name
+     *            the name of the layer, used in warnings
+     * @param timeout
+     *            in seconds
+     * @param headers
+     *            a warning is added if the remote map is not available in time, may be <code>null</code>
+     */
+    RemoteWMSLayerData( final WMSClient client, final GetMap gm, final Map<String, String> extraParams, String name,
+                        final int timeout, List<String> headers ) {
         this.client = client;
+        this.name = name;
         this.gm = gm;
         this.extraParams = extraParams;
+        this.timeout = timeout;
+        this.headers = headers;
+        deadline = currentTimeMillis() + timeout * 1000l;
+        cacheKey = RemoteMapCache.createKey( client, gm, extraParams );
+        final List<Object> key = cacheKey;
+        final Semaphore permits = getPermits( client );
+        if ( !permits.tryAcquire() ) {
+            LOG.warn( "Too many concurrent requests to the remote WMS of layer {}, request was rejected.", name );
+            return;
+        }
+        // the permit is returned by the request itself, or by done() if the request never started
+        final AtomicBoolean started = new AtomicBoolean();
+        FutureTask<BufferedImage> task = new FutureTask<BufferedImage>( new Callable<BufferedImage>() {
+            @Override
+            public BufferedImage call()
+                                    throws Exception {
+                if ( !started.compareAndSet( false, true ) ) {
+                    return null;
+                }
+                try {
+                    Pair<BufferedImage, String> res = client.getMap( gm, extraParams, timeout );
+                    if ( res == null ) {
+                        return null;
+                    }
+                    if ( res.first != null ) {
+                        RemoteMapCache.INSTANCE.put( key, res.first );
+                    } else if ( res.second != null ) {
+                        LOG.warn( "Remote WMS did not deliver a map: {}", res.second );
+                    }
+                    return res.first;
+                } finally {
+                    // cancelling does not stop blocking I/O, so keep the permit until the request really returned
+                    permits.release();
+                }
+            }
+        } ) {
+            @Override
+            protected void done() {
+                if ( started.compareAndSet( false, true ) ) {
+                    // cancelled before the request was sent
+                    permits.release();
+                }
+            }
+        };
+        try {
+            EXECUTOR.execute( task );
+            map = task;
+        } catch ( RejectedExecutionException e ) {
+            permits.release();
+            LOG.warn( "Too many concurrent remote WMS requests, request of layer {} was rejected.", name );
+        }
+    }
+
+    /**
+     * @param client
+     * @return the permits for concurrent requests to the remote WMS of the client, never <code>null</code>
+     */
+    static Semaphore getPermits( WMSClient client ) {
+        synchronized ( PERMITS ) {
+            Semaphore permits = PERMITS.get( client );
+            if ( permits == null ) {
+                permits = new Semaphore( UPSTREAM_REQUESTS );
+                PERMITS.put( client, permits );
+            }
+            return permits;
+        }
     }
 
     public RemoteWMSLayerData( WMSClient client, GetFeatureInfo gfi, Map<String, String> extraParams ) {
@@ -82,17 +231,39 @@ public class RemoteWMSLayerData implements LayerData {
     }
 
     @Override
-    public void render( RenderContext context ) {
-        try {
-            Pair<BufferedImage, String> map = client.getMap( gm, extraParams, 30 );
-            if ( map.first != null ) {
-                context.paintImage( map.first );
+    public void render( RenderContext context )
+                            throws InterruptedException {
+        if ( map == null ) {
+            BufferedImage img = getStaleMap( "was rejected because of too many concurrent requests" );
+            if ( img != null ) {
+                context.paintImage( img );
             }
-        } catch ( Throwable e ) {
-            e.printStackTrace();
-            LOG.warn( "Error when retrieving remote map: {}", e.getLocalizedMessage() );
-            LOG.trace( "Stack trace:", e );
+            return;
+        }
+        BufferedImage img;
+        try {
+            img = map.get( max( 0, deadline - currentTimeMillis() ), MILLISECONDS );
+        } catch ( TimeoutException e ) {
+            map.cancel( true );
+            LOG.warn( "Remote map of layer {} was not retrieved within {} seconds.", name, timeout );
+            img = getStaleMap( "did not respond within " + timeout + " seconds" );
+        } catch ( ExecutionException e ) {
+            LOG.warn( "Error when retrieving remote map: {}", e.getCause().getLocalizedMessage() );
+            LOG.trace( "Stack trace:", e.getCause() );
+            img = getStaleMap( "could not be retrieved" );
+        }
+        if ( img != null ) {
+            context.paintImage( img );
+        }
+    }
+
+    private BufferedImage getStaleMap( String reason ) {
+        BufferedImage img = RemoteMapCache.INSTANCE.get( cacheKey );
+        if ( headers != null ) {
+            String msg = "The remote map of layer " + name + " " + reason;
+            headers.add( msg + ( img == null ? ", the layer was skipped." : ", a previous map was used." ) );
         }
+        return img;
     }
 
     @Override
@@ -85,7 +85,13 @@ class RemoteWmsLayerBuilder {
         RequestOptionsType opts = cfg.getRequestOptions();
         Map<String, Layer> map = new LinkedHashMap<String, Layer>();
 
+        int defaultTimeout = 30;
+        if ( opts != null && opts.getTimeout() != null ) {
+            defaultTimeout = opts.getTimeout().intValue();
+        }
+
         Map<String, LayerMetadata> configured = new HashMap<String, LayerMetadata>();
+        Map<String, Integer> timeouts = new HashMap<String, Integer>();
         if ( cfg.getLayer() != null ) {
             for ( LayerType l : cfg.getLayer() ) {
                 if ( !client.hasLayer( l.getOriginalName() ) ) {
@@ -103,6 +109,9 @@ class RemoteWmsLayerBuilder {
                 LayerMetadata md = new LayerMetadata( name, desc, smd );
                 md.setMapOptions( ConfigUtils.parseLayerOptions( l.getLayerOptions() ) );
                 configured.put( l.getOriginalName(), md );
+                if ( l.getTimeout() != null ) {
+                    timeouts.put( l.getOriginalName(), l.getTimeout().intValue() );
+                }
             }
         }
 
@@ -110,7 +119,7 @@ class RemoteWmsLayerBuilder {
         if ( configured.isEmpty() ) {
             for ( LayerMetadata md : layers ) {
                 if ( md.getName() != null ) {
-                    map.put( md.getName(), new RemoteWMSLayer( md.getName(), md, client, opts ) );
+                    map.put( md.getName(), new RemoteWMSLayer( md.getName(), md, client, opts, defaultTimeout ) );
                 }
             }
         } else {
@@ -119,7 +128,9 @@ class RemoteWmsLayerBuilder {
                 LayerMetadata confMd = configured.get( name );
                 if ( confMd != null ) {
                     confMd.merge( md );
-                    map.put( confMd.getName(), new RemoteWMSLayer( name, confMd, client, opts ) );
+                    Integer timeout = timeouts.get( name );
+                    map.put( confMd.getName(), new RemoteWMSLayer( name, confMd, client, opts,
+                                                                   timeout == null ? defaultTimeout : timeout ) );
                 }
             }
         }
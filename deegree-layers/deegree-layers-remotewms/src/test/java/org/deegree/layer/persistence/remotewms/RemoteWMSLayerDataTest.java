@@ -0,0 +1,252 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.layer.persistence.remotewms;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+
+import org.deegree.commons.utils.Pair;
+import org.deegree.cs.coordinatesystems.ICRS;
+import org.deegree.cs.persistence.CRSManager;
+import org.deegree.geometry.GeometryFactory;
+import org.deegree.protocol.wms.client.WMSClient;
+import org.deegree.protocol.wms.ops.GetMap;
+import org.deegree.rendering.r2d.context.RenderContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Tests for {@link RemoteWMSLayerData}: timeouts, cancellation, the fallback to stale maps and the rejection of
+ * requests to busy remote services.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+public class RemoteWMSLayerDataTest {
+
+    private static final ICRS CRS = CRSManager.getCRSRef( "CRS:1" );
+
+    private final BufferedImage image = new BufferedImage( 10, 10, TYPE_INT_ARGB );
+
+    private final BufferedImage stale = new BufferedImage( 10, 10, TYPE_INT_ARGB );
+
+    private final Map<String, String> params = new HashMap<String, String>();
+
+    private final List<String> headers = new ArrayList<String>();
+
+    private final CountDownLatch release = new CountDownLatch( 1 );
+
+    private final CountDownLatch interrupted = new CountDownLatch( 1 );
+
+    private WMSClient client;
+
+    private GetMap gm;
+
+    private RenderContext context;
+
+    @Before
+    public void setup() {
+        client = mock( WMSClient.class );
+        context = mock( RenderContext.class );
+        gm = new GetMap( Collections.singletonList( "layer" ), 10, 10,
+                         new GeometryFactory().createEnvelope( 0, 0, 10, 10, CRS ), CRS, "image/png", true );
+    }
+
+    @After
+    public void releaseRequests() {
+        release.countDown();
+    }
+
+    @Test
+    public void testMapPainted()
+                            throws Exception {
+        Pair<BufferedImage, String> res = new Pair<BufferedImage, String>( image, null );
+        when( client.getMap( any( GetMap.class ), eq( params ), anyInt() ) ).thenReturn( res );
+        new RemoteWMSLayerData( client, gm, params, "layer", 5, headers ).render( context );
+        verify( context ).paintImage( image );
+        assertTrue( headers.isEmpty() );
+        assertEquals( image, RemoteMapCache.INSTANCE.get( RemoteMapCache.createKey( client, gm, params ) ) );
+    }
+
+    @Test
+    public void testTimeoutCancelsAndUsesStaleMap()
+                            throws Exception {
+        respondSlowly();
+        RemoteMapCache.INSTANCE.put( RemoteMapCache.createKey( client, gm, params ), stale );
+        new RemoteWMSLayerData( client, gm, params, "layer", 1, headers ).render( context );
+        verify( context ).paintImage( stale );
+        assertEquals( 1, headers.size() );
+        assertTrue( headers.get( 0 ).endsWith( "a previous map was used." ) );
+        // the remote request was cancelled
+        assertTrue( interrupted.await( 5, SECONDS ) );
+    }
+
+    @Test
+    public void testTimeoutSkipsLayerWithoutStaleMap()
+                            throws Exception {
+        respondSlowly();
+        new RemoteWMSLayerData( client, gm, params, "layer", 1, headers ).render( context );
+        verify( context, never() ).paintImage( any( BufferedImage.class ) );
+        assertEquals( 1, headers.size() );
+        assertTrue( headers.get( 0 ).endsWith( "the layer was skipped." ) );
+    }
+
+    @Test
+    public void testErrorUsesStaleMap()
+                            throws Exception {
+        RuntimeException e = new RuntimeException( "Remote WMS is down." );
+        when( client.getMap( any( GetMap.class ), eq( params ), anyInt() ) ).thenThrow( e );
+        RemoteMapCache.INSTANCE.put( RemoteMapCache.createKey( client, gm, params ), stale );
+        new RemoteWMSLayerData( client, gm, params, "layer", 5, headers ).render( context );
+        verify( context ).paintImage( stale );
+        assertEquals( 1, headers.size() );
+        assertTrue( headers.get( 0 ).contains( "could not be retrieved" ) );
+    }
+
+    @Test
+    public void testRejectedWhenUpstreamBusy()
+                            throws Exception {
+        respondSlowly();
+        List<RemoteWMSLayerData> busy = new ArrayList<RemoteWMSLayerData>();
+        for ( int i = 0; i < RemoteWMSLayerData.UPSTREAM_REQUESTS; ++i ) {
+            busy.add( new RemoteWMSLayerData( client, gm, params, "layer", 5, null ) );
+        }
+        RemoteMapCache.INSTANCE.put( RemoteMapCache.createKey( client, gm, params ), stale );
+
+        long start = System.currentTimeMillis();
+        new RemoteWMSLayerData( client, gm, params, "layer", 5, headers ).render( context );
+        // rejected requests do not wait for the timeout
+        assertTrue( System.currentTimeMillis() - start < 1000 );
+        verify( context ).paintImage( stale );
+        assertEquals( 1, headers.size() );
+        assertTrue( headers.get( 0 ).contains( "rejected" ) );
+
+        // permits are returned once the requests are done
+        release.countDown();
+        for ( RemoteWMSLayerData data : busy ) {
+            data.render( mock( RenderContext.class ) );
+        }
+        // permits are released right after the results have been handed out
+        Semaphore permits = RemoteWMSLayerData.getPermits( client );
+        for ( int i = 0; i < 50 && permits.availablePermits() < RemoteWMSLayerData.UPSTREAM_REQUESTS; ++i ) {
+            Thread.sleep( 100 );
+        }
+        assertEquals( RemoteWMSLayerData.UPSTREAM_REQUESTS, permits.availablePermits() );
+        RenderContext other = mock( RenderContext.class );
+        new RemoteWMSLayerData( client, gm, params, "layer", 5, null ).render( other );
+        verify( other ).paintImage( image );
+    }
+
+    @Test
+    public void testPermitHeldUntilTimedOutRequestReturns()
+                            throws Exception {
+        final CountDownLatch returned = new CountDownLatch( 1 );
+        Answer<Pair<BufferedImage, String>> answer = new Answer<Pair<BufferedImage, String>>() {
+            @Override
+            public Pair<BufferedImage, String> answer( InvocationOnMock invocation )
+                                    throws Throwable {
+                // like blocking socket I/O, the request does not react to being interrupted
+                boolean done = false;
+                while ( !done ) {
+                    try {
+                        release.await();
+                        done = true;
+                    } catch ( InterruptedException e ) {
+                        interrupted.countDown();
+                    }
+                }
+                returned.countDown();
+                return new Pair<BufferedImage, String>( image, null );
+            }
+        };
+        when( client.getMap( any( GetMap.class ), eq( params ), anyInt() ) ).thenAnswer( answer );
+        Semaphore permits = RemoteWMSLayerData.getPermits( client );
+
+        new RemoteWMSLayerData( client, gm, params, "layer", 1, headers ).render( context );
+        assertEquals( 1, headers.size() );
+        assertTrue( interrupted.await( 5, SECONDS ) );
+        // the timed out request is still running and keeps its permit
+        assertEquals( RemoteWMSLayerData.UPSTREAM_REQUESTS - 1, permits.availablePermits() );
+
+        release.countDown();
+        assertTrue( returned.await( 5, SECONDS ) );
+        for ( int i = 0; i < 50 && permits.availablePermits() < RemoteWMSLayerData.UPSTREAM_REQUESTS; ++i ) {
+            Thread.sleep( 100 );
+        }
+        assertEquals( RemoteWMSLayerData.UPSTREAM_REQUESTS, permits.availablePermits() );
+    }
+
+    private void respondSlowly()
+                            throws Exception {
+        Answer<Pair<BufferedImage, String>> answer = new Answer<Pair<BufferedImage, String>>() {
+            @Override
+            public Pair<BufferedImage, String> answer( InvocationOnMock invocation )
+                                    throws Throwable {
+                try {
+                    release.await();
+                } catch ( InterruptedException e ) {
+                    interrupted.countDown();
+                    throw e;
+                }
+                return new Pair<BufferedImage, String>( image, null );
+            }
+        };
+        when( client.getMap( any( GetMap.class ), eq( params ), anyInt() ) ).thenAnswer( answer );
+    }
+
+}
@@ -99,6 +99,7 @@ public class GetCoverage100KVPAdapter {
 
         SUPPORTED_INTERPOLATIONS.put( "NEAREST-NEIGHBOR", InterpolationType.NEAREST_NEIGHBOR );
         SUPPORTED_INTERPOLATIONS.put( "BILINEAR", InterpolationType.BILINEAR );
+        SUPPORTED_INTERPOLATIONS.put( "BICUBIC", InterpolationType.BICUBIC );
     }
 
     /**
@@ -95,6 +95,8 @@ import org.deegree.cs.persistence.CRSManager;
 import org.deegree.feature.Feature;
 import org.deegree.feature.FeatureCollection;
 import org.deegree.feature.GenericFeatureCollection;
+import org.deegree.feature.persistence.BulkInsertTransaction;
+import org.deegree.feature.persistence.ChunkedInsertTransaction;
 import org.deegree.feature.persistence.FeatureStore;
 import org.deegree.feature.persistence.FeatureStoreException;
 import org.deegree.feature.persistence.FeatureStoreTransaction;
@@ -102,6 +104,7 @@ import org.deegree.feature.persistence.lock.Lock;
 import org.deegree.feature.persistence.lock.LockManager;
 import org.deegree.feature.property.GenericProperty;
 import org.deegree.feature.types.AppSchema;
+import org.deegree.feature.types.FeatureCollectionType;
 import org.deegree.feature.types.FeatureType;
 import org.deegree.feature.types.property.CustomPropertyType;
 import org.deegree.filter.Filter;
@@ -114,6 +117,7 @@ import org.deegree.gml.GMLInputFactory;
 import org.deegree.gml.GMLStreamReader;
 import org.deegree.gml.GMLVersion;
 import org.deegree.gml.feature.GMLFeatureReader;
+import org.deegree.gml.feature.StreamFeatureCollection;
 import org.deegree.gml.reference.FeatureReference;
 import org.deegree.protocol.wfs.transaction.ReleaseAction;
 import org.deegree.protocol.wfs.transaction.Transaction;
@@ -151,6 +155,9 @@ class TransactionHandler {
 
     private static final Logger LOG = LoggerFactory.getLogger( TransactionHandler.class );
 
+    /** Number of features that are passed to the feature store at once when inserting features in chunks. */
+    static final int INSERT_CHUNK_SIZE = Math.max( 1, Integer.getInteger( "deegree.wfs.insertchunksize", 1000 ) );
+
     private final WebFeatureService master;
 
     private final WfsFeatureStoreManager service;
@@ -169,6 +176,8 @@ class TransactionHandler {
 
     private final IDGenMode idGenMode;
 
+    private final boolean bulkInsert;
+
     /**
      * Creates a new {@link TransactionHandler} instance that uses the given service to lookup requested
      * {@link FeatureType}s.
@@ -180,13 +189,16 @@ class TransactionHandler {
      * @param request
      *            request to be handled
      * @param idGenMode
+     * @param bulkInsert
+     *            <code>true</code>, if inserts shall use the bulk insert mode of the feature store (if supported)
      */
     TransactionHandler( WebFeatureService master, WfsFeatureStoreManager service, Transaction request,
-                        IDGenMode idGenMode ) {
+                        IDGenMode idGenMode, boolean bulkInsert ) {
         this.master = master;
         this.service = service;
         this.request = request;
         this.idGenMode = idGenMode;
+        this.bulkInsert = bulkInsert;
     }
 
     /**
@@ -388,22 +400,26 @@ class TransactionHandler {
 
         GMLVersion inputFormat = determineFormat( request.getVersion(), insert.getInputFormat() );
 
-        // TODO streaming
         FeatureStoreTransaction ta = null;
         try {
             XMLStreamReader xmlStream = insert.getFeatures();
-            FeatureCollection fc = parseFeaturesOrCollection( xmlStream, inputFormat, defaultCRS );
             FeatureStore fs = service.getStores()[0];
             ta = acquireTransaction( fs );
-            IDGenMode mode = insert.getIdGen();
-            if ( mode == null ) {
-                if ( VERSION_110.equals( request.getVersion() ) ) {
-                    mode = GENERATE_NEW;
-                } else {
-                    mode = idGenMode;
+            if ( bulkInsert && ta instanceof BulkInsertTransaction ) {
+                BulkInsertTransaction bulkTa = (BulkInsertTransaction) ta;
+                if ( bulkTa.isBulkInsertSupported() ) {
+                    LOG.debug( "Using bulk insert mode." );
+                    bulkTa.setBulkInsert( true );
                 }
             }
-            List<String> newFids = ta.performInsert( fc, mode );
+            IDGenMode mode = getIdGenMode( insert.getIdGen(), request.getVersion(), idGenMode );
+            List<String> newFids = null;
+            if ( ta instanceof ChunkedInsertTransaction ) {
+                newFids = insertChunked( (ChunkedInsertTransaction) ta, xmlStream, inputFormat, defaultCRS, mode );
+            } else {
+                FeatureCollection fc = parseFeaturesOrCollection( xmlStream, inputFormat, defaultCRS );
+                newFids = ta.performInsert( fc, mode );
+            }
             for ( String newFid : newFids ) {
                 inserted.add( newFid, insert.getHandle() );
             }
@@ -414,18 +430,103 @@ class TransactionHandler {
         }
     }
 
-    private FeatureCollection parseFeaturesOrCollection( XMLStreamReader xmlStream, GMLVersion inputFormat,
-                                                         ICRS defaultCRS )
-                            throws XMLStreamException, XMLParsingException, UnknownCRSException,
-                            ReferenceResolvingException {
+    /**
+     * Determines the id generation mode for an insert action.
+     * 
+     * @param requested
+     *            mode requested by the insert action, may be <code>null</code>
+     * @param version
+     *            WFS version of the request, must not be <code>null</code>
+     * @param defaultMode
+     *            configured default mode, must not be <code>null</code>
+     * @return mode to use, never <code>null</code>
+     */
+    static IDGenMode getIdGenMode( IDGenMode requested, Version version, IDGenMode defaultMode ) {
+        if ( requested != null ) {
+            return requested;
+        }
+        return VERSION_110.equals( version ) ? GENERATE_NEW : defaultMode;
+    }
 
-        FeatureCollection fc = null;
+    /**
+     * Parses the features to be inserted incrementally and passes them to the feature store in chunks of
+     * {@link #INSERT_CHUNK_SIZE} features, so the memory consumption does not depend on the number of features in the
+     * request. Local xlink references between chunks are resolved by the feature store.
+     */
+    private List<String> insertChunked( ChunkedInsertTransaction ta, XMLStreamReader xmlStream,
+                                        GMLVersion inputFormat, ICRS defaultCRS, IDGenMode mode )
+                            throws XMLStreamException, XMLParsingException, UnknownCRSException, IOException,
+                            FeatureStoreException {
+        GMLStreamReader gmlStream = createGmlStream( xmlStream, inputFormat, defaultCRS );
+        InsertFeatureReader reader = new InsertFeatureReader( xmlStream, gmlStream );
+        return insertChunked( ta, reader, gmlStream, mode, INSERT_CHUNK_SIZE );
+    }
 
+    /**
+     * Passes the features of the given reader to the feature store in chunks.
+     * 
+     * @param ta
+     *            transaction, must not be <code>null</code>
+     * @param reader
+     *            reader for the features to be inserted, must not be <code>null</code>
+     * @param gmlStream
+     *            GML stream that the reader uses, must not be <code>null</code>
+     * @param mode
+     *            id generation mode, must not be <code>null</code>
+     * @param chunkSize
+     *            maximum number of features per chunk
+     * @return ids of the inserted features, never <code>null</code>
+     */
+    static List<String> insertChunked( ChunkedInsertTransaction ta, InsertFeatureReader reader,
+                                       GMLStreamReader gmlStream, IDGenMode mode, int chunkSize )
+                            throws XMLStreamException, XMLParsingException, UnknownCRSException, IOException,
+                            FeatureStoreException {
+
+        List<Feature> chunk = new ArrayList<Feature>( chunkSize );
+        int numFeatures = 0;
+
+        ta.beginChunkedInsert( mode );
+        Feature feature = null;
+        while ( ( feature = reader.read() ) != null ) {
+            chunk.add( feature );
+            if ( chunk.size() == chunkSize ) {
+                numFeatures += insertChunk( ta, chunk, gmlStream );
+            }
+        }
+        numFeatures += insertChunk( ta, chunk, gmlStream );
+        LOG.debug( "Inserted " + numFeatures + " features in chunks of " + chunkSize + "." );
+        return ta.endChunkedInsert();
+    }
+
+    private static int insertChunk( ChunkedInsertTransaction ta, List<Feature> chunk, GMLStreamReader gmlStream )
+                            throws FeatureStoreException {
+        int size = chunk.size();
+        if ( size > 0 ) {
+            ta.insertChunk( new GenericFeatureCollection( null, chunk ) );
+            chunk.clear();
+            // objects of the chunk are not needed for parsing the remaining features
+            gmlStream.getIdContext().clear();
+        }
+        return size;
+    }
+
+    private GMLStreamReader createGmlStream( XMLStreamReader xmlStream, GMLVersion inputFormat, ICRS defaultCRS )
+                            throws XMLStreamException {
         // TODO determine correct schema
         AppSchema schema = service.getStores()[0].getSchema();
         GMLStreamReader gmlStream = GMLInputFactory.createGMLStreamReader( inputFormat, xmlStream );
         gmlStream.setApplicationSchema( schema );
         gmlStream.setDefaultCRS( defaultCRS );
+        return gmlStream;
+    }
+
+    private FeatureCollection parseFeaturesOrCollection( XMLStreamReader xmlStream, GMLVersion inputFormat,
+                                                         ICRS defaultCRS )
+                            throws XMLStreamException, XMLParsingException, UnknownCRSException,
+                            ReferenceResolvingException {
+
+        FeatureCollection fc = null;
+        GMLStreamReader gmlStream = createGmlStream( xmlStream, inputFormat, defaultCRS );
 
         if ( new QName( WFS_NS, "FeatureCollection" ).equals( xmlStream.getName() ) ) {
             LOG.debug( "Features embedded in wfs:FeatureCollection" );
@@ -893,4 +994,132 @@ class TransactionHandler {
         }
         return gmlVersion;
     }
+
+    /**
+     * Reads the features of an insert action one by one. Supports features embedded in a
+     * <code>wfs:FeatureCollection</code>, in a feature collection from the application schema and unenclosed features.
+     */
+    static class InsertFeatureReader {
+
+        private final XMLStreamReader xmlStream;
+
+        private final GMLStreamReader gmlStream;
+
+        private boolean wfsCollection;
+
+        private boolean featureMembers;
+
+        private StreamFeatureCollection appCollection;
+
+        private Iterator<Feature> members;
+
+        private Feature next;
+
+        private boolean finished;
+
+        InsertFeatureReader( XMLStreamReader xmlStream, GMLStreamReader gmlStream )
+                            throws XMLStreamException, XMLParsingException, UnknownCRSException {
+            this.xmlStream = xmlStream;
+            this.gmlStream = gmlStream;
+            QName elName = xmlStream.getName();
+            if ( new QName( WFS_NS, "FeatureCollection" ).equals( elName ) ) {
+                LOG.debug( "Features embedded in wfs:FeatureCollection" );
+                wfsCollection = true;
+            } else if ( isAppFeatureCollection( elName ) ) {
+                LOG.debug( "Features embedded in application FeatureCollection" );
+                appCollection = gmlStream.readFeatureCollectionStream();
+            } else {
+                // must contain one or more features or a feature collection from the application schema
+                next = gmlStream.readFeature();
+                if ( next instanceof FeatureCollection ) {
+                    LOG.debug( "Features embedded in application FeatureCollection" );
+                    members = ( (FeatureCollection) next ).iterator();
+                    next = null;
+                } else {
+                    LOG.debug( "Unenclosed features to be inserted" );
+                }
+            }
+        }
+
+        private boolean isAppFeatureCollection( QName elName ) {
+            AppSchema schema = gmlStream.getAppSchema();
+            return schema != null && schema.getFeatureType( elName ) instanceof FeatureCollectionType;
+        }
+
+        /**
+         * Returns the next feature.
+         * 
+         * @return next feature, or <code>null</code> if all features have been read (the stream points at the
+         *         <code>END_ELEMENT</code> of the insert action then)
+         */
+        Feature read()
+                            throws XMLStreamException, XMLParsingException, UnknownCRSException, IOException {
+            if ( finished ) {
+                return null;
+            }
+            Feature feature = null;
+            if ( wfsCollection ) {
+                feature = readWFSCollectionMember();
+            } else if ( appCollection != null ) {
+                feature = appCollection.read();
+            } else if ( members != null ) {
+                feature = members.hasNext() ? members.next() : null;
+            } else if ( next != null ) {
+                feature = next;
+                next = null;
+            } else if ( xmlStream.nextTag() == START_ELEMENT ) {
+                feature = gmlStream.readFeature();
+            } else {
+                // already at wfs:Insert END_ELEMENT
+                finished = true;
+                return null;
+            }
+            if ( feature == null ) {
+                // skip to wfs:Insert END_ELEMENT
+                xmlStream.nextTag();
+                finished = true;
+            }
+            return feature;
+        }
+
+        private Feature readWFSCollectionMember()
+                            throws XMLStreamException, XMLParsingException, UnknownCRSException {
+            while ( true ) {
+                if ( featureMembers ) {
+                    if ( xmlStream.nextTag() == START_ELEMENT ) {
+                        return gmlStream.readFeature();
+                    }
+                    featureMembers = false;
+                }
+                if ( xmlStream.nextTag() != START_ELEMENT ) {
+                    xmlStream.require( END_ELEMENT, WFS_NS, "FeatureCollection" );
+                    return null;
+                }
+                QName elName = xmlStream.getName();
+                if ( CommonNamespaces.GMLNS.equals( elName.getNamespaceURI() ) ) {
+                    if ( "featureMember".equals( elName.getLocalPart() ) ) {
+                        Feature feature = null;
+                        // xlink?
+                        String href = xmlStream.getAttributeValue( XLNNS, "href" );
+                        if ( href != null ) {
+                            FeatureReference refFeature = new FeatureReference( gmlStream.getIdContext(), href, null );
+                            gmlStream.getIdContext().addReference( refFeature );
+                            feature = refFeature;
+                        } else {
+                            xmlStream.nextTag();
+                            feature = gmlStream.readFeature();
+                        }
+                        xmlStream.nextTag();
+                        return feature;
+                    } else if ( "featureMembers".equals( elName.getLocalPart() ) ) {
+                        featureMembers = true;
+                        continue;
+                    }
+                }
+                LOG.debug( "Ignoring element '" + elName + "'" );
+                XMLStreamUtils.skipElement( xmlStream );
+            }
+        }
+    }
+
 }
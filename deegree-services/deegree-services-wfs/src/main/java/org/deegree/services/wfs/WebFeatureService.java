@@ -54,6 +54,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -203,6 +204,9 @@ public class WebFeatureService extends AbstractOWS {
 
     private static final int DEFAULT_MAX_FEATURES = 15000;
 
+    // vendor specific parameter for enabling the bulk insert mode of the feature store (true/false)
+    private static final String BULK_INSERT_PARAM = "BULKINSERT";
+
     private WfsFeatureStoreManager service;
 
     private LockFeatureHandler lockFeatureHandler;
@@ -624,7 +628,8 @@ public class WebFeatureService extends AbstractOWS {
                 }
                 checkTransactionsEnabled( requestName );
                 Transaction transaction = TransactionKVPAdapter.parse( kvpParamsUC );
-                new TransactionHandler( this, service, transaction, idGenMode ).doTransaction( response );
+                boolean bulkInsert = Boolean.parseBoolean( kvpParamsUC.get( BULK_INSERT_PARAM ) );
+                new TransactionHandler( this, service, transaction, idGenMode, bulkInsert ).doTransaction( response );
                 break;
             default:
                 throw new RuntimeException( "Internal error: Unhandled request '" + requestName + "'." );
@@ -648,6 +653,23 @@ public class WebFeatureService extends AbstractOWS {
         }
     }
 
+    /**
+     * Returns whether the vendor specific parameter for bulk inserts has been set in the request URL (for XML/SOAP
+     * requests).
+     */
+    private static boolean isBulkInsertRequested( HttpServletRequest request ) {
+        if ( request != null ) {
+            Enumeration<?> names = request.getParameterNames();
+            while ( names.hasMoreElements() ) {
+                String name = (String) names.nextElement();
+                if ( BULK_INSERT_PARAM.equalsIgnoreCase( name ) ) {
+                    return Boolean.parseBoolean( request.getParameter( name ) );
+                }
+            }
+        }
+        return false;
+    }
+
     private void checkTransactionsEnabled( String requestName )
                             throws OWSException {
         if ( !enableTransactions ) {
@@ -765,7 +787,8 @@ public class WebFeatureService extends AbstractOWS {
                 checkTransactionsEnabled( requestName );
                 TransactionXmlReader transactionReader = new TransactionXmlReaderFactory().createReader( xmlStream );
                 Transaction transaction = transactionReader.read( xmlStream );
-                new TransactionHandler( this, service, transaction, idGenMode ).doTransaction( response );
+                new TransactionHandler( this, service, transaction, idGenMode,
+                                        isBulkInsertRequested( request ) ).doTransaction( response );
                 break;
             default:
                 throw new RuntimeException( "Internal error: Unhandled request '" + requestName + "'." );
@@ -916,7 +939,8 @@ public class WebFeatureService extends AbstractOWS {
                 checkTransactionsEnabled( requestName );
                 TransactionXmlReader transactionReader = new TransactionXmlReaderFactory().createReader( requestVersion );
                 Transaction transaction = transactionReader.read( bodyXmlStream );
-                new TransactionHandler( this, service, transaction, idGenMode ).doTransaction( response );
+                new TransactionHandler( this, service, transaction, idGenMode,
+                                        isBulkInsertRequested( request ) ).doTransaction( response );
                 break;
             default:
                 throw new RuntimeException( "Internal error: Unhandled request '" + requestName + "'." );
@@ -146,8 +146,11 @@ public class GmlGetFeatureHandler extends AbstractGmlRequestHandler {
 
         GMLVersion gmlVersion = options.getGmlVersion();
 
+        // generated gml:boundedBy elements need all geometry properties, so projections can only be pushed down if
+        // they are disabled
         QueryAnalyzer analyzer = new QueryAnalyzer( request.getQueries(), format.getMaster(),
-                                                    format.getMaster().getStoreManager(), options.isCheckAreaOfUse() );
+                                                    format.getMaster().getStoreManager(), options.isCheckAreaOfUse(),
+                                                    !options.isGenerateBoundedByForFeatures() );
         Lock lock = acquireLock( request, analyzer );
 
         String schemaLocation = getSchemaLocation( request.getVersion(), analyzer.getFeatureTypes() );
@@ -255,6 +258,10 @@ public class GmlGetFeatureHandler extends AbstractGmlRequestHandler {
             startIndex = request.getPresentationParams().getStartIndex().intValue();
         }
 
+        if ( !isGetFeatureById ) {
+            startIndex = pushDownPaging( analyzer, returnMaxFeatures, startIndex, lock );
+        }
+
         GMLStreamWriter gmlStream = createGMLStreamWriter( gmlVersion, xmlStream );
         gmlStream.setProjections( analyzer.getProjections() );
         gmlStream.setOutputCrs( analyzer.getRequestedCRS() );
@@ -409,6 +416,31 @@ public class GmlGetFeatureHandler extends AbstractGmlRequestHandler {
         }
     }
 
+    /**
+     * Passes the paging parameters to the feature store, so it can skip the features before the start index in the
+     * backend (e.g. using SQL <code>OFFSET</code>). This is only possible if all features are retrieved using a single
+     * store query and no lock filtering is necessary. Without a start index, nothing is passed, as stores only enforce
+     * the maximum number of features for paged queries.
+     * 
+     * @return number of features that still have to be skipped by the caller
+     */
+    private int pushDownPaging( QueryAnalyzer analyzer, int maxFeatures, int startIndex, Lock lock ) {
+        Map<FeatureStore, List<Query>> fsToQueries = analyzer.getQueries();
+        if ( startIndex <= 0 || lock != null || fsToQueries.size() != 1 ) {
+            return startIndex;
+        }
+        List<Query> queries = fsToQueries.values().iterator().next();
+        if ( queries.size() != 1 ) {
+            return startIndex;
+        }
+        Query query = queries.get( 0 );
+        query.setStartIndex( startIndex );
+        if ( maxFeatures > 0 ) {
+            query.setMaxFeatures( maxFeatures );
+        }
+        return 0;
+    }
+
     private void writeFeatureMembersStream( Version wfsVersion, GMLStreamWriter gmlStream, QueryAnalyzer analyzer,
                                             GMLVersion outputFormat, int maxFeatures, int startIndex,
                                             QName featureMemberEl, Lock lock )
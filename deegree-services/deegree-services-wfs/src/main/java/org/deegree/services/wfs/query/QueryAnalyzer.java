@@ -138,6 +138,8 @@ public class QueryAnalyzer {
 
     private final boolean checkAreaOfUse;
 
+    private final boolean pushDownProjections;
+
     /**
      * Creates a new {@link QueryAnalyzer}.
      * 
@@ -153,10 +155,33 @@ public class QueryAnalyzer {
      */
     public QueryAnalyzer( List<org.deegree.protocol.wfs.query.Query> wfsQueries, WebFeatureService controller,
                           WfsFeatureStoreManager service, boolean checkInputDomain ) throws OWSException {
+        this( wfsQueries, controller, service, checkInputDomain, false );
+    }
+
+    /**
+     * Creates a new {@link QueryAnalyzer}.
+     * 
+     * @param wfsQueries
+     *            queries be performed, must not be <code>null</code>
+     * @param service
+     *            {@link WfsFeatureStoreManager} to be used, must not be <code>null</code>
+     * @param checkInputDomain
+     *            true, if geometries in query constraints should be checked against validity domain of the SRS (needed
+     *            for CITE 1.1.0 compliance)
+     * @param pushDownProjections
+     *            true, if the projection clauses of the WFS queries should be passed to the feature stores (stores may
+     *            return features that only contain the requested and the mandatory properties then)
+     * @throws OWSException
+     *             if the request cannot be performed, e.g. because it queries feature types that are not served
+     */
+    public QueryAnalyzer( List<org.deegree.protocol.wfs.query.Query> wfsQueries, WebFeatureService controller,
+                          WfsFeatureStoreManager service, boolean checkInputDomain, boolean pushDownProjections )
+                            throws OWSException {
 
         this.controller = controller;
         this.service = service;
         this.checkAreaOfUse = checkInputDomain;
+        this.pushDownProjections = pushDownProjections;
 
         // generate validated feature store queries
         if ( wfsQueries.isEmpty() ) {
@@ -458,8 +483,32 @@ public class QueryAnalyzer {
             Filters.setDefaultCRS( filter, controller.getDefaultQueryCrs() );
         }
 
+        List<ProjectionClause> storeProjections = null;
+        if ( pushDownProjections && isSimplePropertyProjection( wfsQuery.getProjectionClauses() ) ) {
+            storeProjections = Arrays.asList( wfsQuery.getProjectionClauses() );
+        }
+
         return new Query( typeNames, filter, ( (AdHocQuery) wfsQuery ).getFeatureVersion(),
-                          ( (AdHocQuery) wfsQuery ).getSrsName(), sortProps );
+                          ( (AdHocQuery) wfsQuery ).getSrsName(), sortProps, storeProjections );
+    }
+
+    /**
+     * Returns whether the given projection clauses only consist of property names with simple qualified element names
+     * (the only ones that are respected by the GML encoder).
+     */
+    private boolean isSimplePropertyProjection( ProjectionClause[] projections ) {
+        if ( projections == null || projections.length == 0 ) {
+            return false;
+        }
+        for ( ProjectionClause projection : projections ) {
+            if ( !( projection instanceof PropertyName ) ) {
+                return false;
+            }
+            if ( ( (PropertyName) projection ).getPropertyName().getAsQName() == null ) {
+                return false;
+            }
+        }
+        return true;
     }
 
     private void validatePropertyName( ValueReference propName, TypeName[] typeNames )
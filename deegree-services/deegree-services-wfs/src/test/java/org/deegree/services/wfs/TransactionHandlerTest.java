@@ -0,0 +1,267 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.services.wfs;
+
+import static java.util.Arrays.asList;
+import static javax.xml.stream.XMLStreamConstants.END_ELEMENT;
+import static org.deegree.protocol.wfs.WFSConstants.VERSION_110;
+import static org.deegree.protocol.wfs.WFSConstants.VERSION_200;
+import static org.deegree.protocol.wfs.transaction.action.IDGenMode.GENERATE_NEW;
+import static org.deegree.protocol.wfs.transaction.action.IDGenMode.REPLACE_DUPLICATE;
+import static org.deegree.protocol.wfs.transaction.action.IDGenMode.USE_EXISTING;
+import static org.deegree.services.wfs.TransactionHandler.getIdGenMode;
+import static org.deegree.services.wfs.TransactionHandler.insertChunked;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.deegree.commons.xml.stax.XMLStreamUtils;
+import org.deegree.feature.Feature;
+import org.deegree.feature.FeatureCollection;
+import org.deegree.feature.persistence.ChunkedInsertTransaction;
+import org.deegree.gml.GMLStreamReader;
+import org.deegree.gml.GMLVersion;
+import org.deegree.gml.reference.FeatureReference;
+import org.deegree.gml.reference.GmlDocumentIdContext;
+import org.deegree.protocol.wfs.transaction.action.IDGenMode;
+import org.deegree.services.wfs.TransactionHandler.InsertFeatureReader;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Tests for the chunked insert of {@link TransactionHandler}.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+public class TransactionHandlerTest {
+
+    private static final String NAMESPACES = " xmlns:wfs='http://www.opengis.net/wfs'"
+                                             + " xmlns:gml='http://www.opengis.net/gml'"
+                                             + " xmlns:xlink='http://www.w3.org/1999/xlink'"
+                                             + " xmlns:app='http://www.deegree.org/app'";
+
+    @Test
+    public void testIdGenModeRequested() {
+        assertEquals( USE_EXISTING, getIdGenMode( USE_EXISTING, VERSION_110, GENERATE_NEW ) );
+        assertEquals( REPLACE_DUPLICATE, getIdGenMode( REPLACE_DUPLICATE, VERSION_200, USE_EXISTING ) );
+    }
+
+    @Test
+    public void testIdGenModeDefaults() {
+        assertEquals( GENERATE_NEW, getIdGenMode( null, VERSION_110, USE_EXISTING ) );
+        assertEquals( USE_EXISTING, getIdGenMode( null, VERSION_200, USE_EXISTING ) );
+        assertEquals( REPLACE_DUPLICATE, getIdGenMode( null, VERSION_200, REPLACE_DUPLICATE ) );
+    }
+
+    @Test
+    public void testChunkBoundary()
+                            throws Exception {
+        assertEquals( asList( 2, 2, 1 ), insertInChunks( 5, 2, USE_EXISTING ) );
+        assertEquals( asList( 2, 2 ), insertInChunks( 4, 2, USE_EXISTING ) );
+        assertEquals( asList( 1 ), insertInChunks( 1, 1000, USE_EXISTING ) );
+        assertEquals( asList( 1, 1, 1 ), insertInChunks( 3, 1, USE_EXISTING ) );
+    }
+
+    @Test
+    public void testNoFeatures()
+                            throws Exception {
+        assertTrue( insertInChunks( 0, 2, GENERATE_NEW ).isEmpty() );
+    }
+
+    @Test
+    public void testIdGenModeIsPassedToTransaction()
+                            throws Exception {
+        InsertFeatureReader reader = mock( InsertFeatureReader.class );
+        Feature feature = createFeature( "f1" );
+        when( reader.read() ).thenReturn( feature, (Feature) null );
+        GMLStreamReader gmlStream = mock( GMLStreamReader.class );
+        GmlDocumentIdContext idContext = mock( GmlDocumentIdContext.class );
+        when( gmlStream.getIdContext() ).thenReturn( idContext );
+        ChunkedInsertTransaction ta = mock( ChunkedInsertTransaction.class );
+        when( ta.endChunkedInsert() ).thenReturn( asList( "NEW_1" ) );
+
+        assertEquals( asList( "NEW_1" ), insertChunked( ta, reader, gmlStream, GENERATE_NEW, 10 ) );
+        InOrder order = inOrder( ta, idContext );
+        order.verify( ta ).beginChunkedInsert( GENERATE_NEW );
+        order.verify( ta ).insertChunk( any( FeatureCollection.class ) );
+        order.verify( idContext ).clear();
+        order.verify( ta ).endChunkedInsert();
+    }
+
+    @Test
+    public void testReadUnenclosedFeatures()
+                            throws Exception {
+        XMLStreamReader xmlStream = createStream( "<app:A fid='1'/><app:A fid='2'><app:p/></app:A><app:A fid='3'/>" );
+        InsertFeatureReader reader = new InsertFeatureReader( xmlStream, createGmlStream( xmlStream ) );
+        assertEquals( asList( "1", "2", "3" ), readAll( reader ) );
+        assertInsertEnd( xmlStream );
+        assertNull( reader.read() );
+    }
+
+    @Test
+    public void testReadWfsFeatureCollection()
+                            throws Exception {
+        String members = "<gml:featureMember><app:A fid='1'/></gml:featureMember>"
+                         + "<gml:featureMember xlink:href='#x'/><gml:boundedBy/>"
+                         + "<gml:featureMembers><app:A fid='2'/><app:A fid='3'/></gml:featureMembers>";
+        XMLStreamReader xmlStream = createStream( "<wfs:FeatureCollection>" + members + "</wfs:FeatureCollection>" );
+        GMLStreamReader gmlStream = createGmlStream( xmlStream );
+        InsertFeatureReader reader = new InsertFeatureReader( xmlStream, gmlStream );
+
+        List<String> ids = readAll( reader );
+        assertEquals( asList( "1", null, "2", "3" ), ids );
+        assertInsertEnd( xmlStream );
+        assertEquals( 1, gmlStream.getIdContext().getReferences().size() );
+        assertEquals( "#x", gmlStream.getIdContext().getReferences().get( 0 ).getURI() );
+        verify( gmlStream, times( 3 ) ).readFeature();
+        verify( gmlStream, never() ).readFeatureCollectionStream();
+    }
+
+    private static List<Integer> insertInChunks( int numFeatures, int chunkSize, IDGenMode mode )
+                            throws Exception {
+        InsertFeatureReader reader = mock( InsertFeatureReader.class );
+        Feature[] features = new Feature[numFeatures];
+        for ( int i = 0; i < numFeatures; i++ ) {
+            features[i] = createFeature( "f" + i );
+        }
+        when( reader.read() ).thenReturn( numFeatures > 0 ? features[0] : null, tail( features ) );
+        GMLStreamReader gmlStream = mock( GMLStreamReader.class );
+        GmlDocumentIdContext idContext = mock( GmlDocumentIdContext.class );
+        when( gmlStream.getIdContext() ).thenReturn( idContext );
+        ChunkedInsertTransaction ta = mock( ChunkedInsertTransaction.class );
+
+        insertChunked( ta, reader, gmlStream, mode, chunkSize );
+
+        verify( ta ).beginChunkedInsert( mode );
+        verify( ta ).endChunkedInsert();
+        ArgumentCaptor<FeatureCollection> chunks = ArgumentCaptor.forClass( FeatureCollection.class );
+        verify( ta, times( ( numFeatures + chunkSize - 1 ) / chunkSize ) ).insertChunk( chunks.capture() );
+        List<Integer> sizes = new ArrayList<Integer>();
+        int i = 0;
+        for ( FeatureCollection chunk : chunks.getAllValues() ) {
+            sizes.add( chunk.size() );
+            for ( Feature feature : chunk ) {
+                assertEquals( features[i++], feature );
+            }
+        }
+        assertEquals( numFeatures, i );
+        // the id context is cleared after every chunk
+        verify( idContext, times( sizes.size() ) ).clear();
+        return sizes;
+    }
+
+    // remaining return values of the reader: all features but the first one, then null
+    private static Feature[] tail( Feature[] features ) {
+        Feature[] tail = new Feature[Math.max( 1, features.length )];
+        for ( int i = 1; i < features.length; i++ ) {
+            tail[i - 1] = features[i];
+        }
+        return tail;
+    }
+
+    private static Feature createFeature( String id ) {
+        Feature feature = mock( Feature.class );
+        when( feature.getId() ).thenReturn( id );
+        return feature;
+    }
+
+    private static List<String> readAll( InsertFeatureReader reader )
+                            throws Exception {
+        List<String> ids = new ArrayList<String>();
+        Feature feature = null;
+        while ( ( feature = reader.read() ) != null ) {
+            ids.add( feature instanceof FeatureReference ? null : feature.getId() );
+        }
+        return ids;
+    }
+
+    /**
+     * Returns a stream that points at the first element inside of a <code>wfs:Insert</code> element.
+     */
+    private static XMLStreamReader createStream( String content )
+                            throws XMLStreamException {
+        String xml = "<wfs:Insert" + NAMESPACES + ">" + content + "</wfs:Insert>";
+        XMLStreamReader xmlStream = XMLInputFactory.newInstance().createXMLStreamReader( new StringReader( xml ) );
+        xmlStream.nextTag();
+        xmlStream.nextTag();
+        return xmlStream;
+    }
+
+    private static void assertInsertEnd( XMLStreamReader xmlStream ) {
+        assertEquals( END_ELEMENT, xmlStream.getEventType() );
+        assertEquals( "Insert", xmlStream.getLocalName() );
+    }
+
+    /**
+     * Returns a mocked {@link GMLStreamReader} that "parses" features by skipping their elements.
+     */
+    private static GMLStreamReader createGmlStream( final XMLStreamReader xmlStream )
+                            throws Exception {
+        GMLStreamReader gmlStream = mock( GMLStreamReader.class );
+        when( gmlStream.getIdContext() ).thenReturn( new GmlDocumentIdContext( GMLVersion.GML_31 ) );
+        when( gmlStream.readFeature() ).thenAnswer( new Answer<Feature>() {
+            @Override
+            public Feature answer( InvocationOnMock invocation )
+                                    throws Throwable {
+                String fid = xmlStream.getAttributeValue( null, "fid" );
+                XMLStreamUtils.skipElement( xmlStream );
+                return createFeature( fid );
+            }
+        } );
+        return gmlStream;
+    }
+
+}
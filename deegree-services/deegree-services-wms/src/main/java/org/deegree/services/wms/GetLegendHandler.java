@@ -45,21 +45,47 @@ import static java.awt.RenderingHints.KEY_ANTIALIASING;
 import static java.awt.RenderingHints.KEY_TEXT_ANTIALIASING;
 import static java.awt.RenderingHints.VALUE_ANTIALIAS_ON;
 import static java.awt.RenderingHints.VALUE_TEXT_ANTIALIAS_ON;
+import static java.lang.Math.max;
 import static org.deegree.style.utils.ImageUtils.postprocessPng8bit;
+import static org.slf4j.LoggerFactory.getLogger;
 
 import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.deegree.commons.ows.exception.OWSException;
 import org.deegree.commons.utils.Pair;
 import org.deegree.layer.LayerRef;
+import org.deegree.layer.metadata.LayerMetadata;
 import org.deegree.protocol.wms.ops.GetLegendGraphic;
+import org.deegree.rendering.r2d.legends.LegendOptions;
 import org.deegree.rendering.r2d.legends.Legends;
 import org.deegree.style.StyleRef;
 import org.deegree.style.se.unevaluated.Style;
+import org.deegree.style.utils.ImageUtils;
+import org.deegree.theme.Theme;
+import org.slf4j.Logger;
 
 /**
  * Produces legends for the map service.
+ * <p>
+ * Encoded legends are cached by layer, style, format, size and legend options. The cache is bounded by the size of the
+ * encoded images, which can be set in bytes using the system property <code>deegree.wms.legends.cache.bytes</code>
+ * (16 MB by default, 0 disables the cache). The cache keys refer to the style objects, and a new handler is created
+ * along with the map service on every workspace reload, so reloaded styles never yield stale legends.
+ * </p>
  * 
  * @author <a href="mailto:schmitz@occamlabs.de">Andreas Schmitz</a>
  * @author last edited by: $Author: stranger $
@@ -68,51 +94,138 @@ import org.deegree.style.se.unevaluated.Style;
  */
 class GetLegendHandler {
 
-    private HashMap<Style, Pair<Integer, Integer>> legendSizes = new HashMap<Style, Pair<Integer, Integer>>();
+    private static final Logger LOG = getLogger( GetLegendHandler.class );
 
-    private HashMap<Style, HashMap<String, BufferedImage>> legends = new HashMap<Style, HashMap<String, BufferedImage>>();
+    private static final long CACHE_BYTES = max( 0, Long.getLong( "deegree.wms.legends.cache.bytes",
+                                                                  16 * 1024 * 1024 ) );
 
-    private MapService service;
+    private static final Object SPRITE = new Object();
+
+    private final Map<Style, Pair<Integer, Integer>> legendSizes;
+
+    private final EncodedLegendCache cache = new EncodedLegendCache( CACHE_BYTES );
+
+    private final MapService service;
 
     GetLegendHandler( MapService service ) {
         this.service = service;
+        legendSizes = new ConcurrentHashMap<Style, Pair<Integer, Integer>>();
     }
 
-    BufferedImage getLegend( GetLegendGraphic req ) {
+    BufferedImage getLegend( GetLegendGraphic req )
+                            throws OWSException {
         Legends renderer = new Legends( req.getLegendOptions() );
+        Style style = findRequiredLegendStyle( req.getLayer(), req.getStyle() );
+        setSize( req, renderer, style );
+        return buildLegend( renderer, style, req.getFormat(), req.getWidth(), req.getHeight() );
+    }
 
-        Style style = findLegendStyle( req.getLayer(), req.getStyle() );
+    byte[] getEncodedLegend( GetLegendGraphic req, ImageEncoder encoder )
+                            throws OWSException, IOException {
+        Legends renderer = new Legends( req.getLegendOptions() );
+        Style style = findRequiredLegendStyle( req.getLayer(), req.getStyle() );
+        setSize( req, renderer, style );
 
-        Pair<Integer, Integer> size;
-        if ( renderer.getLegendOptions().isDefault() ) {
-            size = getLegendSize( style );
-        } else {
-            size = renderer.getLegendSize( style );
+        LegendOptions opts = req.getLegendOptions();
+        List<Object> key = Arrays.<Object> asList( req.getLayer().getName(), style, req.getFormat(), req.getWidth(),
+                                                   req.getHeight(), opts.baseWidth, opts.baseHeight, opts.textSize,
+                                                   opts.spacing );
+        byte[] bytes = cache.get( key );
+        if ( bytes == null ) {
+            BufferedImage img = buildLegend( renderer, style, req.getFormat(), req.getWidth(), req.getHeight() );
+            bytes = encode( img, req.getFormat(), encoder );
+            cache.put( key, bytes );
         }
+        return bytes;
+    }
 
-        if ( req.getWidth() == -1 ) {
-            req.setWidth( size.first );
+    LegendSprite getLegendSprite( String format, List<String> layers, ImageEncoder encoder )
+                            throws OWSException, IOException {
+        Map<String, Style> styles = new LinkedHashMap<String, Style>();
+        for ( String name : layers ) {
+            if ( service.themeMap.get( name ) == null ) {
+                throw new OWSException( "The layer with name " + name + " is not defined.", "LayerNotDefined",
+                                        "layers" );
+            }
+            Style style = findLegendStyle( new LayerRef( name ), new StyleRef( "default" ) );
+            if ( style != null ) {
+                styles.put( name, style );
+            }
         }
-        if ( req.getHeight() == -1 ) {
-            req.setHeight( size.second );
+        if ( styles.isEmpty() ) {
+            throw new OWSException( "None of the requested layers has a legend.",
+                                    OWSException.INVALID_PARAMETER_VALUE );
         }
 
-        boolean originalSize = req.getWidth() == size.first && req.getHeight() == size.second
-                               && renderer.getLegendOptions().isDefault();
-
-        HashMap<String, BufferedImage> legendMap = legends.get( style );
-        if ( originalSize && legendMap != null && legendMap.get( req.getFormat() ) != null ) {
-            return legendMap.get( req.getFormat() );
+        List<Object> key = new ArrayList<Object>();
+        key.add( SPRITE );
+        key.add( format );
+        Map<String, Pair<Integer, Integer>> regions = new LinkedHashMap<String, Pair<Integer, Integer>>();
+        int width = 0, height = 0;
+        for ( Entry<String, Style> e : styles.entrySet() ) {
+            Pair<Integer, Integer> size = getLegendSize( e.getValue() );
+            regions.put( e.getKey(), new Pair<Integer, Integer>( height, size.second ) );
+            width = max( width, size.first );
+            height += size.second;
+            key.add( e.getKey() );
+            key.add( e.getValue() );
         }
-        if ( legendMap == null ) {
-            legendMap = new HashMap<String, BufferedImage>();
-            legends.put( style, legendMap );
+
+        byte[] bytes = cache.get( key );
+        if ( bytes == null ) {
+            BufferedImage img = ImageUtils.prepareImage( format, width, height, true, null );
+            Graphics2D g = img.createGraphics();
+            Legends renderer = new Legends();
+            for ( Entry<String, Style> e : styles.entrySet() ) {
+                Pair<Integer, Integer> size = getLegendSize( e.getValue() );
+                BufferedImage legend = paintLegend( renderer, e.getValue(), format, size.first, size.second );
+                g.drawImage( legend, 0, regions.get( e.getKey() ).first, null );
+            }
+            g.dispose();
+            bytes = encode( postprocess( img, format ), format, encoder );
+            cache.put( key, bytes );
         }
+        return new LegendSprite( bytes, width, regions );
+    }
 
-        return buildLegend( req, renderer, style, originalSize, legendMap );
+    void prerender( List<String> formats, ImageEncoder encoder ) {
+        if ( service.themeMap == null ) {
+            return;
+        }
+        int count = 0;
+        for ( Entry<String, Theme> e : service.themeMap.entrySet() ) {
+            LayerMetadata md = e.getValue().getLayerMetadata();
+            Set<String> styleNames = new LinkedHashSet<String>( md.getStyles().keySet() );
+            styleNames.addAll( md.getLegendStyles().keySet() );
+            for ( String styleName : styleNames ) {
+                for ( String format : formats ) {
+                    if ( Thread.currentThread().isInterrupted() ) {
+                        LOG.info( "Pre-rendering of legends was interrupted after {} legends.", count );
+                        return;
+                    }
+                    Map<String, String> map = new HashMap<String, String>();
+                    map.put( "LAYER", e.getKey() );
+                    map.put( "STYLE", styleName );
+                    map.put( "FORMAT", format );
+                    try {
+                        getEncodedLegend( new GetLegendGraphic( map ), encoder );
+                        ++count;
+                    } catch ( Exception ex ) {
+                        LOG.warn( "Could not pre-render legend of layer {}, style {}: {}",
+                                  new Object[] { e.getKey(), styleName, ex.getLocalizedMessage() } );
+                        LOG.trace( "Stack trace:", ex );
+                    }
+                }
+            }
+        }
+        LOG.info( "Pre-rendered {} legends.", count );
     }
 
     Pair<Integer, Integer> getLegendSize( Style style ) {
+        if ( style == null ) {
+            // the concurrent map does not support null keys
+            return new Legends().getLegendSize( style );
+        }
         Pair<Integer, Integer> res = legendSizes.get( style );
         if ( res != null ) {
             return res;
@@ -122,6 +235,36 @@ class GetLegendHandler {
         return res;
     }
 
+    private void setSize( GetLegendGraphic req, Legends renderer, Style style ) {
+        Pair<Integer, Integer> size;
+        if ( renderer.getLegendOptions().isDefault() ) {
+            size = getLegendSize( style );
+        } else {
+            size = renderer.getLegendSize( style );
+        }
+
+        if ( req.getWidth() == -1 ) {
+            req.setWidth( size.first );
+        }
+        if ( req.getHeight() == -1 ) {
+            req.setHeight( size.second );
+        }
+    }
+
+    private Style findRequiredLegendStyle( LayerRef layer, StyleRef styleRef )
+                            throws OWSException {
+        if ( service.themeMap.get( layer.getName() ) == null ) {
+            throw new OWSException( "The layer with name " + layer.getName() + " is not defined.", "LayerNotDefined",
+                                    "layer" );
+        }
+        Style style = findLegendStyle( layer, styleRef );
+        if ( style == null ) {
+            throw new OWSException( "Style " + styleRef.getName() + " is not defined for layer " + layer.getName()
+                                    + ".", "StyleNotDefined", "style" );
+        }
+        return style;
+    }
+
     private Style findLegendStyle( LayerRef layer, StyleRef styleRef ) {
         Style style;
         style = service.themeMap.get( layer.getName() ).getLayerMetadata().getLegendStyles().get( styleRef.getName() );
@@ -131,26 +274,73 @@ class GetLegendHandler {
         return style;
     }
 
-    private BufferedImage buildLegend( GetLegendGraphic req, Legends renderer, Style style, boolean originalSize,
-                                       HashMap<String, BufferedImage> legendMap ) {
-        BufferedImage img = MapService.prepareImage( req );
+    private static BufferedImage buildLegend( Legends renderer, Style style, String format, int width, int height ) {
+        return postprocess( paintLegend( renderer, style, format, width, height ), format );
+    }
+
+    private static BufferedImage paintLegend( Legends renderer, Style style, String format, int width, int height ) {
+        BufferedImage img = ImageUtils.prepareImage( format, width, height, true, null );
         Graphics2D g = img.createGraphics();
         g.setRenderingHint( KEY_ANTIALIASING, VALUE_ANTIALIAS_ON );
         g.setRenderingHint( KEY_TEXT_ANTIALIASING, VALUE_TEXT_ANTIALIAS_ON );
 
-        renderer.paintLegend( style, req.getWidth(), req.getHeight(), g );
+        renderer.paintLegend( style, width, height, g );
 
         g.dispose();
+        return img;
+    }
 
-        if ( req.getFormat().equals( "image/png; mode=8bit" ) || req.getFormat().equals( "image/png; subtype=8bit" )
-             || req.getFormat().equals( "image/gif" ) ) {
-            img = postprocessPng8bit( img );
+    private static BufferedImage postprocess( BufferedImage img, String format ) {
+        if ( format.equals( "image/png; mode=8bit" ) || format.equals( "image/png; subtype=8bit" )
+             || format.equals( "image/gif" ) ) {
+            return postprocessPng8bit( img );
         }
+        return img;
+    }
+
+    private static byte[] encode( BufferedImage img, String format, ImageEncoder encoder )
+                            throws OWSException, IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.encode( img, format, out );
+        return out.toByteArray();
+    }
+
+    /**
+     * Least recently used encoded legends, bounded by their total size in bytes.
+     */
+    static class EncodedLegendCache {
+
+        private final LinkedHashMap<List<Object>, byte[]> entries = new LinkedHashMap<List<Object>, byte[]>( 16,
+                                                                                                            0.75f,
+                                                                                                            true );
 
-        if ( originalSize ) {
-            legendMap.put( req.getFormat(), img );
+        private final long maxBytes;
+
+        private long bytes;
+
+        EncodedLegendCache( long maxBytes ) {
+            this.maxBytes = maxBytes;
+        }
+
+        synchronized byte[] get( List<Object> key ) {
+            return entries.get( key );
+        }
+
+        synchronized void put( List<Object> key, byte[] value ) {
+            if ( value.length > maxBytes ) {
+                return;
+            }
+            byte[] old = entries.put( key, value );
+            if ( old != null ) {
+                bytes -= old.length;
+            }
+            bytes += value.length;
+            Iterator<byte[]> iter = entries.values().iterator();
+            while ( bytes > maxBytes && iter.hasNext() ) {
+                bytes -= iter.next().length;
+                iter.remove();
+            }
         }
-        return img;
     }
 
 }
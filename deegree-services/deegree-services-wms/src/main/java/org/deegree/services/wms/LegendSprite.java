@@ -0,0 +1,84 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.services.wms;
+
+import java.util.Map;
+
+import org.deegree.commons.utils.Pair;
+
+/**
+ * The legends of several layers, stacked vertically into a single encoded image.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+public class LegendSprite {
+
+    private final byte[] image;
+
+    private final int width;
+
+    private final Map<String, Pair<Integer, Integer>> regions;
+
+    LegendSprite( byte[] image, int width, Map<String, Pair<Integer, Integer>> regions ) {
+        this.image = image;
+        this.width = width;
+        this.regions = regions;
+    }
+
+    /**
+     * @return the encoded sprite image, never <code>null</code>
+     */
+    public byte[] getImage() {
+        return image;
+    }
+
+    /**
+     * @return the width of the sprite image
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return the layer names in sprite order, mapped to the y offset and the height of their legend
+     */
+    public Map<String, Pair<Integer, Integer>> getRegions() {
+        return regions;
+    }
+
+}
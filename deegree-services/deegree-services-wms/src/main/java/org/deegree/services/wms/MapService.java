@@ -45,14 +45,17 @@ import static org.slf4j.LoggerFactory.getLogger;
 
 import java.awt.Color;
 import java.awt.image.BufferedImage;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Set;
 
 import org.deegree.commons.annotations.LoggingNotes;
 import org.deegree.commons.ows.exception.OWSException;
@@ -63,16 +66,25 @@ import org.deegree.feature.Features;
 import org.deegree.feature.GenericFeatureCollection;
 import org.deegree.feature.types.FeatureType;
 import org.deegree.filter.OperatorFilter;
+import org.deegree.geometry.Envelope;
+import org.deegree.geometry.GeometryFactory;
+import org.deegree.layer.LabelingLayer;
 import org.deegree.layer.Layer;
 import org.deegree.layer.LayerData;
 import org.deegree.layer.LayerQuery;
+import org.deegree.layer.MapCostEstimator;
 import org.deegree.layer.LayerRef;
 import org.deegree.protocol.wms.filter.ScaleFunction;
 import org.deegree.protocol.wms.ops.GetFeatureInfoSchema;
 import org.deegree.protocol.wms.ops.GetLegendGraphic;
 import org.deegree.rendering.r2d.context.MapOptions;
+import org.deegree.rendering.r2d.context.MapOptions.Antialias;
+import org.deegree.rendering.r2d.context.MapOptions.Interpolation;
+import org.deegree.rendering.r2d.context.MapOptions.Quality;
 import org.deegree.rendering.r2d.context.MapOptionsMaps;
 import org.deegree.rendering.r2d.context.RenderContext;
+import org.deegree.rendering.r2d.context.RenderingInfo;
+import org.deegree.rendering.r2d.context.StripedImage;
 import org.deegree.services.jaxb.wms.ServiceConfigurationType;
 import org.deegree.style.StyleRef;
 import org.deegree.style.se.unevaluated.Style;
@@ -189,6 +201,148 @@ public class MapService {
 
     public void getMap( org.deegree.protocol.wms.ops.GetMap gm, List<String> headers, RenderContext ctx )
                             throws OWSException {
+        renderMap( gm, headers, ctx, gm.getBoundingBox(), gm.getWidth(), gm.getHeight(), gm.getQueryBox(), false );
+    }
+
+    /**
+     * Prepares rendering the map in horizontal stripes that are streamed to the image writer, so the memory needed
+     * does not depend on the map size (see {@link StripedImage}). The labels of the whole map are placed and the first
+     * stripe is rendered before this method returns, so errors can still be reported as exception reports. Warnings
+     * of the label pass and the first stripe have been added to the headers when this method returns, new warnings of
+     * the following stripes are logged, as they cannot be sent any more.
+     * 
+     * @param gm
+     *            the request, must not be <code>null</code>
+     * @param headers
+     *            list to add warning headers to, must not be <code>null</code>
+     * @param info
+     *            describes the map to render, must not be <code>null</code>
+     * @return the image to write to the response, never <code>null</code>
+     * @throws OWSException
+     */
+    public StripedImage prepareStripedMap( final org.deegree.protocol.wms.ops.GetMap gm, List<String> headers,
+                                           RenderingInfo info )
+                            throws OWSException {
+        final StripeWarnings warnings = new StripeWarnings();
+        Envelope bbox = gm.getBoundingBox();
+        Envelope queryBox = gm.getQueryBox();
+        final double dx = ( queryBox.getSpan0() - bbox.getSpan0() ) / 2;
+        final double dy = ( queryBox.getSpan1() - bbox.getSpan1() ) / 2;
+        StripedImage image = new StripedImage( info, new StripedImage.StripeRenderer() {
+            @Override
+            public void render( RenderContext ctx, RenderingInfo stripe )
+                                    throws Exception {
+                Envelope env = stripe.getEnvelope();
+                Envelope stripeQueryBox = env;
+                if ( dx != 0 || dy != 0 ) {
+                    stripeQueryBox = new GeometryFactory().createEnvelope( env.getMin().get0() - dx,
+                                                                           env.getMin().get1() - dy,
+                                                                           env.getMax().get0() + dx,
+                                                                           env.getMax().get1() + dy,
+                                                                           env.getCoordinateSystem() );
+                }
+                List<String> stripeWarnings = new ArrayList<String>();
+                try {
+                    renderMap( gm, stripeWarnings, ctx, env, stripe.getWidth(), stripe.getHeight(), stripeQueryBox,
+                               false );
+                } finally {
+                    warnings.add( stripeWarnings );
+                }
+            }
+
+            @Override
+            public void renderLabels( RenderContext ctx, RenderingInfo map )
+                                    throws Exception {
+                List<String> labelWarnings = new ArrayList<String>();
+                try {
+                    renderMap( gm, labelWarnings, ctx, gm.getBoundingBox(), map.getWidth(), map.getHeight(),
+                               gm.getQueryBox(), true );
+                } finally {
+                    warnings.add( labelWarnings );
+                }
+            }
+        } );
+        try {
+            image.prepare();
+            warnings.send( headers );
+        } catch ( OWSException e ) {
+            image.dispose();
+            throw e;
+        } catch ( Exception e ) {
+            image.dispose();
+            LOG.trace( "Stack trace:", e );
+            throw new OWSException( "Rendering the map failed: " + e.getLocalizedMessage(), NO_APPLICABLE_CODE );
+        }
+        return image;
+    }
+
+    /**
+     * Estimates the cost of rendering the map, in units of rendering one megapixel of raster data. Layers that cannot
+     * estimate their cost themselves (see {@link MapCostEstimator}) are assumed to cost one unit per megapixel.
+     * 
+     * @param gm
+     *            the request, must not be <code>null</code>
+     * @return the estimated cost
+     */
+    public double estimateCost( org.deegree.protocol.wms.ops.GetMap gm ) {
+        double pixels = (double) gm.getWidth() * gm.getHeight() / 1000000;
+        double scale = gm.getScale();
+        double cost = 0;
+        Iterator<StyleRef> styleItr = gm.getStyles().iterator();
+        List<OperatorFilter> filters = gm.getFilters();
+        Iterator<OperatorFilter> filterItr = filters == null ? null : filters.iterator();
+        for ( LayerRef lr : gm.getLayers() ) {
+            StyleRef sr = styleItr.next();
+            OperatorFilter f = filterItr == null ? null : filterItr.next();
+            LayerQuery query = buildQuery( sr, lr, gm.getRenderingOptions(), new ArrayList<MapOptions>(), f, gm,
+                                           gm.getBoundingBox(), gm.getWidth(), gm.getHeight(), gm.getQueryBox() );
+            for ( Layer l : getAllLayers( themeMap.get( lr.getName() ) ) ) {
+                if ( l.getMetadata().getScaleDenominators().first > scale
+                     || l.getMetadata().getScaleDenominators().second < scale || !l.isStyleApplicable( sr ) ) {
+                    continue;
+                }
+                double layerCost = -1;
+                if ( l instanceof MapCostEstimator ) {
+                    try {
+                        layerCost = ( (MapCostEstimator) l ).estimateMapCost( query );
+                    } catch ( Exception e ) {
+                        LOG.debug( "Could not estimate the cost of layer {}: {}", l.getMetadata().getName(),
+                                   e.getLocalizedMessage() );
+                        LOG.trace( "Stack trace:", e );
+                    }
+                }
+                cost += layerCost < 0 ? pixels : layerCost;
+            }
+        }
+        return cost;
+    }
+
+    /**
+     * Reduces the rendering quality of all layers of the request (low quality, no antialiasing, nearest neighbor
+     * interpolation), overriding requested and configured options.
+     * 
+     * @param gm
+     *            the request, must not be <code>null</code>
+     */
+    public void degrade( org.deegree.protocol.wms.ops.GetMap gm ) {
+        MapOptionsMaps options = gm.getRenderingOptions();
+        for ( LayerRef lr : gm.getLayers() ) {
+            for ( Layer l : getAllLayers( themeMap.get( lr.getName() ) ) ) {
+                String name = l.getMetadata().getName();
+                options.setQuality( name, Quality.LOW );
+                options.setAntialias( name, Antialias.NONE );
+                options.setInterpolation( name, Interpolation.NEARESTNEIGHBOR );
+            }
+        }
+    }
+
+    /**
+     * @param labelsOnly
+     *            if true, only layers that may create labels are rendered (see {@link LabelingLayer})
+     */
+    private void renderMap( org.deegree.protocol.wms.ops.GetMap gm, List<String> headers, RenderContext ctx,
+                            Envelope bbox, int width, int height, Envelope queryBox, boolean labelsOnly )
+                            throws OWSException {
         Iterator<StyleRef> styleItr = gm.getStyles().iterator();
         MapOptionsMaps options = gm.getRenderingOptions();
         List<MapOptions> mapOptions = new ArrayList<MapOptions>();
@@ -204,7 +358,7 @@ public class MapService {
             StyleRef sr = styleItr.next();
             OperatorFilter f = filterItr == null ? null : filterItr.next();
 
-            LayerQuery query = buildQuery( sr, lr, options, mapOptions, f, gm );
+            LayerQuery query = buildQuery( sr, lr, options, mapOptions, f, gm, bbox, width, height, queryBox );
             queries.add( query );
         }
 
@@ -212,8 +366,11 @@ public class MapService {
 
         ScaleFunction.getCurrentScaleValue().set( scale );
 
-        List<LayerData> layerDataList = checkStyleValidAndBuildLayerDataList( gm, headers, scale, queryIter );
-        Iterator<MapOptions> optIter = mapOptions.iterator();
+        List<MapOptions> layerOptions = new ArrayList<MapOptions>();
+        List<LayerData> layerDataList = checkStyleValidAndBuildLayerDataList( gm, headers, scale, queryIter,
+                                                                              mapOptions.iterator(), layerOptions,
+                                                                              labelsOnly );
+        Iterator<MapOptions> optIter = layerOptions.iterator();
         for ( LayerData d : layerDataList ) {
             ctx.applyOptions( optIter.next() );
             try {
@@ -228,9 +385,20 @@ public class MapService {
         ScaleFunction.getCurrentScaleValue().remove();
     }
 
+    /**
+     * @param options
+     *            the options of all layers of the request, in the order of the layers
+     * @param layerOptions
+     *            the options of the returned layer data are added to this list, in the same order
+     * @param labelsOnly
+     *            if true, only layers that may create labels are queried
+     */
     private List<LayerData> checkStyleValidAndBuildLayerDataList( org.deegree.protocol.wms.ops.GetMap gm,
                                                                   List<String> headers, double scale,
-                                                                  ListIterator<LayerQuery> queryIter )
+                                                                  ListIterator<LayerQuery> queryIter,
+                                                                  Iterator<MapOptions> options,
+                                                                  List<MapOptions> layerOptions,
+                                                                  boolean labelsOnly )
                             throws OWSException {
         List<LayerData> layerDataList = new ArrayList<LayerData>();
         for ( LayerRef lr : gm.getLayers() ) {
@@ -238,12 +406,18 @@ public class MapService {
             List<Layer> layers = getAllLayers( themeMap.get( lr.getName() ) );
             assertStyleApplicableForAtLeastOneLayer( layers, query.getStyle(), lr.getName() );
             for ( org.deegree.layer.Layer layer : layers ) {
+                MapOptions opts = options.next();
                 if ( layer.getMetadata().getScaleDenominators().first > scale
                      || layer.getMetadata().getScaleDenominators().second < scale ) {
                     continue;
                 }
+                if ( labelsOnly
+                     && !( layer instanceof LabelingLayer && ( (LabelingLayer) layer ).mayContainLabels( query ) ) ) {
+                    continue;
+                }
                 if ( layer.isStyleApplicable( query.getStyle() ) ) {
                     layerDataList.add( layer.mapQuery( query, headers ) );
+                    layerOptions.add( opts );
                 }
             }
         }
@@ -262,7 +436,8 @@ public class MapService {
     }
 
     private LayerQuery buildQuery( StyleRef style, LayerRef lr, MapOptionsMaps options, List<MapOptions> mapOptions,
-                                   OperatorFilter f, org.deegree.protocol.wms.ops.GetMap gm ) {
+                                   OperatorFilter f, org.deegree.protocol.wms.ops.GetMap gm, Envelope bbox,
+                                   int width, int height, Envelope queryBox ) {
 
         for ( org.deegree.layer.Layer l : Themes.getAllLayers( themeMap.get( lr.getName() ) ) ) {
             insertMissingOptions( l.getMetadata().getName(), options, l.getMetadata().getMapOptions(),
@@ -270,9 +445,8 @@ public class MapService {
             mapOptions.add( options.get( l.getMetadata().getName() ) );
         }
 
-        LayerQuery query = new LayerQuery( gm.getBoundingBox(), gm.getWidth(), gm.getHeight(), style, f,
-                                           gm.getParameterMap(), gm.getDimensions(), gm.getPixelSize(), options,
-                                           gm.getQueryBox() );
+        LayerQuery query = new LayerQuery( bbox, width, height, style, f, gm.getParameterMap(), gm.getDimensions(),
+                                           gm.getPixelSize(), options, queryBox );
         return query;
     }
 
@@ -376,10 +550,69 @@ public class MapService {
         return getLegendHandler.getLegendSize( style );
     }
 
-    public BufferedImage getLegend( GetLegendGraphic req ) {
+    public BufferedImage getLegend( GetLegendGraphic req )
+                            throws OWSException {
         return getLegendHandler.getLegend( req );
     }
 
+    /**
+     * Returns the encoded legend graphic, which is cached by layer, style, format, size and legend options.
+     * 
+     * @param req
+     *            the legend request, never <code>null</code>
+     * @param encoder
+     *            used to encode the legend in the requested format, never <code>null</code>
+     * @return the encoded legend, never <code>null</code>
+     * @throws OWSException
+     * @throws IOException
+     */
+    public byte[] getEncodedLegend( GetLegendGraphic req, ImageEncoder encoder )
+                            throws OWSException, IOException {
+        return getLegendHandler.getEncodedLegend( req, encoder );
+    }
+
+    /**
+     * Returns the default style legends of several layers, stacked vertically into a single image.
+     * 
+     * @param format
+     *            the image format, never <code>null</code>
+     * @param layers
+     *            the names of the layers, may be <code>null</code> to include all layers with a legend
+     * @param encoder
+     *            used to encode the sprite in the requested format, never <code>null</code>
+     * @return the legend sprite, never <code>null</code>
+     * @throws OWSException
+     *             if a layer is not known, or if none of the layers has a legend
+     * @throws IOException
+     */
+    public LegendSprite getLegendSprite( String format, List<String> layers, ImageEncoder encoder )
+                            throws OWSException, IOException {
+        if ( layers == null ) {
+            layers = new ArrayList<String>();
+            if ( themes != null ) {
+                for ( Theme thm : themes ) {
+                    layers.add( thm.getLayerMetadata().getName() );
+                    for ( Theme theme : Themes.getAllThemes( thm ) ) {
+                        layers.add( theme.getLayerMetadata().getName() );
+                    }
+                }
+            }
+        }
+        return getLegendHandler.getLegendSprite( format, layers, encoder );
+    }
+
+    /**
+     * Renders and caches the legends of all styles of all layers in the given formats. Failures are logged.
+     * 
+     * @param formats
+     *            the image formats, never <code>null</code>
+     * @param encoder
+     *            used to encode the legends, never <code>null</code>
+     */
+    public void prerenderLegends( List<String> formats, ImageEncoder encoder ) {
+        getLegendHandler.prerender( formats, encoder );
+    }
+
     /**
      * @return the extensions object with default extension parameter settings
      */
@@ -401,4 +634,28 @@ public class MapService {
         return defaultLayerOptions.getMaxFeatures();
     }
 
+    /**
+     * Collects the warnings of a striped map. Warnings are sent as headers once before the image is written, warnings
+     * that occur after that are logged. Each warning is sent or logged once, even if it occurs in several stripes.
+     */
+    private static class StripeWarnings {
+
+        private final Set<String> warnings = new LinkedHashSet<String>();
+
+        private boolean sent;
+
+        synchronized void add( List<String> newWarnings ) {
+            for ( String warning : newWarnings ) {
+                if ( warnings.add( warning ) && sent ) {
+                    LOG.warn( "Could not send warning of map stripe as header any more: {}", warning );
+                }
+            }
+        }
+
+        synchronized void send( List<String> headers ) {
+            sent = true;
+            headers.addAll( warnings );
+        }
+    }
+
 }
@@ -61,6 +61,7 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.TreeMap;
 
 import javax.servlet.ServletException;
@@ -101,6 +102,7 @@ import org.deegree.protocol.wms.ops.GetFeatureInfoSchema;
 import org.deegree.protocol.wms.ops.GetLegendGraphic;
 import org.deegree.rendering.r2d.context.RenderContext;
 import org.deegree.rendering.r2d.context.RenderingInfo;
+import org.deegree.rendering.r2d.context.StripedImage;
 import org.deegree.services.OWS;
 import org.deegree.services.OWSProvider;
 import org.deegree.services.OwsManager;
@@ -113,20 +115,29 @@ import org.deegree.services.controller.utils.StandardFeatureInfoContext;
 import org.deegree.services.jaxb.controller.DeegreeServiceControllerType;
 import org.deegree.services.jaxb.metadata.DeegreeServicesMetadataType;
 import org.deegree.services.jaxb.wms.DeegreeWMS;
+import org.deegree.services.jaxb.wms.DeegreeWMS.AdmissionControl;
 import org.deegree.services.jaxb.wms.DeegreeWMS.ExtendedCapabilities;
 import org.deegree.services.jaxb.wms.FeatureInfoFormatsType;
 import org.deegree.services.jaxb.wms.FeatureInfoFormatsType.GetFeatureInfoFormat;
 import org.deegree.services.jaxb.wms.FeatureInfoFormatsType.GetFeatureInfoFormat.Serializer;
 import org.deegree.services.jaxb.wms.FeatureInfoFormatsType.GetFeatureInfoFormat.XSLTFile;
 import org.deegree.services.jaxb.wms.ServiceConfigurationType;
+import org.deegree.services.jaxb.wms.ServiceConfigurationType.TileCache;
 import org.deegree.services.metadata.OWSMetadataProvider;
 import org.deegree.services.metadata.provider.OWSMetadataProviderProvider;
+import org.deegree.services.wms.ImageEncoder;
+import org.deegree.services.wms.LegendSprite;
 import org.deegree.services.wms.MapService;
 import org.deegree.services.wms.controller.plugins.DefaultOutputFormatProvider;
 import org.deegree.services.wms.controller.plugins.ImageSerializer;
 import org.deegree.services.wms.controller.plugins.OutputFormatProvider;
+import org.deegree.services.wms.utils.GetMapAdmissionController;
 import org.deegree.services.wms.utils.GetMapLimitChecker;
+import org.deegree.services.wms.utils.TileAlignedGetMapHandler;
 import org.deegree.style.StyleRef;
+import org.deegree.tile.TileDataSet;
+import org.deegree.tile.persistence.TileStore;
+import org.deegree.tile.persistence.TileStoreProvider;
 import org.deegree.workspace.ResourceInitException;
 import org.deegree.workspace.ResourceMetadata;
 import org.deegree.workspace.Workspace;
@@ -141,7 +152,7 @@ import org.slf4j.Logger;
  * @version $Revision$, $Date$
  */
 @LoggingNotes(trace = "logs stack traces", debug = "logs sent exception messages, security information", warn = "logs problems with custom serializer classes", error = "logs unknown errors, problems with GetFeatureInfo templates")
-public class WMSController extends AbstractOWS {
+public class WMSController extends AbstractOWS implements ImageEncoder {
 
     private static final Logger LOG = getLogger( WMSController.class );
 
@@ -171,6 +182,12 @@ public class WMSController extends AbstractOWS {
 
     private final GetMapLimitChecker getMapLimitChecker = new GetMapLimitChecker();
 
+    private GetMapAdmissionController admissionController;
+
+    private TileAlignedGetMapHandler tileHandler;
+
+    private volatile Thread legendPrerenderer;
+
     public WMSController( ResourceMetadata<OWS> metadata, Workspace workspace, DeegreeWMS jaxbConfig ) {
         super( metadata, workspace, jaxbConfig );
 
@@ -304,8 +321,18 @@ public class WMSController extends AbstractOWS {
                 highestVersion = iter.next();
             }
 
+            if ( conf.getAdmissionControl() != null ) {
+                admissionController = buildAdmissionController( conf.getAdmissionControl() );
+            }
+
             ServiceConfigurationType sc = conf.getServiceConfiguration();
             service = new MapService( sc, workspace );
+            if ( sc != null && sc.getPrerenderLegends() != null ) {
+                prerenderLegends( sc.getPrerenderLegends().getFormat() );
+            }
+            if ( sc != null && !sc.getTileCache().isEmpty() ) {
+                tileHandler = buildTileHandler( sc.getTileCache() );
+            }
 
             // after the service knows what layers are available:
             handleMetadata( conf.getMetadataURLTemplate(), conf.getMetadataStoreId() );
@@ -395,6 +422,9 @@ public class WMSController extends AbstractOWS {
             case GetLegendGraphic:
                 getLegendGraphic( map, response );
                 break;
+            case GetLegendGraphicSprite:
+                getLegendGraphicSprite( map, response );
+                break;
             case DTD:
                 getDtd( response );
                 break;
@@ -438,8 +468,69 @@ public class WMSController extends AbstractOWS {
         if ( !getSupportedImageFormats().contains( glg.getFormat() ) ) {
             throw new OWSException( get( "WMS.UNSUPPORTED_IMAGE_FORMAT", glg.getFormat() ), OWSException.INVALID_FORMAT );
         }
-        BufferedImage img = service.getLegend( glg );
-        sendImage( img, response, glg.getFormat() );
+        byte[] legend = service.getEncodedLegend( glg, this );
+        response.setContentType( glg.getFormat() );
+        response.getOutputStream().write( legend );
+    }
+
+    /**
+     * Sends the default style legends of the layers given by the optional LAYERS parameter (all layers if omitted),
+     * stacked vertically into one image. The position of each legend is sent in the X-Legend-Regions header, as comma
+     * separated list of <code>layer:y:height</code> entries.
+     */
+    private void getLegendGraphicSprite( Map<String, String> map, HttpResponseBuffer response )
+                            throws OWSException, IOException {
+        String format = map.get( "FORMAT" );
+        if ( format == null ) {
+            throw new OWSException( "The 'FORMAT' parameter was missing.", OWSException.MISSING_PARAMETER_VALUE );
+        }
+        if ( !getSupportedImageFormats().contains( format ) ) {
+            throw new OWSException( get( "WMS.UNSUPPORTED_IMAGE_FORMAT", format ), OWSException.INVALID_FORMAT );
+        }
+        List<String> layers = null;
+        String ls = map.get( "LAYERS" );
+        if ( ls != null && !ls.trim().isEmpty() ) {
+            layers = new ArrayList<String>();
+            for ( String l : ls.split( "," ) ) {
+                layers.add( l.trim() );
+            }
+        }
+
+        LegendSprite sprite = service.getLegendSprite( format, layers, this );
+        StringBuilder regions = new StringBuilder();
+        for ( Entry<String, Pair<Integer, Integer>> e : sprite.getRegions().entrySet() ) {
+            if ( regions.length() > 0 ) {
+                regions.append( "," );
+            }
+            regions.append( e.getKey() ).append( ":" ).append( e.getValue().first );
+            regions.append( ":" ).append( e.getValue().second );
+        }
+        response.setContentType( format );
+        response.addHeader( "X-Legend-Regions", regions.toString() );
+        response.getOutputStream().write( sprite.getImage() );
+    }
+
+    private void prerenderLegends( List<String> formats ) {
+        final List<String> fmts = new ArrayList<String>();
+        for ( String f : formats ) {
+            if ( getSupportedImageFormats().contains( f ) ) {
+                fmts.add( f );
+            } else {
+                LOG.warn( "Not pre-rendering legends in unsupported format {}.", f );
+            }
+        }
+        if ( formats.isEmpty() ) {
+            fmts.add( "image/png" );
+        }
+        final MapService mapService = service;
+        legendPrerenderer = new Thread( "wms-legend-prerender" ) {
+            @Override
+            public void run() {
+                mapService.prerenderLegends( fmts, WMSController.this );
+            }
+        };
+        legendPrerenderer.setDaemon( true );
+        legendPrerenderer.start();
     }
 
     private void getFeatureInfo( Map<String, String> map, final HttpResponseBuffer response, Version version )
@@ -535,14 +626,76 @@ public class WMSController extends AbstractOWS {
 
         checkGetMap( version, gm2 );
 
-        RenderingInfo info = new RenderingInfo( gm2.getFormat(), gm2.getWidth(), gm2.getHeight(), gm2.getTransparent(),
-                                                gm2.getBgColor(), gm2.getBoundingBox(), gm2.getPixelSize(), map );
-        RenderContext ctx = ouputFormatProvider.getRenderers( info, response.getOutputStream() );
+        if ( tileHandler != null && tileHandler.handle( gm2, response ) ) {
+            return;
+        }
+
         LinkedList<String> headers = new LinkedList<String>();
-        service.getMap( gm2, headers, ctx );
-        response.setContentType( gm2.getFormat() );
-        ctx.close();
-        addHeaders( response, headers );
+        GetMapAdmissionController.Permit permit = null;
+        if ( admissionController != null ) {
+            permit = admissionController.admit( service.estimateCost( gm2 ) );
+            if ( permit.isDegraded() ) {
+                service.degrade( gm2 );
+                headers.add( "The map was rendered in reduced quality due to high server load." );
+            }
+        }
+        try {
+            RenderingInfo info = new RenderingInfo( gm2.getFormat(), gm2.getWidth(), gm2.getHeight(),
+                                                    gm2.getTransparent(), gm2.getBgColor(), gm2.getBoundingBox(),
+                                                    gm2.getPixelSize(), map );
+            if ( StripedImage.isApplicable( info ) ) {
+                StripedImage image = service.prepareStripedMap( gm2, headers, info );
+                response.setContentType( gm2.getFormat() );
+                addHeaders( response, headers );
+                // the image is streamed while it is being rendered, buffering would keep all of it in memory
+                response.disableBuffering();
+                image.write( response.getOutputStream() );
+                return;
+            }
+            RenderContext ctx = ouputFormatProvider.getRenderers( info, response.getOutputStream() );
+            service.getMap( gm2, headers, ctx );
+            response.setContentType( gm2.getFormat() );
+            ctx.close();
+            addHeaders( response, headers );
+        } finally {
+            if ( permit != null ) {
+                permit.release();
+            }
+        }
+    }
+
+    private static GetMapAdmissionController buildAdmissionController( AdmissionControl config ) {
+        double budget = config.getCostBudget().doubleValue();
+        double threshold = config.getDegradeThreshold() == null ? 0.75 : config.getDegradeThreshold().doubleValue();
+        long queueTime = config.getMaxQueueTime() == null ? 10000 : config.getMaxQueueTime().longValue();
+        int queueLength = config.getMaxQueueLength() == null ? 100 : config.getMaxQueueLength().intValue();
+        LOG.info( "GetMap admission control enabled, cost budget: {}", budget );
+        return new GetMapAdmissionController( budget, threshold, queueTime, queueLength );
+    }
+
+    private TileAlignedGetMapHandler buildTileHandler( List<TileCache> configs ) {
+        TileAlignedGetMapHandler handler = new TileAlignedGetMapHandler( this );
+        for ( TileCache config : configs ) {
+            TileStore store = workspace.getResource( TileStoreProvider.class, config.getTileStoreId() );
+            if ( store == null ) {
+                throw new ResourceInitException( "The tile store with id " + config.getTileStoreId()
+                                                 + " is not available." );
+            }
+            TileDataSet tds = store.getTileDataSet( config.getTileDataSetId() );
+            if ( tds == null ) {
+                throw new ResourceInitException( "The tile store with id " + config.getTileStoreId()
+                                                 + " does not contain a tile data set with id "
+                                                 + config.getTileDataSetId() + "." );
+            }
+            if ( !service.hasTheme( config.getLayerName() ) ) {
+                LOG.warn( "Tile cache configured for unknown layer {}.", config.getLayerName() );
+            }
+            double tolerance = config.getTolerance() == null ? 0.1 : config.getTolerance().doubleValue();
+            handler.addTileDataSet( config.getLayerName(), tds, tolerance );
+            LOG.info( "GetMap requests for layer {} will be answered from tile data set {} if possible.",
+                      config.getLayerName(), config.getTileDataSetId() );
+        }
+        return handler;
     }
 
     private void checkGetFeatureInfo( Version version, org.deegree.protocol.wms.ops.GetFeatureInfo gfi )
@@ -655,10 +808,15 @@ public class WMSController extends AbstractOWS {
     public void sendImage( BufferedImage img, HttpResponseBuffer response, String format )
                             throws OWSException, IOException {
         response.setContentType( format );
+        encode( img, format, response.getOutputStream() );
+    }
 
+    @Override
+    public void encode( BufferedImage img, String format, OutputStream out )
+                            throws OWSException, IOException {
         ImageSerializer serializer = imageSerializers.get( format );
         if ( serializer != null ) {
-            serializer.serialize( img, response.getOutputStream() );
+            serializer.serialize( img, out );
             return;
         }
 
@@ -670,7 +828,7 @@ public class WMSController extends AbstractOWS {
             format = "png";
         }
         LOG.debug( "Sending in format " + format );
-        if ( !write( img, format, response.getOutputStream() ) ) {
+        if ( !write( img, format, out ) ) {
             throw new OWSException( get( "WMS.CANNOT_ENCODE_IMAGE", format ), OWSException.NO_APPLICABLE_CODE );
         }
     }
@@ -785,7 +943,16 @@ public class WMSController extends AbstractOWS {
 
     @Override
     public void destroy() {
-        // nothing to do
+        Thread t = legendPrerenderer;
+        if ( t != null ) {
+            t.interrupt();
+            try {
+                t.join( 10000 );
+            } catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+            }
+            legendPrerenderer = null;
+        }
     }
 
 }
@@ -100,6 +100,7 @@ public abstract class WMSControllerBase implements Controller {
         case map:
         case GetMap:
         case GetLegendGraphic:
+        case GetLegendGraphicSprite:
             exceptions = getExceptions( exceptions );
             break;
         case DTD:
@@ -35,10 +35,13 @@ import org.deegree.services.OWS;
 import org.deegree.services.OWSProvider;
 import org.deegree.services.OwsManager;
 import org.deegree.services.jaxb.wms.DeegreeWMS;
+import org.deegree.services.jaxb.wms.ServiceConfigurationType.TileCache;
 import org.deegree.services.metadata.OWSMetadataProvider;
 import org.deegree.services.metadata.OWSMetadataProviderManager;
 import org.deegree.theme.Theme;
 import org.deegree.theme.persistence.ThemeProvider;
+import org.deegree.tile.persistence.TileStore;
+import org.deegree.tile.persistence.TileStoreProvider;
 import org.deegree.workspace.ResourceBuilder;
 import org.deegree.workspace.ResourceIdentifier;
 import org.deegree.workspace.ResourceInitException;
@@ -79,6 +82,10 @@ public class WmsMetadata extends AbstractResourceMetadata<OWS> {
             for ( String tid : cfg.getServiceConfiguration().getThemeId() ) {
                 dependencies.add( new DefaultResourceIdentifier<Theme>( ThemeProvider.class, tid ) );
             }
+            for ( TileCache tc : cfg.getServiceConfiguration().getTileCache() ) {
+                dependencies.add( new DefaultResourceIdentifier<TileStore>( TileStoreProvider.class,
+                                                                            tc.getTileStoreId() ) );
+            }
 
             OwsManager mgr = workspace.getResourceManager( OwsManager.class );
             Collection<ResourceMetadata<OWS>> mds = mgr.getResourceMetadata();
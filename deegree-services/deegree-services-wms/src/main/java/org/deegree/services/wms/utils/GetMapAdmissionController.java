@@ -0,0 +1,228 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2014 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.services.wms.utils;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.LinkedList;
+
+import org.deegree.commons.ows.exception.OWSException;
+import org.deegree.protocol.wms.ops.GetMap;
+import org.slf4j.Logger;
+
+/**
+ * Admits {@link GetMap} requests against a global cost budget, so a few expensive requests cannot saturate the
+ * server.
+ * <p>
+ * Each request must be admitted with its estimated cost before rendering, and release its {@link Permit} afterwards.
+ * Requests that do not fit into the remaining budget wait in FIFO order for a limited time, and are rejected if the
+ * waiting time or the number of waiting requests is exceeded. Requests that are admitted while the budget is used
+ * above the degradation threshold (or that are too expensive themselves) should be rendered in reduced quality. A
+ * single request never needs more than the whole budget, so it will run alone at worst.
+ * </p>
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+public class GetMapAdmissionController {
+
+    private static final Logger LOG = getLogger( GetMapAdmissionController.class );
+
+    private final double budget;
+
+    private final double degradeThreshold;
+
+    private final long maxQueueTime;
+
+    private final int maxQueueLength;
+
+    private final LinkedList<Object> queue = new LinkedList<Object>();
+
+    private double used;
+
+    private long admitted, degraded, rejected;
+
+    /**
+     * @param budget
+     *            the total cost of all requests that may be rendered concurrently, must be positive
+     * @param degradeThreshold
+     *            fraction of the budget above which admitted requests are degraded, between 0 and 1
+     * @param maxQueueTime
+     *            maximum time in milliseconds a request waits for admission
+     * @param maxQueueLength
+     *            maximum number of waiting requests
+     */
+    public GetMapAdmissionController( double budget, double degradeThreshold, long maxQueueTime, int maxQueueLength ) {
+        this.budget = budget;
+        this.degradeThreshold = degradeThreshold;
+        this.maxQueueTime = maxQueueTime;
+        this.maxQueueLength = maxQueueLength;
+    }
+
+    /**
+     * Waits until the request fits into the budget.
+     * 
+     * @param cost
+     *            the estimated cost of the request
+     * @return the permit, must be released after rendering, never <code>null</code>
+     * @throws OWSException
+     *             if the request was rejected because the server is too busy
+     */
+    public Permit admit( double cost )
+                            throws OWSException {
+        cost = min( budget, max( 0, cost ) );
+        Object ticket = new Object();
+        synchronized ( this ) {
+            if ( queue.isEmpty() && used + cost <= budget ) {
+                return grant( cost );
+            }
+            if ( queue.size() >= maxQueueLength ) {
+                throw reject( cost, "too many requests are waiting" );
+            }
+            queue.add( ticket );
+            long deadline = System.currentTimeMillis() + maxQueueTime;
+            try {
+                while ( queue.getFirst() != ticket || used + cost > budget ) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if ( remaining <= 0 ) {
+                        throw reject( cost, "waiting for admission timed out" );
+                    }
+                    wait( remaining );
+                }
+                return grant( cost );
+            } catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                throw reject( cost, "interrupted while waiting for admission" );
+            } finally {
+                queue.remove( ticket );
+                // the next request in line may fit as well
+                notifyAll();
+            }
+        }
+    }
+
+    private Permit grant( double cost ) {
+        boolean degrade = used + cost > degradeThreshold * budget;
+        used += cost;
+        ++admitted;
+        if ( degrade ) {
+            ++degraded;
+        }
+        LOG.debug( "Admitted GetMap with cost {}, budget used: {}/{}", new Object[] { cost, used, budget } );
+        return new Permit( cost, degrade );
+    }
+
+    private OWSException reject( double cost, String reason ) {
+        ++rejected;
+        LOG.debug( "Rejected GetMap with cost {}: {}", cost, reason );
+        return new OWSException( "The server is too busy to render the map (" + reason + "), please retry later.",
+                                 OWSException.NO_APPLICABLE_CODE );
+    }
+
+    private synchronized void release( double cost ) {
+        used = max( 0, used - cost );
+        notifyAll();
+    }
+
+    /**
+     * @return the cost of the currently rendered requests
+     */
+    public synchronized double getUsedBudget() {
+        return used;
+    }
+
+    /**
+     * @return the number of admitted requests
+     */
+    public synchronized long getAdmittedCount() {
+        return admitted;
+    }
+
+    /**
+     * @return the number of requests admitted with reduced quality
+     */
+    public synchronized long getDegradedCount() {
+        return degraded;
+    }
+
+    /**
+     * @return the number of rejected requests
+     */
+    public synchronized long getRejectedCount() {
+        return rejected;
+    }
+
+    /**
+     * An admitted request.
+     */
+    public class Permit {
+
+        private final double cost;
+
+        private final boolean degrade;
+
+        private boolean released;
+
+        Permit( double cost, boolean degrade ) {
+            this.cost = cost;
+            this.degrade = degrade;
+        }
+
+        /**
+         * @return true, if the map should be rendered in reduced quality
+         */
+        public boolean isDegraded() {
+            return degrade;
+        }
+
+        /**
+         * Returns the cost to the budget. Subsequent calls have no effect.
+         */
+        public void release() {
+            synchronized ( GetMapAdmissionController.this ) {
+                if ( released ) {
+                    return;
+                }
+                released = true;
+            }
+            GetMapAdmissionController.this.release( cost );
+        }
+    }
+
+}
@@ -0,0 +1,298 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2014 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.services.wms.utils;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+import static java.lang.Math.abs;
+import static java.lang.Math.rint;
+import static org.apache.commons.io.IOUtils.closeQuietly;
+import static org.apache.commons.io.IOUtils.copy;
+import static org.deegree.commons.ows.exception.OWSException.NO_APPLICABLE_CODE;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.deegree.commons.ows.exception.OWSException;
+import org.deegree.cs.coordinatesystems.ICRS;
+import org.deegree.filter.OperatorFilter;
+import org.deegree.geometry.Envelope;
+import org.deegree.layer.LayerRef;
+import org.deegree.protocol.wms.ops.GetMap;
+import org.deegree.services.controller.utils.HttpResponseBuffer;
+import org.deegree.services.wms.ImageEncoder;
+import org.deegree.style.StyleRef;
+import org.deegree.tile.Tile;
+import org.deegree.tile.TileDataLevel;
+import org.deegree.tile.TileDataSet;
+import org.deegree.tile.TileIOException;
+import org.deegree.tile.TileMatrix;
+import org.slf4j.Logger;
+
+/**
+ * Answers {@link GetMap} requests that line up with the tiles of a tile data set from the tile data set instead of
+ * rendering the map.
+ * <p>
+ * A request is answered from tiles if it asks for a single layer backed by a tile data set in its default style, in the
+ * coordinate system of the tile matrix set, without dimension values, SLD or filters, and if its bounding box and size
+ * match a rectangular block of tiles of one of the tile matrices within the tolerance (in pixels). A request for a
+ * single tile in the native format of the tile data set is answered with the tile bytes if it asks for transparency or
+ * for JPEG, otherwise the tiles are decoded and composed. If a tile of the block is missing, the request is not
+ * answered from tiles.
+ * </p>
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+public class TileAlignedGetMapHandler {
+
+    private static final Logger LOG = getLogger( TileAlignedGetMapHandler.class );
+
+    private final Map<String, TileDataSet> tileDataSets = new HashMap<String, TileDataSet>();
+
+    private final Map<String, Double> tolerances = new HashMap<String, Double>();
+
+    private final ImageEncoder encoder;
+
+    /**
+     * @param encoder
+     *            used to encode composed tiles, must not be <code>null</code>
+     */
+    public TileAlignedGetMapHandler( ImageEncoder encoder ) {
+        this.encoder = encoder;
+    }
+
+    /**
+     * @param layer
+     *            the name of the layer backed by the tiles, must not be <code>null</code>
+     * @param tileDataSet
+     *            must not be <code>null</code>
+     * @param tolerance
+     *            the maximum misalignment of the requested bounding box in pixels
+     */
+    public void addTileDataSet( String layer, TileDataSet tileDataSet, double tolerance ) {
+        tileDataSets.put( layer, tileDataSet );
+        tolerances.put( layer, tolerance );
+    }
+
+    /**
+     * @return true, if no tile data sets have been added
+     */
+    public boolean isEmpty() {
+        return tileDataSets.isEmpty();
+    }
+
+    /**
+     * Writes the map to the response if the request lines up with the tiles of a tile data set.
+     * 
+     * @param gm
+     *            must not be <code>null</code>
+     * @param response
+     *            must not be <code>null</code>
+     * @return false, if the request cannot be answered from tiles and nothing has been written
+     * @throws OWSException
+     *             if the tiles could not be read or encoded
+     * @throws IOException
+     */
+    public boolean handle( GetMap gm, HttpResponseBuffer response )
+                            throws OWSException, IOException {
+        TileBlock block = findTiles( gm );
+        if ( block == null ) {
+            return false;
+        }
+        String format = gm.getFormat();
+        try {
+            if ( block.tiles.length == 1 && block.tiles[0].length == 1
+                 && format.equals( block.dataSet.getNativeImageFormat() )
+                 && ( gm.getTransparent() || format.indexOf( "jpeg" ) != -1 ) ) {
+                LOG.debug( "Answering GetMap with tile of matrix {}.", block.matrix.getIdentifier() );
+                InputStream in = block.tiles[0][0].getAsStream();
+                try {
+                    response.setContentType( format );
+                    copy( in, response.getOutputStream() );
+                } finally {
+                    closeQuietly( in );
+                }
+                return true;
+            }
+            LOG.debug( "Answering GetMap with {}x{} tiles of matrix {}.",
+                       new Object[] { block.tiles[0].length, block.tiles.length, block.matrix.getIdentifier() } );
+            BufferedImage img = compose( gm, block );
+            response.setContentType( format );
+            encoder.encode( img, format, response.getOutputStream() );
+            return true;
+        } catch ( TileIOException e ) {
+            LOG.trace( "Stack trace:", e );
+            throw new OWSException( "Could not read tiles: " + e.getLocalizedMessage(), NO_APPLICABLE_CODE );
+        }
+    }
+
+    private static BufferedImage compose( GetMap gm, TileBlock block ) {
+        BufferedImage img = new BufferedImage( gm.getWidth(), gm.getHeight(), gm.getTransparent() ? TYPE_INT_ARGB
+                                                                                                   : TYPE_INT_RGB );
+        Graphics2D g = img.createGraphics();
+        if ( !gm.getTransparent() ) {
+            g.setBackground( gm.getBgColor() );
+            g.clearRect( 0, 0, gm.getWidth(), gm.getHeight() );
+        }
+        int tileWidth = (int) block.matrix.getTilePixelsX();
+        int tileHeight = (int) block.matrix.getTilePixelsY();
+        for ( int row = 0; row < block.tiles.length; ++row ) {
+            for ( int col = 0; col < block.tiles[row].length; ++col ) {
+                g.drawImage( block.tiles[row][col].getAsImage(), col * tileWidth, row * tileHeight, null );
+            }
+        }
+        g.dispose();
+        return img;
+    }
+
+    /**
+     * @param gm
+     * @return the tiles covering the requested map, or null, if the request does not line up with the tiles
+     */
+    TileBlock findTiles( GetMap gm ) {
+        List<LayerRef> layers = gm.getLayers();
+        if ( layers.size() != 1 || !isPlain( gm ) ) {
+            return null;
+        }
+        String name = layers.get( 0 ).getName();
+        TileDataSet tds = tileDataSets.get( name );
+        if ( tds == null ) {
+            return null;
+        }
+        StyleRef style = gm.getStyles().isEmpty() ? null : gm.getStyles().get( 0 );
+        if ( style != null && ( style.getStyle() != null || !style.getName().equals( "default" ) ) ) {
+            return null;
+        }
+        ICRS crs = tds.getTileMatrixSet().getSpatialMetadata().getCoordinateSystems().get( 0 );
+        if ( !crs.equals( gm.getCoordinateSystem() ) ) {
+            return null;
+        }
+        double tolerance = tolerances.get( name );
+        for ( TileDataLevel level : tds.getTileDataLevels() ) {
+            TileBlock block = findTiles( gm, tds, level, tolerance );
+            if ( block != null ) {
+                return block;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isPlain( GetMap gm ) {
+        Map<String, String> params = gm.getParameterMap();
+        if ( params.containsKey( "SLD" ) || params.containsKey( "SLD_BODY" ) || !gm.getDimensions().isEmpty() ) {
+            return false;
+        }
+        if ( gm.getFilters() != null ) {
+            for ( OperatorFilter f : gm.getFilters() ) {
+                if ( f != null ) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static TileBlock findTiles( GetMap gm, TileDataSet tds, TileDataLevel level, double tolerance ) {
+        TileMatrix matrix = level.getMetadata();
+        Envelope bbox = gm.getBoundingBox();
+        Envelope extent = matrix.getSpatialMetadata().getEnvelope();
+        int width = gm.getWidth(), height = gm.getHeight();
+        long tileWidth = matrix.getTilePixelsX(), tileHeight = matrix.getTilePixelsY();
+        double res = matrix.getResolution();
+
+        if ( width % tileWidth != 0 || height % tileHeight != 0 ) {
+            return null;
+        }
+        // accumulated misalignment over the image size
+        if ( abs( bbox.getSpan0() - width * res ) / res > tolerance
+             || abs( bbox.getSpan1() - height * res ) / res > tolerance ) {
+            return null;
+        }
+        long col0 = getTileIndex( ( bbox.getMin().get0() - extent.getMin().get0() ) / res, tileWidth, tolerance );
+        long row0 = getTileIndex( ( extent.getMax().get1() - bbox.getMax().get1() ) / res, tileHeight, tolerance );
+        int cols = (int) ( width / tileWidth ), rows = (int) ( height / tileHeight );
+        if ( col0 < 0 || row0 < 0 || col0 + cols > matrix.getNumTilesX() || row0 + rows > matrix.getNumTilesY() ) {
+            return null;
+        }
+        Tile[][] tiles = new Tile[rows][cols];
+        for ( int row = 0; row < rows; ++row ) {
+            for ( int col = 0; col < cols; ++col ) {
+                Tile t = level.getTile( col0 + col, row0 + row );
+                if ( t == null ) {
+                    return null;
+                }
+                tiles[row][col] = t;
+            }
+        }
+        return new TileBlock( tds, matrix, tiles );
+    }
+
+    /**
+     * @return the index of the tile starting at the pixel offset, or -1, if the offset is not at a tile border
+     */
+    private static long getTileIndex( double pixelOffset, long tileSize, double tolerance ) {
+        double index = rint( pixelOffset / tileSize );
+        if ( abs( pixelOffset - index * tileSize ) > tolerance ) {
+            return -1;
+        }
+        return (long) index;
+    }
+
+    static class TileBlock {
+
+        final TileDataSet dataSet;
+
+        final TileMatrix matrix;
+
+        // rows of tiles, from top to bottom
+        final Tile[][] tiles;
+
+        TileBlock( TileDataSet dataSet, TileMatrix matrix, Tile[][] tiles ) {
+            this.dataSet = dataSet;
+            this.matrix = matrix;
+            this.tiles = tiles;
+        }
+    }
+
+}
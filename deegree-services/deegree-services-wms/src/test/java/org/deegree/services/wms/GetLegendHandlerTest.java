@@ -0,0 +1,324 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.services.wms;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+import org.deegree.commons.ows.exception.OWSException;
+import org.deegree.commons.utils.Pair;
+import org.deegree.layer.metadata.LayerMetadata;
+import org.deegree.protocol.wms.ops.GetLegendGraphic;
+import org.deegree.services.wms.GetLegendHandler.EncodedLegendCache;
+import org.deegree.style.se.unevaluated.Style;
+import org.deegree.theme.Theme;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link GetLegendHandler} and its encoded legend cache. The styles use legend images, so no symbolizers are
+ * needed.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+public class GetLegendHandlerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private GetLegendHandler handler;
+
+    private CountingEncoder encoder;
+
+    private Style red;
+
+    private Style blue;
+
+    /**
+     * Encodes PNG images and counts the calls.
+     */
+    private static class CountingEncoder implements ImageEncoder {
+
+        int count;
+
+        @Override
+        public void encode( BufferedImage img, String format, OutputStream out )
+                                throws IOException {
+            ++count;
+            ImageIO.write( img, "png", out );
+        }
+    }
+
+    @Before
+    public void setup()
+                            throws IOException {
+        red = createStyle( "red.png", 10, 5, Color.RED );
+        blue = createStyle( "blue.png", 20, 7, Color.BLUE );
+        Style other = createStyle( "green.png", 4, 4, Color.GREEN );
+
+        MapService service = mock( MapService.class );
+        service.themeMap = new HashMap<String, Theme>();
+        service.themeMap.put( "red", createTheme( "red", Collections.singletonMap( "default", red ) ) );
+        Map<String, Style> styles = new HashMap<String, Style>();
+        styles.put( "default", blue );
+        styles.put( "other", other );
+        service.themeMap.put( "blue", createTheme( "blue", styles ) );
+        service.themeMap.put( "nostyle", createTheme( "nostyle", Collections.<String, Style> emptyMap() ) );
+
+        handler = new GetLegendHandler( service );
+        encoder = new CountingEncoder();
+    }
+
+    private Style createStyle( String fileName, int width, int height, Color color )
+                            throws IOException {
+        BufferedImage img = new BufferedImage( width, height, TYPE_INT_ARGB );
+        Graphics2D g = img.createGraphics();
+        g.setColor( color );
+        g.fillRect( 0, 0, width, height );
+        g.dispose();
+        File file = folder.newFile( fileName );
+        ImageIO.write( img, "png", file );
+        Style style = new Style();
+        style.setLegendFile( file );
+        return style;
+    }
+
+    private static Theme createTheme( String name, Map<String, Style> styles ) {
+        LayerMetadata md = new LayerMetadata( name, null, null );
+        md.setStyles( new HashMap<String, Style>( styles ) );
+        Theme theme = mock( Theme.class );
+        when( theme.getLayerMetadata() ).thenReturn( md );
+        return theme;
+    }
+
+    private static GetLegendGraphic request( String layer, String style, String format )
+                            throws OWSException {
+        Map<String, String> map = new HashMap<String, String>();
+        map.put( "LAYER", layer );
+        if ( style != null ) {
+            map.put( "STYLE", style );
+        }
+        map.put( "FORMAT", format );
+        return new GetLegendGraphic( map );
+    }
+
+    private static BufferedImage decode( byte[] bytes )
+                            throws IOException {
+        return ImageIO.read( new ByteArrayInputStream( bytes ) );
+    }
+
+    @Test
+    public void testEncodedLegendIsCached()
+                            throws Exception {
+        byte[] first = handler.getEncodedLegend( request( "red", null, "image/png" ), encoder );
+        byte[] second = handler.getEncodedLegend( request( "red", "default", "image/png" ), encoder );
+        assertEquals( 1, encoder.count );
+        assertSame( first, second );
+        BufferedImage img = decode( first );
+        assertEquals( 10, img.getWidth() );
+        assertEquals( 5, img.getHeight() );
+        assertEquals( Color.RED.getRGB(), img.getRGB( 5, 2 ) );
+    }
+
+    @Test
+    public void testEncodedLegendKeyedByStyleAndFormat()
+                            throws Exception {
+        handler.getEncodedLegend( request( "blue", "default", "image/png" ), encoder );
+        byte[] other = handler.getEncodedLegend( request( "blue", "other", "image/png" ), encoder );
+        assertEquals( 2, encoder.count );
+        assertEquals( 4, decode( other ).getWidth() );
+        handler.getEncodedLegend( request( "blue", "default", "image/gif" ), encoder );
+        assertEquals( 3, encoder.count );
+    }
+
+    @Test
+    public void testUnknownStyle()
+                            throws Exception {
+        try {
+            handler.getEncodedLegend( request( "red", "unknown", "image/png" ), encoder );
+            fail( "Expected an exception." );
+        } catch ( OWSException e ) {
+            assertEquals( "StyleNotDefined", e.getExceptionCode() );
+        }
+    }
+
+    @Test
+    public void testMissingDefaultStyle()
+                            throws Exception {
+        try {
+            handler.getEncodedLegend( request( "nostyle", null, "image/png" ), encoder );
+            fail( "Expected an exception." );
+        } catch ( OWSException e ) {
+            assertEquals( "StyleNotDefined", e.getExceptionCode() );
+        }
+    }
+
+    @Test
+    public void testUnknownLayer()
+                            throws Exception {
+        try {
+            handler.getEncodedLegend( request( "unknown", null, "image/png" ), encoder );
+            fail( "Expected an exception." );
+        } catch ( OWSException e ) {
+            assertEquals( "LayerNotDefined", e.getExceptionCode() );
+        }
+    }
+
+    @Test
+    public void testLegendSprite()
+                            throws Exception {
+        List<String> layers = Arrays.asList( "red", "nostyle", "blue" );
+        LegendSprite sprite = handler.getLegendSprite( "image/png", layers, encoder );
+        assertEquals( 20, sprite.getWidth() );
+
+        Map<String, Pair<Integer, Integer>> regions = sprite.getRegions();
+        // layers without a default style are skipped
+        assertEquals( Arrays.asList( "red", "blue" ), Arrays.asList( regions.keySet().toArray() ) );
+        assertEquals( new Pair<Integer, Integer>( 0, 5 ), regions.get( "red" ) );
+        assertEquals( new Pair<Integer, Integer>( 5, 7 ), regions.get( "blue" ) );
+
+        BufferedImage img = decode( sprite.getImage() );
+        assertEquals( 20, img.getWidth() );
+        assertEquals( 12, img.getHeight() );
+        assertEquals( Color.RED.getRGB(), img.getRGB( 0, 0 ) );
+        assertEquals( Color.RED.getRGB(), img.getRGB( 9, 4 ) );
+        assertEquals( 0, img.getRGB( 15, 2 ) >>> 24 );
+        assertEquals( Color.BLUE.getRGB(), img.getRGB( 0, 5 ) );
+        assertEquals( Color.BLUE.getRGB(), img.getRGB( 19, 11 ) );
+
+        LegendSprite cached = handler.getLegendSprite( "image/png", layers, encoder );
+        assertEquals( 1, encoder.count );
+        assertSame( sprite.getImage(), cached.getImage() );
+    }
+
+    @Test
+    public void testLegendSpriteWithoutLegends()
+                            throws Exception {
+        try {
+            handler.getLegendSprite( "image/png", Collections.singletonList( "nostyle" ), encoder );
+            fail( "Expected an exception." );
+        } catch ( OWSException e ) {
+            assertEquals( OWSException.INVALID_PARAMETER_VALUE, e.getExceptionCode() );
+        }
+    }
+
+    @Test
+    public void testLegendSpriteUnknownLayer()
+                            throws Exception {
+        try {
+            handler.getLegendSprite( "image/png", Collections.singletonList( "unknown" ), encoder );
+            fail( "Expected an exception." );
+        } catch ( OWSException e ) {
+            assertEquals( "LayerNotDefined", e.getExceptionCode() );
+        }
+    }
+
+    @Test
+    public void testCacheEvictsLeastRecentlyUsed() {
+        EncodedLegendCache cache = new EncodedLegendCache( 30 );
+        List<Object> a = Collections.<Object> singletonList( "a" );
+        List<Object> b = Collections.<Object> singletonList( "b" );
+        List<Object> c = Collections.<Object> singletonList( "c" );
+        cache.put( a, new byte[10] );
+        cache.put( b, new byte[10] );
+        // a is now more recently used than b
+        assertNotNull( cache.get( a ) );
+        cache.put( c, new byte[15] );
+        assertNull( cache.get( b ) );
+        assertNotNull( cache.get( a ) );
+        assertNotNull( cache.get( c ) );
+    }
+
+    @Test
+    public void testCacheReplacesEntries() {
+        EncodedLegendCache cache = new EncodedLegendCache( 30 );
+        List<Object> a = Collections.<Object> singletonList( "a" );
+        List<Object> b = Collections.<Object> singletonList( "b" );
+        cache.put( a, new byte[20] );
+        byte[] replacement = new byte[5];
+        cache.put( a, replacement );
+        // the replaced entry does not count any more
+        cache.put( b, new byte[25] );
+        assertArrayEquals( replacement, cache.get( a ) );
+        assertNotNull( cache.get( b ) );
+    }
+
+    @Test
+    public void testCacheSkipsOversizedEntries() {
+        EncodedLegendCache cache = new EncodedLegendCache( 30 );
+        List<Object> a = Collections.<Object> singletonList( "a" );
+        List<Object> b = Collections.<Object> singletonList( "b" );
+        cache.put( a, new byte[10] );
+        cache.put( b, new byte[31] );
+        assertNull( cache.get( b ) );
+        assertNotNull( cache.get( a ) );
+    }
+
+    @Test
+    public void testDisabledCache() {
+        EncodedLegendCache cache = new EncodedLegendCache( 0 );
+        List<Object> a = Collections.<Object> singletonList( "a" );
+        cache.put( a, new byte[1] );
+        assertNull( cache.get( a ) );
+    }
+
+}
@@ -0,0 +1,134 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2014 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.services.wms.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.deegree.commons.ows.exception.OWSException;
+import org.deegree.services.wms.utils.GetMapAdmissionController.Permit;
+import org.junit.Test;
+
+/**
+ * Tests for {@link GetMapAdmissionController}.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+public class GetMapAdmissionControllerTest {
+
+    @Test
+    public void admitWithinBudget()
+                            throws OWSException {
+        GetMapAdmissionController controller = new GetMapAdmissionController( 10, 0.75, 0, 10 );
+        Permit p1 = controller.admit( 3 );
+        Permit p2 = controller.admit( 4 );
+        assertFalse( p1.isDegraded() );
+        assertFalse( p2.isDegraded() );
+        assertEquals( 7, controller.getUsedBudget(), 0 );
+        p1.release();
+        p2.release();
+        p2.release();
+        assertEquals( 0, controller.getUsedBudget(), 0 );
+    }
+
+    @Test
+    public void degradeAboveThreshold()
+                            throws OWSException {
+        GetMapAdmissionController controller = new GetMapAdmissionController( 10, 0.5, 0, 10 );
+        Permit p1 = controller.admit( 4 );
+        Permit p2 = controller.admit( 4 );
+        assertFalse( p1.isDegraded() );
+        assertTrue( p2.isDegraded() );
+        assertEquals( 1, controller.getDegradedCount() );
+    }
+
+    @Test
+    public void expensiveRequestIsCappedAtBudget()
+                            throws OWSException {
+        GetMapAdmissionController controller = new GetMapAdmissionController( 10, 0.75, 0, 10 );
+        Permit p = controller.admit( 1000 );
+        assertTrue( p.isDegraded() );
+        assertEquals( 10, controller.getUsedBudget(), 0 );
+    }
+
+    @Test(expected = OWSException.class)
+    public void rejectAfterQueueTime()
+                            throws OWSException {
+        GetMapAdmissionController controller = new GetMapAdmissionController( 10, 0.75, 50, 10 );
+        controller.admit( 8 );
+        try {
+            controller.admit( 8 );
+        } finally {
+            assertEquals( 1, controller.getRejectedCount() );
+        }
+    }
+
+    @Test(expected = OWSException.class)
+    public void rejectIfQueueIsFull()
+                            throws OWSException {
+        GetMapAdmissionController controller = new GetMapAdmissionController( 10, 0.75, 1000, 0 );
+        controller.admit( 8 );
+        controller.admit( 8 );
+    }
+
+    @Test
+    public void admitAfterRelease()
+                            throws Exception {
+        final GetMapAdmissionController controller = new GetMapAdmissionController( 10, 0.75, 10000, 10 );
+        final Permit p1 = controller.admit( 8 );
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep( 50 );
+                } catch ( InterruptedException e ) {
+                    // ignore
+                }
+                p1.release();
+            }
+        };
+        t.start();
+        Permit p2 = controller.admit( 8 );
+        t.join();
+        assertEquals( 8, controller.getUsedBudget(), 0 );
+        assertEquals( 2, controller.getAdmittedCount() );
+        p2.release();
+    }
+
+}
@@ -0,0 +1,175 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2014 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.services.wms.utils;
+
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.deegree.cs.coordinatesystems.ICRS;
+import org.deegree.cs.persistence.CRSManager;
+import org.deegree.geometry.Envelope;
+import org.deegree.geometry.GeometryFactory;
+import org.deegree.geometry.metadata.SpatialMetadata;
+import org.deegree.protocol.wms.ops.GetMap;
+import org.deegree.services.wms.ImageEncoder;
+import org.deegree.services.wms.utils.TileAlignedGetMapHandler.TileBlock;
+import org.deegree.tile.Tile;
+import org.deegree.tile.TileDataLevel;
+import org.deegree.tile.TileDataSet;
+import org.deegree.tile.TileMatrix;
+import org.deegree.tile.TileMatrixSet;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link TileAlignedGetMapHandler}.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+public class TileAlignedGetMapHandlerTest {
+
+    private static final ICRS CRS = CRSManager.getCRSRef( "EPSG:25832" );
+
+    private static final GeometryFactory FAC = new GeometryFactory();
+
+    private TileAlignedGetMapHandler handler;
+
+    private TileDataLevel coarse;
+
+    private TileDataLevel fine;
+
+    @Before
+    public void setup() {
+        SpatialMetadata smd = new SpatialMetadata( FAC.createEnvelope( 0, 0, 10240, 10240, CRS ),
+                                                   singletonList( CRS ) );
+        coarse = mockLevel( new TileMatrix( "coarse", smd, 256, 256, 10, 4, 4 ) );
+        fine = mockLevel( new TileMatrix( "fine", smd, 256, 256, 5, 8, 8 ) );
+        List<TileMatrix> matrices = new ArrayList<TileMatrix>();
+        matrices.add( coarse.getMetadata() );
+        matrices.add( fine.getMetadata() );
+        List<TileDataLevel> levels = new ArrayList<TileDataLevel>();
+        levels.add( coarse );
+        levels.add( fine );
+
+        TileDataSet tds = mock( TileDataSet.class );
+        when( tds.getTileMatrixSet() ).thenReturn( new TileMatrixSet( "tms", null, matrices, smd, null ) );
+        when( tds.getTileDataLevels() ).thenReturn( levels );
+        when( tds.getNativeImageFormat() ).thenReturn( "image/png" );
+
+        handler = new TileAlignedGetMapHandler( mock( ImageEncoder.class ) );
+        handler.addTileDataSet( "tiled", tds, 0.1 );
+    }
+
+    private static TileDataLevel mockLevel( TileMatrix matrix ) {
+        TileDataLevel level = mock( TileDataLevel.class );
+        when( level.getMetadata() ).thenReturn( matrix );
+        when( level.getTile( anyLong(), anyLong() ) ).thenReturn( mock( Tile.class ) );
+        return level;
+    }
+
+    private static GetMap getMap( String layer, String style, double minx, double miny, double maxx, double maxy,
+                                  int width, int height ) {
+        Envelope bbox = FAC.createEnvelope( minx, miny, maxx, maxy, CRS );
+        return new GetMap( singletonList( layer ), singletonList( style ), width, height, bbox, CRS, "image/png",
+                           true, null );
+    }
+
+    @Test
+    public void testSingleTile() {
+        TileBlock block = handler.findTiles( getMap( "tiled", "default", 2560, 7680, 5120, 10240, 256, 256 ) );
+        assertNotNull( block );
+        assertSame( coarse.getMetadata(), block.matrix );
+        assertEquals( 1, block.tiles.length );
+        assertEquals( 1, block.tiles[0].length );
+    }
+
+    @Test
+    public void testTileGrid() {
+        TileBlock block = handler.findTiles( getMap( "tiled", "default", 1280, 3840, 3840, 6400, 512, 512 ) );
+        assertNotNull( block );
+        assertSame( fine.getMetadata(), block.matrix );
+        assertEquals( 2, block.tiles.length );
+        assertEquals( 2, block.tiles[0].length );
+    }
+
+    @Test
+    public void testWithinTolerance() {
+        assertNotNull( handler.findTiles( getMap( "tiled", "default", 2560.5, 7680.5, 5120.5, 10240.5, 256, 256 ) ) );
+    }
+
+    @Test
+    public void testMisaligned() {
+        assertNull( handler.findTiles( getMap( "tiled", "default", 2563, 7683, 5123, 10243, 256, 256 ) ) );
+    }
+
+    @Test
+    public void testNoTileSize() {
+        assertNull( handler.findTiles( getMap( "tiled", "default", 2560, 7680, 5120, 10240, 300, 300 ) ) );
+    }
+
+    @Test
+    public void testOutsideMatrix() {
+        assertNull( handler.findTiles( getMap( "tiled", "default", 10240, 7680, 12800, 10240, 256, 256 ) ) );
+    }
+
+    @Test
+    public void testOtherLayer() {
+        assertNull( handler.findTiles( getMap( "other", "default", 2560, 7680, 5120, 10240, 256, 256 ) ) );
+    }
+
+    @Test
+    public void testOtherStyle() {
+        assertNull( handler.findTiles( getMap( "tiled", "highlighted", 2560, 7680, 5120, 10240, 256, 256 ) ) );
+    }
+
+    @Test
+    public void testMissingTile() {
+        when( coarse.getTile( 1, 0 ) ).thenReturn( null );
+        assertNull( handler.findTiles( getMap( "tiled", "default", 2560, 7680, 5120, 10240, 256, 256 ) ) );
+    }
+
+}
@@ -35,10 +35,11 @@
  ----------------------------------------------------------------------------*/
 package org.deegree.tools.feature.persistence;
 
+import static org.deegree.commons.tools.CommandUtils.OPT_VERBOSE;
+
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
-import java.util.List;
 
 import javax.xml.stream.FactoryConfigurationError;
 import javax.xml.stream.XMLStreamException;
@@ -53,7 +54,7 @@ import org.deegree.commons.config.ResourceInitException;
 import org.deegree.commons.tools.CommandUtils;
 import org.deegree.commons.xml.XMLParsingException;
 import org.deegree.cs.exceptions.UnknownCRSException;
-import org.deegree.feature.FeatureCollection;
+import org.deegree.feature.persistence.BulkInsertTransaction;
 import org.deegree.feature.persistence.FeatureStore;
 import org.deegree.feature.persistence.FeatureStoreException;
 import org.deegree.feature.persistence.FeatureStoreProvider;
@@ -68,6 +69,10 @@ import org.deegree.workspace.standard.DefaultWorkspace;
 
 /**
  * Imports feature datasets into a feature store.
+ * <p>
+ * Datasets are streamed and committed in units of (at least) <code>-commit</code> features, using several insert
+ * threads. Committed units are recorded in a checkpoint file, so an interrupted import can be resumed.
+ * </p>
  * 
  * @author <a href="mailto:schneider@lat-lon.de">Markus Schneider </a>
  * @author last edited by: $Author$
@@ -90,39 +95,64 @@ public class FeatureStoreLoader {
 
     private static final String OPT_IDGEN_MODE = "idgen";
 
+    private static final String OPT_BULK = "bulk";
+
+    private static final String OPT_COMMIT_SIZE = "commit";
+
+    private static final String OPT_THREADS = "threads";
+
+    private static final String OPT_CHECKPOINT = "checkpoint";
+
+    private static final String OPT_RESUME = "resume";
+
     private enum Action {
         insert, stats
     }
 
-    private static void insert( FeatureStore fs, String datasetFile, GMLVersion gmlVersion, IDGenMode mode )
+    private static void insert( FeatureStore fs, String datasetFile, GMLVersion gmlVersion, IDGenMode mode,
+                                boolean bulk, int commitSize, int threads, File checkpointFile, boolean resume,
+                                boolean verbose )
                             throws XMLStreamException, FactoryConfigurationError, IOException, XMLParsingException,
                             UnknownCRSException, FeatureStoreException {
 
         File f = new File( datasetFile );
         URL url = f.toURI().toURL();
-        System.out.print( "- Reading dataset: '" + datasetFile + "'..." );
+
+        LoadCheckpoint checkpoint = new LoadCheckpoint( checkpointFile, resume );
+        if ( resume ) {
+            System.out.println( "- Resuming, skipping " + checkpoint.getCommitted() + " committed features." );
+        }
+
+        System.out.print( "- Scanning dataset for xlink references: '" + datasetFile + "'..." );
+        ReferenceTracker refs = ReferenceTracker.scan( f );
+        System.out.println( "done (" + refs.getPendingIds() + " referenced ids)." );
+
+        if ( bulk ) {
+            FeatureStoreTransaction ta = fs.acquireTransaction();
+            if ( !( ta instanceof BulkInsertTransaction && ( (BulkInsertTransaction) ta ).isBulkInsertSupported() ) ) {
+                System.out.println( "- Feature store does not support bulk inserts, using regular inserts." );
+            }
+            ta.rollback();
+        }
+
+        System.out.println( "- Inserting features (" + threads + " threads, committing every " + commitSize
+                            + " features)..." );
         GMLStreamReader gmlReader = GMLInputFactory.createGMLStreamReader( gmlVersion, url );
         gmlReader.setApplicationSchema( fs.getSchema() );
-        FeatureCollection fc = gmlReader.readFeatureCollection();
-        System.out.println( "done." );
-
-        FeatureStoreTransaction ta = null;
+        ParallelFeatureLoader loader = new ParallelFeatureLoader( fs, mode, bulk, commitSize, threads, checkpoint,
+                                                                  System.out, verbose );
         try {
-            ta = fs.acquireTransaction();
-            System.out.print( "- Inserting features..." );
-            List<String> fids = ta.performInsert( fc, mode );
-            System.out.println( "done." );
-            for ( String fid : fids ) {
-                System.out.println( "- Inserted: " + fid );
-            }
-            System.out.println( "\n- Insert succeeded (" + fids.size() + " features). Committing transaction." );
-            ta.commit();
+            long inserted = loader.load( gmlReader, refs );
+            System.out.println( "\n- Insert succeeded (" + inserted + " features)." );
+            checkpoint.delete();
         } catch ( Exception e ) {
             e.printStackTrace();
             System.err.println( "Error performing insert: " + e.getMessage() );
-            if ( ta != null ) {
-                ta.rollback();
-            }
+            System.err.println( "Committed features have been recorded in '" + checkpoint.getFile()
+                                + "', use -" + OPT_RESUME + " to continue the insert (resume position: "
+                                + checkpoint.getResumePosition() + ")." );
+        } finally {
+            gmlReader.close();
         }
     }
 
@@ -184,6 +214,28 @@ public class FeatureStoreLoader {
 
             String inputFileName = cmdline.getOptionValue( OPT_DATASET_FILE );
 
+            int commitSize = 10000;
+            int threads = Math.min( 4, Runtime.getRuntime().availableProcessors() );
+            try {
+                if ( cmdline.hasOption( OPT_COMMIT_SIZE ) ) {
+                    commitSize = Integer.parseInt( cmdline.getOptionValue( OPT_COMMIT_SIZE ) );
+                }
+                if ( cmdline.hasOption( OPT_THREADS ) ) {
+                    threads = Integer.parseInt( cmdline.getOptionValue( OPT_THREADS ) );
+                }
+                if ( commitSize < 1 || threads < 1 ) {
+                    throw new NumberFormatException();
+                }
+            } catch ( NumberFormatException e ) {
+                System.out.println( "Invalid commit size or number of threads. Both must be positive integers." );
+                System.exit( 0 );
+            }
+
+            File checkpointFile = new File( inputFileName + ".checkpoint" );
+            if ( cmdline.hasOption( OPT_CHECKPOINT ) ) {
+                checkpointFile = new File( cmdline.getOptionValue( OPT_CHECKPOINT ) );
+            }
+
             Workspace ws = new DefaultWorkspace( new File( workspace ) );
             ws.initAll();
 
@@ -191,7 +243,8 @@ public class FeatureStoreLoader {
 
             switch ( action ) {
             case insert:
-                insert( fs, inputFileName, format, idGenMode );
+                insert( fs, inputFileName, format, idGenMode, cmdline.hasOption( OPT_BULK ), commitSize, threads,
+                        checkpointFile, cmdline.hasOption( OPT_RESUME ), cmdline.hasOption( OPT_VERBOSE ) );
                 break;
             case stats:
                 System.out.println( "TODO: Stats..." );
@@ -245,6 +298,23 @@ public class FeatureStoreLoader {
         opt.setRequired( true );
         opts.addOption( opt );
 
+        opt = new Option( OPT_BULK, false, "use the bulk insert mode of the feature store (e.g. PostgreSQL COPY)" );
+        opts.addOption( opt );
+
+        opt = new Option( OPT_COMMIT_SIZE, true, "number of features per transaction (default: 10000)" );
+        opts.addOption( opt );
+
+        opt = new Option( OPT_THREADS, true, "number of insert threads (default: number of processors, max. 4)" );
+        opts.addOption( opt );
+
+        opt = new Option( OPT_CHECKPOINT, true, "file for recording the committed features (default: <dataset>"
+                                                + ".checkpoint)" );
+        opts.addOption( opt );
+
+        opt = new Option( OPT_RESUME, false, "skip the features that have been committed according to the checkpoint "
+                                             + "file (use the same commit size as before)" );
+        opts.addOption( opt );
+
         CommandUtils.addDefaultOptions( opts );
         return opts;
     }
@@ -0,0 +1,205 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.tools.feature.persistence;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+/**
+ * Records which features of a dataset have been committed to the feature store, so an interrupted load can be resumed.
+ * <p>
+ * Features are identified by their (zero-based) position in the dataset. The committed ranges are written to a plain
+ * text file (one <code>start end</code> line per range, end exclusive) after every commit.
+ * </p>
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+class LoadCheckpoint {
+
+    private final File file;
+
+    // start -> end (exclusive), non-overlapping and non-adjacent
+    private final TreeMap<Long, Long> ranges = new TreeMap<Long, Long>();
+
+    /**
+     * Creates a new {@link LoadCheckpoint} that is stored in the given file.
+     * 
+     * @param file
+     *            checkpoint file, must not be <code>null</code>
+     * @param resume
+     *            if <code>true</code>, the committed ranges are read from the file (if it exists)
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    LoadCheckpoint( File file, boolean resume ) throws IOException {
+        this.file = file;
+        if ( resume && file.exists() ) {
+            BufferedReader in = new BufferedReader( new InputStreamReader( new FileInputStream( file ), "UTF-8" ) );
+            try {
+                String line = null;
+                while ( ( line = in.readLine() ) != null ) {
+                    line = line.trim();
+                    if ( line.isEmpty() || line.startsWith( "#" ) ) {
+                        continue;
+                    }
+                    String[] tokens = line.split( "\\s+" );
+                    if ( tokens.length != 2 ) {
+                        throw new IOException( "Invalid line in checkpoint file '" + file + "': " + line );
+                    }
+                    try {
+                        add( Long.parseLong( tokens[0] ), Long.parseLong( tokens[1] ) );
+                    } catch ( NumberFormatException e ) {
+                        throw new IOException( "Invalid line in checkpoint file '" + file + "': " + line );
+                    }
+                }
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * Returns whether the feature at the given position has been committed already.
+     * 
+     * @param position
+     *            position of the feature in the dataset
+     * @return <code>true</code>, if the feature has been committed
+     */
+    synchronized boolean isCommitted( long position ) {
+        Entry<Long, Long> range = ranges.floorEntry( position );
+        return range != null && position < range.getValue();
+    }
+
+    /**
+     * Returns the number of features that have been committed without gaps, starting with the first one.
+     * 
+     * @return number of features before the first uncommitted one
+     */
+    synchronized long getResumePosition() {
+        Entry<Long, Long> first = ranges.firstEntry();
+        if ( first == null || first.getKey() != 0 ) {
+            return 0;
+        }
+        return first.getValue();
+    }
+
+    /**
+     * @return number of features that have been committed
+     */
+    synchronized long getCommitted() {
+        long committed = 0;
+        for ( Entry<Long, Long> range : ranges.entrySet() ) {
+            committed += range.getValue() - range.getKey();
+        }
+        return committed;
+    }
+
+    /**
+     * Records that the given range of features has been committed and stores the checkpoint.
+     * 
+     * @param start
+     *            position of the first committed feature
+     * @param end
+     *            position after the last committed feature
+     * @throws IOException
+     *             if the checkpoint file cannot be written
+     */
+    synchronized void committed( long start, long end )
+                            throws IOException {
+        add( start, end );
+        File tmpFile = new File( file.getPath() + ".tmp" );
+        PrintWriter out = new PrintWriter( new OutputStreamWriter( new FileOutputStream( tmpFile ), "UTF-8" ) );
+        try {
+            out.println( "# committed feature positions (start end), resume position: " + getResumePosition() );
+            for ( Entry<Long, Long> range : ranges.entrySet() ) {
+                out.println( range.getKey() + " " + range.getValue() );
+            }
+        } finally {
+            out.close();
+        }
+        if ( out.checkError() ) {
+            throw new IOException( "Unable to write checkpoint file '" + tmpFile + "'." );
+        }
+        // rename is atomic on most platforms, but does not replace existing files everywhere
+        if ( !tmpFile.renameTo( file ) && !( file.delete() && tmpFile.renameTo( file ) ) ) {
+            throw new IOException( "Unable to replace checkpoint file '" + file + "'." );
+        }
+    }
+
+    /**
+     * Removes the checkpoint file (after the dataset has been loaded completely).
+     */
+    synchronized void delete() {
+        file.delete();
+    }
+
+    /**
+     * @return the checkpoint file, never <code>null</code>
+     */
+    File getFile() {
+        return file;
+    }
+
+    private void add( long start, long end ) {
+        if ( end <= start ) {
+            return;
+        }
+        Entry<Long, Long> before = ranges.floorEntry( start );
+        if ( before != null && before.getValue() >= start ) {
+            start = before.getKey();
+            end = Math.max( end, before.getValue() );
+            ranges.remove( before.getKey() );
+        }
+        Entry<Long, Long> after = ranges.ceilingEntry( start );
+        while ( after != null && after.getKey() <= end ) {
+            end = Math.max( end, after.getValue() );
+            ranges.remove( after.getKey() );
+            after = ranges.ceilingEntry( start );
+        }
+        ranges.put( start, end );
+    }
+
+}
@@ -0,0 +1,398 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.tools.feature.persistence;
+
+import static java.util.concurrent.TimeUnit.DAYS;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.deegree.commons.tom.ReferenceResolvingException;
+import org.deegree.commons.tom.gml.GMLReference;
+import org.deegree.feature.Feature;
+import org.deegree.feature.GenericFeatureCollection;
+import org.deegree.feature.persistence.BulkInsertTransaction;
+import org.deegree.feature.persistence.ChunkedInsertTransaction;
+import org.deegree.feature.persistence.FeatureStore;
+import org.deegree.feature.persistence.FeatureStoreTransaction;
+import org.deegree.gml.GMLStreamReader;
+import org.deegree.gml.feature.StreamFeatureCollection;
+import org.deegree.gml.reference.GmlDocumentIdContext;
+import org.deegree.protocol.wfs.transaction.action.IDGenMode;
+
+/**
+ * Inserts the members of a GML feature collection into a {@link FeatureStore}, committing after every
+ * <code>commitSize</code> features.
+ * <p>
+ * The features are parsed on the calling thread and handed over in chunks to a pool of insert threads, each commit unit
+ * is inserted in a transaction of its own. A commit unit is extended beyond <code>commitSize</code> features until all
+ * local xlink references of its features point to features of the same unit (see {@link ReferenceTracker}) or have
+ * stayed unresolved for too long (dangling references), and the chunks of a unit are passed to the store as a chunked
+ * insert if it supports it (see {@link ChunkedInsertTransaction}). Committed units are recorded in a
+ * {@link LoadCheckpoint}, features that are marked as committed in the checkpoint are skipped.
+ * </p>
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+class ParallelFeatureLoader {
+
+    private static final int CHUNK_SIZE = 1000;
+
+    // number of chunks after which open ids of a unit are treated as external references (dangling xlinks)
+    private static final int MAX_OPEN_CHUNKS = 100;
+
+    private static final long REPORT_INTERVAL = 10000;
+
+    // markers for the end of a commit unit (compared by identity)
+    private static final List<Feature> END = new ArrayList<Feature>( 0 );
+
+    private static final List<Feature> ABORT = new ArrayList<Feature>( 0 );
+
+    private final FeatureStore fs;
+
+    private final IDGenMode mode;
+
+    private final boolean bulk;
+
+    private final int commitSize;
+
+    private final int threads;
+
+    private final LoadCheckpoint checkpoint;
+
+    private final PrintStream out;
+
+    private final boolean verbose;
+
+    private final AtomicLong committedFeatures = new AtomicLong();
+
+    private final AtomicLong committedObjects = new AtomicLong();
+
+    private volatile long parsedFeatures;
+
+    private volatile Throwable failure;
+
+    private long begin;
+
+    private long lastReport;
+
+    /**
+     * Creates a new {@link ParallelFeatureLoader} instance.
+     * 
+     * @param fs
+     *            feature store to insert into, must not be <code>null</code>
+     * @param mode
+     *            id generation mode, must not be <code>null</code>
+     * @param bulk
+     *            <code>true</code>, if the bulk insert mode of the store shall be used (if supported)
+     * @param commitSize
+     *            minimum number of features per transaction
+     * @param threads
+     *            number of insert threads
+     * @param checkpoint
+     *            checkpoint for recording the committed features, must not be <code>null</code>
+     * @param out
+     *            stream for progress messages, must not be <code>null</code>
+     * @param verbose
+     *            <code>true</code>, if the ids of the inserted objects shall be printed
+     */
+    ParallelFeatureLoader( FeatureStore fs, IDGenMode mode, boolean bulk, int commitSize, int threads,
+                           LoadCheckpoint checkpoint, PrintStream out, boolean verbose ) {
+        this.fs = fs;
+        this.mode = mode;
+        this.bulk = bulk;
+        this.commitSize = commitSize;
+        this.threads = threads;
+        this.checkpoint = checkpoint;
+        this.out = out;
+        this.verbose = verbose;
+    }
+
+    /**
+     * Inserts the members of the feature collection that the given reader points at.
+     * 
+     * @param gmlReader
+     *            reader, must point at the <code>START_ELEMENT</code> of the feature collection
+     * @param refs
+     *            local references of the document, must not be <code>null</code>
+     * @return number of features that have been committed
+     * @throws Exception
+     *             if parsing or inserting fails (features of earlier commit units may have been committed)
+     */
+    long load( GMLStreamReader gmlReader, ReferenceTracker refs )
+                            throws Exception {
+
+        begin = System.currentTimeMillis();
+        lastReport = begin;
+
+        StreamFeatureCollection fc = gmlReader.readFeatureCollectionStream();
+        GmlDocumentIdContext idContext = gmlReader.getIdContext();
+        int chunkSize = Math.min( commitSize, CHUNK_SIZE );
+
+        ExecutorService pool = Executors.newFixedThreadPool( threads );
+        Semaphore slots = new Semaphore( threads );
+        CommitUnit unit = null;
+        try {
+            List<Feature> chunk = new ArrayList<Feature>( chunkSize );
+            long position = 0;
+            long unitStart = 0;
+            int chunkFeatures = 0;
+            Feature feature = null;
+            while ( failure == null && ( feature = fc.read() ) != null ) {
+                if ( !checkpoint.isCommitted( position ) ) {
+                    chunk.add( feature );
+                }
+                parsedFeatures = ++position;
+                if ( ++chunkFeatures == chunkSize ) {
+                    chunkFeatures = 0;
+                    endChunk( idContext, refs );
+                    if ( !chunk.isEmpty() ) {
+                        if ( unit == null ) {
+                            unit = startUnit( pool, slots, unitStart );
+                        }
+                        unit.queue.put( chunk );
+                        chunk = new ArrayList<Feature>( chunkSize );
+                    }
+                    if ( position - unitStart >= commitSize ) {
+                        if ( !refs.isClosed() ) {
+                            expireOpenIds( refs );
+                        }
+                        if ( refs.isClosed() ) {
+                            if ( unit != null ) {
+                                unit.finish( position );
+                                unit = null;
+                            }
+                            unitStart = position;
+                        }
+                    }
+                }
+            }
+            if ( failure == null ) {
+                endChunk( idContext, refs );
+                if ( !refs.isClosed() ) {
+                    out.println( "- Warning: " + refs.getPendingIds() + " referenced ids are undefined." );
+                }
+                if ( !chunk.isEmpty() && unit == null ) {
+                    unit = startUnit( pool, slots, unitStart );
+                }
+                if ( unit != null ) {
+                    if ( !chunk.isEmpty() ) {
+                        unit.queue.put( chunk );
+                    }
+                    unit.finish( position );
+                    unit = null;
+                }
+            }
+        } finally {
+            if ( unit != null ) {
+                // parsing failed, don't commit the incomplete unit
+                unit.queue.put( ABORT );
+            }
+            pool.shutdown();
+            pool.awaitTermination( Long.MAX_VALUE, DAYS );
+        }
+        if ( failure != null ) {
+            if ( failure instanceof Exception ) {
+                throw (Exception) failure;
+            }
+            throw new RuntimeException( failure.getMessage(), failure );
+        }
+        report( true );
+        return committedFeatures.get();
+    }
+
+    /**
+     * Registers the objects of the finished chunk and resolves the local references within the chunk, so the features
+     * can be handed over to the insert threads (which must not touch the id context anymore).
+     */
+    private void endChunk( GmlDocumentIdContext idContext, ReferenceTracker refs ) {
+        refs.register( idContext );
+        for ( GMLReference<?> ref : idContext.getReferences() ) {
+            if ( ref.getURI().startsWith( "#" ) ) {
+                try {
+                    ref.getReferencedObject();
+                } catch ( ReferenceResolvingException e ) {
+                    // object in another chunk, resolved by id in the store
+                }
+            }
+        }
+        idContext.clear();
+    }
+
+    private void expireOpenIds( ReferenceTracker refs ) {
+        int expired = refs.expire( MAX_OPEN_CHUNKS );
+        if ( expired > 0 ) {
+            out.println( "- Warning: " + expired + " referenced ids have not been defined within " + MAX_OPEN_CHUNKS
+                         + " chunks, treating them as external references." );
+        }
+    }
+
+    private CommitUnit startUnit( ExecutorService pool, Semaphore slots, long start )
+                            throws InterruptedException {
+        // wait for a free insert thread, so queued features don't pile up
+        slots.acquire();
+        CommitUnit unit = new CommitUnit( start, slots );
+        pool.execute( unit );
+        return unit;
+    }
+
+    private synchronized void report( boolean last ) {
+        long now = System.currentTimeMillis();
+        if ( !last && now - lastReport < REPORT_INTERVAL ) {
+            return;
+        }
+        lastReport = now;
+        double seconds = Math.max( 1, now - begin ) / 1000.0;
+        long committed = committedFeatures.get();
+        out.println( "- " + ( last ? "Finished: " : "" ) + parsedFeatures + " features parsed ("
+                     + Math.round( parsedFeatures / seconds ) + "/s), " + committed + " features / "
+                     + committedObjects.get() + " objects committed (" + Math.round( committed / seconds )
+                     + " features/s), resume position: " + checkpoint.getResumePosition() );
+    }
+
+    private void fail( Throwable t ) {
+        synchronized ( this ) {
+            if ( failure == null ) {
+                failure = t;
+            }
+        }
+    }
+
+    /**
+     * Inserts the chunks of one commit unit in a transaction of its own.
+     */
+    private class CommitUnit implements Runnable {
+
+        final BlockingQueue<List<Feature>> queue = new ArrayBlockingQueue<List<Feature>>( 2 );
+
+        private final long start;
+
+        private final Semaphore slots;
+
+        private volatile long end;
+
+        CommitUnit( long start, Semaphore slots ) {
+            this.start = start;
+            this.slots = slots;
+        }
+
+        void finish( long end )
+                            throws InterruptedException {
+            this.end = end;
+            queue.put( END );
+        }
+
+        @Override
+        public void run() {
+            FeatureStoreTransaction ta = null;
+            List<Feature> chunk = null;
+            try {
+                ta = fs.acquireTransaction();
+                if ( bulk && ta instanceof BulkInsertTransaction ) {
+                    BulkInsertTransaction bulkTa = (BulkInsertTransaction) ta;
+                    bulkTa.setBulkInsert( bulkTa.isBulkInsertSupported() );
+                }
+                ChunkedInsertTransaction chunkedTa = null;
+                if ( ta instanceof ChunkedInsertTransaction ) {
+                    chunkedTa = (ChunkedInsertTransaction) ta;
+                    chunkedTa.beginChunkedInsert( mode );
+                }
+                List<String> ids = new ArrayList<String>();
+                long features = 0;
+                while ( ( chunk = queue.take() ) != END && chunk != ABORT && failure == null ) {
+                    GenericFeatureCollection fc = new GenericFeatureCollection( null, chunk );
+                    if ( chunkedTa != null ) {
+                        chunkedTa.insertChunk( fc );
+                    } else {
+                        ids.addAll( ta.performInsert( fc, mode ) );
+                    }
+                    features += chunk.size();
+                }
+                if ( chunk != END ) {
+                    // aborted
+                    ta.rollback();
+                    ta = null;
+                    return;
+                }
+                if ( chunkedTa != null ) {
+                    ids = chunkedTa.endChunkedInsert();
+                }
+                ta.commit();
+                ta = null;
+                checkpoint.committed( start, end );
+                if ( verbose ) {
+                    synchronized ( ParallelFeatureLoader.this ) {
+                        for ( String id : ids ) {
+                            out.println( "- Inserted: " + id );
+                        }
+                    }
+                }
+                committedFeatures.addAndGet( features );
+                committedObjects.addAndGet( ids.size() );
+                report( false );
+            } catch ( Throwable t ) {
+                fail( t );
+                if ( ta != null ) {
+                    try {
+                        ta.rollback();
+                    } catch ( Throwable t2 ) {
+                        // already failed
+                    }
+                }
+            } finally {
+                // make sure the parser thread is never blocked
+                while ( chunk != END && chunk != ABORT ) {
+                    try {
+                        chunk = queue.take();
+                    } catch ( InterruptedException e ) {
+                        break;
+                    }
+                }
+                slots.release();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,226 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.tools.feature.persistence;
+
+import static javax.xml.stream.XMLStreamConstants.START_ELEMENT;
+import static org.deegree.commons.xml.CommonNamespaces.XLNNS;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.deegree.commons.tom.gml.GMLReference;
+import org.deegree.gml.reference.GmlDocumentIdContext;
+
+/**
+ * Keeps track of the local xlink references of a GML document, so a document can be inserted in several transactions
+ * without splitting up objects that reference each other.
+ * <p>
+ * The number of local references to each object id is determined in a separate (fast) pass over the raw XML. While
+ * the document is parsed, the defined objects and the references of each chunk are registered, an id is "open" as long
+ * as it has been defined or referenced, but not all of its references (or the definition) have been encountered yet.
+ * Transaction boundaries are only safe if no id is open.
+ * </p>
+ * <p>
+ * Ids are forgotten as soon as they are closed, so the memory consumption is proportional to the number of referenced
+ * ids that have not been closed yet (initially all referenced ids of the document). Ids that stay open for too long
+ * (e.g. because of dangling references) can be given up with {@link #expire(int)}.
+ * </p>
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+class ReferenceTracker {
+
+    // referenced ids that have not been closed (or given up) yet
+    private final Map<String, IdState> idToState;
+
+    // open ids, in the order they have been opened
+    private final Map<String, IdState> openIds = new LinkedHashMap<String, IdState>();
+
+    // number of registered chunks
+    private int chunks;
+
+    private ReferenceTracker( Map<String, IdState> idToState ) {
+        this.idToState = idToState;
+    }
+
+    /**
+     * Counts the local xlink references in the given document.
+     * 
+     * @param file
+     *            GML document, must not be <code>null</code>
+     * @return tracker for the references of the document, never <code>null</code>
+     * @throws IOException
+     * @throws XMLStreamException
+     */
+    static ReferenceTracker scan( File file )
+                            throws IOException, XMLStreamException {
+        Map<String, IdState> idToState = new HashMap<String, IdState>();
+        InputStream is = new BufferedInputStream( new FileInputStream( file ) );
+        try {
+            XMLStreamReader xmlStream = XMLInputFactory.newInstance().createXMLStreamReader( is );
+            while ( xmlStream.hasNext() ) {
+                if ( xmlStream.next() == START_ELEMENT ) {
+                    String href = xmlStream.getAttributeValue( XLNNS, "href" );
+                    if ( href != null && href.startsWith( "#" ) ) {
+                        String id = href.substring( 1 );
+                        IdState state = idToState.get( id );
+                        if ( state == null ) {
+                            state = new IdState();
+                            idToState.put( id, state );
+                        }
+                        state.refs++;
+                    }
+                }
+            }
+            xmlStream.close();
+        } finally {
+            is.close();
+        }
+        return new ReferenceTracker( idToState );
+    }
+
+    /**
+     * @return number of referenced ids that have not been completely registered yet
+     */
+    int getPendingIds() {
+        return idToState.size();
+    }
+
+    /**
+     * Registers the objects and local references that have been added to the given id context.
+     * 
+     * @param idContext
+     *            id context of the parser, must not be <code>null</code>
+     */
+    void register( GmlDocumentIdContext idContext ) {
+        chunks++;
+        for ( String id : idContext.getObjects().keySet() ) {
+            IdState state = idToState.get( id );
+            if ( state != null && !state.defined ) {
+                state.defined = true;
+                update( id, state );
+            }
+        }
+        for ( GMLReference<?> ref : idContext.getReferences() ) {
+            String uri = ref.getURI();
+            if ( uri.startsWith( "#" ) ) {
+                String id = uri.substring( 1 );
+                IdState state = idToState.get( id );
+                if ( state != null ) {
+                    state.seen++;
+                    update( id, state );
+                }
+            }
+        }
+    }
+
+    private void update( String id, IdState state ) {
+        if ( state.defined && state.seen >= state.refs ) {
+            // all occurrences encountered, no longer needed
+            if ( state.open ) {
+                openIds.remove( id );
+            }
+            idToState.remove( id );
+        } else if ( !state.open ) {
+            state.open = true;
+            state.openedAt = chunks;
+            openIds.put( id, state );
+        }
+    }
+
+    /**
+     * Gives up on the ids that have been open for at least the given number of chunks, so the registered objects can be
+     * inserted. Remaining references to these ids are treated like references to external objects, i.e. it's up to the
+     * feature store to resolve them (or fail).
+     * 
+     * @param maxChunks
+     *            number of chunks (calls to {@link #register(GmlDocumentIdContext)}) an id may stay open
+     * @return number of ids that have been given up
+     */
+    int expire( int maxChunks ) {
+        int expired = 0;
+        Iterator<Entry<String, IdState>> iter = openIds.entrySet().iterator();
+        while ( iter.hasNext() ) {
+            Entry<String, IdState> entry = iter.next();
+            if ( chunks - entry.getValue().openedAt < maxChunks ) {
+                // ids are ordered by opening time
+                break;
+            }
+            iter.remove();
+            idToState.remove( entry.getKey() );
+            expired++;
+        }
+        return expired;
+    }
+
+    /**
+     * Returns whether the objects registered so far may be inserted independently of the remaining ones.
+     * 
+     * @return <code>true</code>, if no registered object references (or is referenced by) an object that has not been
+     *         registered yet
+     */
+    boolean isClosed() {
+        return openIds.isEmpty();
+    }
+
+    private static class IdState {
+
+        int refs;
+
+        int seen;
+
+        boolean defined;
+
+        boolean open;
+
+        int openedAt;
+    }
+
+}
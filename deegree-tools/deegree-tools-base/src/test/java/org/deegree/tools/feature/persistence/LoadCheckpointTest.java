@@ -0,0 +1,236 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.tools.feature.persistence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link LoadCheckpoint}.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+public class LoadCheckpointTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testAdjacentRangesAreMerged()
+                            throws IOException {
+        LoadCheckpoint checkpoint = new LoadCheckpoint( newFile(), false );
+        checkpoint.committed( 0, 10 );
+        checkpoint.committed( 20, 30 );
+        assertEquals( 10, checkpoint.getResumePosition() );
+        checkpoint.committed( 10, 20 );
+        assertEquals( 30, checkpoint.getResumePosition() );
+        assertEquals( 30, checkpoint.getCommitted() );
+        assertEquals( 1, readRanges( checkpoint.getFile() ).size() );
+        assertEquals( "0 30", readRanges( checkpoint.getFile() ).get( 0 ) );
+    }
+
+    @Test
+    public void testOverlappingRangesAreMerged()
+                            throws IOException {
+        LoadCheckpoint checkpoint = new LoadCheckpoint( newFile(), false );
+        checkpoint.committed( 5, 15 );
+        checkpoint.committed( 0, 6 );
+        assertEquals( 15, checkpoint.getResumePosition() );
+        checkpoint.committed( 12, 40 );
+        checkpoint.committed( 20, 25 );
+        assertEquals( 40, checkpoint.getResumePosition() );
+        assertEquals( 40, checkpoint.getCommitted() );
+    }
+
+    @Test
+    public void testRangeCoveringSeveralRanges()
+                            throws IOException {
+        LoadCheckpoint checkpoint = new LoadCheckpoint( newFile(), false );
+        checkpoint.committed( 10, 20 );
+        checkpoint.committed( 30, 40 );
+        checkpoint.committed( 50, 60 );
+        assertEquals( 3, readRanges( checkpoint.getFile() ).size() );
+        checkpoint.committed( 15, 55 );
+        assertEquals( 50, checkpoint.getCommitted() );
+        assertEquals( "10 60", readRanges( checkpoint.getFile() ).get( 0 ) );
+    }
+
+    @Test
+    public void testGaps()
+                            throws IOException {
+        LoadCheckpoint checkpoint = new LoadCheckpoint( newFile(), false );
+        checkpoint.committed( 10, 20 );
+        checkpoint.committed( 30, 40 );
+        assertEquals( 0, checkpoint.getResumePosition() );
+        assertEquals( 20, checkpoint.getCommitted() );
+        assertFalse( checkpoint.isCommitted( 9 ) );
+        assertTrue( checkpoint.isCommitted( 10 ) );
+        assertTrue( checkpoint.isCommitted( 19 ) );
+        assertFalse( checkpoint.isCommitted( 20 ) );
+        assertFalse( checkpoint.isCommitted( 29 ) );
+        assertTrue( checkpoint.isCommitted( 39 ) );
+        assertFalse( checkpoint.isCommitted( 40 ) );
+    }
+
+    @Test
+    public void testEmptyRangeIsIgnored()
+                            throws IOException {
+        LoadCheckpoint checkpoint = new LoadCheckpoint( newFile(), false );
+        checkpoint.committed( 5, 5 );
+        assertEquals( 0, checkpoint.getCommitted() );
+        assertFalse( checkpoint.isCommitted( 5 ) );
+    }
+
+    @Test
+    public void testResume()
+                            throws IOException {
+        File file = newFile();
+        LoadCheckpoint checkpoint = new LoadCheckpoint( file, false );
+        checkpoint.committed( 0, 100 );
+        checkpoint.committed( 200, 300 );
+
+        LoadCheckpoint resumed = new LoadCheckpoint( file, true );
+        assertEquals( 100, resumed.getResumePosition() );
+        assertEquals( 200, resumed.getCommitted() );
+        assertTrue( resumed.isCommitted( 99 ) );
+        assertFalse( resumed.isCommitted( 100 ) );
+        assertTrue( resumed.isCommitted( 250 ) );
+
+        // continuing the resumed load fills the gap
+        resumed.committed( 100, 200 );
+        assertEquals( 300, new LoadCheckpoint( file, true ).getResumePosition() );
+    }
+
+    @Test
+    public void testNoResume()
+                            throws IOException {
+        File file = newFile();
+        new LoadCheckpoint( file, false ).committed( 0, 100 );
+        LoadCheckpoint checkpoint = new LoadCheckpoint( file, false );
+        assertEquals( 0, checkpoint.getCommitted() );
+        assertFalse( checkpoint.isCommitted( 0 ) );
+    }
+
+    @Test
+    public void testResumeWithoutFile()
+                            throws IOException {
+        File file = new File( folder.getRoot(), "missing.checkpoint" );
+        LoadCheckpoint checkpoint = new LoadCheckpoint( file, true );
+        assertEquals( 0, checkpoint.getResumePosition() );
+    }
+
+    @Test
+    public void testResumeMergesRangesOfFile()
+                            throws IOException {
+        File file = write( "# comment\n0 10\n\n10 20\n  15 30  \n50 60\n" );
+        LoadCheckpoint checkpoint = new LoadCheckpoint( file, true );
+        assertEquals( 30, checkpoint.getResumePosition() );
+        assertEquals( 40, checkpoint.getCommitted() );
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidLine()
+                            throws IOException {
+        new LoadCheckpoint( write( "0 10 20\n" ), true );
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidNumber()
+                            throws IOException {
+        new LoadCheckpoint( write( "0 x\n" ), true );
+    }
+
+    @Test
+    public void testDelete()
+                            throws IOException {
+        LoadCheckpoint checkpoint = new LoadCheckpoint( newFile(), false );
+        checkpoint.committed( 0, 10 );
+        assertTrue( checkpoint.getFile().exists() );
+        checkpoint.delete();
+        assertFalse( checkpoint.getFile().exists() );
+    }
+
+    private File newFile() {
+        return new File( folder.getRoot(), "dataset.checkpoint" );
+    }
+
+    private File write( String content )
+                            throws IOException {
+        File file = newFile();
+        OutputStream os = new FileOutputStream( file );
+        try {
+            os.write( content.getBytes( "UTF-8" ) );
+        } finally {
+            os.close();
+        }
+        return file;
+    }
+
+    private static List<String> readRanges( File file )
+                            throws IOException {
+        List<String> ranges = new ArrayList<String>();
+        BufferedReader in = new BufferedReader( new InputStreamReader( new FileInputStream( file ), "UTF-8" ) );
+        try {
+            String line = null;
+            while ( ( line = in.readLine() ) != null ) {
+                if ( !line.startsWith( "#" ) ) {
+                    ranges.add( line );
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return ranges;
+    }
+
+}
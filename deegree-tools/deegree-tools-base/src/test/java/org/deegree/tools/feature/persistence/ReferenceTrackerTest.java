@@ -0,0 +1,212 @@
+/*----------------------------------------------------------------------------
+ This file is part of deegree, http://deegree.org/
+ Copyright (C) 2001-2013 by:
+ - Department of Geography, University of Bonn -
+ and
+ - lat/lon GmbH -
+
+ This library is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Lesser General Public License as published by the Free
+ Software Foundation; either version 2.1 of the License, or (at your option)
+ any later version.
+ This library is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ details.
+ You should have received a copy of the GNU Lesser General Public License
+ along with this library; if not, write to the Free Software Foundation, Inc.,
+ 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+ Contact information:
+
+ lat/lon GmbH
+ Aennchenstr. 19, 53177 Bonn
+ Germany
+ http://lat-lon.de/
+
+ Department of Geography, University of Bonn
+ Prof. Dr. Klaus Greve
+ Postfach 1147, 53001 Bonn
+ Germany
+ http://www.geographie.uni-bonn.de/deegree/
+
+ e-mail: info@deegree.org
+ ----------------------------------------------------------------------------*/
+package org.deegree.tools.feature.persistence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+import javax.xml.namespace.QName;
+
+import org.deegree.commons.tom.gml.GMLObject;
+import org.deegree.commons.tom.gml.GMLObjectType;
+import org.deegree.commons.tom.gml.property.Property;
+import org.deegree.gml.GMLVersion;
+import org.deegree.gml.reference.FeatureReference;
+import org.deegree.gml.reference.GmlDocumentIdContext;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link ReferenceTracker}.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * @author last edited by: $Author$
+ * 
+ * @version $Revision$, $Date$
+ */
+public class ReferenceTrackerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // f1 is referenced twice, f2 once, the last reference is not local
+    private static final String DOCUMENT = "<c xmlns:xlink='http://www.w3.org/1999/xlink'>"
+                                           + "<m xlink:href='#f2'/><m><o/></m><m xlink:href='#f1'/>"
+                                           + "<m xlink:href='#f1'/><m xlink:href='http://example.org/doc.xml#f3'/></c>";
+
+    @Test
+    public void testScan()
+                            throws Exception {
+        ReferenceTracker refs = scan( DOCUMENT );
+        assertEquals( 2, refs.getPendingIds() );
+        assertTrue( refs.isClosed() );
+    }
+
+    @Test
+    public void testForwardReference()
+                            throws Exception {
+        ReferenceTracker refs = scan( DOCUMENT );
+        refs.register( chunk( new String[0], "f2" ) );
+        assertFalse( refs.isClosed() );
+        refs.register( chunk( new String[] { "f2" } ) );
+        assertTrue( refs.isClosed() );
+        // closed ids are forgotten
+        assertEquals( 1, refs.getPendingIds() );
+    }
+
+    @Test
+    public void testBackwardReferences()
+                            throws Exception {
+        ReferenceTracker refs = scan( DOCUMENT );
+        refs.register( chunk( new String[] { "f1" } ) );
+        assertFalse( refs.isClosed() );
+        refs.register( chunk( new String[0], "f1" ) );
+        assertFalse( refs.isClosed() );
+        refs.register( chunk( new String[0], "f1" ) );
+        assertTrue( refs.isClosed() );
+        assertEquals( 1, refs.getPendingIds() );
+    }
+
+    @Test
+    public void testReferencesWithinChunk()
+                            throws Exception {
+        ReferenceTracker refs = scan( DOCUMENT );
+        refs.register( chunk( new String[] { "f1", "f2" }, "f1", "f2", "f1" ) );
+        assertTrue( refs.isClosed() );
+        assertEquals( 0, refs.getPendingIds() );
+    }
+
+    @Test
+    public void testUnreferencedObjectsAreIgnored()
+                            throws Exception {
+        ReferenceTracker refs = scan( DOCUMENT );
+        refs.register( chunk( new String[] { "o1", "o2" }, "other" ) );
+        assertTrue( refs.isClosed() );
+        assertEquals( 2, refs.getPendingIds() );
+    }
+
+    @Test
+    public void testDanglingReferenceExpires()
+                            throws Exception {
+        ReferenceTracker refs = scan( DOCUMENT );
+        refs.register( chunk( new String[0], "f2" ) );
+        refs.register( chunk( new String[0] ) );
+        assertEquals( 0, refs.expire( 3 ) );
+        assertFalse( refs.isClosed() );
+        refs.register( chunk( new String[0] ) );
+        refs.register( chunk( new String[0] ) );
+        assertEquals( 1, refs.expire( 3 ) );
+        assertTrue( refs.isClosed() );
+        assertEquals( 1, refs.getPendingIds() );
+
+        // a late definition doesn't reopen the expired id
+        refs.register( chunk( new String[] { "f2" } ) );
+        assertTrue( refs.isClosed() );
+    }
+
+    @Test
+    public void testExpireKeepsYoungerIds()
+                            throws Exception {
+        ReferenceTracker refs = scan( DOCUMENT );
+        refs.register( chunk( new String[0], "f2" ) );
+        refs.register( chunk( new String[0] ) );
+        refs.register( chunk( new String[] { "f1" } ) );
+        assertEquals( 1, refs.expire( 2 ) );
+        assertFalse( refs.isClosed() );
+        refs.register( chunk( new String[0], "f1", "f1" ) );
+        assertTrue( refs.isClosed() );
+        assertEquals( 0, refs.getPendingIds() );
+    }
+
+    private ReferenceTracker scan( String document )
+                            throws Exception {
+        File file = folder.newFile( "dataset.gml" );
+        OutputStream os = new FileOutputStream( file );
+        try {
+            os.write( document.getBytes( "UTF-8" ) );
+        } finally {
+            os.close();
+        }
+        return ReferenceTracker.scan( file );
+    }
+
+    private static GmlDocumentIdContext chunk( String[] ids, String... refIds ) {
+        GmlDocumentIdContext idContext = new GmlDocumentIdContext( GMLVersion.GML_32 );
+        for ( String id : ids ) {
+            idContext.addObject( new TestObject( id ) );
+        }
+        for ( String refId : refIds ) {
+            idContext.addReference( new FeatureReference( idContext, "#" + refId, null ) );
+        }
+        return idContext;
+    }
+
+    private static class TestObject implements GMLObject {
+
+        private final String id;
+
+        TestObject( String id ) {
+            this.id = id;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public GMLObjectType getType() {
+            return null;
+        }
+
+        @Override
+        public List<Property> getProperties() {
+            return null;
+        }
+
+        @Override
+        public List<Property> getProperties( QName propName ) {
+            return null;
+        }
+    }
+
+}